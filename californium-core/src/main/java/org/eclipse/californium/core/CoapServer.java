@@ -23,6 +23,7 @@
  *    Bosch Software Innovations GmbH - migrate to SLF4J
  *    Achim Kraus (Bosch Software Innovations GmbH) - use executors util and
  *                                                    add a detached executor
+ *    Bosch Software Innovations GmbH - add virtual threads
  ******************************************************************************/
 package org.eclipse.californium.core;
 
@@ -228,12 +229,29 @@ public class CoapServer implements ServerInterface {
 		LOGGER.info("Starting server");
 
 		if (executor == null) {
+			ScheduledExecutorService mainExecutor = null;
+			if (config.getBoolean(NetworkConfig.Keys.PROTOCOL_STAGE_VIRTUAL_THREADS)) {
+				if (ExecutorsUtil.isVirtualThreadsSupported()) {
+					// resource handlers are executed on virtual threads,
+					// timers on a platform thread
+					try {
+						mainExecutor = ExecutorsUtil.newVirtualThreadScheduledExecutor("CoapServer(virtual)#", //$NON-NLS-1$
+								new NamedThreadFactory("CoapServer(main)#")); //$NON-NLS-1$
+					} catch (UnsupportedOperationException e) {
+						LOGGER.warn("virtual threads failed, using thread pool instead!", e);
+					}
+				} else {
+					LOGGER.warn("virtual threads are not supported, using thread pool instead!");
+				}
+			}
+			if (mainExecutor == null) {
+				mainExecutor = ExecutorsUtil.newScheduledThreadPool(//
+						this.config.getInt(NetworkConfig.Keys.PROTOCOL_STAGE_THREAD_COUNT),
+						new NamedThreadFactory("CoapServer(main)#")); //$NON-NLS-1$
+			}
 			// sets the central thread pool for the protocol stage over all
 			// endpoints
-			setExecutors(ExecutorsUtil.newScheduledThreadPool(//
-					this.config.getInt(NetworkConfig.Keys.PROTOCOL_STAGE_THREAD_COUNT),
-					new NamedThreadFactory("CoapServer(main)#")), //$NON-NLS-1$
-					ExecutorsUtil.newDefaultSecondaryScheduler("CoapServer(secondary)#"), false);
+			setExecutors(mainExecutor, ExecutorsUtil.newDefaultSecondaryScheduler("CoapServer(secondary)#"), false);
 		}
 
 		if (endpoints.isEmpty()) {
@@ -38,6 +38,8 @@
  *                                                    set multicast address as
  *                                                    host URI option. 
  *    Achim Kraus (Bosch Software Innovations GmbH) - fix left timeout calculation
+ *    Bosch Software Innovations GmbH - wait for response without monitor,
+ *                                      don't pin virtual threads
  ******************************************************************************/
 package org.eclipse.californium.core.coap;
 
@@ -51,6 +53,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -133,6 +137,19 @@ public class Request extends Message {
 	/** The current response for the request. */
 	private Response response;
 
+	/**
+	 * Lock to wait for the response. Created by the first call of
+	 * {@link #waitForResponse(long)}, guarded by this. The waiting doesn't use
+	 * the monitor of this request, because that would pin virtual threads to
+	 * their carrier thread.
+	 */
+	private ReentrantLock responseLock;
+
+	/**
+	 * Condition of {@link #responseLock} to signal the response.
+	 */
+	private Condition responseCondition;
+
 	private String scheme;
 
 	/** The destination address of this message. */
@@ -704,8 +721,8 @@ public class Request extends Message {
 	public void setResponse(Response response) {
 		synchronized (this) {
 			this.response = response;
-			notifyAll();
 		}
+		signalResponseWaiters();
 
 		for (MessageObserver handler : getMessageObservers()) {
 			handler.onResponse(response);
@@ -747,27 +764,68 @@ public class Request extends Message {
 	 */
 	public Response waitForResponse(long timeout) throws InterruptedException {
 		long expiresNano = ClockUtil.nanoRealtime() + TimeUnit.MILLISECONDS.toNanos(timeout);
-		long leftTimeout = timeout;
+		ReentrantLock lock;
+		Condition condition;
 		synchronized (this) {
-			while (this.response == null && !isCanceled() && !isTimedOut() && !isRejected() && getSendError() == null) {
-				wait(leftTimeout);
-				// timeout expired?
+			if (responseLock == null) {
+				responseLock = new ReentrantLock();
+				responseCondition = responseLock.newCondition();
+			}
+			lock = responseLock;
+			condition = responseCondition;
+		}
+		lock.lockInterruptibly();
+		try {
+			while (true) {
+				synchronized (this) {
+					if (this.response != null || isCanceled() || isTimedOut() || isRejected()
+							|| getSendError() != null) {
+						Response r = this.response;
+						this.response = null;
+						return r;
+					}
+				}
 				if (timeout > 0) {
 					long leftNanos = expiresNano - ClockUtil.nanoRealtime();
 					if (leftNanos <= 0) {
-						// break loop
+						// timeout expired
 						break;
 					}
-					// add 1 millisecond to prevent last wait with 0!
-					leftTimeout = TimeUnit.NANOSECONDS.toMillis(leftNanos) + 1;
+					condition.awaitNanos(leftNanos);
+				} else {
+					condition.await();
 				}
 			}
+		} finally {
+			lock.unlock();
+		}
+		synchronized (this) {
 			Response r = this.response;
 			this.response = null;
 			return r;
 		}
 	}
 
+	/**
+	 * Wake up all threads waiting in {@link #waitForResponse(long)}.
+	 */
+	private void signalResponseWaiters() {
+		ReentrantLock lock;
+		Condition condition;
+		synchronized (this) {
+			lock = responseLock;
+			condition = responseCondition;
+		}
+		if (lock != null) {
+			lock.lock();
+			try {
+				condition.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * 
@@ -778,9 +836,7 @@ public class Request extends Message {
 	public void setTimedOut(boolean timedOut) {
 		super.setTimedOut(timedOut);
 		if (timedOut) {
-			synchronized (this) {
-				notifyAll();
-			}
+			signalResponseWaiters();
 		}
 	}
 
@@ -794,9 +850,7 @@ public class Request extends Message {
 	public void setCanceled(boolean canceled) {
 		super.setCanceled(canceled);
 		if (canceled) {
-			synchronized (this) {
-				notifyAll();
-			}
+			signalResponseWaiters();
 		}
 	}
 
@@ -804,9 +858,7 @@ public class Request extends Message {
 	public void setRejected(boolean rejected) {
 		super.setRejected(rejected);
 		if (rejected) {
-			synchronized (this) {
-				notifyAll();
-			}
+			signalResponseWaiters();
 		}
 	}
 
@@ -814,9 +866,7 @@ public class Request extends Message {
 	public void setSendError(Throwable sendError) {
 		super.setSendError(sendError);
 		if (sendError != null) {
-			synchronized (this) {
-				notifyAll();
-			}
+			signalResponseWaiters();
 		}
 	}
 
@@ -70,6 +70,11 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - move response retransmission
  *                                                    setup to BaseCoapStack to include
  *                                                    it also in a try-catch
+ *    Bosch Software Innovations GmbH - support BatchRawDataChannel
+ *    Bosch Software Innovations GmbH - support PooledRawDataChannel
+ *    Bosch Software Innovations GmbH - add striped protocol stage
+ *    Bosch Software Innovations GmbH - add virtual threads
+ *    Bosch Software Innovations GmbH - release pooled raw data, if dropped
  ******************************************************************************/
 package org.eclipse.californium.core.network;
 
@@ -77,6 +82,7 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -115,15 +121,18 @@ import org.eclipse.californium.core.observe.InMemoryObservationStore;
 import org.eclipse.californium.core.observe.NotificationListener;
 import org.eclipse.californium.core.observe.ObservationStore;
 import org.eclipse.californium.core.server.MessageDeliverer;
+import org.eclipse.californium.elements.BatchRawDataChannel;
 import org.eclipse.californium.elements.Connector;
 import org.eclipse.californium.elements.EndpointContext;
 import org.eclipse.californium.elements.EndpointContextMatcher;
 import org.eclipse.californium.elements.MessageCallback;
+import org.eclipse.californium.elements.PooledRawDataChannel;
 import org.eclipse.californium.elements.RawData;
 import org.eclipse.californium.elements.RawDataChannel;
 import org.eclipse.californium.elements.UDPConnector;
 import org.eclipse.californium.elements.util.DaemonThreadFactory;
 import org.eclipse.californium.elements.util.ExecutorsUtil;
+import org.eclipse.californium.elements.util.StripedExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -182,7 +191,9 @@ import org.slf4j.LoggerFactory;
  * </pre>
  * <p>
  * The endpoint and its layers use an {@link ScheduledExecutorService} to
- * execute tasks, e.g., when a request arrives.
+ * execute tasks, e.g., when a request arrives. Optionally, the received
+ * messages are processed in stripes on top of that executor, selected by the
+ * peer's address (see {@link #setExecutors(ScheduledExecutorService, ScheduledExecutorService, int)}).
  */
 public class CoapEndpoint implements Endpoint {
 
@@ -207,6 +218,14 @@ public class CoapEndpoint implements Endpoint {
 	/** The configuration of this endpoint */
 	private final NetworkConfig config;
 
+	/**
+	 * Number of protocol stage tasks a batch of received messages is split
+	 * into.
+	 * 
+	 * @see InboxImpl#receiveData(List)
+	 */
+	private final int protocolStageStripes;
+
 	/**
 	 * The matcher which matches incoming responses, akcs and rsts an exchange
 	 */
@@ -230,6 +249,12 @@ public class CoapEndpoint implements Endpoint {
 	/** Scheduled executor intended to be used for rare executing timers (e.g. cleanup tasks). */
 	private ScheduledExecutorService secondaryExecutor;
 
+	/**
+	 * Striped protocol stage on top of {@link #executor}. {@code null}, if
+	 * stripes are not used.
+	 */
+	private volatile StripedExecutor stripedExecutor;
+
 	/** Indicates if the endpoint has been started */
 	private volatile boolean started;
 
@@ -308,6 +333,7 @@ public class CoapEndpoint implements Endpoint {
 		this.connector.setRawDataReceiver(new InboxImpl());
 		this.scheme = CoAP.getSchemeForProtocol(connector.getProtocol());
 		this.multicastBaseMid = config.getInt(NetworkConfig.Keys.MULTICAST_BASE_MID);
+		this.protocolStageStripes = Math.max(1, config.getInt(NetworkConfig.Keys.PROTOCOL_STAGE_THREAD_COUNT));
 		// when remove the deprecated constructors,
 		// this checks and defaults maybe also removed
 		if (tokenGenerator == null) {
@@ -333,6 +359,7 @@ public class CoapEndpoint implements Endpoint {
 				udpConnector.setReceiveBufferSize(config.getInt(NetworkConfig.Keys.UDP_CONNECTOR_RECEIVE_BUFFER));
 				udpConnector.setSendBufferSize(config.getInt(NetworkConfig.Keys.UDP_CONNECTOR_SEND_BUFFER));
 				udpConnector.setReceiverPacketSize(config.getInt(NetworkConfig.Keys.UDP_CONNECTOR_DATAGRAM_SIZE));
+				udpConnector.setMaxPooledBuffers(config.getInt(NetworkConfig.Keys.UDP_CONNECTOR_POOLED_BUFFERS));
 			} else {
 				throw new IllegalArgumentException("Connector must be a UDPConnector to use apply configuration!");
 			}
@@ -386,8 +413,25 @@ public class CoapEndpoint implements Endpoint {
 
 			// in production environments the executor should be set to a multi
 			// threaded version in order to utilize all cores of the processor
-			final ScheduledExecutorService executorService = ExecutorsUtil
-					.newSingleThreadScheduledExecutor(new DaemonThreadFactory(":CoapEndpoint-" + connector + '#')); //$NON-NLS-1$
+			ScheduledExecutorService defaultExecutor = null;
+			if (config.getBoolean(NetworkConfig.Keys.PROTOCOL_STAGE_VIRTUAL_THREADS)) {
+				if (ExecutorsUtil.isVirtualThreadsSupported()) {
+					try {
+						defaultExecutor = ExecutorsUtil.newVirtualThreadScheduledExecutor(
+								":CoapEndpoint(virtual)-" + connector + '#', //$NON-NLS-1$
+								new DaemonThreadFactory(":CoapEndpoint-" + connector + '#')); //$NON-NLS-1$
+					} catch (UnsupportedOperationException e) {
+						LOGGER.warn("virtual threads failed, using single-threaded executor instead!", e);
+					}
+				} else {
+					LOGGER.warn("virtual threads are not supported, using single-threaded executor instead!");
+				}
+			}
+			if (defaultExecutor == null) {
+				defaultExecutor = ExecutorsUtil
+						.newSingleThreadScheduledExecutor(new DaemonThreadFactory(":CoapEndpoint-" + connector + '#')); //$NON-NLS-1$
+			}
+			final ScheduledExecutorService executorService = defaultExecutor;
 			setExecutors(executorService, executorService);
 			addObserver(new EndpointObserver() {
 
@@ -449,6 +493,10 @@ public class CoapEndpoint implements Endpoint {
 		}
 		connector.destroy();
 		coapstack.destroy();
+		StripedExecutor striped = stripedExecutor;
+		if (striped != null) {
+			striped.shutdown();
+		}
 		for (EndpointObserver obs : observers) {
 			obs.destroyed(this);
 		}
@@ -464,17 +512,59 @@ public class CoapEndpoint implements Endpoint {
 		return started;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Uses {@link NetworkConfig.Keys#PROTOCOL_STAGE_STRIPES} for the number of
+	 * stripes of the protocol stage.
+	 * 
+	 * @see #setExecutors(ScheduledExecutorService, ScheduledExecutorService,
+	 *      int)
+	 */
 	@Override
 	public void setExecutors(ScheduledExecutorService mainExecutor, ScheduledExecutorService secondaryExecutor) {
+		setExecutors(mainExecutor, secondaryExecutor, config.getInt(NetworkConfig.Keys.PROTOCOL_STAGE_STRIPES));
+	}
+
+	/**
+	 * Sets the executors and the number of stripes of the protocol stage.
+	 * 
+	 * With stripes, the received messages are processed in stripes on top of
+	 * the main executor, selected by the peer's address. Messages of the same
+	 * peer are processed in the order they are received and never in
+	 * parallel. Exchanges of outgoing requests use the stripe of the
+	 * destination, which enables to process the responses without passing
+	 * them to an other thread.
+	 * 
+	 * @param mainExecutor executor for the protocol stage
+	 * @param secondaryExecutor executor for rare executing timers
+	 * @param stripes number of stripes. {@code 0}, to use the main executor
+	 *            without stripes.
+	 * @throws IllegalArgumentException if an executor is {@code null}, or
+	 *             stripes is negative
+	 * @throws IllegalStateException if the endpoint is already started
+	 */
+	public void setExecutors(ScheduledExecutorService mainExecutor, ScheduledExecutorService secondaryExecutor,
+			int stripes) {
 		if (mainExecutor == null || secondaryExecutor == null) {
 			throw new IllegalArgumentException("executors must not be null");
 		}
-		if (this.executor == mainExecutor &&  this.secondaryExecutor == secondaryExecutor) {
+		if (stripes < 0) {
+			throw new IllegalArgumentException("stripes must not be negative");
+		}
+		StripedExecutor striped = stripedExecutor;
+		int currentStripes = striped == null ? 0 : striped.getStripes();
+		if (this.executor == mainExecutor && this.secondaryExecutor == secondaryExecutor
+				&& currentStripes == stripes) {
 			return;
 		}
 		if (started) {
 			throw new IllegalStateException("endpoint already started!");
 		}
+		if (striped != null) {
+			striped.shutdown();
+		}
+		this.stripedExecutor = stripes > 0 ? new StripedExecutor(mainExecutor, stripes) : null;
 		this.executor = mainExecutor;
 		this.secondaryExecutor = secondaryExecutor;
 		this.coapstack.setExecutors(mainExecutor, this.secondaryExecutor);
@@ -550,7 +640,9 @@ public class CoapEndpoint implements Endpoint {
 			return;
 		}
 
-		final Exchange exchange = new Exchange(request, Origin.LOCAL, executor);
+		StripedExecutor striped = stripedExecutor;
+		Executor exchangeExecutor = striped == null ? executor : striped.getExecutor(destinationAddress);
+		final Exchange exchange = new Exchange(request, Origin.LOCAL, exchangeExecutor);
 		exchange.execute(new Runnable() {
 
 			@Override
@@ -789,28 +881,138 @@ public class CoapEndpoint implements Endpoint {
 	 * {@link RawData}) to the endpoint. The endpoint creates a new task to
 	 * process the message. The task consists of invoking the matcher to look
 	 * for an associated exchange and then forwards the message with the
-	 * exchange to the stack of layers.
+	 * exchange to the stack of layers. Pooled raw data is released right after
+	 * parsing.
 	 */
-	private class InboxImpl implements RawDataChannel {
+	private class InboxImpl implements BatchRawDataChannel, PooledRawDataChannel {
 
 		@Override
 		public void receiveData(final RawData raw) {
+			try {
+				checkRawData(raw);
+			} catch (IllegalArgumentException e) {
+				raw.release();
+				throw e;
+			}
+
+			// Create a new task to process this message
+			boolean executed = runInProtocolStage(raw.getEndpointContext().getPeerAddress(), new Runnable() {
+
+				@Override
+				public void run() {
+					receiveMessage(raw);
+				}
+			});
+			if (!executed) {
+				raw.release();
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * 
+		 * Split the batch by the peer's address into at most
+		 * {@link CoapEndpoint#protocolStageStripes} stripes and create one
+		 * protocol stage task for each stripe. Within one batch, the messages
+		 * of the same peer are processed in the order they are received. Across
+		 * batches and relative to {@link #receiveData(RawData)} that order is
+		 * only kept, if the protocol stage uses a {@link StripedExecutor}. The
+		 * batch is then split by its stripes and all messages of a peer are
+		 * executed serially by the peer's stripe. With a plain protocol stage
+		 * executor, tasks of different batches may be executed in parallel.
+		 * Invalid messages, e.g. without source port, are dropped one by one
+		 * and don't affect the other messages of the batch.
+		 */
+		@Override
+		public void receiveData(final List<RawData> batch) {
+			final List<RawData> raws = new ArrayList<RawData>(batch.size());
+			for (RawData raw : batch) {
+				try {
+					checkRawData(raw);
+					raws.add(raw);
+				} catch (IllegalArgumentException e) {
+					LOGGER.debug("dropping {}", e.getMessage());
+					raw.release();
+				}
+			}
+			if (raws.isEmpty()) {
+				return;
+			}
+			StripedExecutor striped = stripedExecutor;
+			int stripes = striped == null ? Math.min(protocolStageStripes, raws.size()) : striped.getStripes();
+			if (stripes == 1) {
+				Executor target = striped == null ? executor : striped.getStripe(0);
+				if (!runInProtocolStage(target, new BatchTask(raws))) {
+					release(raws);
+				}
+				return;
+			}
+			List<List<RawData>> stripedRaws = new ArrayList<List<RawData>>(stripes);
+			for (int index = 0; index < stripes; ++index) {
+				stripedRaws.add(null);
+			}
+			for (RawData raw : raws) {
+				int index = StripedExecutor.getStripeIndex(raw.getEndpointContext().getPeerAddress(), stripes);
+				List<RawData> stripe = stripedRaws.get(index);
+				if (stripe == null) {
+					stripe = new ArrayList<RawData>();
+					stripedRaws.set(index, stripe);
+				}
+				stripe.add(raw);
+			}
+			for (int index = 0; index < stripes; ++index) {
+				List<RawData> stripe = stripedRaws.get(index);
+				if (stripe != null) {
+					Executor target = striped == null ? executor : striped.getStripe(index);
+					if (!runInProtocolStage(target, new BatchTask(stripe))) {
+						release(stripe);
+					}
+				}
+			}
+		}
+
+		private void checkRawData(final RawData raw) {
 			if (raw.getEndpointContext() == null) {
 				throw new IllegalArgumentException("received message that does not have a endpoint context");
 			} else if (raw.getEndpointContext().getPeerAddress() == null) {
 				throw new IllegalArgumentException("received message that does not have a source address");
 			} else if (raw.getEndpointContext().getPeerAddress().getPort() == 0) {
 				throw new IllegalArgumentException("received message that does not have a source port");
-			} else {
+			}
+		}
+
+		/**
+		 * Release pooled raw data, which is dropped.
+		 * 
+		 * @param raws list of dropped raw data
+		 */
+		private void release(final List<RawData> raws) {
+			for (RawData raw : raws) {
+				raw.release();
+			}
+		}
+
+		/**
+		 * Task to process a list of received messages in the protocol stage.
+		 */
+		private class BatchTask implements Runnable {
 
-				// Create a new task to process this message
-				runInProtocolStage(new Runnable() {
+			private final List<RawData> raws;
 
-					@Override
-					public void run() {
+			private BatchTask(List<RawData> raws) {
+				this.raws = raws;
+			}
+
+			@Override
+			public void run() {
+				for (RawData raw : raws) {
+					try {
 						receiveMessage(raw);
+					} catch (RuntimeException e) {
+						// don't drop the other messages of the batch
+						LOGGER.error("exception in protocol stage thread: {}", e.getMessage(), e);
 					}
-				});
+				}
 			}
 		}
 
@@ -825,7 +1027,12 @@ public class CoapEndpoint implements Endpoint {
 			Message msg = null;
 
 			try {
-				msg = parser.parseMessage(raw);
+				try {
+					msg = parser.parseMessage(raw);
+				} finally {
+					// the parsed message doesn't refer to the raw data's bytes
+					raw.release();
+				}
 
 				if (CoAP.isRequest(msg.getRawCode())) {
 
@@ -1027,12 +1234,31 @@ public class CoapEndpoint implements Endpoint {
 
 	/**
 	 * Execute the specified task on the endpoint's executor (protocol stage).
+	 * 
+	 * If the protocol stage uses stripes, the task is executed in the stripe
+	 * of the peer.
+	 *
+	 * @param peer the peer's address
+	 * @param task the task
+	 * @return {@code true}, if the task is accepted by the executor,
+	 *         {@code false}, if it's rejected.
+	 */
+	private boolean runInProtocolStage(final InetSocketAddress peer, final Runnable task) {
+		StripedExecutor striped = stripedExecutor;
+		return runInProtocolStage(striped == null ? executor : striped.getExecutor(peer), task);
+	}
+
+	/**
+	 * Execute the specified task on the provided executor (protocol stage).
 	 *
+	 * @param target the executor of the protocol stage
 	 * @param task the task
+	 * @return {@code true}, if the task is accepted by the executor,
+	 *         {@code false}, if it's rejected.
 	 */
-	private void runInProtocolStage(final Runnable task) {
+	private boolean runInProtocolStage(final Executor target, final Runnable task) {
 		try {
-			executor.execute(new Runnable() {
+			target.execute(new Runnable() {
 
 				@Override
 				public void run() {
@@ -1043,8 +1269,10 @@ public class CoapEndpoint implements Endpoint {
 					}
 				}
 			});
+			return true;
 		} catch (RejectedExecutionException e) {
 			LOGGER.debug("{} execute:", this, e);
+			return false;
 		}
 	}
 
@@ -49,6 +49,7 @@
  *                                                    rejected nor acknowledged)
  *    Achim Kraus (Bosch Software Innovations GmbH) - replace striped executor
  *                                                    with serial executor
+ *    Bosch Software Innovations GmbH - reuse provided serial executor
  ******************************************************************************/
 package org.eclipse.californium.core.network;
 
@@ -302,7 +303,11 @@ public class Exchange {
 	 * 
 	 * @param request the request that starts the exchange
 	 * @param origin the origin of the request (LOCAL or REMOTE)
-	 * @param executor executor to be used for exchanges. Maybe {@code null} for unit tests.
+	 * @param executor executor to be used for exchanges. Maybe {@code null}
+	 *            for unit tests. If a {@link SerialExecutor} is provided, it's
+	 *            used directly, e.g. the stripe of a striped protocol stage.
+	 *            Otherwise a new {@link SerialExecutor} is created on top of
+	 *            the provided executor.
 	 * @param ctx the endpoint context of this exchange
 	 * @param notification {@code true} for notification exchange, {@code false}
 	 *            otherwise
@@ -314,7 +319,11 @@ public class Exchange {
 			throw new NullPointerException("request must not be null!");
 		}
 		this.id = INSTANCE_COUNTER.incrementAndGet();
-		this.executor = SerialExecutor.create(executor);
+		if (executor instanceof SerialExecutor) {
+			this.executor = (SerialExecutor) executor;
+		} else {
+			this.executor = SerialExecutor.create(executor);
+		}
 		this.currentRequest = request;
 		this.request = request;
 		this.origin = origin;
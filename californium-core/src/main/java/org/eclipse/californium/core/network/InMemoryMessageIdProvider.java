@@ -20,6 +20,8 @@
  *                                                    MessageIdTracker to
  *                                                    MapBasedMessageIdTracker.
  *    Achim Kraus (Bosch Software Innovations GmbH) - add multicast mid tracker.
+ *    Bosch Software Innovations GmbH - use ConcurrentLeastRecentlyUsedCache
+ *                                      instead of synchronized getTracker
  ******************************************************************************/
 package org.eclipse.californium.core.network;
 
@@ -29,7 +31,7 @@ import java.util.Random;
 import org.eclipse.californium.core.coap.Message;
 import org.eclipse.californium.core.network.config.NetworkConfig;
 import org.eclipse.californium.elements.util.ClockUtil;
-import org.eclipse.californium.elements.util.LeastRecentlyUsedCache;
+import org.eclipse.californium.elements.util.ConcurrentLeastRecentlyUsedCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,7 +49,7 @@ public class InMemoryMessageIdProvider implements MessageIdProvider {
 		NULL, GROUPED, MAPBASED
 	}
 
-	private final LeastRecentlyUsedCache<InetSocketAddress, MessageIdTracker> trackers;
+	private final ConcurrentLeastRecentlyUsedCache<InetSocketAddress, MessageIdTracker> trackers;
 	private final MessageIdTracker multicastTracker;
 	private final TrackerMode mode;
 	private final Random random;
@@ -104,7 +106,7 @@ public class InMemoryMessageIdProvider implements MessageIdProvider {
 			random = null;
 		}
 		// 10 minutes
-		trackers = new LeastRecentlyUsedCache<>(config.getInt(NetworkConfig.Keys.MAX_ACTIVE_PEERS, 150000),
+		trackers = new ConcurrentLeastRecentlyUsedCache<>(config.getInt(NetworkConfig.Keys.MAX_ACTIVE_PEERS, 150000),
 				config.getLong(NetworkConfig.Keys.MAX_PEER_INACTIVITY_PERIOD, 10 * 60));
 		trackers.setEvictingOnReadAccess(false);
 		int multicastBaseMid = config.getInt(NetworkConfig.Keys.MULTICAST_BASE_MID);
@@ -142,7 +144,7 @@ public class InMemoryMessageIdProvider implements MessageIdProvider {
 		}
 	}
 
-	private synchronized MessageIdTracker getTracker(final InetSocketAddress destination) {
+	private MessageIdTracker getTracker(final InetSocketAddress destination) {
 		// destination mc
 		// => use special range 65001-65535
 		// destination sp
@@ -173,11 +175,9 @@ public class InMemoryMessageIdProvider implements MessageIdProvider {
 				tracker = new GroupedMessageIdTracker(mid, 0, multicastBaseMid, config);
 				break;
 			}
-			if (trackers.put(destination, tracker)) {
-				return tracker;
-			} else {
-				return null;
-			}
+			// a concurrently created tracker may have been added
+			// in the meantime, use that one.
+			tracker = trackers.getOrAdd(destination, tracker);
 		}
 		return tracker;
 	}
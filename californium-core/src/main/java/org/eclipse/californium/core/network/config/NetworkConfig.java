@@ -202,6 +202,18 @@ public final class NetworkConfig {
 		public static final String CONGESTION_CONTROL_ALGORITHM = "CONGESTION_CONTROL_ALGORITHM";
 
 		public static final String PROTOCOL_STAGE_THREAD_COUNT = "PROTOCOL_STAGE_THREAD_COUNT";
+		/**
+		 * Number of stripes of the protocol stage. The messages of a peer are
+		 * processed in the stripe selected by the peer's address. {@code 0}
+		 * to use the protocol stage executor without stripes.
+		 */
+		public static final String PROTOCOL_STAGE_STRIPES = "PROTOCOL_STAGE_STRIPES";
+		/**
+		 * Use virtual threads for the protocol stage, if supported by the JVM
+		 * (Java 21). Timers are still executed by a platform thread. Only
+		 * applied to executors created by the server or endpoint.
+		 */
+		public static final String PROTOCOL_STAGE_VIRTUAL_THREADS = "PROTOCOL_STAGE_VIRTUAL_THREADS";
 		public static final String NETWORK_STAGE_RECEIVER_THREAD_COUNT = "NETWORK_STAGE_RECEIVER_THREAD_COUNT";
 		public static final String NETWORK_STAGE_SENDER_THREAD_COUNT = "NETWORK_STAGE_SENDER_THREAD_COUNT";
 
@@ -209,6 +221,11 @@ public final class NetworkConfig {
 		public static final String UDP_CONNECTOR_RECEIVE_BUFFER = "UDP_CONNECTOR_RECEIVE_BUFFER";
 		public static final String UDP_CONNECTOR_SEND_BUFFER = "UDP_CONNECTOR_SEND_BUFFER";
 		public static final String UDP_CONNECTOR_OUT_CAPACITY = "UDP_CONNECTOR_OUT_CAPACITY";
+		/**
+		 * Maximum number of pooled receive buffers of the UDP connector.
+		 * {@code 0} to disable pooled receive buffers.
+		 */
+		public static final String UDP_CONNECTOR_POOLED_BUFFERS = "UDP_CONNECTOR_POOLED_BUFFERS";
 
 		public static final String DEDUPLICATOR = "DEDUPLICATOR";
 		public static final String DEDUPLICATOR_MARK_AND_SWEEP = "DEDUPLICATOR_MARK_AND_SWEEP";
@@ -214,6 +214,8 @@ public class NetworkConfigDefaults {
 		config.setString(Keys.CONGESTION_CONTROL_ALGORITHM, "Cocoa"); // see org.eclipse.californium.core.network.stack.congestioncontrol
 
 		config.setInt(Keys.PROTOCOL_STAGE_THREAD_COUNT, CORES);
+		config.setInt(Keys.PROTOCOL_STAGE_STRIPES, 0); // disabled
+		config.setBoolean(Keys.PROTOCOL_STAGE_VIRTUAL_THREADS, false);
 		config.setInt(Keys.NETWORK_STAGE_RECEIVER_THREAD_COUNT, WINDOWS ? CORES : 1);
 		config.setInt(Keys.NETWORK_STAGE_SENDER_THREAD_COUNT, WINDOWS ? CORES : 1);
 
@@ -221,6 +223,7 @@ public class NetworkConfigDefaults {
 		config.setInt(Keys.UDP_CONNECTOR_RECEIVE_BUFFER, UDPConnector.UNDEFINED);
 		config.setInt(Keys.UDP_CONNECTOR_SEND_BUFFER, UDPConnector.UNDEFINED);
 		config.setInt(Keys.UDP_CONNECTOR_OUT_CAPACITY, Integer.MAX_VALUE); // unbounded
+		config.setInt(Keys.UDP_CONNECTOR_POOLED_BUFFERS, 0); // disabled
 
 		config.setString(Keys.DEDUPLICATOR, Keys.DEDUPLICATOR_MARK_AND_SWEEP);
 		config.setLong(Keys.MARK_AND_SWEEP_INTERVAL, 10 * 1000); // 10 secs
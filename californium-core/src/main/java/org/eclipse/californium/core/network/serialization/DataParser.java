@@ -23,6 +23,7 @@
  * Achim Kraus (Bosch Software Innovations GmbH) - add EndpointContext when parsing
  *                                                 RawData. 
  * Achim Kraus (Bosch Software Innovations GmbH) - expose parseOptionsAndPayload
+ * Bosch Software Innovations GmbH - support pooled raw data
  ******************************************************************************/
 package org.eclipse.californium.core.network.serialization;
 
@@ -42,6 +43,11 @@ public abstract class DataParser {
 	/**
 	 * Parses a byte array into a CoAP Message.
 	 * 
+	 * For {@link RawData#isPooled() pooled} raw data, the bytes of the message
+	 * are not kept, because the pooled buffer is reused after the raw data is
+	 * released. {@link Message#getBytes()} returns {@code null} for such
+	 * messages.
+	 * 
 	 * @param raw contains the byte array to parse.
 	 * @return the message.
 	 * @throws MessageFormatException if the raw-data byte array cannot be
@@ -52,7 +58,7 @@ public abstract class DataParser {
 		if (raw == null) {
 			throw new NullPointerException("raw-data must not be null!");
 		}
-		Message message = parseMessage(raw.getBytes());
+		Message message = parseMessage(raw.getBytes(), raw.getSize(), !raw.isPooled());
 		message.setSourceContext(raw.getEndpointContext());
 		message.setReceiveNanoTimestamp(raw.getReceiveNanoTimestamp());
 		return message;
@@ -66,9 +72,23 @@ public abstract class DataParser {
 	 * @throws MessageFormatException if the array cannot be parsed into a message.
 	 */
 	public final Message parseMessage(final byte[] msg) {
+		return parseMessage(msg, msg.length, true);
+	}
+
+	/**
+	 * Parses a range of a byte array into a CoAP Message.
+	 * 
+	 * @param msg the byte array to parse.
+	 * @param length the length of the message in the byte array.
+	 * @param keepBytes {@code true}, to set the byte array as the message's
+	 *            bytes, {@code false}, otherwise.
+	 * @return the message.
+	 * @throws MessageFormatException if the array cannot be parsed into a message.
+	 */
+	private Message parseMessage(final byte[] msg, final int length, final boolean keepBytes) {
 
 		String errorMsg = "illegal message code";
-		DatagramReader reader = new DatagramReader(new ByteArrayInputStream(msg));
+		DatagramReader reader = new DatagramReader(new ByteArrayInputStream(msg, 0, length));
 		MessageHeader header = parseHeader(reader);
 		try {
 			Message message = null;
@@ -82,7 +102,9 @@ public abstract class DataParser {
 
 			// Set the message's bytes and return the message
 			if (message != null) {
-				message.setBytes(msg);
+				if (keepBytes) {
+					message.setBytes(msg);
+				}
 				return message;
 			}
 		} catch (MessageFormatException e) {
@@ -59,6 +59,8 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - extract requestNextBlock from 
  *                                                    tcp_experimental_features branch
  *                                                    for easier merging in the future.
+ *    Bosch Software Innovations GmbH - use ConcurrentLeastRecentlyUsedCache
+ *                                      to reduce locking on transfers
  ******************************************************************************/
 package org.eclipse.californium.core.network.stack;
 
@@ -78,7 +80,7 @@ import org.eclipse.californium.core.coap.Response;
 import org.eclipse.californium.core.network.Exchange;
 import org.eclipse.californium.core.network.config.NetworkConfig;
 import org.eclipse.californium.core.network.config.NetworkConfigDefaults;
-import org.eclipse.californium.elements.util.LeastRecentlyUsedCache;
+import org.eclipse.californium.elements.util.ConcurrentLeastRecentlyUsedCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -154,8 +156,8 @@ public class BlockwiseLayer extends AbstractLayer {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(BlockwiseLayer.class.getName());
 	private static final Logger HEALTH_LOGGER = LoggerFactory.getLogger(LOGGER.getName() + ".health");
-	private final LeastRecentlyUsedCache<KeyUri, Block1BlockwiseStatus> block1Transfers;
-	private final LeastRecentlyUsedCache<KeyUri, Block2BlockwiseStatus> block2Transfers;
+	private final ConcurrentLeastRecentlyUsedCache<KeyUri, Block1BlockwiseStatus> block1Transfers;
+	private final ConcurrentLeastRecentlyUsedCache<KeyUri, Block2BlockwiseStatus> block2Transfers;
 	private final AtomicInteger ignoredBlock2 = new AtomicInteger();
 	private volatile boolean enableStatus;
 	private ScheduledFuture<?> statusLogger;
@@ -213,9 +215,9 @@ public class BlockwiseLayer extends AbstractLayer {
 				NetworkConfigDefaults.DEFAULT_MAX_RESOURCE_BODY_SIZE);
 		int maxActivePeers = config.getInt(NetworkConfig.Keys.MAX_ACTIVE_PEERS,
 				NetworkConfigDefaults.DEFAULT_MAX_ACTIVE_PEERS);
-		block1Transfers = new LeastRecentlyUsedCache<>(maxActivePeers, TimeUnit.MILLISECONDS.toSeconds(blockTimeout));
+		block1Transfers = new ConcurrentLeastRecentlyUsedCache<>(maxActivePeers, TimeUnit.MILLISECONDS.toSeconds(blockTimeout));
 		block1Transfers.setEvictingOnReadAccess(false);
-		block2Transfers = new LeastRecentlyUsedCache<>(maxActivePeers, TimeUnit.MILLISECONDS.toSeconds(blockTimeout));
+		block2Transfers = new ConcurrentLeastRecentlyUsedCache<>(maxActivePeers, TimeUnit.MILLISECONDS.toSeconds(blockTimeout));
 		block2Transfers.setEvictingOnReadAccess(false);
 		strictBlock2Option = config.getBoolean(NetworkConfig.Keys.BLOCKWISE_STRICT_BLOCK2_OPTION, NetworkConfigDefaults.DEFAULT_BLOCKWISE_STRICT_BLOCK2_OPTION);
 
@@ -1045,29 +1047,32 @@ public class BlockwiseLayer extends AbstractLayer {
 
 	private Block1BlockwiseStatus getOutboundBlock1Status(final KeyUri key, final Exchange exchange, final Request request) {
 
-		synchronized (block1Transfers) {
-			Block1BlockwiseStatus status = block1Transfers.get(key);
-			if (status == null) {
-				status = Block1BlockwiseStatus.forOutboundRequest(exchange, request, preferredBlockSize);
-				block1Transfers.put(key, status);
+		Block1BlockwiseStatus status = block1Transfers.get(key);
+		if (status == null) {
+			status = Block1BlockwiseStatus.forOutboundRequest(exchange, request, preferredBlockSize);
+			Block1BlockwiseStatus current = block1Transfers.getOrAdd(key, status);
+			if (current == null || current == status) {
 				enableStatus = true;
 				LOGGER.debug("created tracker for outbound block1 transfer {}, transfers in progress: {}", status,
 						block1Transfers.size());
+			} else {
+				status = current;
 			}
-			return status;
 		}
+		return status;
 	}
 
 	private Block1BlockwiseStatus getInboundBlock1Status(final KeyUri key, final Exchange exchange, final Request request) {
-		Block1BlockwiseStatus status;
-		synchronized (block1Transfers) {
-			status = block1Transfers.get(key);
-			if (status == null) {
-				status = Block1BlockwiseStatus.forInboundRequest(exchange, request, maxResourceBodySize);
-				block1Transfers.put(key, status);
+		Block1BlockwiseStatus status = block1Transfers.get(key);
+		if (status == null) {
+			status = Block1BlockwiseStatus.forInboundRequest(exchange, request, maxResourceBodySize);
+			Block1BlockwiseStatus current = block1Transfers.getOrAdd(key, status);
+			if (current == null || current == status) {
 				enableStatus = true;
 				LOGGER.debug("created tracker for inbound block1 transfer {}, transfers in progress: {}", status,
 						block1Transfers.size());
+			} else {
+				status = current;
 			}
 		}
 		// register a task for cleaning up if the peer does not send all blocks
@@ -1079,10 +1084,10 @@ public class BlockwiseLayer extends AbstractLayer {
 		Block1BlockwiseStatus removedStatus;
 		Block1BlockwiseStatus newStatus;
 		synchronized (block1Transfers) {
+			// the other accesses are atomic on their own, only remove and
+			// create must not interleave with an other reset
 			removedStatus = block1Transfers.remove(key);
 			LOGGER.warn("inbound block1 transfer reset at {} by peer: {}", removedStatus, request);
-			// remove old status ensures, that getInboundBlock1Status could be
-			// called in synchronized (block1Transfers)
 			newStatus = getInboundBlock1Status(key, exchange, request);
 		}
 		if (removedStatus != null) {
@@ -1093,15 +1098,16 @@ public class BlockwiseLayer extends AbstractLayer {
 
 	private Block2BlockwiseStatus getOutboundBlock2Status(final KeyUri key, final Exchange exchange, final Response response) {
 
-		Block2BlockwiseStatus status;
-		synchronized (block2Transfers) {
-			status = block2Transfers.get(key);
-			if (status == null) {
-				status = Block2BlockwiseStatus.forOutboundResponse(exchange, response, preferredBlockSize);
-				block2Transfers.put(key, status);
+		Block2BlockwiseStatus status = block2Transfers.get(key);
+		if (status == null) {
+			status = Block2BlockwiseStatus.forOutboundResponse(exchange, response, preferredBlockSize);
+			Block2BlockwiseStatus current = block2Transfers.getOrAdd(key, status);
+			if (current == null || current == status) {
 				enableStatus = true;
 				LOGGER.debug("created tracker for outbound block2 transfer {}, transfers in progress: {}", status,
 						block2Transfers.size());
+			} else {
+				status = current;
 			}
 		}
 		// we register a clean up task in case the peer does not retrieve all blocks
@@ -1111,28 +1117,27 @@ public class BlockwiseLayer extends AbstractLayer {
 
 	private Block2BlockwiseStatus getInboundBlock2Status(final KeyUri key, final Exchange exchange, final Response response) {
 
-		synchronized (block2Transfers) {
-			Block2BlockwiseStatus status = block2Transfers.get(key);
-			if (status == null) {
-				status = Block2BlockwiseStatus.forInboundResponse(exchange, response, maxResourceBodySize);
-				block2Transfers.put(key, status);
+		Block2BlockwiseStatus status = block2Transfers.get(key);
+		if (status == null) {
+			status = Block2BlockwiseStatus.forInboundResponse(exchange, response, maxResourceBodySize);
+			Block2BlockwiseStatus current = block2Transfers.getOrAdd(key, status);
+			if (current == null || current == status) {
 				enableStatus = true;
 				LOGGER.debug("created tracker for {} inbound block2 transfer {}, transfers in progress: {}, {}", key,
 						status, block2Transfers.size(), response);
+			} else {
+				status = current;
 			}
-			return status;
 		}
+		return status;
 	}
 
 	private KeyUri addRandomAccessBlock2Status(final Exchange exchange, final Request request) {
 
 		KeyUri key = getKey(exchange, request);
-		int size;
 		Block2BlockwiseStatus status = Block2BlockwiseStatus.forRandomAccessRequest(exchange, request);
-		synchronized (block2Transfers) {
-			block2Transfers.put(key, status);
-			size = block1Transfers.size();
-		}
+		block2Transfers.put(key, status);
+		int size = block2Transfers.size();
 		enableStatus = true;
 		addBlock2CleanUpObserver(request, key, status);
 		LOGGER.debug("created tracker for random access block2 retrieval {}, transfers in progress: {}", status, size);
@@ -1157,25 +1162,17 @@ public class BlockwiseLayer extends AbstractLayer {
 
 	private Block1BlockwiseStatus getBlock1Status(final KeyUri key) {
 
-		synchronized (block1Transfers) {
-			return block1Transfers.get(key);
-		}
+		return block1Transfers.get(key);
 	}
 
 	private Block2BlockwiseStatus getBlock2Status(final KeyUri key) {
 
-		synchronized (block2Transfers) {
-			return block2Transfers.get(key);
-		}
+		return block2Transfers.get(key);
 	}
 
 	private Block1BlockwiseStatus clearBlock1Status(KeyUri key, Block1BlockwiseStatus status) {
-		int size;
-		Block1BlockwiseStatus removedTracker;
-		synchronized (block1Transfers) {
-			removedTracker = block1Transfers.remove(key, status);
-			size = block1Transfers.size();
-		}
+		Block1BlockwiseStatus removedTracker = block1Transfers.remove(key, status);
+		int size = block1Transfers.size();
 		if (removedTracker != null) {
 			LOGGER.debug("removing block1 tracker [{}], block1 transfers still in progress: {}", key, size);
 			removedTracker.setComplete(true);
@@ -1184,12 +1181,8 @@ public class BlockwiseLayer extends AbstractLayer {
 	}
 
 	private Block2BlockwiseStatus clearBlock2Status(KeyUri key, Block2BlockwiseStatus status) {
-		int size;
-		Block2BlockwiseStatus removedTracker;
-		synchronized (block2Transfers) {
-			removedTracker = block2Transfers.remove(key, status);
-			size = block2Transfers.size();
-		}
+		Block2BlockwiseStatus removedTracker = block2Transfers.remove(key, status);
+		int size = block2Transfers.size();
 		if (removedTracker != null) {
 			LOGGER.debug("removing block2 tracker [{}], block2 transfers still in progress: {}", key, size);
 			removedTracker.setComplete(true);
@@ -14,6 +14,7 @@
  *    Bosch Software Innovations - initial creation
  *    Achim Kraus (Bosch Software Innovations GmbH) - add tests for getURI() with
  *                                                    empty path and empty uri query
+ *    Bosch Software Innovations GmbH - add tests for waitForResponse
  ******************************************************************************/
 package org.eclipse.californium.core.coap;
 
@@ -27,9 +28,11 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.californium.category.Small;
 import org.eclipse.californium.core.coap.CoAP.Code;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
 import org.eclipse.californium.core.coap.CoAP.Type;
 import org.eclipse.californium.elements.rule.TestNameLoggerRule;
 import org.junit.Rule;
@@ -292,6 +295,57 @@ public class RequestTest {
 		}
 	}
 
+	/**
+	 * Verifies that a thread waiting for the response is woken up, when the
+	 * response is set.
+	 */
+	@Test
+	public void testWaitForResponseReturnsResponse() throws InterruptedException {
+		final Request request = Request.newGet();
+		final Response response = new Response(ResponseCode.CONTENT);
+		Thread responder = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+				}
+				request.setResponse(response);
+			}
+		};
+		responder.start();
+		assertThat(request.waitForResponse(2000), is(sameInstance(response)));
+		// the response is consumed
+		assertThat(request.waitForResponse(10), is(nullValue()));
+		responder.join();
+	}
+
+	/**
+	 * Verifies that a thread waiting for the response is woken up, when the
+	 * request is canceled.
+	 */
+	@Test
+	public void testWaitForResponseReturnsOnCancel() throws InterruptedException {
+		final Request request = Request.newGet();
+		Thread canceler = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+				}
+				request.cancel();
+			}
+		};
+		canceler.start();
+		long start = System.nanoTime();
+		assertThat(request.waitForResponse(5000), is(nullValue()));
+		assertThat(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4), is(true));
+		canceler.join();
+	}
+
 	private static boolean dnsIsWorking() {
 		try {
 			InetAddress.getByName("localhost");
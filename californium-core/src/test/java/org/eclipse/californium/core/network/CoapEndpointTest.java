@@ -19,6 +19,8 @@
  *                                                    adjust MessageCallback test to
  *                                                    testSendRequestCallsMessageCallbackOnSent
  *                                                    issue #305
+ *    Bosch Software Innovations GmbH - test batch with invalid message
+ *    Bosch Software Innovations GmbH - test release of dropped pooled messages
  ******************************************************************************/
 package org.eclipse.californium.core.network;
 
@@ -33,9 +35,11 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.Principal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.californium.TestTools;
 import org.eclipse.californium.category.Small;
@@ -43,15 +47,19 @@ import org.eclipse.californium.core.coap.CoAP;
 import org.eclipse.californium.core.coap.Request;
 import org.eclipse.californium.core.coap.Response;
 import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.core.network.interceptors.MessageInterceptorAdapter;
 import org.eclipse.californium.core.server.MessageDeliverer;
 import org.eclipse.californium.core.test.CountingMessageObserver;
 import org.eclipse.californium.elements.AddressEndpointContext;
+import org.eclipse.californium.elements.BatchRawDataChannel;
 import org.eclipse.californium.elements.Connector;
 import org.eclipse.californium.elements.EndpointContext;
 import org.eclipse.californium.elements.EndpointContextMatcher;
 import org.eclipse.californium.elements.DtlsEndpointContext;
 import org.eclipse.californium.elements.RawData;
 import org.eclipse.californium.elements.RawDataChannel;
+import org.eclipse.californium.elements.util.ByteBufferPool;
+import org.eclipse.californium.elements.util.PooledBuffer;
 import org.eclipse.californium.rule.CoapThreadsRule;
 import org.junit.After;
 import org.junit.Before;
@@ -152,6 +160,83 @@ public class CoapEndpointTest {
 		assertThat(receivedRequests.get(0).getSourceContext().getPeerIdentity(), is(clientId));
 	}
 
+	@Test
+	public void testInvalidMessageOfBatchIsDropped() throws Exception {
+		InetSocketAddress noPort = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+		RawData invalid = RawData.inbound(getSerializedRequest(), new AddressEndpointContext(noPort), false,
+				System.nanoTime());
+		RawData inboundRequest = RawData.inbound(getSerializedRequest(), new AddressEndpointContext(SOURCE_ADDRESS),
+				false, System.nanoTime());
+		connector.receiveMessages(Arrays.asList(invalid, inboundRequest));
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertThat(receivedRequests.size(), is(1));
+		assertThat(receivedRequests.get(0).getSourceContext().getPeerAddress(), is(SOURCE_ADDRESS));
+	}
+
+	@Test
+	public void testInvalidPooledMessageIsReleased() throws Exception {
+		ByteBufferPool pool = new ByteBufferPool(64, 4, false);
+		InetSocketAddress noPort = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+		PooledBuffer buffer = pooled(pool, getSerializedRequest());
+		try {
+			connector.receiveMessage(RawData.inbound(buffer, new AddressEndpointContext(noPort), false,
+					System.nanoTime()));
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+		assertThat(buffer.references(), is(0));
+
+		buffer = pooled(pool, getSerializedRequest());
+		RawData inboundRequest = RawData.inbound(getSerializedRequest(), new AddressEndpointContext(SOURCE_ADDRESS),
+				false, System.nanoTime());
+		connector.receiveMessages(Arrays.asList(
+				RawData.inbound(buffer, new AddressEndpointContext(noPort), false, System.nanoTime()),
+				inboundRequest));
+		assertThat(buffer.references(), is(0));
+		assertThat(pool.getPooledBuffers(), is(1));
+	}
+
+	@Test
+	public void testRejectedPooledMessageIsReleased() throws Exception {
+		ByteBufferPool pool = new ByteBufferPool(64, 4, false);
+		endpoint.destroy();
+
+		PooledBuffer buffer = pooled(pool, getSerializedRequest());
+		connector.receiveMessage(
+				RawData.inbound(buffer, new AddressEndpointContext(SOURCE_ADDRESS), false, System.nanoTime()));
+		assertThat(buffer.references(), is(0));
+
+		buffer = pooled(pool, getSerializedRequest());
+		connector.receiveMessages(Arrays.asList(
+				RawData.inbound(buffer, new AddressEndpointContext(SOURCE_ADDRESS), false, System.nanoTime())));
+		assertThat(buffer.references(), is(0));
+		assertThat(pool.getPooledBuffers(), is(1));
+	}
+
+	@Test
+	public void testFailingMessageOfBatchDoesNotDropOthers() throws Exception {
+		RawData failing = RawData.inbound(getSerializedRequest(), new AddressEndpointContext(SOURCE_ADDRESS), false,
+				System.nanoTime());
+		byte[] next = getSerializedRequest();
+		next[3] += 1; // next message ID
+		RawData inboundRequest = RawData.inbound(next, new AddressEndpointContext(SOURCE_ADDRESS), false,
+				System.nanoTime());
+		final AtomicBoolean fail = new AtomicBoolean(true);
+		endpoint.addInterceptor(new MessageInterceptorAdapter() {
+
+			@Override
+			public void receiveRequest(Request request) {
+				if (fail.compareAndSet(true, false)) {
+					throw new IllegalStateException("interceptor fails!");
+				}
+			}
+		});
+		connector.receiveMessages(Arrays.asList(failing, inboundRequest));
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertThat(receivedRequests.size(), is(1));
+		assertThat(receivedRequests.get(0).getMID(), is(0x11));
+	}
+
 	@Test
 	public void testStandardSchemeIsSetOnIncomingRequest() throws Exception {
 		RawData inboundRequest = RawData.inbound(getSerializedRequest(), new AddressEndpointContext(SOURCE_ADDRESS), false, System.nanoTime());
@@ -210,6 +295,13 @@ public class CoapEndpointTest {
 		assertTrue(receivedRequests.isEmpty());
 	}
 
+	private static PooledBuffer pooled(ByteBufferPool pool, byte[] data) {
+		PooledBuffer buffer = PooledBuffer.acquire(pool);
+		System.arraycopy(data, 0, buffer.array(), 0, data.length);
+		buffer.setLength(data.length);
+		return buffer;
+	}
+
 	private static byte[] getSerializedRequest() {
 		return new byte[] { 0b01000011, // ver 1, CON, token length: 3
 				0b00000001, // code: 0.01 (GET request)
@@ -231,6 +323,12 @@ public class CoapEndpointTest {
 			}
 		}
 
+		public void receiveMessages(List<RawData> messages) {
+			if (receiver != null) {
+				((BatchRawDataChannel) receiver).receiveData(messages);
+			}
+		}
+
 		@Override
 		public void start() throws IOException {
 		}
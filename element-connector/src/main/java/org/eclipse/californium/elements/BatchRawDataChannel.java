@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements;
+
+import java.util.List;
+
+/**
+ * A processor for batches of messages received from the network layer.
+ *
+ * Optional extension of the {@link RawDataChannel}. Connectors, which are able
+ * to receive multiple messages at once, e.g. by draining all datagrams
+ * available at a socket, check, if the registered {@link RawDataChannel}
+ * implements this interface, and then pass all these messages with a single
+ * call to {@link #receiveData(List)}. That enables the implementation to reduce
+ * the overhead of passing the messages to other threads.
+ *
+ * Connectors, which don't support batches, call
+ * {@link RawDataChannel#receiveData(RawData)} for each message.
+ */
+public interface BatchRawDataChannel extends RawDataChannel {
+
+	/**
+	 * Processes a batch of raw messages received from the network.
+	 *
+	 * The messages are passed in the order they are received. Same as
+	 * {@link #receiveData(RawData)}, an implementation of this method should
+	 * return quickly.
+	 *
+	 * @param raws the raw messages to process. The list must not be modified
+	 *            nor kept by the implementation after returning.
+	 */
+	public void receiveData(List<RawData> raws);
+
+}
@@ -0,0 +1,627 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial implementation based on
+ *                                      UDPConnector
+ ******************************************************************************/
+package org.eclipse.californium.elements;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.eclipse.californium.elements.exception.EndpointMismatchException;
+import org.eclipse.californium.elements.util.ByteBufferPool;
+import org.eclipse.californium.elements.util.ClockUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link Connector} employing UDP as the transport protocol based on a
+ * non-blocking {@link DatagramChannel}.
+ *
+ * Alternative to the {@link UDPConnector}. The receiver threads wait with
+ * their own {@link Selector} for incoming datagrams and then drain all
+ * datagrams available at the channel. The datagrams are received into pooled
+ * direct {@link ByteBuffer}s, which avoids the intermediate copy of the JDK
+ * into a temporary direct buffer and the allocation of a
+ * {@link java.net.DatagramPacket}. The only copy of the payload is the one
+ * into the {@link RawData} handed to the {@link RawDataChannel}. The sender
+ * threads copy the outgoing messages into pooled direct buffers as well.
+ *
+ * If the {@link RawDataChannel} is a {@link BatchRawDataChannel}, all
+ * datagrams drained at once are passed in one call, limited by
+ * {@link #setMaxBatchSize(int)}.
+ *
+ * The number of threads can be set through {@link #setReceiverThreadCount(int)}
+ * and {@link #setSenderThreadCount(int)} before the connector is started.
+ */
+public class NioUdpConnector implements Connector {
+
+	public static final Logger LOGGER = LoggerFactory.getLogger(NioUdpConnector.class.getName());
+
+	public static final int UNDEFINED = 0;
+
+	/**
+	 * Default maximum number of pooled buffers.
+	 */
+	public static final int DEFAULT_MAX_POOLED_BUFFERS = 64;
+
+	/**
+	 * Default maximum number of messages passed in one batch to a
+	 * {@link BatchRawDataChannel}.
+	 */
+	public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+	/**
+	 * Timeout in milliseconds to wait for the channel to get writable again.
+	 */
+	private static final long SEND_SELECT_TIMEOUT_MILLIS = 100;
+
+	/**
+	 * Provided local address.
+	 */
+	protected final InetSocketAddress localAddr;
+	/**
+	 * List of receiver threads.
+	 */
+	private final List<Thread> receiverThreads = new LinkedList<Thread>();
+	/**
+	 * List of sender threads.
+	 */
+	private final List<Thread> senderThreads = new LinkedList<Thread>();
+
+	/** The outbound message queue. */
+	private final BlockingQueue<RawData> outgoing;
+
+	protected volatile boolean running;
+
+	private volatile DatagramChannel channel;
+
+	private volatile InetSocketAddress effectiveAddr;
+
+	/**
+	 * Pool of direct buffers for receiving and sending.
+	 */
+	private volatile ByteBufferPool bufferPool;
+
+	/**
+	 * Endpoint context matcher for outgoing messages.
+	 *
+	 * @see #setEndpointContextMatcher(EndpointContextMatcher)
+	 */
+	private volatile EndpointContextMatcher endpointContextMatcher;
+
+	/** The receiver of incoming messages. */
+	private volatile RawDataChannel receiver;
+
+	private int receiveBufferSize = UNDEFINED;
+	private int sendBufferSize = UNDEFINED;
+
+	private int senderCount = 1;
+	private int receiverCount = 1;
+
+	private int receiverPacketSize = 2048;
+
+	private int maxPooledBuffers = DEFAULT_MAX_POOLED_BUFFERS;
+
+	private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+	/**
+	 * Creates a connector on the wildcard address listening on an ephemeral
+	 * port, i.e. a port chosen by the system.
+	 *
+	 * The effect of this constructor is the same as invoking
+	 * <code>NioUdpConnector(null)</code>.
+	 */
+	public NioUdpConnector() {
+		this(null);
+	}
+
+	/**
+	 * Creates a connector bound to a given IP address and port.
+	 *
+	 * @param address the IP address and port, if <code>null</code> the
+	 *            connector is bound to an ephemeral port on the wildcard
+	 *            address
+	 */
+	public NioUdpConnector(InetSocketAddress address) {
+		if (address == null) {
+			this.localAddr = new InetSocketAddress(0);
+		} else {
+			this.localAddr = address;
+		}
+		this.running = false;
+		this.effectiveAddr = localAddr;
+		this.outgoing = new LinkedBlockingQueue<RawData>();
+	}
+
+	@Override
+	public synchronized void start() throws IOException {
+
+		if (running) {
+			return;
+		}
+
+		DatagramChannel channel = DatagramChannel.open();
+		try {
+			channel.configureBlocking(false);
+			// if localAddr is null or port is 0, the system decides
+			channel.socket().bind(localAddr);
+		} catch (IOException ex) {
+			channel.close();
+			throw ex;
+		}
+		init(channel);
+	}
+
+	/**
+	 * Initialize connector using the provided channel.
+	 *
+	 * @param channel bound and non-blocking datagram channel for communication
+	 * @throws IOException if there is an error in the datagram channel calls.
+	 */
+	protected void init(DatagramChannel channel) throws IOException {
+		this.channel = channel;
+		DatagramSocket socket = channel.socket();
+		effectiveAddr = (InetSocketAddress) socket.getLocalSocketAddress();
+
+		if (receiveBufferSize != UNDEFINED) {
+			socket.setReceiveBufferSize(receiveBufferSize);
+		}
+		receiveBufferSize = socket.getReceiveBufferSize();
+
+		if (sendBufferSize != UNDEFINED) {
+			socket.setSendBufferSize(sendBufferSize);
+		}
+		sendBufferSize = socket.getSendBufferSize();
+
+		// we add one byte to be able to detect potential truncation.
+		bufferPool = new ByteBufferPool(receiverPacketSize + 1, maxPooledBuffers, true);
+
+		// running only, if the channel could be opened
+		running = true;
+
+		// start receiver and sender threads
+		LOGGER.info("NioUdpConnector starts up {} sender threads and {} receiver threads", senderCount,
+				receiverCount);
+
+		for (int i = 0; i < receiverCount; i++) {
+			receiverThreads.add(new Receiver("UDP-NIO-Receiver-" + localAddr + "[" + i + "]", Selector.open()));
+		}
+
+		for (int i = 0; i < senderCount; i++) {
+			senderThreads.add(new Sender("UDP-NIO-Sender-" + localAddr + "[" + i + "]", Selector.open()));
+		}
+
+		for (Thread t : receiverThreads) {
+			t.start();
+		}
+		for (Thread t : senderThreads) {
+			t.start();
+		}
+
+		LOGGER.info("NioUdpConnector listening on {}, recv buf = {}, send buf = {}, recv packet size = {}",
+				effectiveAddr, receiveBufferSize, sendBufferSize, receiverPacketSize);
+	}
+
+	@Override
+	public void stop() {
+		// move onError callback out of synchronized block
+		List<RawData> pending = new ArrayList<>(outgoing.size());
+		synchronized (this) {
+			if (!running) {
+				return;
+			}
+			running = false;
+
+			outgoing.drainTo(pending);
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					LOGGER.debug("NioUdpConnector ({}) failed to close channel!", effectiveAddr, e);
+				}
+				channel = null;
+			}
+			// stop all threads
+			for (Thread t : senderThreads) {
+				t.interrupt();
+				try {
+					t.join(1000);
+				} catch (InterruptedException e) {
+				}
+			}
+			senderThreads.clear();
+			for (Thread t : receiverThreads) {
+				t.interrupt();
+				try {
+					t.join(1000);
+				} catch (InterruptedException e) {
+				}
+			}
+			receiverThreads.clear();
+			LOGGER.info("NioUdpConnector on [{}] has stopped.", effectiveAddr);
+		}
+		for (RawData data : pending) {
+			notifyMsgAsInterrupted(data);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		stop();
+	}
+
+	@Override
+	public void send(RawData msg) {
+		if (msg == null) {
+			throw new NullPointerException("Message must not be null");
+		}
+		// move onError callback out of synchronized block
+		boolean running;
+		synchronized (this) {
+			running = this.running;
+			if (running) {
+				outgoing.add(msg);
+			}
+		}
+		if (!running) {
+			notifyMsgAsInterrupted(msg);
+		}
+	}
+
+	@Override
+	public void setRawDataReceiver(RawDataChannel receiver) {
+		this.receiver = receiver;
+	}
+
+	@Override
+	public void setEndpointContextMatcher(EndpointContextMatcher matcher) {
+		this.endpointContextMatcher = matcher;
+	}
+
+	@Override
+	public InetSocketAddress getAddress() {
+		return effectiveAddr;
+	}
+
+	private void notifyMsgAsInterrupted(RawData msg) {
+		msg.onError(new InterruptedIOException("Connector is not running."));
+	}
+
+	private abstract class NetworkStageThread extends Thread {
+
+		/**
+		 * Selector of this thread.
+		 */
+		protected final Selector selector;
+
+		/**
+		 * Instantiates a new worker.
+		 *
+		 * @param name the name
+		 * @param selector selector of this thread. Closed, when the thread
+		 *            terminates.
+		 */
+		protected NetworkStageThread(String name, Selector selector) {
+			super(UDPConnector.ELEMENTS_THREAD_GROUP, name);
+			this.selector = selector;
+			setDaemon(true);
+		}
+
+		public void run() {
+			LOGGER.debug("Starting network stage thread [{}]", getName());
+			try {
+				while (running) {
+					try {
+						work();
+						if (!running) {
+							LOGGER.debug("Network stage thread [{}] was stopped successfully", getName());
+							break;
+						}
+					} catch (ClosedChannelException t) {
+						LOGGER.trace("Network stage thread [{}] was stopped successfully at:", getName(), t);
+					} catch (InterruptedIOException t) {
+						LOGGER.trace("Network stage thread [{}] was stopped successfully at:", getName(), t);
+					} catch (InterruptedException t) {
+						LOGGER.trace("Network stage thread [{}] was stopped successfully at:", getName(), t);
+					} catch (IOException t) {
+						if (running) {
+							LOGGER.error("Exception in network stage thread [{}]:", getName(), t);
+						} else {
+							LOGGER.trace("Network stage thread [{}] was stopped successfully at:", getName(), t);
+						}
+					} catch (Throwable t) {
+						LOGGER.error("Exception in network stage thread [{}]:", getName(), t);
+					}
+				}
+			} finally {
+				try {
+					selector.close();
+				} catch (IOException e) {
+					LOGGER.trace("Network stage thread [{}] failed to close selector:", getName(), e);
+				}
+				cleanup();
+			}
+		}
+
+		/**
+		 * @throws Exception the exception to be properly logged
+		 */
+		protected abstract void work() throws Exception;
+
+		/**
+		 * Release resources of this thread on termination.
+		 */
+		protected void cleanup() {
+		}
+	}
+
+	private class Receiver extends NetworkStageThread {
+
+		private final ByteBuffer buffer;
+		private final int size;
+		private final List<RawData> batch;
+		private SelectionKey key;
+
+		private Receiver(String name, Selector selector) {
+			super(name, selector);
+			this.buffer = bufferPool.acquire();
+			this.size = buffer.capacity();
+			this.batch = new ArrayList<RawData>(maxBatchSize);
+		}
+
+		protected void work() throws IOException {
+			DatagramChannel currentChannel = channel;
+			if (currentChannel == null) {
+				return;
+			}
+			if (key == null) {
+				key = currentChannel.register(selector, SelectionKey.OP_READ);
+			}
+			selector.select();
+			selector.selectedKeys().clear();
+			RawDataChannel receiver = NioUdpConnector.this.receiver;
+			BatchRawDataChannel batchReceiver = null;
+			if (receiver instanceof BatchRawDataChannel) {
+				batchReceiver = (BatchRawDataChannel) receiver;
+			}
+			try {
+				drain(currentChannel, receiver, batchReceiver);
+			} finally {
+				if (!batch.isEmpty()) {
+					deliver(batchReceiver);
+				}
+			}
+		}
+
+		/**
+		 * Deliver the pending batch.
+		 * 
+		 * The batch is cleared, even if the delivery fails. Otherwise the
+		 * same messages would be delivered again with the next batch.
+		 * 
+		 * @param batchReceiver receiver of the batch
+		 */
+		private void deliver(BatchRawDataChannel batchReceiver) {
+			try {
+				batchReceiver.receiveData(batch);
+			} finally {
+				batch.clear();
+			}
+		}
+
+		private void drain(DatagramChannel currentChannel, RawDataChannel receiver,
+				BatchRawDataChannel batchReceiver) throws IOException {
+			// drain all available datagrams
+			while (running) {
+				buffer.clear();
+				InetSocketAddress source = (InetSocketAddress) currentChannel.receive(buffer);
+				if (source == null) {
+					break;
+				}
+				buffer.flip();
+				int length = buffer.remaining();
+				if (length >= size) {
+					// too large datagram for our buffer! data could have been
+					// truncated, so we discard it.
+					LOGGER.debug(
+							"NioUdpConnector ({}) received truncated UDP datagram from {}. Maximum size allowed {}. Discarding ...",
+							effectiveAddr, source, size - 1);
+				} else {
+					long timestamp = ClockUtil.nanoRealtime();
+					LOGGER.debug("NioUdpConnector ({}) received {} bytes from {}", effectiveAddr, length, source);
+					byte[] bytes = new byte[length];
+					buffer.get(bytes);
+					RawData msg = RawData.inbound(bytes, new UdpEndpointContext(source), false, timestamp);
+					if (batchReceiver == null) {
+						receiver.receiveData(msg);
+					} else {
+						batch.add(msg);
+						if (batch.size() >= maxBatchSize) {
+							deliver(batchReceiver);
+						}
+					}
+				}
+			}
+		}
+
+		@Override
+		protected void cleanup() {
+			bufferPool.release(buffer);
+		}
+	}
+
+	private class Sender extends NetworkStageThread {
+
+		private SelectionKey key;
+
+		private Sender(String name, Selector selector) {
+			super(name, selector);
+		}
+
+		protected void work() throws InterruptedException, IOException {
+			RawData raw = outgoing.take(); // Blocking
+			/*
+			 * check, if message should be sent with the "none endpoint context"
+			 * of UDP connector
+			 */
+			EndpointContext destination = raw.getEndpointContext();
+			InetSocketAddress destinationAddress = destination.getPeerAddress();
+			EndpointContext connectionContext = new UdpEndpointContext(destinationAddress);
+			EndpointContextMatcher endpointMatcher = NioUdpConnector.this.endpointContextMatcher;
+			if (endpointMatcher != null && !endpointMatcher.isToBeSent(destination, connectionContext)) {
+				LOGGER.warn("NioUdpConnector ({}) drops {} bytes to {}", effectiveAddr, raw.getSize(),
+						destinationAddress);
+				raw.onError(new EndpointMismatchException());
+				return;
+			}
+
+			DatagramChannel currentChannel = channel;
+			if (currentChannel == null) {
+				raw.onError(new IOException("channel already closed!"));
+				return;
+			}
+			ByteBufferPool pool = bufferPool;
+			byte[] data = raw.getBytes();
+			ByteBuffer buffer;
+			boolean pooled = data.length <= pool.getBufferSize();
+			if (pooled) {
+				buffer = pool.acquire();
+				buffer.put(data);
+				buffer.flip();
+			} else {
+				buffer = ByteBuffer.wrap(data);
+			}
+			try {
+				raw.onContextEstablished(connectionContext);
+				while (currentChannel.send(buffer, destinationAddress) == 0) {
+					// socket send buffer is full, wait until writable
+					if (!running) {
+						throw new InterruptedIOException("Connector is not running.");
+					}
+					if (key == null) {
+						key = currentChannel.register(selector, SelectionKey.OP_WRITE);
+					}
+					selector.select(SEND_SELECT_TIMEOUT_MILLIS);
+					selector.selectedKeys().clear();
+				}
+				raw.onSent();
+				LOGGER.debug("NioUdpConnector ({}) sent {} bytes to {}", this, data.length, destinationAddress);
+			} catch (IOException ex) {
+				raw.onError(ex);
+			} finally {
+				if (pooled) {
+					pool.release(buffer);
+				}
+			}
+		}
+	}
+
+	public void setReceiveBufferSize(int size) {
+		this.receiveBufferSize = size;
+	}
+
+	public int getReceiveBufferSize() {
+		return receiveBufferSize;
+	}
+
+	public void setSendBufferSize(int size) {
+		this.sendBufferSize = size;
+	}
+
+	public int getSendBufferSize() {
+		return sendBufferSize;
+	}
+
+	public void setReceiverThreadCount(int count) {
+		this.receiverCount = count;
+	}
+
+	public int getReceiverThreadCount() {
+		return receiverCount;
+	}
+
+	public void setSenderThreadCount(int count) {
+		this.senderCount = count;
+	}
+
+	public int getSenderThreadCount() {
+		return senderCount;
+	}
+
+	public void setReceiverPacketSize(int size) {
+		this.receiverPacketSize = size;
+	}
+
+	public int getReceiverPacketSize() {
+		return receiverPacketSize;
+	}
+
+	/**
+	 * Set maximum number of pooled direct buffers.
+	 *
+	 * Must be set before the connector is started.
+	 *
+	 * @param maxPooledBuffers maximum number of pooled buffers
+	 */
+	public void setMaxPooledBuffers(int maxPooledBuffers) {
+		this.maxPooledBuffers = maxPooledBuffers;
+	}
+
+	public int getMaxPooledBuffers() {
+		return maxPooledBuffers;
+	}
+
+	/**
+	 * Set maximum number of messages passed in one batch to a
+	 * {@link BatchRawDataChannel}.
+	 *
+	 * Must be set before the connector is started.
+	 *
+	 * @param maxBatchSize maximum number of messages in a batch
+	 * @throws IllegalArgumentException if maxBatchSize is less than {@code 1}
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("max. batch size " + maxBatchSize + " must be at least 1!");
+		}
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	@Override
+	public String getProtocol() {
+		return "UDP";
+	}
+
+	@Override
+	public String toString() {
+		return getProtocol() + "-" + getAddress();
+	}
+}
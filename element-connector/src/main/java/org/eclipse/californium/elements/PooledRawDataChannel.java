@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements;
+
+/**
+ * A processor for messages received from the network layer, which supports
+ * pooled buffers.
+ *
+ * Optional extension of the {@link RawDataChannel}. Connectors, which are able
+ * to receive messages into pooled buffers, check, if the registered
+ * {@link RawDataChannel} implements this interface, and then pass
+ * {@link RawData}, which may be {@link RawData#isPooled() pooled}. The
+ * implementation takes over the ownership of the passed raw data and must call
+ * {@link RawData#release()}, when the data is not longer used. For pooled raw
+ * data, the {@link RawData#bytes} array is usually larger than the message, the
+ * size of the message is provided by {@link RawData#getSize()}.
+ *
+ * Connectors pass raw data, which is not pooled, to all other
+ * {@link RawDataChannel}s.
+ */
+public interface PooledRawDataChannel extends RawDataChannel {
+
+}
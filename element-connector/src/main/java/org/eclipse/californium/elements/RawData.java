@@ -28,6 +28,7 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - replace isSecure by 
  *                                                    connector's protocol
  *    Achim Kraus (Bosch Software Innovations GmbH) - add onConnect
+ *    Bosch Software Innovations GmbH - add pooled buffers
  ******************************************************************************/
 package org.eclipse.californium.elements;
 
@@ -38,6 +39,7 @@ import java.net.InetSocketAddress;
 import java.security.Principal;
 
 import org.eclipse.californium.elements.util.ClockUtil;
+import org.eclipse.californium.elements.util.PooledBuffer;
 
 /**
  * A container object for the data received or sent via a {@link Connector}.
@@ -53,12 +55,27 @@ import org.eclipse.californium.elements.util.ClockUtil;
  * A message received from a client via the network may also optionally contain
  * the authenticated sender's identity as a {@link java.security.Principal}
  * object.
+ * 
+ * Inbound raw data may use a {@link PooledBuffer}. Such raw data is only passed
+ * to a {@link PooledRawDataChannel}, which takes the ownership and must
+ * {@link #release()} it, when the data is not longer used.
  */
 public final class RawData {
 
-	/** The raw message. */
+	/**
+	 * The raw message.
+	 * 
+	 * If {@link #isPooled()}, the array is the backing array of the pooled
+	 * buffer and usually larger than the message. Use {@link #getSize()} to
+	 * get the size of the message.
+	 */
 	public final byte[] bytes;
 
+	/**
+	 * Pooled buffer. {@code null}, if not pooled.
+	 */
+	private final PooledBuffer pooledBuffer;
+
 	/**
 	 * Nano timestamp of receive time.
 	 */
@@ -93,12 +110,18 @@ public final class RawData {
 	 * @throws NullPointerException if data or address is {@code null}
 	 */
 	private RawData(byte[] data, EndpointContext peerEndpointContext, MessageCallback callback, boolean multicast, long nanoTimestamp) {
+		this(data, null, peerEndpointContext, callback, multicast, nanoTimestamp);
+	}
+
+	private RawData(byte[] data, PooledBuffer pooledBuffer, EndpointContext peerEndpointContext,
+			MessageCallback callback, boolean multicast, long nanoTimestamp) {
 		if (data == null) {
 			throw new NullPointerException("Data must not be null");
 		} else if (peerEndpointContext == null) {
 			throw new NullPointerException("Peer's EndpointContext must not be null");
 		} else {
 			this.bytes = data;
+			this.pooledBuffer = pooledBuffer;
 			this.peerEndpointContext = peerEndpointContext;
 			this.callback = callback;
 			this.multicast = multicast;
@@ -127,6 +150,31 @@ public final class RawData {
 		return new RawData(data, peerEndpointContext, null, isMulticast, timestamp);
 	}
 
+	/**
+	 * Instantiates a new raw data for a message received from a peer into a
+	 * pooled buffer.
+	 * 
+	 * The raw data takes over the reference of the caller.
+	 * 
+	 * @param buffer pooled buffer with the received message. The length of
+	 *            the buffer must be set to the size of the message.
+	 * @param peerEndpointContext information regarding the context the message
+	 *            has been received in.
+	 * @param isMulticast indicates whether the data has been received as a
+	 *            multicast message.
+	 * @param nanoTimestamp nano-timestamp for received messages.
+	 * @return the raw data object containing the inbound message.
+	 * @throws NullPointerException if buffer or address is {@code null}.
+	 * @see #release()
+	 */
+	public static RawData inbound(PooledBuffer buffer, EndpointContext peerEndpointContext, boolean isMulticast,
+			long timestamp) {
+		if (buffer == null) {
+			throw new NullPointerException("Buffer must not be null");
+		}
+		return new RawData(buffer.array(), buffer, peerEndpointContext, null, isMulticast, timestamp);
+	}
+
 	/**
 	 * Instantiates a new raw data for a message to be sent to a peer.
 	 * <p>
@@ -174,7 +222,30 @@ public final class RawData {
 	 * @return the size
 	 */
 	public int getSize() {
-		return bytes.length;
+		return pooledBuffer == null ? bytes.length : pooledBuffer.length();
+	}
+
+	/**
+	 * Check, if the message is stored in a pooled buffer.
+	 * 
+	 * @return {@code true}, if pooled, {@code false}, otherwise.
+	 */
+	public boolean isPooled() {
+		return pooledBuffer != null;
+	}
+
+	/**
+	 * Release pooled buffer.
+	 * 
+	 * The message must not be accessed afterwards. Raw data, which is not
+	 * pooled, is not affected.
+	 * 
+	 * @throws IllegalStateException if the pooled buffer is already released
+	 */
+	public void release() {
+		if (pooledBuffer != null) {
+			pooledBuffer.release();
+		}
 	}
 
 	/**
@@ -33,6 +33,8 @@
  *                                                    on stop()
  *    Achim Kraus (Bosch Software Innovations GmbH) - make connector extendible to
  *                                                    support multicast sockets
+ *    Bosch Software Innovations GmbH - add SO_REUSEPORT socket shards
+ *    Bosch Software Innovations GmbH - receive into pooled buffers
  ******************************************************************************/
 package org.eclipse.californium.elements;
 
@@ -49,8 +51,11 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.eclipse.californium.elements.exception.EndpointMismatchException;
+import org.eclipse.californium.elements.util.ByteBufferPool;
 import org.eclipse.californium.elements.util.Bytes;
 import org.eclipse.californium.elements.util.ClockUtil;
+import org.eclipse.californium.elements.util.PooledBuffer;
+import org.eclipse.californium.elements.util.ReusePortUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,6 +74,11 @@ import org.slf4j.LoggerFactory;
  * 
  * The number of threads can be set through {@link #setReceiverThreadCount(int)}
  * and {@link #setSenderThreadCount(int)} before the connector is started.
+ * 
+ * On Linux, multiple sockets may be bound to the same port using
+ * {@code SO_REUSEPORT}, see {@link #setSocketShards(int)}. The kernel then
+ * spreads the received datagrams over these sockets and each socket is served
+ * by its own receiver thread(s).
  */
 public class UDPConnector implements Connector {
 
@@ -100,7 +110,11 @@ public class UDPConnector implements Connector {
 
 	protected volatile boolean running;
 
-	private volatile DatagramSocket socket;
+	/**
+	 * Sockets bound to the local address. Contains more than one socket, if
+	 * {@code SO_REUSEPORT} shards are used.
+	 */
+	private volatile DatagramSocket[] sockets;
 
 	private volatile InetSocketAddress effectiveAddr;
 
@@ -122,6 +136,21 @@ public class UDPConnector implements Connector {
 
 	private int receiverPacketSize = 2048;
 
+	private int socketShards = 1;
+
+	/**
+	 * Maximum number of pooled receive buffers. {@code 0} to disable pooled
+	 * buffers.
+	 * 
+	 * @see #setMaxPooledBuffers(int)
+	 */
+	private int maxPooledBuffers = 0;
+
+	/**
+	 * Pool of receive buffers. {@code null}, if not used.
+	 */
+	private volatile ByteBufferPool bufferPool;
+
 	/**
 	 * Creates a connector on the wildcard address listening on an ephemeral
 	 * port, i.e. a port chosen by the system.
@@ -159,6 +188,31 @@ public class UDPConnector implements Connector {
 			return;
 		}
 
+		if (socketShards > 1) {
+			if (ReusePortUtil.isSupported()) {
+				DatagramSocket[] sockets = new DatagramSocket[socketShards];
+				try {
+					// if localAddr is null or port is 0, the system decides
+					// for the first shard, all others use the same port
+					InetSocketAddress bindAddress = localAddr;
+					for (int index = 0; index < sockets.length; ++index) {
+						sockets[index] = ReusePortUtil.createSocket(bindAddress, false);
+						bindAddress = (InetSocketAddress) sockets[0].getLocalSocketAddress();
+					}
+				} catch (IOException ex) {
+					for (DatagramSocket socket : sockets) {
+						if (socket != null) {
+							socket.close();
+						}
+					}
+					throw ex;
+				}
+				init(sockets);
+				return;
+			}
+			LOGGER.warn("UDPConnector SO_REUSEPORT not supported, using a single socket instead of {} shards!",
+					socketShards);
+		}
 		// if localAddr is null or port is 0, the system decides
 		init(new DatagramSocket(localAddr.getPort(), localAddr.getAddress()));
 	}
@@ -170,27 +224,50 @@ public class UDPConnector implements Connector {
 	 * @throws IOException  if there is an error in the datagram socket calls.
 	 */
 	protected void init(DatagramSocket socket) throws IOException {
-		this.socket = socket;
+		init(new DatagramSocket[] { socket });
+	}
+
+	/**
+	 * Initialize connector using the provided sockets.
+	 * 
+	 * @param sockets datagram sockets for communication. All sockets must be
+	 *            bound to the same address.
+	 * @throws IOException if there is an error in the datagram socket calls.
+	 */
+	private void init(DatagramSocket[] sockets) throws IOException {
+		DatagramSocket socket = sockets[0];
+		this.sockets = sockets;
 		effectiveAddr = (InetSocketAddress) socket.getLocalSocketAddress();
 
-		if (receiveBufferSize != UNDEFINED) {
-			socket.setReceiveBufferSize(receiveBufferSize);
+		for (DatagramSocket shard : sockets) {
+			if (receiveBufferSize != UNDEFINED) {
+				shard.setReceiveBufferSize(receiveBufferSize);
+			}
+			if (sendBufferSize != UNDEFINED) {
+				shard.setSendBufferSize(sendBufferSize);
+			}
 		}
 		receiveBufferSize = socket.getReceiveBufferSize();
-
-		if (sendBufferSize != UNDEFINED) {
-			socket.setSendBufferSize(sendBufferSize);
-		}
 		sendBufferSize = socket.getSendBufferSize();
+		if (maxPooledBuffers > 0) {
+			// we add one byte to be able to detect potential truncation.
+			bufferPool = new ByteBufferPool(receiverPacketSize + 1, maxPooledBuffers, false);
+		} else {
+			bufferPool = null;
+		}
 
 		// running only, if the socket could be opened
 		running = true;
 
+		// each shard requires at least one receiver thread
+		int receivers = Math.max(receiverCount, sockets.length);
+
 		// start receiver and sender threads
-		LOGGER.info("UDPConnector starts up {} sender threads and {} receiver threads", senderCount, receiverCount);
+		LOGGER.info("UDPConnector starts up {} sender threads and {} receiver threads for {} sockets", senderCount,
+				receivers, sockets.length);
 
-		for (int i = 0; i < receiverCount; i++) {
-			receiverThreads.add(new Receiver("UDP-Receiver-" + localAddr + "[" + i + "]"));
+		for (int i = 0; i < receivers; i++) {
+			receiverThreads.add(new Receiver("UDP-Receiver-" + localAddr + "[" + i + "]", i % sockets.length));
 		}
 
 		for (int i = 0; i < senderCount; i++) {
@@ -233,9 +310,11 @@ public class UDPConnector implements Connector {
 				t.interrupt();
 			}
 			outgoing.drainTo(pending);
-			if (socket != null) {
-				socket.close();
-				socket = null;
+			if (sockets != null) {
+				for (DatagramSocket shard : sockets) {
+					shard.close();
+				}
+				sockets = null;
 			}
 			// stop all threads
 			for (Thread t : senderThreads) {
@@ -349,20 +428,40 @@ public class UDPConnector implements Connector {
 	private class Receiver extends NetworkStageThread {
 
 		private DatagramPacket datagram;
+		private byte[] data;
 		private int size;
+		private int shard;
+		/**
+		 * Current pooled buffer. {@code null}, if no pooled buffer is used.
+		 */
+		private PooledBuffer pooled;
 
-		private Receiver(String name) {
+		private Receiver(String name, int shard) {
 			super(name);
+			this.shard = shard;
 			// we add one byte to be able to detect potential truncation.
 			this.size = receiverPacketSize + 1;
-			this.datagram = new DatagramPacket(new byte[size], size);
+			this.data = new byte[size];
+			this.datagram = new DatagramPacket(data, size);
 		}
 
 		protected void work() throws IOException {
-			datagram.setLength(size);
-			DatagramSocket currentSocket = socket;
-			if (currentSocket != null) {
-				currentSocket.receive(datagram);
+			DatagramSocket[] currentSockets = sockets;
+			if (currentSockets != null) {
+				ByteBufferPool pool = bufferPool;
+				if (pool != null && receiver instanceof PooledRawDataChannel) {
+					if (pooled == null) {
+						pooled = PooledBuffer.acquire(pool);
+					}
+					datagram.setData(pooled.array(), 0, size);
+				} else {
+					if (pooled != null) {
+						pooled.release();
+						pooled = null;
+					}
+					datagram.setData(data, 0, size);
+				}
+				currentSockets[shard].receive(datagram);
 				if (datagram.getLength() >= size) {
 					// too large datagram for our buffer! data could have been
 					// truncated, so we discard it.
@@ -373,10 +472,19 @@ public class UDPConnector implements Connector {
 					long timestamp = ClockUtil.nanoRealtime();
 					LOGGER.debug("UDPConnector ({}) received {} bytes from {}:{}", effectiveAddr, datagram.getLength(),
 							datagram.getAddress(), datagram.getPort());
-					byte[] bytes = Arrays.copyOfRange(datagram.getData(), datagram.getOffset(), datagram.getLength());
-					RawData msg = RawData.inbound(bytes,
-							new UdpEndpointContext(new InetSocketAddress(datagram.getAddress(), datagram.getPort())),
-							false, timestamp);
+					UdpEndpointContext context = new UdpEndpointContext(
+							new InetSocketAddress(datagram.getAddress(), datagram.getPort()));
+					RawData msg;
+					if (pooled != null) {
+						// hand over the pooled buffer, no copy required
+						pooled.setLength(datagram.getLength());
+						msg = RawData.inbound(pooled, context, false, timestamp);
+						pooled = null;
+					} else {
+						byte[] bytes = Arrays.copyOfRange(datagram.getData(), datagram.getOffset(),
+								datagram.getLength());
+						msg = RawData.inbound(bytes, context, false, timestamp);
+					}
 					receiver.receiveData(msg);
 				}
 			}
@@ -411,8 +519,10 @@ public class UDPConnector implements Connector {
 			datagram.setData(raw.getBytes());
 			datagram.setSocketAddress(destinationAddress);
 
-			DatagramSocket currentSocket = socket;
-			if (currentSocket != null) {
+			DatagramSocket[] currentSockets = sockets;
+			if (currentSockets != null) {
+				DatagramSocket currentSocket = currentSockets[ReusePortUtil.getShard(destinationAddress,
+						currentSockets.length)];
 				try {
 					raw.onContextEstablished(connectionContext);
 					currentSocket.send(datagram);
@@ -468,6 +578,54 @@ public class UDPConnector implements Connector {
 		return receiverPacketSize;
 	}
 
+	/**
+	 * Set number of sockets bound to the same port using
+	 * {@code SO_REUSEPORT}.
+	 * 
+	 * Each socket is served by at least one receiver thread. If
+	 * {@code SO_REUSEPORT} is not supported, a single socket is used. Must be
+	 * set before the connector is started. Not supported by
+	 * {@link UdpMulticastConnector}.
+	 * 
+	 * @param shards number of sockets. Default {@code 1}.
+	 * @throws IllegalArgumentException if shards is less than {@code 1}
+	 * @see ReusePortUtil#isSupported()
+	 */
+	public void setSocketShards(int shards) {
+		if (shards < 1) {
+			throw new IllegalArgumentException("socket shards " + shards + " must be at least 1!");
+		}
+		this.socketShards = shards;
+	}
+
+	public int getSocketShards() {
+		return socketShards;
+	}
+
+	/**
+	 * Set maximum number of pooled receive buffers.
+	 * 
+	 * If enabled and the receiver is a {@link PooledRawDataChannel}, the
+	 * datagrams are received directly into pooled buffers, which are passed
+	 * without copying to the receiver. The receiver must release them. Must
+	 * be set before the connector is started.
+	 * 
+	 * @param maxPooledBuffers maximum number of pooled buffers. {@code 0}
+	 *            to disable pooled buffers. Default {@code 0}.
+	 * @throws IllegalArgumentException if maxPooledBuffers is negative
+	 * @see RawData#release()
+	 */
+	public void setMaxPooledBuffers(int maxPooledBuffers) {
+		if (maxPooledBuffers < 0) {
+			throw new IllegalArgumentException("max. pooled buffers " + maxPooledBuffers + " must not be negative!");
+		}
+		this.maxPooledBuffers = maxPooledBuffers;
+	}
+
+	public int getMaxPooledBuffers() {
+		return maxPooledBuffers;
+	}
+
 	@Override
 	public String getProtocol() {
 		return "UDP";
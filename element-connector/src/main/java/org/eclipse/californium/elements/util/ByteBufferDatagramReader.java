@@ -0,0 +1,390 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *                                      based on DatagramReader
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class describes the functionality to read raw network-ordered datagrams
+ * on bit-level from a {@link ByteBuffer}.
+ *
+ * In difference to {@link DatagramReader}, the data is read in place. Neither
+ * the provided buffer nor ranges of it are copied, except the data is
+ * explicitly read into a byte array. Reading byte-aligned values is done on
+ * byte-level. The position of the provided buffer is not changed by this
+ * reader.
+ */
+public final class ByteBufferDatagramReader {
+
+	/**
+	 * Buffer with the data. Position and limit of the buffer are used by
+	 * this reader.
+	 */
+	private final ByteBuffer buffer;
+
+	private byte currentByte;
+	private int currentBitIndex;
+
+	/**
+	 * Copy of {@link #currentByte}, when {@link #mark()} is called.
+	 */
+	private byte markByte;
+	/**
+	 * Copy of {@link #currentBitIndex}, when {@link #mark()} is called.
+	 */
+	private int markBitIndex;
+
+	/**
+	 * Creates a new reader for the remaining bytes of the buffer.
+	 *
+	 * The bytes are not copied.
+	 *
+	 * @param buffer The buffer to read from. The bytes from the current
+	 *            position up to the limit are read.
+	 * @throws NullPointerException if buffer is {@code null}
+	 */
+	public ByteBufferDatagramReader(final ByteBuffer buffer) {
+		if (buffer == null) {
+			throw new NullPointerException("buffer must not be null!");
+		}
+		this.buffer = buffer.slice();
+		// initialize bit buffer
+		currentByte = 0;
+		currentBitIndex = -1; // indicates that no byte read yet
+		markByte = currentByte;
+		markBitIndex = currentBitIndex;
+	}
+
+	/**
+	 * Creates a new reader for an array of bytes.
+	 *
+	 * The array is not copied.
+	 *
+	 * @param byteArray The byte array to read from.
+	 */
+	public ByteBufferDatagramReader(final byte[] byteArray) {
+		this(ByteBuffer.wrap(byteArray));
+	}
+
+	/**
+	 * Creates a new reader for a range of an array of bytes.
+	 *
+	 * The array is not copied.
+	 *
+	 * @param byteArray The byte array to read from.
+	 * @param offset offset of the range in the byte array.
+	 * @param length length of the range.
+	 * @throws IndexOutOfBoundsException if the range doesn't fit into the
+	 *             byte array
+	 */
+	public ByteBufferDatagramReader(final byte[] byteArray, int offset, int length) {
+		this(ByteBuffer.wrap(byteArray, offset, length));
+	}
+
+	/**
+	 * Mark current position to be reseted afterwards.
+	 *
+	 * @see #reset()
+	 */
+	public void mark() {
+		markByte = currentByte;
+		markBitIndex = currentBitIndex;
+		buffer.mark();
+	}
+
+	/**
+	 * Reset reader to last mark.
+	 *
+	 * @see #mark()
+	 */
+	public void reset() {
+		buffer.reset();
+		currentByte = markByte;
+		currentBitIndex = markBitIndex;
+	}
+
+	/**
+	 * Close reader. Clear left bytes.
+	 */
+	public void close() {
+		buffer.position(buffer.limit());
+		currentByte = 0;
+		currentBitIndex = -1; // indicates that no byte read yet
+	}
+
+	/**
+	 * Gets the current position.
+	 *
+	 * @return number of bytes read from the start of the range of this reader.
+	 *         If some bits of a byte are read, that byte is included.
+	 */
+	public int position() {
+		return buffer.position();
+	}
+
+	/**
+	 * Reads a sequence of bits from the buffer.
+	 *
+	 * @param numBits The number of bits to read.
+	 * @return A Long containing the bits read.
+	 * @throws IllegalArgumentException if provided numBits exceeds available
+	 *             bytes
+	 */
+	public long readLong(final int numBits) {
+		long bits = 0; // initialize all bits to zero
+
+		if (currentBitIndex < 0 && (numBits & 0x7) == 0) {
+			// byte aligned
+			int count = numBits / Byte.SIZE;
+			ensureAvailable(count);
+			for (int i = 0; i < count; i++) {
+				bits = (bits << Byte.SIZE) | (buffer.get() & 0xff);
+			}
+			return bits;
+		}
+
+		for (int i = numBits - 1; i >= 0; i--) {
+
+			// check whether new byte needs to be read
+			if (currentBitIndex < 0) {
+				readCurrentByte();
+			}
+
+			// test current bit
+			boolean bit = (currentByte >> currentBitIndex & 1) != 0;
+			if (bit) {
+				// set bit at i-th position
+				bits |= (1L << i);
+			}
+
+			// decrease current bit index
+			--currentBitIndex;
+		}
+
+		return bits;
+	}
+
+	/**
+	 * Reads a sequence of bits from the buffer.
+	 *
+	 * @param numBits The number of bits to read.
+	 * @return An integer containing the bits read.
+	 * @throws IllegalArgumentException if provided numBits exceeds available
+	 *             bytes
+	 */
+	public int read(final int numBits) {
+		int bits = 0; // initialize all bits to zero
+
+		if (currentBitIndex < 0 && (numBits & 0x7) == 0) {
+			// byte aligned
+			int count = numBits / Byte.SIZE;
+			ensureAvailable(count);
+			for (int i = 0; i < count; i++) {
+				bits = (bits << Byte.SIZE) | (buffer.get() & 0xff);
+			}
+			return bits;
+		}
+
+		for (int i = numBits - 1; i >= 0; i--) {
+
+			// check whether new byte needs to be read
+			if (currentBitIndex < 0) {
+				readCurrentByte();
+			}
+
+			// test current bit
+			boolean bit = (currentByte >> currentBitIndex & 1) != 0;
+			if (bit) {
+				// set bit at i-th position
+				bits |= (1 << i);
+			}
+
+			// decrease current bit index
+			--currentBitIndex;
+		}
+
+		return bits;
+	}
+
+	/**
+	 * Reads a sequence of bytes from the buffer into a new byte array.
+	 *
+	 * @param count The number of bytes to read. For negative values, all
+	 *            bytes left are read.
+	 * @return The sequence of bytes read from the buffer.
+	 * @throws IllegalArgumentException if provided count exceeds available
+	 *             bytes
+	 */
+	public byte[] readBytes(final int count) {
+		int bytesToRead = count < 0 ? buffer.remaining() : count;
+		byte[] bytes = new byte[bytesToRead];
+		readBytes(bytes, 0, bytesToRead);
+		return bytes;
+	}
+
+	/**
+	 * Reads a sequence of bytes from the buffer into the provided byte array.
+	 *
+	 * @param destination byte array to read into
+	 * @param offset offset in the destination
+	 * @param count number of bytes to read
+	 * @throws IllegalArgumentException if provided count exceeds available
+	 *             bytes
+	 * @throws IndexOutOfBoundsException if the destination range doesn't fit
+	 *             into the destination
+	 */
+	public void readBytes(final byte[] destination, final int offset, final int count) {
+		// are there bits left to read in buffer?
+		if (currentBitIndex >= 0) {
+			if (count > buffer.remaining()) {
+				throw new IllegalArgumentException(
+						"requested " + count + " bytes exceeds available " + buffer.remaining() + " bytes.");
+			}
+			for (int i = 0; i < count; i++) {
+				destination[offset + i] = (byte) read(Byte.SIZE);
+			}
+		} else {
+			ensureAvailable(count);
+			buffer.get(destination, offset, count);
+		}
+	}
+
+	/**
+	 * Reads the next byte from the buffer.
+	 *
+	 * @return The next byte.
+	 * @throws IllegalArgumentException if no bytes are available
+	 */
+	public byte readNextByte() {
+		if (currentBitIndex >= 0) {
+			return (byte) read(Byte.SIZE);
+		}
+		ensureAvailable(1);
+		return buffer.get();
+	}
+
+	/**
+	 * Reads the complete sequence of bytes left in the buffer into a new byte
+	 * array.
+	 *
+	 * @return The sequence of bytes left in the buffer.
+	 */
+	public byte[] readBytesLeft() {
+		return readBytes(-1);
+	}
+
+	/**
+	 * Reads a range of bytes without copying them.
+	 *
+	 * @param count number of bytes to read. For negative values, all bytes
+	 *            left are read.
+	 * @return buffer sharing the content with the buffer of this reader. The
+	 *         position of the returned buffer is {@code 0}, and the limit
+	 *         {@code count}.
+	 * @throws IllegalStateException if some bits of the current byte are
+	 *             unread
+	 * @throws IllegalArgumentException if provided count exceeds available
+	 *             bytes
+	 */
+	public ByteBuffer readByteBuffer(int count) {
+		if (currentBitIndex > 0) {
+			throw new IllegalStateException(currentBitIndex + " bits unread!");
+		}
+		int bytesToRead = count < 0 ? buffer.remaining() : count;
+		ensureAvailable(bytesToRead);
+		ByteBuffer range = buffer.slice();
+		range.limit(bytesToRead);
+		buffer.position(buffer.position() + bytesToRead);
+		return range;
+	}
+
+	/**
+	 * Create reader for provided range. The range is not copied.
+	 *
+	 * @param count size of the range in bytes
+	 * @return reader
+	 * @throws IllegalStateException if some bits of the current byte are
+	 *             unread
+	 * @throws IllegalArgumentException if provided count exceeds available
+	 *             bytes
+	 */
+	public ByteBufferDatagramReader createRangeReader(int count) {
+		return new ByteBufferDatagramReader(readByteBuffer(count));
+	}
+
+	/**
+	 * Checks if there are any more bytes available in the buffer.
+	 *
+	 * @return <code>true</code> if there are bytes left to read,
+	 *         <code>false</code> otherwise.
+	 */
+	public boolean bytesAvailable() {
+		return buffer.hasRemaining();
+	}
+
+	/**
+	 * Checks whether a given number of bytes can be read.
+	 *
+	 * @param expectedBytes the number of bytes.
+	 * @return {@code true} if the remaining number of bytes in the buffer is
+	 *         at least <em>expectedBytes</em>.
+	 */
+	public boolean bytesAvailable(final int expectedBytes) {
+		return buffer.remaining() >= expectedBytes;
+	}
+
+	/**
+	 * Gets the number of remaining bits that can be read from the datagram.
+	 *
+	 * @return the number of bits
+	 */
+	public int bitsLeft() {
+		return (buffer.remaining() * Byte.SIZE) + (currentBitIndex + 1);
+	}
+
+	/**
+	 * Ensure, that the number of bytes are available.
+	 *
+	 * @param count number of bytes
+	 * @throws IllegalArgumentException if provided count exceeds available
+	 *             bytes
+	 */
+	private void ensureAvailable(int count) {
+		int available = buffer.remaining();
+		if (available < count) {
+			throw new IllegalArgumentException(
+					"requested " + count + " bytes exceeds available " + available + " bytes.");
+		}
+	}
+
+	/**
+	 * Reads new bits from the buffer.
+	 *
+	 * @throws IllegalArgumentException if no bytes are available
+	 */
+	private void readCurrentByte() {
+		if (buffer.hasRemaining()) {
+			currentByte = buffer.get();
+		} else {
+			// end of buffer reached
+			throw new IllegalArgumentException("requested byte exceeds available bytes!");
+		}
+
+		// reset current bit index
+		currentBitIndex = Byte.SIZE - 1;
+	}
+}
@@ -0,0 +1,381 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *                                      based on DatagramWriter
+ *    Bosch Software Innovations GmbH - don't reuse a backing array returned
+ *                                      by toByteArray
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class describes the functionality to write raw network-ordered datagrams
+ * on bit-level into a {@link ByteBuffer}.
+ *
+ * In difference to {@link DatagramWriter}, the data is written in place into a
+ * buffer of fixed size, either provided by the caller (e.g. from a
+ * {@link ByteBufferPool}), or allocated by the writer. Byte-aligned values are
+ * written on byte-level. Writing more bytes than the buffer is able to hold
+ * fails with a {@link java.nio.BufferOverflowException}.
+ */
+public final class ByteBufferDatagramWriter {
+
+	/**
+	 * Buffer to write to.
+	 */
+	private ByteBuffer buffer;
+	/**
+	 * Position in {@link #buffer}, where this writer starts.
+	 */
+	private final int start;
+	/**
+	 * Indicates, that the {@link #buffer} is allocated by this writer.
+	 */
+	private final boolean owned;
+	/**
+	 * Indicates, that the backing array of the {@link #buffer} is returned by
+	 * {@link #toByteArray()}. It must not be modified anymore.
+	 */
+	private boolean shared;
+
+	private byte currentByte;
+	private int currentBitIndex;
+
+	/**
+	 * Creates a new writer using a heap buffer of the provided size.
+	 *
+	 * @param size size of the buffer in bytes
+	 */
+	public ByteBufferDatagramWriter(int size) {
+		this(ByteBuffer.allocate(size), true);
+	}
+
+	/**
+	 * Creates a new writer for the provided buffer.
+	 *
+	 * The data is written from the current position of the buffer up to its
+	 * limit. The buffer's position is advanced when data is written.
+	 *
+	 * @param buffer buffer to write to
+	 * @throws NullPointerException if buffer is {@code null}
+	 */
+	public ByteBufferDatagramWriter(ByteBuffer buffer) {
+		this(buffer, false);
+	}
+
+	private ByteBufferDatagramWriter(ByteBuffer buffer, boolean owned) {
+		if (buffer == null) {
+			throw new NullPointerException("buffer must not be null!");
+		}
+		this.buffer = buffer;
+		this.start = buffer.position();
+		this.owned = owned;
+		resetCurrentByte();
+	}
+
+	/**
+	 * Writes a sequence of bits to the buffer.
+	 *
+	 * @param data A Long containing the bits to write.
+	 * @param numBits The number of bits to write.
+	 * @throws IllegalArgumentException if the data exceeds the number of bits
+	 */
+	public void writeLong(final long data, final int numBits) {
+
+		if (numBits < 32 && data >= (1 << numBits)) {
+			throw new IllegalArgumentException(String.format("Truncating value %d to %d-bit integer", data, numBits));
+		}
+
+		if (!isBytePending() && (numBits & 0x7) == 0) {
+			// byte aligned
+			for (int i = numBits - Byte.SIZE; i >= 0; i -= Byte.SIZE) {
+				buffer.put((byte) (data >> i));
+			}
+			return;
+		}
+
+		for (int i = numBits - 1; i >= 0; i--) {
+
+			// test bit
+			boolean bit = (data >> i & 1) != 0;
+			if (bit) {
+				// set bit in current byte
+				currentByte |= (1 << currentBitIndex);
+			}
+
+			// decrease current bit index
+			--currentBitIndex;
+
+			// check if current byte can be written
+			if (currentBitIndex < 0) {
+				writeCurrentByte();
+			}
+		}
+	}
+
+	/**
+	 * Writes a sequence of bits to the buffer.
+	 *
+	 * @param data An integer containing the bits to write.
+	 * @param numBits The number of bits to write.
+	 * @throws IllegalArgumentException if the data exceeds the number of bits
+	 */
+	public void write(final int data, final int numBits) {
+
+		if (numBits < 32 && data >= (1 << numBits)) {
+			throw new IllegalArgumentException(String.format("Truncating value %d to %d-bit integer", data, numBits));
+		}
+
+		if (!isBytePending() && (numBits & 0x7) == 0) {
+			// byte aligned
+			for (int i = numBits - Byte.SIZE; i >= 0; i -= Byte.SIZE) {
+				buffer.put((byte) (data >> i));
+			}
+			return;
+		}
+
+		for (int i = numBits - 1; i >= 0; i--) {
+
+			// test bit
+			boolean bit = (data >> i & 1) != 0;
+			if (bit) {
+				// set bit in current byte
+				currentByte |= (1 << currentBitIndex);
+			}
+
+			// decrease current bit index
+			--currentBitIndex;
+
+			// check if current byte can be written
+			if (currentBitIndex < 0) {
+				writeCurrentByte();
+			}
+		}
+	}
+
+	/**
+	 * Writes byte-aligned bits at an absolute offset of this writer.
+	 *
+	 * Intended to fill in values, e.g. a length field, after the following
+	 * data is written. Neither the position nor pending bits are changed.
+	 *
+	 * @param offset offset relative to the start of this writer
+	 * @param data An integer containing the bits to write.
+	 * @param numBits The number of bits to write. Must be a multiple of
+	 *            {@link Byte#SIZE}.
+	 * @throws IllegalArgumentException if numBits is not a multiple of
+	 *             {@link Byte#SIZE}, the data exceeds the number of bits, or
+	 *             the range is not already written.
+	 */
+	public void writeAt(final int offset, final int data, final int numBits) {
+		if ((numBits & 0x7) != 0) {
+			throw new IllegalArgumentException(numBits + " bits are not byte aligned!");
+		}
+		if (numBits < 32 && data >= (1 << numBits)) {
+			throw new IllegalArgumentException(String.format("Truncating value %d to %d-bit integer", data, numBits));
+		}
+		int count = numBits / Byte.SIZE;
+		if (offset < 0 || offset + count > size()) {
+			throw new IllegalArgumentException("range " + offset + "-" + (offset + count) + " exceeds written "
+					+ size() + " bytes!");
+		}
+		if (shared) {
+			// don't modify the array returned by toByteArray
+			ByteBuffer copy = ByteBuffer.wrap(buffer.array().clone());
+			copy.position(buffer.position());
+			buffer = copy;
+			shared = false;
+		}
+		int index = start + offset;
+		for (int i = numBits - Byte.SIZE; i >= 0; i -= Byte.SIZE) {
+			buffer.put(index++, (byte) (data >> i));
+		}
+	}
+
+	/**
+	 * Writes a sequence of bytes to the buffer.
+	 *
+	 * @param bytes The sequence of bytes to write.
+	 */
+	public void writeBytes(final byte[] bytes) {
+		// check if anything to do at all
+		if (bytes == null)
+			return;
+		writeBytes(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Writes a range of bytes to the buffer.
+	 *
+	 * @param bytes The bytes to write.
+	 * @param offset offset of the range.
+	 * @param length length of the range.
+	 */
+	public void writeBytes(final byte[] bytes, final int offset, final int length) {
+		// are there bits left to write in buffer?
+		if (isBytePending()) {
+			for (int i = 0; i < length; i++) {
+				write(bytes[offset + i] & 0xff, Byte.SIZE);
+			}
+		} else {
+			buffer.put(bytes, offset, length);
+		}
+	}
+
+	/**
+	 * Writes the remaining bytes of the provided buffer.
+	 *
+	 * @param bytes buffer with the bytes to write. The position is advanced
+	 *            to the limit.
+	 */
+	public void writeBytes(final ByteBuffer bytes) {
+		if (isBytePending()) {
+			while (bytes.hasRemaining()) {
+				write(bytes.get() & 0xff, Byte.SIZE);
+			}
+		} else {
+			buffer.put(bytes);
+		}
+	}
+
+	/**
+	 * Writes one byte to the buffer.
+	 *
+	 * @param b The byte to be written.
+	 */
+	public void writeByte(final byte b) {
+		if (isBytePending()) {
+			write(b & 0xff, Byte.SIZE);
+		} else {
+			buffer.put(b);
+		}
+	}
+
+	/**
+	 * Gets the number of written bytes.
+	 *
+	 * Pending bits are not included.
+	 *
+	 * @return number of written bytes
+	 */
+	public int size() {
+		return buffer.position() - start;
+	}
+
+	/**
+	 * Gets the number of bytes, which could be written in addition.
+	 *
+	 * @return number of remaining bytes
+	 */
+	public int remaining() {
+		return buffer.remaining();
+	}
+
+	/**
+	 * Returns a byte array containing the sequence of bytes written.
+	 *
+	 * Writes pending bits before. If the written bytes fill the complete
+	 * buffer allocated by this writer, its backing array is returned without
+	 * copying it. The writer then doesn't modify that array anymore, a
+	 * following {@link #reset()} continues with a new buffer.
+	 *
+	 * @return The byte array containing the written bits.
+	 */
+	public byte[] toByteArray() {
+		writeCurrentByte();
+		int size = size();
+		if (buffer.hasArray()) {
+			byte[] array = buffer.array();
+			int offset = buffer.arrayOffset() + start;
+			if (owned && offset == 0 && array.length == size) {
+				shared = true;
+				return array;
+			}
+			return Arrays.copyOfRange(array, offset, offset + size);
+		}
+		byte[] array = new byte[size];
+		ByteBuffer written = buffer.duplicate();
+		written.position(start);
+		written.get(array);
+		return array;
+	}
+
+	/**
+	 * Returns a buffer with the written bytes.
+	 *
+	 * Writes pending bits before. The returned buffer shares the content with
+	 * the buffer of this writer. The position of the returned buffer is
+	 * {@code 0}, and the limit the number of written bytes.
+	 *
+	 * @return buffer with the written bytes
+	 */
+	public ByteBuffer toByteBuffer() {
+		writeCurrentByte();
+		ByteBuffer written = buffer.duplicate();
+		written.limit(written.position());
+		written.position(start);
+		return written.slice();
+	}
+
+	/**
+	 * Reset writer.
+	 *
+	 * Discards all written bytes and pending bits, and continues to write at
+	 * the start position. If the backing array was returned by
+	 * {@link #toByteArray()}, a new buffer of the same size is used.
+	 */
+	public void reset() {
+		if (shared) {
+			buffer = ByteBuffer.allocate(buffer.capacity());
+			shared = false;
+		}
+		buffer.position(start);
+		resetCurrentByte();
+	}
+
+	/**
+	 * Writes pending bits to the buffer.
+	 */
+	public void writeCurrentByte() {
+		if (isBytePending()) {
+			buffer.put(currentByte);
+			resetCurrentByte();
+		}
+	}
+
+	public final boolean isBytePending() {
+		return currentBitIndex < Byte.SIZE - 1;
+	}
+
+	private final void resetCurrentByte() {
+		currentByte = 0;
+		currentBitIndex = Byte.SIZE - 1;
+	}
+
+	@Override
+	public String toString() {
+		ByteBuffer written = buffer.duplicate();
+		written.limit(written.position());
+		written.position(start);
+		byte[] byteArray = new byte[written.remaining()];
+		written.get(byteArray);
+		if (byteArray.length != 0) {
+			return StringUtil.byteArray2HexString(byteArray, ' ', 0);
+		} else {
+			return "--";
+		}
+	}
+}
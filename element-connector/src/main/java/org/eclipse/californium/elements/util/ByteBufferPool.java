@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of {@link ByteBuffer}s with the same capacity.
+ *
+ * Intended to reuse direct buffers, which are expensive to allocate and are
+ * only released by the garbage collector. If the pool is empty, a new buffer is
+ * allocated. Released buffers are only kept, if the number of pooled buffers is
+ * below the configured maximum, otherwise they are left to the garbage
+ * collector.
+ *
+ * The pool is thread safe.
+ */
+public class ByteBufferPool {
+
+	/**
+	 * Capacity of the pooled buffers.
+	 */
+	private final int bufferSize;
+	/**
+	 * Maximum number of pooled buffers.
+	 */
+	private final int maxPooled;
+	/**
+	 * Use direct buffers.
+	 */
+	private final boolean direct;
+	/**
+	 * Pooled buffers.
+	 */
+	private final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<ByteBuffer>();
+	/**
+	 * Number of pooled buffers. {@link ConcurrentLinkedQueue#size()} is not a
+	 * constant time operation.
+	 */
+	private final AtomicInteger pooled = new AtomicInteger();
+	/**
+	 * Number of allocated buffers.
+	 */
+	private final AtomicInteger allocated = new AtomicInteger();
+
+	/**
+	 * Create pool of buffers.
+	 *
+	 * @param bufferSize capacity of the buffers
+	 * @param maxPooled maximum number of pooled buffers
+	 * @param direct {@code true}, to use direct buffers, {@code false}, to use
+	 *            heap buffers.
+	 * @throws IllegalArgumentException if buffer size is less than {@code 1},
+	 *             or the maximum number of pooled buffers is negative.
+	 */
+	public ByteBufferPool(int bufferSize, int maxPooled, boolean direct) {
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("buffer size " + bufferSize + " must be at least 1!");
+		}
+		if (maxPooled < 0) {
+			throw new IllegalArgumentException("max. pooled buffers " + maxPooled + " must not be negative!");
+		}
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+		this.direct = direct;
+	}
+
+	/**
+	 * Get buffer from pool.
+	 *
+	 * @return cleared buffer. Either reused from the pool, or new allocated.
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer = pool.poll();
+		if (buffer == null) {
+			allocated.incrementAndGet();
+			return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+		}
+		pooled.decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Return buffer to pool.
+	 *
+	 * The buffer must not be used by the caller afterwards.
+	 *
+	 * @param buffer buffer to return. Buffers with a different capacity or
+	 *            kind (direct/heap) are ignored.
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer != null && buffer.capacity() == bufferSize && buffer.isDirect() == direct) {
+			if (pooled.incrementAndGet() <= maxPooled) {
+				pool.offer(buffer);
+			} else {
+				pooled.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Get capacity of pooled buffers.
+	 *
+	 * @return capacity of pooled buffers
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Get number of currently pooled buffers.
+	 *
+	 * @return number of currently pooled buffers
+	 */
+	public int getPooledBuffers() {
+		return pooled.get();
+	}
+
+	/**
+	 * Get number of allocated buffers.
+	 *
+	 * @return number of allocated buffers
+	 */
+	public int getAllocatedBuffers() {
+		return allocated.get();
+	}
+}
@@ -0,0 +1,867 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *                                      based on LeastRecentlyUsedCache
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.californium.elements.util.LeastRecentlyUsedCache.EvictionListener;
+import org.eclipse.californium.elements.util.LeastRecentlyUsedCache.Predicate;
+
+/**
+ * A thread safe in-memory cache with a maximum capacity and support for
+ * evicting stale entries based on an LRU policy.
+ * <p>
+ * Same semantics as {@link LeastRecentlyUsedCache}, but intended to be used
+ * concurrently by multiple threads without additional synchronization.
+ * </p>
+ * <p>
+ * The entries are stored in a {@link ConcurrentHashMap}. Read access (e.g.
+ * <em>get</em>, <em>update</em>, <em>find</em>) doesn't lock. It updates the
+ * last-access time of the entry immediately, but only records the access in a
+ * small, per thread striped buffer. The buffered accesses are applied to the
+ * access-time ordered list, when a buffer gets filled, or an entry must be
+ * added. If a buffer is full, further accesses are not recorded until the
+ * buffer is drained. Therefore the list is only approximately in access-time
+ * order, and a new entry evicts the least-recently accessed stale entry out of
+ * a sample of the eldest entries.
+ * </p>
+ * <p>
+ * Write access (e.g. <em>put</em>, <em>remove</em>) is serialized by a lock,
+ * which is only held for the modification of the list.
+ * </p>
+ * <p>
+ * Eviction listeners are called without holding that lock.
+ * </p>
+ *
+ * @param <K> The type of the keys used in the cache.
+ * @param <V> The type of the values used in the cache.
+ */
+public class ConcurrentLeastRecentlyUsedCache<K, V> {
+
+	/**
+	 * Number of recorded read accesses per buffer.
+	 */
+	private static final int BUFFER_SIZE = 32;
+	/**
+	 * Number of recorded read accesses, which starts to drain the buffers.
+	 */
+	private static final int DRAIN_THRESHOLD = BUFFER_SIZE / 2;
+	/**
+	 * Number of eldest entries checked for being stale, when a new entry is
+	 * added to a full cache.
+	 */
+	private static final int EVICTION_SAMPLES = 8;
+	/**
+	 * Maximum number of buffers.
+	 */
+	private static final int MAX_BUFFERS = 64;
+
+	private final ConcurrentMap<K, CacheEntry<K, V>> cache;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final ReadBuffer<K, V>[] buffers;
+	private final int bufferMask;
+	private final CacheEntry<K, V> header;
+	private final List<EvictionListener<V>> evictionListeners = new CopyOnWriteArrayList<>();
+	private Collection<V> values;
+	private volatile int capacity;
+	private volatile long expirationThresholdNanos;
+	private volatile boolean evictOnReadAccess = true;
+	private volatile boolean updateOnReadAccess = true;
+
+	/**
+	 * Creates a cache with an initial capacity of
+	 * {@link LeastRecentlyUsedCache#DEFAULT_INITIAL_CAPACITY}, a maximum
+	 * capacity of {@link LeastRecentlyUsedCache#DEFAULT_CAPACITY} entries and
+	 * an expiration threshold of
+	 * {@link LeastRecentlyUsedCache#DEFAULT_THRESHOLD_SECS} seconds.
+	 */
+	public ConcurrentLeastRecentlyUsedCache() {
+		this(LeastRecentlyUsedCache.DEFAULT_INITIAL_CAPACITY, LeastRecentlyUsedCache.DEFAULT_CAPACITY,
+				LeastRecentlyUsedCache.DEFAULT_THRESHOLD_SECS);
+	}
+
+	/**
+	 * Creates a cache based on given configuration parameters.
+	 * <p>
+	 * The cache's initial capacity is set to the lesser of
+	 * {@link LeastRecentlyUsedCache#DEFAULT_INITIAL_CAPACITY} and
+	 * <em>capacity</em>.
+	 *
+	 * @param capacity the maximum number of entries the cache can manage
+	 * @param threshold the period of time of inactivity (in seconds) after
+	 *            which an entry is considered stale and can be evicted from
+	 *            the cache if a new entry is to be added to the cache
+	 */
+	public ConcurrentLeastRecentlyUsedCache(final int capacity, final long threshold) {
+
+		this(Math.min(capacity, LeastRecentlyUsedCache.DEFAULT_INITIAL_CAPACITY), capacity, threshold);
+	}
+
+	/**
+	 * Creates a cache based on given configuration parameters.
+	 *
+	 * @param initialCapacity The initial number of entries the cache will be
+	 *            initialized to support. The cache's capacity will be doubled
+	 *            dynamically every time 0.75 percent of its current capacity is
+	 *            used but it will never exceed <em>maxCapacity</em>.
+	 * @param maxCapacity The maximum number of entries the cache can manage
+	 * @param threshold The period of time of inactivity (in seconds) after
+	 *            which an entry is considered stale and can be evicted from
+	 *            the cache if a new entry is to be added to the cache
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public ConcurrentLeastRecentlyUsedCache(final int initialCapacity, final int maxCapacity, final long threshold) {
+
+		if (initialCapacity > maxCapacity) {
+			throw new IllegalArgumentException("initial capacity must be <= max capacity");
+		}
+		this.capacity = maxCapacity;
+		this.cache = new ConcurrentHashMap<>(initialCapacity);
+		setExpirationThreshold(threshold);
+		int size = 1;
+		int processors = Runtime.getRuntime().availableProcessors();
+		while (size < processors * 2 && size < MAX_BUFFERS) {
+			size <<= 1;
+		}
+		this.buffers = new ReadBuffer[size];
+		for (int index = 0; index < size; ++index) {
+			this.buffers[index] = new ReadBuffer<>();
+		}
+		this.bufferMask = size - 1;
+		this.header = new CacheEntry<>();
+		this.header.after = this.header.before = this.header;
+	}
+
+	/**
+	 * Registers a listener to be notified about entries being evicted from the
+	 * cache.
+	 *
+	 * @param listener the listener
+	 */
+	public void addEvictionListener(EvictionListener<V> listener) {
+		if (listener != null) {
+			this.evictionListeners.add(listener);
+		}
+	}
+
+	/**
+	 * Checks whether expired entries will automatically be evicted from the
+	 * cache on read access.
+	 *
+	 * @return {@code true} if expired entries will be evicted on read access.
+	 * @see LeastRecentlyUsedCache#isEvictingOnReadAccess()
+	 */
+	public boolean isEvictingOnReadAccess() {
+		return evictOnReadAccess;
+	}
+
+	/**
+	 * Sets whether expired entries should be automatically evicted from the
+	 * cache on read access.
+	 *
+	 * @param evict {@code true} if expired entries should be automatically
+	 *            evicted.
+	 * @see LeastRecentlyUsedCache#setEvictingOnReadAccess(boolean)
+	 */
+	public void setEvictingOnReadAccess(boolean evict) {
+		evictOnReadAccess = evict;
+	}
+
+	/**
+	 * Checks whether read access updates the last-access time of the entry.
+	 *
+	 * @return {@code true} if read access updates the last-access time.
+	 * @see LeastRecentlyUsedCache#isUpdatingOnReadAccess()
+	 */
+	public boolean isUpdatingOnReadAccess() {
+		return updateOnReadAccess;
+	}
+
+	/**
+	 * Sets whether read access updates the last-access time of the entry.
+	 *
+	 * @param update {@code true} if entry's last-access time should be
+	 *            updated on read access.
+	 * @see LeastRecentlyUsedCache#setUpdatingOnReadAccess(boolean)
+	 */
+	public void setUpdatingOnReadAccess(boolean update) {
+		updateOnReadAccess = update;
+	}
+
+	/**
+	 * Gets the period of time after which an entry is to be considered stale
+	 * if it hasn't be accessed.
+	 *
+	 * @return the threshold in seconds
+	 */
+	public final long getExpirationThreshold() {
+		return TimeUnit.NANOSECONDS.toSeconds(expirationThresholdNanos);
+	}
+
+	/**
+	 * Sets the period of time after which an entry is to be considered stale
+	 * if it hasn't be accessed.
+	 *
+	 * @param newThreshold the threshold in seconds
+	 */
+	public final void setExpirationThreshold(long newThreshold) {
+		setExpirationThreshold(newThreshold, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Sets the period of time after which an entry is to be considered stale
+	 * if it hasn't be accessed.
+	 *
+	 * @param newThreshold the threshold
+	 * @param unit TimeUnit for threshold
+	 */
+	public final void setExpirationThreshold(long newThreshold, TimeUnit unit) {
+		this.expirationThresholdNanos = unit.toNanos(newThreshold);
+	}
+
+	/**
+	 * Gets the maximum number of entries this cache can manage.
+	 *
+	 * @return the number of entries
+	 */
+	public final int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the maximum number of entries this cache can manage.
+	 *
+	 * @param capacity the maximum number of entries
+	 */
+	public final void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Gets the cache's current number of entries.
+	 *
+	 * @return the size
+	 */
+	public final int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Gets the number of entries that can be added to this cache without the
+	 * need for removing stale entries.
+	 *
+	 * @return The number of entries.
+	 */
+	public final int remainingCapacity() {
+		return Math.max(0, capacity - cache.size());
+	}
+
+	/**
+	 * Removes all entries from the cache.
+	 */
+	public final void clear() {
+		lock.lock();
+		try {
+			cache.clear();
+			CacheEntry<K, V> entry = header.after;
+			while (entry != header) {
+				CacheEntry<K, V> next = entry.after;
+				entry.remove();
+				entry = next;
+			}
+			for (ReadBuffer<K, V> buffer : buffers) {
+				buffer.clear();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Puts an entry to the cache.
+	 * <p>
+	 * An entry can be successfully added to the cache if any of the following
+	 * conditions are met:
+	 * <ul>
+	 * <li>The cache's remaining capacity is greater than zero.</li>
+	 * <li>The cache contains at least one <em>stale</em> entry within the
+	 * sample of the eldest entries.</li>
+	 * </ul>
+	 *
+	 * If the cache contains a value for the key, the value is replaced by the
+	 * new one and the last-access time is updated.
+	 *
+	 * @param key the key to store the value under
+	 * @param value the value to store
+	 * @return {@code true} if the entry could be added to the cache,
+	 *         {@code false} otherwise, e.g. because the cache's remaining
+	 *         capacity is zero and no stale entries can be evicted
+	 * @see #addEvictionListener(EvictionListener)
+	 */
+	public final boolean put(K key, V value) {
+		if (value == null) {
+			return false;
+		}
+		CacheEntry<K, V> evicted = null;
+		lock.lock();
+		try {
+			CacheEntry<K, V> existingEntry = cache.get(key);
+			if (existingEntry != null) {
+				existingEntry.remove();
+				add(key, value);
+				return true;
+			}
+			evicted = makeRoom();
+			if (evicted == null && cache.size() >= capacity) {
+				return false;
+			}
+			add(key, value);
+		} finally {
+			lock.unlock();
+			if (evicted != null) {
+				notifyEvictionListeners(evicted.getValue());
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the value for a key, or adds the provided value, if the cache
+	 * doesn't contain a value for that key.
+	 * <p>
+	 * The check and the addition are executed atomically. If the value is
+	 * added, same conditions as for {@link #put(Object, Object)} apply.
+	 *
+	 * @param key the key to store the value under
+	 * @param value the value to store, if no value is available for the key
+	 * @return the already cached value, or the provided value, if that was
+	 *         added. {@code null}, if the provided value could not be added,
+	 *         e.g. because the cache's remaining capacity is zero and no stale
+	 *         entries can be evicted
+	 */
+	public final V getOrAdd(K key, V value) {
+		if (key == null || value == null) {
+			return null;
+		}
+		V current = get(key);
+		if (current != null) {
+			return current;
+		}
+		CacheEntry<K, V> evicted = null;
+		lock.lock();
+		try {
+			CacheEntry<K, V> existingEntry = cache.get(key);
+			if (existingEntry != null) {
+				existingEntry.touch();
+				record(existingEntry);
+				return existingEntry.getValue();
+			}
+			evicted = makeRoom();
+			if (evicted == null && cache.size() >= capacity) {
+				return null;
+			}
+			add(key, value);
+		} finally {
+			lock.unlock();
+			if (evicted != null) {
+				notifyEvictionListeners(evicted.getValue());
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Make room for a new entry, if the cache is full.
+	 *
+	 * Must be called holding the lock. Applies the buffered read accesses and
+	 * evicts the least-recently accessed stale entry out of the sample of the
+	 * eldest entries.
+	 *
+	 * @return evicted entry, or {@code null}, if no entry was evicted.
+	 */
+	private CacheEntry<K, V> makeRoom() {
+		if (cache.size() < capacity) {
+			return null;
+		}
+		drainBuffers();
+		long thresholdNanos = expirationThresholdNanos;
+		CacheEntry<K, V> entry = header.after;
+		CacheEntry<K, V> stale = null;
+		for (int sample = 0; sample < EVICTION_SAMPLES && entry != header; ++sample) {
+			if (entry.isStale(thresholdNanos)) {
+				if (stale == null || entry.lastUpdate < stale.lastUpdate) {
+					stale = entry;
+				}
+			}
+			entry = entry.after;
+		}
+		if (stale != null) {
+			stale.remove();
+			cache.remove(stale.getKey(), stale);
+		}
+		return stale;
+	}
+
+	private void notifyEvictionListeners(V value) {
+		for (EvictionListener<V> listener : evictionListeners) {
+			listener.onEviction(value);
+		}
+	}
+
+	/**
+	 * Gets the eldest value in the store.
+	 *
+	 * The eldest value is the one that has been used least recently, as far
+	 * as the recorded read accesses are concerned.
+	 *
+	 * @return the value
+	 */
+	final V getEldest() {
+		lock.lock();
+		try {
+			drainBuffers();
+			return header.after.getValue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Add entry. Must be called holding the lock.
+	 *
+	 * @param key key of entry
+	 * @param value value of entry
+	 */
+	private void add(K key, V value) {
+		CacheEntry<K, V> entry = new CacheEntry<>(key, value);
+		cache.put(key, entry);
+		entry.addBefore(header);
+	}
+
+	/**
+	 * Gets a value from the cache.
+	 *
+	 * @param key the key to look up in the cache
+	 * @return the value, if the key has been found in the cache and the value
+	 *         is not stale, {@code null}, otherwise
+	 * @see LeastRecentlyUsedCache#get(Object)
+	 */
+	public final V get(K key) {
+		if (key == null) {
+			return null;
+		}
+		CacheEntry<K, V> entry = cache.get(key);
+		if (entry == null) {
+			return null;
+		}
+		return access(entry);
+	}
+
+	private V access(CacheEntry<K, V> entry) {
+		if (evictOnReadAccess && expirationThresholdNanos > 0 && entry.isStale(expirationThresholdNanos)) {
+			if (evict(entry)) {
+				notifyEvictionListeners(entry.getValue());
+			}
+			return null;
+		} else {
+			if (updateOnReadAccess) {
+				entry.touch();
+				record(entry);
+			}
+			return entry.getValue();
+		}
+	}
+
+	/**
+	 * Evict entry.
+	 *
+	 * @param entry entry to evict
+	 * @return {@code true}, if the entry was evicted, {@code false}, if the
+	 *         entry was already removed or replaced.
+	 */
+	private boolean evict(CacheEntry<K, V> entry) {
+		lock.lock();
+		try {
+			if (cache.remove(entry.getKey(), entry)) {
+				entry.remove();
+				return true;
+			}
+		} finally {
+			lock.unlock();
+		}
+		return false;
+	}
+
+	/**
+	 * Updates the last-access time of an entry.
+	 *
+	 * @param key the key of the entry
+	 * @return {@code true}, if updated, {@code false}, otherwise.
+	 */
+	public final boolean update(K key) {
+		if (key == null) {
+			return false;
+		}
+		CacheEntry<K, V> entry = cache.get(key);
+		if (entry == null) {
+			return false;
+		}
+		entry.touch();
+		record(entry);
+		return true;
+	}
+
+	/**
+	 * Removes an entry from the cache.
+	 *
+	 * @param key the key of the entry to remove
+	 * @return the removed value or {@code null}, if the cache does not contain
+	 *         the key
+	 */
+	public final V remove(K key) {
+		if (key == null) {
+			return null;
+		}
+		lock.lock();
+		try {
+			CacheEntry<K, V> entry = cache.remove(key);
+			if (entry != null) {
+				entry.remove();
+				return entry.getValue();
+			}
+		} finally {
+			lock.unlock();
+		}
+		return null;
+	}
+
+	/**
+	 * Removes provided entry from the cache.
+	 *
+	 * @param key the key of the entry to remove
+	 * @param value value of the entry to remove
+	 * @return the removed value or {@code null}, if the cache does not contain
+	 *         the key or the value doesn't match the cached value.
+	 */
+	public final V remove(K key, V value) {
+		if (key == null) {
+			return null;
+		}
+		CacheEntry<K, V> entry = cache.get(key);
+		if (entry == null || entry.getValue() != value) {
+			return null;
+		}
+		return evict(entry) ? value : null;
+	}
+
+	/**
+	 * Finds a value based on a predicate.
+	 *
+	 * Returns the first matching value applying the
+	 * {@link #evictOnReadAccess} setting.
+	 *
+	 * @param predicate the condition to match. Assumed to match entries in a
+	 *            unique manner. Therefore stops on first match, even if that
+	 *            gets evicted on the read access.
+	 * @return the first value from the cache that matches according to the
+	 *         given predicate, or {@code null}, if no value matches
+	 */
+	public final V find(Predicate<V> predicate) {
+		return find(predicate, true);
+	}
+
+	/**
+	 * Finds a value based on a predicate.
+	 *
+	 * Returns the first matching value applying the
+	 * {@link #evictOnReadAccess} setting.
+	 *
+	 * @param predicate the condition to match
+	 * @param unique {@code true}, if the predicate is assumed to match entries
+	 *            in a unique manner and therefore stops on first match, even
+	 *            if that gets evicted on the read access. {@code false}, if
+	 *            the search is continued, if a matching entry gets evicted on
+	 *            read access.
+	 * @return the first value from the cache that matches according to the
+	 *         given predicate, or {@code null}, if no value matches
+	 */
+	public final V find(Predicate<V> predicate, boolean unique) {
+		if (predicate != null) {
+			for (CacheEntry<K, V> entry : cache.values()) {
+				if (predicate.accept(entry.getValue())) {
+					V value = access(entry);
+					if (unique || value != null) {
+						return value;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets iterator over all values contained in this cache.
+	 * <p>
+	 * The iterator returned is backed by this cache's underlying
+	 * {@link ConcurrentHashMap#values()}. The iterator is weakly consistent
+	 * and therefore doesn't throw a
+	 * {@link java.util.ConcurrentModificationException}. Values are accessed
+	 * applying the {@link #evictOnReadAccess} and {@link #updateOnReadAccess}
+	 * settings.
+	 * </p>
+	 * <p>
+	 * The {@link Iterator#remove()} method is not supported.
+	 * </p>
+	 *
+	 * @return an iterator over all values backed by the underlying map.
+	 */
+	public final Iterator<V> valuesIterator() {
+		final Iterator<CacheEntry<K, V>> iterator = cache.values().iterator();
+
+		return new Iterator<V>() {
+
+			private boolean hasNextCalled;
+			private V nextValue;
+
+			@Override
+			public boolean hasNext() {
+				if (!hasNextCalled) {
+					nextValue = null;
+					while (iterator.hasNext()) {
+						V value = access(iterator.next());
+						if (value != null) {
+							nextValue = value;
+							break;
+						}
+					}
+					hasNextCalled = true;
+				}
+				return nextValue != null;
+			}
+
+			@Override
+			public V next() {
+				hasNext();
+				hasNextCalled = false;
+				if (nextValue == null) {
+					throw new NoSuchElementException();
+				}
+				return nextValue;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Gets all values contained in this cache.
+	 *
+	 * The returned collection is backed by this cache and supports only
+	 * read access.
+	 *
+	 * @return the values
+	 * @see #valuesIterator()
+	 */
+	public final Collection<V> values() {
+		Collection<V> vs = values;
+		if (vs == null) {
+			vs = new AbstractCollection<V>() {
+
+				@Override
+				public final int size() {
+					return cache.size();
+				}
+
+				@Override
+				public final boolean contains(final Object o) {
+					return null != find(new Predicate<V>() {
+
+						@Override
+						public boolean accept(final V value) {
+							return value.equals(o);
+						}
+					}, false);
+				}
+
+				@Override
+				public final Iterator<V> iterator() {
+					return valuesIterator();
+				}
+
+				@Override
+				public final boolean add(Object o) {
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public final boolean remove(Object o) {
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public final void clear() {
+					throw new UnsupportedOperationException();
+				}
+			};
+			values = vs;
+		}
+		return vs;
+	}
+
+	/**
+	 * Record read access of entry.
+	 *
+	 * If the buffer of the current thread is full, the access is dropped.
+	 *
+	 * @param entry accessed entry
+	 */
+	private void record(CacheEntry<K, V> entry) {
+		long id = Thread.currentThread().getId();
+		ReadBuffer<K, V> buffer = buffers[(int) (id ^ (id >>> 16)) & bufferMask];
+		int index = buffer.count.getAndIncrement();
+		if (index < BUFFER_SIZE) {
+			buffer.entries.lazySet(index, entry);
+			if (index == DRAIN_THRESHOLD) {
+				tryDrainBuffers();
+			}
+		} else {
+			tryDrainBuffers();
+		}
+	}
+
+	private void tryDrainBuffers() {
+		if (lock.tryLock()) {
+			try {
+				drainBuffers();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Apply the recorded read accesses to the access-time ordered list. Must
+	 * be called holding the lock.
+	 */
+	private void drainBuffers() {
+		for (ReadBuffer<K, V> buffer : buffers) {
+			if (buffer.count.get() > 0) {
+				for (int index = 0; index < BUFFER_SIZE; ++index) {
+					CacheEntry<K, V> entry = buffer.entries.getAndSet(index, null);
+					if (entry != null && entry.isLinked()) {
+						entry.remove();
+						entry.addBefore(header);
+					}
+				}
+				buffer.count.set(0);
+			}
+		}
+	}
+
+	/**
+	 * Buffer for recorded read accesses.
+	 */
+	private static class ReadBuffer<K, V> {
+
+		private final AtomicReferenceArray<CacheEntry<K, V>> entries = new AtomicReferenceArray<>(BUFFER_SIZE);
+		private final AtomicInteger count = new AtomicInteger();
+
+		private void clear() {
+			for (int index = 0; index < BUFFER_SIZE; ++index) {
+				entries.set(index, null);
+			}
+			count.set(0);
+		}
+	}
+
+	private static class CacheEntry<K, V> {
+
+		private final K key;
+		private final V value;
+		private volatile long lastUpdate;
+		// guarded by lock
+		private CacheEntry<K, V> after;
+		private CacheEntry<K, V> before;
+
+		private CacheEntry() {
+			this.key = null;
+			this.value = null;
+			this.lastUpdate = -1;
+		}
+
+		private CacheEntry(K key, V value) {
+			this.value = value;
+			this.key = key;
+			this.lastUpdate = ClockUtil.nanoRealtime();
+		}
+
+		private K getKey() {
+			return key;
+		}
+
+		private V getValue() {
+			return value;
+		}
+
+		private boolean isStale(long thresholdNanos) {
+			return ClockUtil.nanoRealtime() - lastUpdate >= thresholdNanos;
+		}
+
+		private void touch() {
+			lastUpdate = ClockUtil.nanoRealtime();
+		}
+
+		private boolean isLinked() {
+			return after != null;
+		}
+
+		private void addBefore(CacheEntry<K, V> existingEntry) {
+			after = existingEntry;
+			before = existingEntry.before;
+			before.after = this;
+			after.before = this;
+		}
+
+		private void remove() {
+			if (after != null) {
+				before.after = after;
+				after.before = before;
+				after = before = null;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return new StringBuilder("CacheEntry [key: ").append(key).append(", last access: ").append(lastUpdate)
+					.append("]").toString();
+		}
+	}
+}
@@ -16,6 +16,8 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - add "mark" and "reset"
  *    Achim Kraus (Bosch Software Innovations GmbH) - add constructor without 
  *                                                    cloning of the provided data.
+ *    Bosch Software Innovations GmbH - add range constructor and skipBytes
+ *                                      to parse without copies
  ******************************************************************************/
 package org.eclipse.californium.elements.util;
 
@@ -115,6 +117,31 @@ public final class DatagramReader {
 		markBitIndex = currentBitIndex;
 	}
 
+	/**
+	 * Creates a new reader for a range of an array of bytes.
+	 * 
+	 * The array is not copied.
+	 * 
+	 * @param byteArray The byte array to read from.
+	 * @param offset offset of the range in the byte array.
+	 * @param length length of the range.
+	 * @throws IndexOutOfBoundsException if the range doesn't fit into the
+	 *             byte array
+	 */
+	public DatagramReader(final byte[] byteArray, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > byteArray.length) {
+			throw new IndexOutOfBoundsException(
+					"range [" + offset + "-" + (offset + length) + ") exceeds " + byteArray.length + " bytes.");
+		}
+		byteStream = new RangeInputStream(byteArray, offset, length);
+
+		// initialize bit buffer
+		currentByte = 0;
+		currentBitIndex = -1; // indicates that no byte read yet
+		markByte = currentByte;
+		markBitIndex = currentBitIndex;
+	}
+
 	/**
 	 * Creates a new reader for an bytes stream.
 	 * 
@@ -282,6 +309,26 @@ public final class DatagramReader {
 		return bytes;
 	}
 
+	/**
+	 * Skips a sequence of bytes of the stream.
+	 * 
+	 * @param count The number of bytes to skip.
+	 * @throws IllegalStateException if some bits of the current byte are unread
+	 * @throws IllegalArgumentException if provided count exceeds available
+	 *             bytes
+	 */
+	public void skipBytes(final int count) {
+		if (currentBitIndex > 0) {
+			throw new IllegalStateException(currentBitIndex + " bits unread!");
+		}
+		int available = byteStream.available();
+		if (available < count) {
+			throw new IllegalArgumentException(
+					"requested " + count + " bytes exceeds available " + available + " bytes.");
+		}
+		byteStream.skip(count);
+	}
+
 	/**
 	 * Reads the next byte from the stream.
 	 * 
@@ -12,9 +12,13 @@
  * 
  * Contributors:
  *    Bosch Software Innovations GmbH - initial creation
+ *    Bosch Software Innovations GmbH - add virtual threads
+ *    Bosch Software Innovations GmbH - check virtual threads by creating one
  ******************************************************************************/
 package org.eclipse.californium.elements.util;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -61,6 +65,59 @@ public class ExecutorsUtil {
 	 */
 	private static final int SPLIT_THRESHOLD = 1;
 
+	/**
+	 * {@code Thread.ofVirtual()}. {@code null}, if virtual threads are not
+	 * supported (requires Java 21, Java 19 and 20 only with
+	 * {@code --enable-preview}).
+	 */
+	private static final Method OF_VIRTUAL;
+	/**
+	 * {@code Thread.Builder.name(String, long)}.
+	 */
+	private static final Method BUILDER_NAME;
+	/**
+	 * {@code Thread.Builder.factory()}.
+	 */
+	private static final Method BUILDER_FACTORY;
+	/**
+	 * {@code Executors.newThreadPerTaskExecutor(ThreadFactory)}.
+	 */
+	private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+	static {
+		Method ofVirtual = null;
+		Method builderName = null;
+		Method builderFactory = null;
+		Method newThreadPerTaskExecutor = null;
+		try {
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			builderName = builder.getMethod("name", String.class, long.class);
+			builderFactory = builder.getMethod("factory");
+			newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			// Java 19 and 20 provide the methods as preview feature, which
+			// fails without --enable-preview. Create one (not started)
+			// virtual thread to check the support.
+			Object virtualBuilder = ofVirtual.invoke(null);
+			ThreadFactory factory = (ThreadFactory) builderFactory.invoke(virtualBuilder);
+			factory.newThread(WARMUP);
+			LOGGER.debug("virtual threads are supported");
+		} catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+			LOGGER.debug("virtual threads are not supported");
+			ofVirtual = null;
+		} catch (InvocationTargetException e) {
+			LOGGER.debug("virtual threads are not supported: {}", e.getCause().getMessage());
+			ofVirtual = null;
+		} catch (RuntimeException e) {
+			LOGGER.debug("virtual threads are not supported: {}", e.getMessage());
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = builderName;
+		BUILDER_FACTORY = builderFactory;
+		NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+	}
+
 	/**
 	 * Create a scheduled thread pool executor service.
 	 * 
@@ -113,6 +170,94 @@ public class ExecutorsUtil {
 		return executor;
 	}
 
+	/**
+	 * Check, if virtual threads are supported by the JVM.
+	 * 
+	 * Virtual threads require Java 21. Java 19 and 20 support them only with
+	 * {@code --enable-preview}.
+	 * 
+	 * @return {@code true}, if virtual threads are supported, {@code false},
+	 *         otherwise.
+	 */
+	public static boolean isVirtualThreadsSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * Create a thread factory for virtual threads.
+	 * 
+	 * @param namePrefix prefix of the thread names. A counter is appended.
+	 * @return thread factory for virtual threads
+	 * @throws UnsupportedOperationException if virtual threads are not
+	 *             supported
+	 * @see #isVirtualThreadsSupported()
+	 */
+	public static ThreadFactory newVirtualThreadFactory(String namePrefix) {
+		if (OF_VIRTUAL == null) {
+			throw new UnsupportedOperationException("virtual threads are not supported!");
+		}
+		try {
+			Object builder = OF_VIRTUAL.invoke(null);
+			builder = BUILDER_NAME.invoke(builder, namePrefix, 0L);
+			return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+		} catch (IllegalAccessException e) {
+			throw new UnsupportedOperationException("virtual threads are not accessible!", e);
+		} catch (InvocationTargetException e) {
+			throw new UnsupportedOperationException("virtual threads failed!", e.getCause());
+		}
+	}
+
+	/**
+	 * Create an executor service, which starts a new virtual thread for each
+	 * task.
+	 * 
+	 * Intended for tasks, which may block, e.g. resource handlers calling
+	 * slow backends. The number of threads is not limited.
+	 * 
+	 * @param namePrefix prefix of the thread names. A counter is appended.
+	 * @return virtual thread per task executor service
+	 * @throws UnsupportedOperationException if virtual threads are not
+	 *             supported
+	 * @see #isVirtualThreadsSupported()
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+		ThreadFactory factory = newVirtualThreadFactory(namePrefix);
+		try {
+			LOGGER.trace("create virtual thread per task executor");
+			return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+		} catch (IllegalAccessException e) {
+			throw new UnsupportedOperationException("virtual threads are not accessible!", e);
+		} catch (InvocationTargetException e) {
+			throw new UnsupportedOperationException("virtual threads failed!", e.getCause());
+		}
+	}
+
+	/**
+	 * Create a scheduled executor service, which executes the direct jobs on
+	 * virtual threads.
+	 * 
+	 * Scheduled jobs (timers) are executed on a platform thread of the
+	 * provided thread factory, all other jobs on new virtual threads.
+	 * 
+	 * @param namePrefix prefix of the virtual thread names. A counter is
+	 *            appended.
+	 * @param threadFactory thread factory for the platform thread of the
+	 *            scheduled jobs
+	 * @return scheduled executor service using virtual threads
+	 * @throws UnsupportedOperationException if virtual threads are not
+	 *             supported
+	 * @see #isVirtualThreadsSupported()
+	 */
+	public static ScheduledExecutorService newVirtualThreadScheduledExecutor(String namePrefix,
+			ThreadFactory threadFactory) {
+		ExecutorService directExecutor = newVirtualThreadPerTaskExecutor(namePrefix);
+		LOGGER.trace("create scheduled executor using virtual threads");
+		SplitScheduledThreadPoolExecutor executor = new SplitScheduledThreadPoolExecutor(SPLIT_THRESHOLD,
+				threadFactory, directExecutor);
+		executor.schedule(WARMUP, 0, TimeUnit.NANOSECONDS);
+		return executor;
+	}
+
 	/**
 	 * Create a scheduler with 2 threads in pools.
 	 * 
@@ -214,6 +359,21 @@ public class ExecutorsUtil {
 			}
 		}
 
+		/**
+		 * Create new executor with provided direct executor.
+		 * 
+		 * @param schedulerPoolSize number of threads used for scheduled jobs.
+		 * @param threadFactory thread factory for the scheduler threads.
+		 * @param directExecutor executor for direct jobs. Shutdown together
+		 *            with this executor.
+		 */
+		public SplitScheduledThreadPoolExecutor(int schedulerPoolSize, ThreadFactory threadFactory,
+				ExecutorService directExecutor) {
+			super(schedulerPoolSize, threadFactory);
+			setMaximumPoolSize(schedulerPoolSize);
+			this.directExecutor = directExecutor;
+		}
+
 		@Override
 		public void execute(Runnable command) {
 			if (directExecutor == null) {
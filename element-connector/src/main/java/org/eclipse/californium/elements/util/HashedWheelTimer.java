@@ -0,0 +1,541 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timing wheel.
+ * <p>
+ * Timer for a large number of timeouts, which are usually cancelled before
+ * they expire, e.g. retransmission timeouts. Scheduling and cancelling a
+ * timeout is done in O(1) without locking. The timeouts are kept in a wheel of
+ * buckets, one bucket for each tick. A single thread advances the wheel every
+ * tick and expires all timeouts of the current bucket in one batch. Therefore
+ * the timeouts are not expired exactly at their deadline, but on the first
+ * tick after it.
+ * </p>
+ * <p>
+ * The tasks of expired timeouts are executed by the timer's thread and must
+ * therefore return fast, e.g. by passing the work to an other executor.
+ * </p>
+ * <p>
+ * See George Varghese and Tony Lauck, "Hashed and Hierarchical Timing Wheels:
+ * Data Structures for the Efficient Implementation of a Timer Facility".
+ * </p>
+ */
+public class HashedWheelTimer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(HashedWheelTimer.class.getName());
+
+	/**
+	 * Default duration of a tick in milliseconds.
+	 */
+	public static final long DEFAULT_TICK_DURATION_MILLIS = 10;
+	/**
+	 * Default number of ticks per wheel.
+	 */
+	public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+	/**
+	 * Maximum number of new timeouts transferred to the wheel per tick.
+	 * Limits the time spent for transferring, if timeouts are scheduled
+	 * faster than the timer is able to process them.
+	 */
+	private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+	private static final int WORKER_INIT = 0;
+	private static final int WORKER_STARTED = 1;
+	private static final int WORKER_SHUTDOWN = 2;
+
+	/**
+	 * Thread factory for the worker thread.
+	 */
+	private final ThreadFactory threadFactory;
+	/**
+	 * Duration of a tick in nanoseconds.
+	 */
+	private final long tickDuration;
+	/**
+	 * Buckets of the wheel.
+	 */
+	private final Bucket[] wheel;
+	/**
+	 * Mask for the index of the bucket. The size of the wheel is a power of
+	 * two.
+	 */
+	private final int mask;
+	/**
+	 * New timeouts, transferred into the wheel by the worker thread.
+	 */
+	private final Queue<Timeout> timeouts = new ConcurrentLinkedQueue<>();
+	/**
+	 * Cancelled timeouts, removed from the wheel by the worker thread.
+	 */
+	private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+	/**
+	 * Number of pending timeouts.
+	 */
+	private final AtomicLong pendingTimeouts = new AtomicLong();
+	/**
+	 * Tasks of timeouts, which are neither expired nor cancelled, when the
+	 * timer is stopped.
+	 */
+	private final List<Runnable> unprocessedTasks = new ArrayList<>();
+	/**
+	 * State of the worker thread.
+	 */
+	private volatile int workerState = WORKER_INIT;
+	/**
+	 * Start time of the worker in nanoseconds. The deadlines of the timeouts
+	 * are relative to this time.
+	 */
+	private volatile long startTime;
+	/**
+	 * Worker thread.
+	 */
+	private Thread worker;
+	/**
+	 * Current tick. Only accessed by the worker thread.
+	 */
+	private long tick;
+
+	/**
+	 * Create timer with default tick duration and wheel size.
+	 *
+	 * @param threadFactory thread factory for the worker thread
+	 * @throws NullPointerException if thread factory is {@code null}
+	 * @see #DEFAULT_TICK_DURATION_MILLIS
+	 * @see #DEFAULT_TICKS_PER_WHEEL
+	 */
+	public HashedWheelTimer(ThreadFactory threadFactory) {
+		this(threadFactory, DEFAULT_TICK_DURATION_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_TICKS_PER_WHEEL);
+	}
+
+	/**
+	 * Create timer.
+	 *
+	 * @param threadFactory thread factory for the worker thread
+	 * @param tickDuration duration of a tick
+	 * @param unit time unit of the tick duration
+	 * @param ticksPerWheel number of ticks per wheel. Rounded up to the next
+	 *            power of two.
+	 * @throws NullPointerException if thread factory or unit is {@code null}
+	 * @throws IllegalArgumentException if tick duration is less than one
+	 *             millisecond, or ticks per wheel is less than {@code 1} or
+	 *             larger than {@code 2^30}
+	 */
+	public HashedWheelTimer(ThreadFactory threadFactory, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+		if (threadFactory == null) {
+			throw new NullPointerException("thread factory must not be null!");
+		}
+		if (unit == null) {
+			throw new NullPointerException("unit must not be null!");
+		}
+		if (unit.toMillis(tickDuration) < 1) {
+			throw new IllegalArgumentException("tick duration " + tickDuration + " " + unit
+					+ " must be at least 1 ms!");
+		}
+		if (ticksPerWheel < 1 || ticksPerWheel > (1 << 30)) {
+			throw new IllegalArgumentException("ticks per wheel " + ticksPerWheel + " must be in range [1...2^30]!");
+		}
+		int size = 1;
+		while (size < ticksPerWheel) {
+			size <<= 1;
+		}
+		this.threadFactory = threadFactory;
+		this.tickDuration = unit.toNanos(tickDuration);
+		this.wheel = new Bucket[size];
+		for (int index = 0; index < size; ++index) {
+			this.wheel[index] = new Bucket();
+		}
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Start the worker thread of the timer.
+	 *
+	 * Called by {@link #schedule(Runnable, long, TimeUnit)}, if not already
+	 * started.
+	 *
+	 * @throws IllegalStateException if the timer is already stopped
+	 */
+	public synchronized void start() {
+		switch (workerState) {
+		case WORKER_INIT:
+			startTime = System.nanoTime();
+			worker = threadFactory.newThread(new Runnable() {
+
+				@Override
+				public void run() {
+					work();
+				}
+			});
+			workerState = WORKER_STARTED;
+			worker.start();
+			break;
+		case WORKER_STARTED:
+			break;
+		default:
+			throw new IllegalStateException("timer already stopped!");
+		}
+	}
+
+	/**
+	 * Stop the timer.
+	 *
+	 * Waits until the worker thread terminates. A stopped timer can not be
+	 * restarted.
+	 *
+	 * @return tasks of the timeouts, which are neither expired nor cancelled
+	 * @throws IllegalStateException if called by a task of this timer
+	 */
+	public List<Runnable> stop() {
+		Thread worker;
+		synchronized (this) {
+			if (Thread.currentThread() == this.worker) {
+				throw new IllegalStateException("timer must not be stopped by one of its tasks!");
+			}
+			int state = workerState;
+			workerState = WORKER_SHUTDOWN;
+			if (state != WORKER_STARTED) {
+				return new ArrayList<>();
+			}
+			worker = this.worker;
+		}
+		boolean interrupted = false;
+		while (worker.isAlive()) {
+			worker.interrupt();
+			try {
+				worker.join(100);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (unprocessedTasks) {
+			return new ArrayList<>(unprocessedTasks);
+		}
+	}
+
+	/**
+	 * Schedule task.
+	 *
+	 * @param task task to be executed, when the timeout expires
+	 * @param delay delay of the timeout
+	 * @param unit time unit of the delay
+	 * @return timeout to cancel the task
+	 * @throws NullPointerException if task or unit is {@code null}
+	 * @throws RejectedExecutionException if the timer is already stopped
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		if (task == null) {
+			throw new NullPointerException("task must not be null!");
+		}
+		if (unit == null) {
+			throw new NullPointerException("unit must not be null!");
+		}
+		if (workerState != WORKER_STARTED) {
+			try {
+				start();
+			} catch (IllegalStateException e) {
+				throw new RejectedExecutionException("timer already stopped!");
+			}
+		}
+		long deadline = System.nanoTime() + unit.toNanos(delay) - startTime;
+		if (delay > 0 && deadline < 0) {
+			// guard against overflow
+			deadline = Long.MAX_VALUE;
+		}
+		Timeout timeout = new Timeout(this, task, deadline);
+		pendingTimeouts.incrementAndGet();
+		timeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Get the number of pending timeouts.
+	 *
+	 * @return number of timeouts, which are neither expired nor removed after
+	 *         cancellation
+	 */
+	public long getPendingTimeouts() {
+		return pendingTimeouts.get();
+	}
+
+	/**
+	 * Advance the wheel every tick until the timer is stopped.
+	 */
+	private void work() {
+		do {
+			if (waitForNextTick()) {
+				Bucket bucket = wheel[(int) (tick & mask)];
+				processCancelledTimeouts();
+				transferTimeoutsToBuckets();
+				bucket.expireTimeouts();
+				++tick;
+			}
+		} while (workerState == WORKER_STARTED);
+
+		synchronized (unprocessedTasks) {
+			for (Bucket bucket : wheel) {
+				bucket.clearTimeouts(unprocessedTasks);
+			}
+			Timeout timeout;
+			while ((timeout = timeouts.poll()) != null) {
+				if (!timeout.isCancelled()) {
+					unprocessedTasks.add(timeout.task);
+				}
+			}
+		}
+		cancelledTimeouts.clear();
+		pendingTimeouts.set(0);
+	}
+
+	/**
+	 * Wait for the next tick.
+	 *
+	 * @return {@code true}, if the next tick is reached, {@code false}, if
+	 *         the timer is stopped.
+	 */
+	private boolean waitForNextTick() {
+		long deadline = tickDuration * (tick + 1);
+		while (true) {
+			long current = System.nanoTime() - startTime;
+			long sleepMillis = TimeUnit.NANOSECONDS.toMillis(deadline - current + 999999);
+			if (sleepMillis <= 0) {
+				return true;
+			}
+			try {
+				Thread.sleep(sleepMillis);
+			} catch (InterruptedException e) {
+				if (workerState == WORKER_SHUTDOWN) {
+					return false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Transfer new timeouts into their buckets.
+	 */
+	private void transferTimeoutsToBuckets() {
+		for (int count = 0; count < MAX_TRANSFERS_PER_TICK; ++count) {
+			Timeout timeout = timeouts.poll();
+			if (timeout == null) {
+				break;
+			}
+			if (timeout.isCancelled()) {
+				pendingTimeouts.decrementAndGet();
+				continue;
+			}
+			long calculated = timeout.deadline / tickDuration;
+			timeout.remainingRounds = (calculated - tick) / wheel.length;
+			// schedule deadlines in the past for the current tick
+			long ticks = Math.max(calculated, tick);
+			wheel[(int) (ticks & mask)].add(timeout);
+		}
+	}
+
+	/**
+	 * Remove cancelled timeouts from their buckets.
+	 */
+	private void processCancelledTimeouts() {
+		Timeout timeout;
+		while ((timeout = cancelledTimeouts.poll()) != null) {
+			if (timeout.bucket != null) {
+				timeout.bucket.remove(timeout);
+			}
+		}
+	}
+
+	/**
+	 * Timeout of a scheduled task.
+	 */
+	public static final class Timeout {
+
+		private static final int STATE_INIT = 0;
+		private static final int STATE_CANCELLED = 1;
+		private static final int STATE_EXPIRED = 2;
+
+		private final HashedWheelTimer timer;
+		private final Runnable task;
+		/**
+		 * Deadline in nanoseconds relative to the start time of the timer.
+		 */
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(STATE_INIT);
+
+		// fields only accessed by the worker thread
+		private long remainingRounds;
+		private Bucket bucket;
+		private Timeout next;
+		private Timeout prev;
+
+		private Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+			this.timer = timer;
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancel the timeout.
+		 *
+		 * @return {@code true}, if the timeout is cancelled, {@code false}, if
+		 *         the timeout is already expired or cancelled.
+		 */
+		public boolean cancel() {
+			if (!state.compareAndSet(STATE_INIT, STATE_CANCELLED)) {
+				return false;
+			}
+			timer.cancelledTimeouts.add(this);
+			return true;
+		}
+
+		/**
+		 * Check, if the timeout is cancelled.
+		 *
+		 * @return {@code true}, if cancelled, {@code false}, otherwise.
+		 */
+		public boolean isCancelled() {
+			return state.get() == STATE_CANCELLED;
+		}
+
+		/**
+		 * Check, if the timeout is expired.
+		 *
+		 * @return {@code true}, if expired, {@code false}, otherwise.
+		 */
+		public boolean isExpired() {
+			return state.get() == STATE_EXPIRED;
+		}
+
+		/**
+		 * Check, if the timeout is either expired or cancelled.
+		 *
+		 * @return {@code true}, if expired or cancelled, {@code false},
+		 *         otherwise.
+		 */
+		public boolean isDone() {
+			return state.get() != STATE_INIT;
+		}
+
+		/**
+		 * Expire the timeout and execute the task.
+		 */
+		private void expire() {
+			if (state.compareAndSet(STATE_INIT, STATE_EXPIRED)) {
+				try {
+					task.run();
+				} catch (Throwable t) {
+					LOGGER.warn("task of timeout failed!", t);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Bucket of the wheel. Double linked list of timeouts. Only accessed by
+	 * the worker thread.
+	 */
+	private final class Bucket {
+
+		private Timeout head;
+		private Timeout tail;
+
+		private void add(Timeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		private Timeout remove(Timeout timeout) {
+			Timeout next = timeout.next;
+			if (timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if (timeout.next != null) {
+				timeout.next.prev = timeout.prev;
+			}
+			if (timeout == head) {
+				if (timeout == tail) {
+					head = tail = null;
+				} else {
+					head = next;
+				}
+			} else if (timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+			pendingTimeouts.decrementAndGet();
+			return next;
+		}
+
+		/**
+		 * Expire all timeouts of this bucket, which are in the current round.
+		 */
+		private void expireTimeouts() {
+			Timeout timeout = head;
+			while (timeout != null) {
+				if (timeout.remainingRounds <= 0) {
+					Timeout next = remove(timeout);
+					timeout.expire();
+					timeout = next;
+				} else if (timeout.isCancelled()) {
+					timeout = remove(timeout);
+				} else {
+					--timeout.remainingRounds;
+					timeout = timeout.next;
+				}
+			}
+		}
+
+		/**
+		 * Remove all timeouts of this bucket.
+		 *
+		 * @param unprocessed list to add the tasks of the timeouts, which are
+		 *            neither expired nor cancelled
+		 */
+		private void clearTimeouts(List<Runnable> unprocessed) {
+			Timeout timeout = head;
+			while (timeout != null) {
+				if (!timeout.isDone()) {
+					unprocessed.add(timeout.task);
+				}
+				timeout = remove(timeout);
+			}
+		}
+	}
+}
@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reference counted byte array from a {@link ByteBufferPool}.
+ *
+ * A pooled buffer is acquired with one reference. Each additional owner must
+ * call {@link #retain()}, and each owner must call {@link #release()}, when the
+ * content is not longer used. With the last release the buffer is returned to
+ * its pool and the content must not be accessed anymore.
+ *
+ * The leak detection, enabled by {@link #setLeakDetection(boolean)} or the
+ * system property {@value #LEAK_DETECTION_PROPERTY}, tracks the acquired
+ * buffers. If a buffer gets garbage collected without being released, the
+ * leak is logged together with the stack trace of the acquisition, and the
+ * backing array is returned to the pool. The leak detection is intended for
+ * debugging, it adds the costs of a stack trace to each acquisition.
+ */
+public final class PooledBuffer {
+
+	/**
+	 * Name of system property to enable the leak detection.
+	 */
+	public static final String LEAK_DETECTION_PROPERTY = "org.eclipse.californium.elements.util.PooledBuffer.leakDetection";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PooledBuffer.class.getName());
+
+	private static final ReferenceQueue<PooledBuffer> LEAK_QUEUE = new ReferenceQueue<PooledBuffer>();
+	/**
+	 * Set of trackers. Keeps the trackers reachable until they are enqueued.
+	 */
+	private static final Set<LeakTracker> TRACKERS = Collections
+			.newSetFromMap(new ConcurrentHashMap<LeakTracker, Boolean>());
+	private static final AtomicLong LEAKS = new AtomicLong();
+
+	private static volatile boolean leakDetection = Boolean.getBoolean(LEAK_DETECTION_PROPERTY);
+
+	private final ByteBufferPool pool;
+	private final ByteBuffer buffer;
+	private final AtomicInteger references;
+	private final LeakTracker tracker;
+	private volatile int length;
+
+	private PooledBuffer(ByteBufferPool pool, ByteBuffer buffer) {
+		this.pool = pool;
+		this.buffer = buffer;
+		this.references = new AtomicInteger(1);
+		this.tracker = leakDetection ? new LeakTracker(this) : null;
+	}
+
+	/**
+	 * Acquire buffer from pool.
+	 *
+	 * @param pool pool of heap buffers
+	 * @return pooled buffer with one reference and the length {@code 0}.
+	 * @throws IllegalArgumentException if the pool provides direct buffers
+	 */
+	public static PooledBuffer acquire(ByteBufferPool pool) {
+		if (leakDetection) {
+			detectLeaks();
+		}
+		ByteBuffer buffer = pool.acquire();
+		if (!buffer.hasArray() || buffer.arrayOffset() != 0) {
+			pool.release(buffer);
+			throw new IllegalArgumentException("pool must provide heap buffers!");
+		}
+		return new PooledBuffer(pool, buffer);
+	}
+
+	/**
+	 * Gets the backing array.
+	 *
+	 * The array is usually larger than the {@link #length()}.
+	 *
+	 * @return backing array
+	 * @throws IllegalStateException if the buffer is already released
+	 */
+	public byte[] array() {
+		if (references.get() <= 0) {
+			throw new IllegalStateException("buffer already released!");
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * Gets the capacity of the backing array.
+	 *
+	 * @return capacity in bytes
+	 */
+	public int capacity() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * Gets the length of the content.
+	 *
+	 * @return length of content in bytes.
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Sets the length of the content.
+	 *
+	 * @param length length of content in bytes
+	 * @throws IllegalArgumentException if the length exceeds the capacity or
+	 *             is negative
+	 */
+	public void setLength(int length) {
+		if (length < 0 || length > buffer.capacity()) {
+			throw new IllegalArgumentException(
+					"length " + length + " exceeds capacity " + buffer.capacity() + " or is negative!");
+		}
+		this.length = length;
+	}
+
+	/**
+	 * Gets a copy of the content.
+	 *
+	 * @return byte array with the content of {@link #length()}.
+	 */
+	public byte[] toByteArray() {
+		byte[] data = new byte[length];
+		System.arraycopy(array(), 0, data, 0, length);
+		return data;
+	}
+
+	/**
+	 * Gets the number of references.
+	 *
+	 * @return number of references. {@code 0}, if released.
+	 */
+	public int references() {
+		return references.get();
+	}
+
+	/**
+	 * Add reference.
+	 *
+	 * @return this buffer for command chaining
+	 * @throws IllegalStateException if the buffer is already released
+	 */
+	public PooledBuffer retain() {
+		while (true) {
+			int current = references.get();
+			if (current <= 0) {
+				throw new IllegalStateException("buffer already released!");
+			}
+			if (references.compareAndSet(current, current + 1)) {
+				return this;
+			}
+		}
+	}
+
+	/**
+	 * Release reference.
+	 *
+	 * Returns the buffer to its pool, if the last reference is released.
+	 *
+	 * @return {@code true}, if the last reference is released, {@code false},
+	 *         otherwise.
+	 * @throws IllegalStateException if the buffer is already released
+	 */
+	public boolean release() {
+		while (true) {
+			int current = references.get();
+			if (current <= 0) {
+				throw new IllegalStateException("buffer already released!");
+			}
+			if (references.compareAndSet(current, current - 1)) {
+				if (current == 1) {
+					if (tracker != null) {
+						tracker.close();
+					}
+					pool.release(buffer);
+					return true;
+				}
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Enable or disable leak detection for buffers acquired afterwards.
+	 *
+	 * @param enable {@code true}, to enable, {@code false}, to disable the
+	 *            leak detection.
+	 */
+	public static void setLeakDetection(boolean enable) {
+		leakDetection = enable;
+	}
+
+	/**
+	 * Check, if leak detection is enabled.
+	 *
+	 * @return {@code true}, if enabled, {@code false}, otherwise.
+	 */
+	public static boolean isLeakDetection() {
+		return leakDetection;
+	}
+
+	/**
+	 * Gets the number of detected leaks.
+	 *
+	 * @return number of detected leaks
+	 */
+	public static long getLeaks() {
+		return LEAKS.get();
+	}
+
+	/**
+	 * Process the trackers of garbage collected buffers.
+	 *
+	 * Called with each acquisition, if leak detection is enabled. May be
+	 * called additionally, e.g. by tests.
+	 *
+	 * @return number of newly detected leaks
+	 */
+	public static int detectLeaks() {
+		int leaks = 0;
+		Reference<? extends PooledBuffer> reference;
+		while ((reference = LEAK_QUEUE.poll()) != null) {
+			LeakTracker tracker = (LeakTracker) reference;
+			if (TRACKERS.remove(tracker)) {
+				++leaks;
+				LEAKS.incrementAndGet();
+				LOGGER.error("pooled buffer of {} bytes not released!", tracker.buffer.capacity(), tracker.acquisition);
+				tracker.pool.release(tracker.buffer);
+			}
+		}
+		return leaks;
+	}
+
+	/**
+	 * Tracker for acquired buffers.
+	 */
+	private static class LeakTracker extends PhantomReference<PooledBuffer> {
+
+		private final ByteBufferPool pool;
+		private final ByteBuffer buffer;
+		private final Throwable acquisition;
+
+		private LeakTracker(PooledBuffer referent) {
+			super(referent, LEAK_QUEUE);
+			this.pool = referent.pool;
+			this.buffer = referent.buffer;
+			this.acquisition = new Throwable("acquired");
+			TRACKERS.add(this);
+		}
+
+		/**
+		 * Close tracker on release.
+		 */
+		private void close() {
+			TRACKERS.remove(this);
+			clear();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.nio.channels.DatagramChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Utility to bind multiple datagram sockets to the same address using the
+ * socket option {@code SO_REUSEPORT}.
+ *
+ * On Linux (kernel 3.9 and newer) the kernel distributes the received
+ * datagrams over all sockets bound with {@code SO_REUSEPORT} to the same
+ * address, using a hash of the source and destination address. That enables to
+ * use a "shard" of sockets, each with its own receiver thread(s), instead of
+ * one socket shared by all receiver threads.
+ *
+ * The option {@code StandardSocketOptions.SO_REUSEPORT} is only available on
+ * Java 9 and newer, therefore it's accessed by reflection. On other platforms
+ * than Linux the option has different semantics (e.g. no load balancing), so
+ * it's considered to be not supported there.
+ */
+public class ReusePortUtil {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReusePortUtil.class.getName());
+
+	/**
+	 * Socket option {@code SO_REUSEPORT}. {@code null}, if not supported.
+	 */
+	private static final Object SO_REUSEPORT;
+
+	static {
+		Object option = null;
+		String os = System.getProperty("os.name", "");
+		if (os.toLowerCase().startsWith("linux")) {
+			try {
+				Class<?> options = Class.forName("java.net.StandardSocketOptions");
+				Field field = options.getField("SO_REUSEPORT");
+				option = field.get(null);
+			} catch (ClassNotFoundException e) {
+				LOGGER.debug("SO_REUSEPORT not supported by JVM!");
+			} catch (NoSuchFieldException e) {
+				LOGGER.debug("SO_REUSEPORT not supported by JVM!");
+			} catch (IllegalAccessException e) {
+				LOGGER.debug("SO_REUSEPORT not accessible!", e);
+			}
+		} else {
+			LOGGER.debug("SO_REUSEPORT sharding not supported by {}!", os);
+		}
+		SO_REUSEPORT = option;
+	}
+
+	/**
+	 * Check, if {@code SO_REUSEPORT} is supported.
+	 *
+	 * @return {@code true}, if supported, {@code false}, otherwise.
+	 */
+	public static boolean isSupported() {
+		return SO_REUSEPORT != null;
+	}
+
+	/**
+	 * Create datagram socket with enabled {@code SO_REUSEPORT} and bind it to
+	 * the provided address.
+	 *
+	 * The socket is provided by a blocking {@link DatagramChannel}.
+	 *
+	 * @param bindAddress address to bind the socket to.
+	 * @param reuseAddress {@code true}, to additionally enable
+	 *            {@code SO_REUSEADDR}.
+	 * @return bound socket.
+	 * @throws IOException if an i/o error occurred
+	 * @throws IllegalStateException if {@code SO_REUSEPORT} is not supported
+	 * @see #isSupported()
+	 */
+	@SuppressWarnings("unchecked")
+	@NotForAndroid
+	public static DatagramSocket createSocket(InetSocketAddress bindAddress, boolean reuseAddress)
+			throws IOException {
+		if (SO_REUSEPORT == null) {
+			throw new IllegalStateException("SO_REUSEPORT not supported!");
+		}
+		DatagramChannel channel = DatagramChannel.open();
+		try {
+			channel.setOption((SocketOption<Boolean>) SO_REUSEPORT, Boolean.TRUE);
+			DatagramSocket socket = channel.socket();
+			if (reuseAddress) {
+				socket.setReuseAddress(true);
+			}
+			socket.bind(bindAddress);
+			return socket;
+		} catch (IOException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Select the shard for a peer.
+	 *
+	 * All sockets of a shard are bound to the same address, so the peer
+	 * doesn't notice, which socket is used to send a datagram. Using the same
+	 * socket for the same peer spreads the sending over the sockets and keeps
+	 * the order of the datagrams sent to a peer.
+	 *
+	 * @param peer address of peer
+	 * @param shards number of sockets
+	 * @return index of socket, {@code 0 ... shards - 1}.
+	 */
+	public static int getShard(InetSocketAddress peer, int shards) {
+		if (shards <= 1) {
+			return 0;
+		}
+		int hash = peer.hashCode();
+		// spread hash, InetSocketAddress.hashCode() is address ^ port
+		hash ^= (hash >>> 16);
+		return (hash & Integer.MAX_VALUE) % shards;
+	}
+}
@@ -12,6 +12,10 @@
  * 
  * Contributors:
  *    Bosch Software Innovations GmbH - initial creation
+ *    Bosch Software Innovations GmbH - lock-free multi-producer single-consumer
+ *                                      queue, batches and queue size metrics
+ *    Bosch Software Innovations GmbH - reject jobs added concurrently to shutdown
+ *    Bosch Software Innovations GmbH - remove jobs rejected by the target executor
  ******************************************************************************/
 package org.eclipse.californium.elements.util;
 
@@ -20,14 +24,12 @@ import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.concurrent.AbstractExecutorService;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,45 +38,110 @@ import org.slf4j.LoggerFactory;
  * Serial executor.
  * 
  * Serialize job execution before passing the jobs to a provided executor.
+ * 
+ * The jobs are queued in a lock-free linked queue for multiple producers. The
+ * queued jobs are executed by one run passed to the target executor at a
+ * time. A run executes up to {@link #getBatchSize()} jobs, the remaining jobs
+ * are executed by a succeeding run, which is passed again to the target
+ * executor in order to give the jobs of other serial executors a chance. The
+ * per instance footprint is kept small, because a serial executor is
+ * intended to be used per peer, e.g. per DTLS connection.
+ * 
+ * The number of queued jobs is available per executor by
+ * {@link #getQueueSize()} and in total for all serial executors by
+ * {@link #getGlobalQueueSize()}.
  */
 public class SerialExecutor extends AbstractExecutorService {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(SerialExecutor.class.getName());
 
+	private static final AtomicReferenceFieldUpdater<SerialExecutor, Node> HEAD = AtomicReferenceFieldUpdater
+			.newUpdater(SerialExecutor.class, Node.class, "head");
+	private static final AtomicReferenceFieldUpdater<SerialExecutor, Node> TAIL = AtomicReferenceFieldUpdater
+			.newUpdater(SerialExecutor.class, Node.class, "tail");
+	private static final AtomicReferenceFieldUpdater<SerialExecutor, Thread> OWNER = AtomicReferenceFieldUpdater
+			.newUpdater(SerialExecutor.class, Thread.class, "owner");
+	private static final AtomicIntegerFieldUpdater<SerialExecutor> SIZE = AtomicIntegerFieldUpdater
+			.newUpdater(SerialExecutor.class, "size");
+	private static final AtomicIntegerFieldUpdater<SerialExecutor> STATE = AtomicIntegerFieldUpdater
+			.newUpdater(SerialExecutor.class, "state");
+	private static final AtomicReferenceFieldUpdater<Node, Runnable> JOB = AtomicReferenceFieldUpdater
+			.newUpdater(Node.class, Runnable.class, "job");
+
+	/**
+	 * State, no run is scheduled.
+	 */
+	private static final int IDLE = 0;
+	/**
+	 * State, a run is passed to the target executor.
+	 */
+	private static final int SCHEDULED = 1;
+
+	/**
+	 * Number of stripes for {@link #GLOBAL_QUEUE_SIZE}. Must be a power of 2.
+	 */
+	private static final int STRIPES = 16;
+	/**
+	 * Distance of stripes in {@link #GLOBAL_QUEUE_SIZE}. Intended to place
+	 * the stripes into different cache lines.
+	 */
+	private static final int STRIPE_DISTANCE = 8;
+	/**
+	 * Striped counter for the queued jobs of all serial executors. Striped to
+	 * reduce the contention, if many threads are adding and executing jobs.
+	 */
+	private static final AtomicLongArray GLOBAL_QUEUE_SIZE = new AtomicLongArray(STRIPES * STRIPE_DISTANCE);
+
+	/**
+	 * Default number of jobs executed by one run.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1;
+
 	/**
 	 * Target executor to execute job serially.
 	 */
 	private final Executor executor;
 
 	/**
-	 * Owner thread, which currently executes the {@link #currentlyExecutedJob}.
+	 * Run to execute queued jobs. Passed to the target {@link #executor}.
+	 */
+	private final Runnable run;
+
+	/**
+	 * Maximum number of jobs executed by one run.
+	 */
+	private final int batchSize;
+
+	/**
+	 * Head of the queue. The {@link Node#next} of the head contains the next
+	 * job.
 	 */
-	private final AtomicReference<Thread> owner = new AtomicReference<Thread>();
+	private volatile Node head;
 
 	/**
-	 * Queue for serialized jobs.
+	 * Tail of the queue. New jobs are appended here.
 	 */
-	private final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+	private volatile Node tail;
 
 	/**
-	 * Lock to protected simultaneous access.
+	 * Owner thread, which currently executes the jobs.
 	 */
-	private final ReentrantLock lock = new ReentrantLock();
+	private volatile Thread owner;
 
 	/**
-	 * Condition from {@link #lock} to wait for termination.
+	 * Number of queued jobs.
 	 */
-	private final Condition terminated = lock.newCondition();
+	private volatile int size;
 
 	/**
-	 * Currently executed job.
+	 * State of run. {@link #IDLE} or {@link #SCHEDULED}.
 	 */
-	private Runnable currentlyExecutedJob;
+	private volatile int state;
 
 	/**
 	 * Indicate shutdown.
 	 */
-	private boolean shutdown;
+	private volatile boolean shutdown;
 
 	/**
 	 * Create serial executor
@@ -83,39 +150,87 @@ public class SerialExecutor extends AbstractExecutorService {
 	 *            shutdown.
 	 */
 	public SerialExecutor(final Executor executor) {
+		this(executor, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Create serial executor
+	 * 
+	 * @param executor target executor. If {@code null}, the executor is
+	 *            shutdown.
+	 * @param batchSize maximum number of jobs executed by one run passed to
+	 *            the target executor.
+	 * @throws IllegalArgumentException if batchSize is less than {@code 1}
+	 */
+	public SerialExecutor(final Executor executor, final int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batch size " + batchSize + " must be at least 1!");
+		}
 		if (executor == null) {
 			shutdown = true;
 		}
 		this.executor = executor;
+		this.batchSize = batchSize;
+		this.head = this.tail = new Node(null);
+		this.run = new Runnable() {
+
+			@Override
+			public void run() {
+				runJobs();
+			}
+		};
 	}
 
 	@Override
 	public void execute(final Runnable command) {
-		lock.lock();
-		try {
-			if (shutdown) {
-				throw new RejectedExecutionException("SerialExecutor already shutdown!");
+		if (command == null) {
+			throw new NullPointerException("command must not be null!");
+		}
+		if (shutdown) {
+			throw new RejectedExecutionException("SerialExecutor already shutdown!");
+		}
+		SIZE.incrementAndGet(this);
+		addGlobalQueueSize(1);
+		Node node = new Node(command);
+		Node last = TAIL.getAndSet(this, node);
+		last.next = node;
+		if (shutdown && JOB.compareAndSet(node, command, null)) {
+			// shutdown concurrently and the job is neither executed nor
+			// drained by shutdownNow, reject it. The empty node is skipped
+			// by the next run.
+			SIZE.decrementAndGet(this);
+			addGlobalQueueSize(-1);
+			try {
+				schedule();
+			} catch (RejectedExecutionException ex) {
+				// target executor is shutdown as well
 			}
-			tasks.offer(command);
-			if (currentlyExecutedJob == null) {
-				scheduleNextJob();
+			throw new RejectedExecutionException("SerialExecutor already shutdown!");
+		}
+		try {
+			schedule();
+		} catch (RejectedExecutionException ex) {
+			if (JOB.compareAndSet(node, command, null)) {
+				// the target executor rejects the run, remove the job, if
+				// it's not already polled by a concurrent run. The empty
+				// node is skipped by the next run.
+				SIZE.decrementAndGet(this);
+				addGlobalQueueSize(-1);
 			}
-		} finally {
-			lock.unlock();
+			throw ex;
 		}
 	}
 
 	/**
-	 * Assert, that the current thread executes the
-	 * {@link #currentlyExecutedJob}.
+	 * Assert, that the current thread executes the jobs of this executor.
 	 * 
 	 * @throws ConcurrentModificationException if current thread doesn't execute
-	 *             the {@link #currentlyExecutedJob}.
+	 *             the jobs of this executor.
 	 */
 	public void assertOwner() {
 		final Thread me = Thread.currentThread();
-		if (owner.get() != me) {
-			final Thread thread = owner.get();
+		final Thread thread = owner;
+		if (thread != me) {
 			if (thread == null) {
 				throw new ConcurrentModificationException(this + " is not owned!");
 			} else {
@@ -125,23 +240,23 @@ public class SerialExecutor extends AbstractExecutorService {
 	}
 
 	/**
-	 * Check, if current thread executes the {@link #currentlyExecutedJob}.
+	 * Check, if current thread executes the jobs of this executor.
 	 * 
-	 * @return {@code true}, if current thread executes the
-	 *         {@link #currentlyExecutedJob}, {@code false}, otherwise.
+	 * @return {@code true}, if current thread executes the jobs of this
+	 *         executor, {@code false}, otherwise.
 	 */
 	public boolean checkOwner() {
-		return owner.get() == Thread.currentThread();
+		return owner == Thread.currentThread();
 	}
 
 	/**
-	 * Set current thread executing the {@link #currentlyExecutedJob}.
+	 * Set current thread executing the jobs.
 	 * 
 	 * @throws ConcurrentModificationException, if thread is already set.
 	 */
 	private void setOwner() {
-		final Thread thread = owner.get();
-		if (!owner.compareAndSet(null, Thread.currentThread())) {
+		final Thread thread = owner;
+		if (!OWNER.compareAndSet(this, null, Thread.currentThread())) {
 			if (thread == null) {
 				throw new ConcurrentModificationException(this + " was already owned!");
 			} else {
@@ -151,14 +266,14 @@ public class SerialExecutor extends AbstractExecutorService {
 	}
 
 	/**
-	 * Remove current thread executing the {@link #currentlyExecutedJob}.
+	 * Remove current thread executing the jobs.
 	 * 
 	 * @throws ConcurrentModificationException, if the current thread is not
-	 *             executing the {@link #currentlyExecutedJob}.
+	 *             executing the jobs.
 	 */
 	private void clearOwner() {
-		if (!owner.compareAndSet(Thread.currentThread(), null)) {
-			final Thread thread = owner.get();
+		if (!OWNER.compareAndSet(this, Thread.currentThread(), null)) {
+			final Thread thread = owner;
 			if (thread == null) {
 				throw new ConcurrentModificationException(this + " is not owned, clear failed!");
 			} else {
@@ -167,6 +282,52 @@ public class SerialExecutor extends AbstractExecutorService {
 		}
 	}
 
+	/**
+	 * Gets the maximum number of jobs executed by one run.
+	 * 
+	 * @return maximum number of jobs executed by one run
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Gets the number of queued jobs.
+	 * 
+	 * The currently executed job is not included.
+	 * 
+	 * @return number of queued jobs
+	 */
+	public int getQueueSize() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of queued jobs of all serial executors.
+	 * 
+	 * The value is only a snapshot, which may be inaccurate, if jobs are
+	 * added or executed concurrently.
+	 * 
+	 * @return number of queued jobs of all serial executors
+	 */
+	public static long getGlobalQueueSize() {
+		long sum = 0;
+		for (int index = 0; index < STRIPES; ++index) {
+			sum += GLOBAL_QUEUE_SIZE.get(index * STRIPE_DISTANCE);
+		}
+		return sum;
+	}
+
+	/**
+	 * Add delta to the stripe of the current thread.
+	 * 
+	 * @param delta delta to add
+	 */
+	private static void addGlobalQueueSize(int delta) {
+		int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+		GLOBAL_QUEUE_SIZE.addAndGet(stripe * STRIPE_DISTANCE, delta);
+	}
+
 	/**
 	 * {@inheritDoc}.
 	 * 
@@ -174,11 +335,9 @@ public class SerialExecutor extends AbstractExecutorService {
 	 */
 	@Override
 	public void shutdown() {
-		lock.lock();
-		try {
-			shutdown = true;
-		} finally {
-			lock.unlock();
+		shutdown = true;
+		if (isTerminated()) {
+			signalTermination();
 		}
 	}
 
@@ -191,104 +350,144 @@ public class SerialExecutor extends AbstractExecutorService {
 	 */
 	@Override
 	public List<Runnable> shutdownNow() {
-		lock.lock();
-		try {
-			List<Runnable> pending = new ArrayList<>(tasks.size());
-			shutdownNow(pending);
-			return pending;
-		} finally {
-			lock.unlock();
-		}
+		List<Runnable> pending = new ArrayList<>(size);
+		shutdownNow(pending);
+		return pending;
 	}
 
 	/**
-	 * Shutdown this executor and add all pending task from {@link #tasks} to
-	 * the provided collection.
+	 * Shutdown this executor and add all pending task from the queue to the
+	 * provided collection.
 	 * 
 	 * @param jobs collection to add pending jobs.
 	 * @return number of added jobs
 	 * @see #shutdownNow()
 	 */
 	public int shutdownNow(final Collection<Runnable> jobs) {
-		lock.lock();
-		try {
-			shutdown();
-			return tasks.drainTo(jobs);
-		} finally {
-			lock.unlock();
+		shutdown();
+		int count = 0;
+		Runnable job;
+		while ((job = poll()) != null) {
+			jobs.add(job);
+			++count;
 		}
+		return count;
 	}
 
 	@Override
 	public boolean isShutdown() {
-		lock.lock();
-		try {
-			return shutdown;
-		} finally {
-			lock.unlock();
-		}
+		return shutdown;
 	}
 
 	@Override
 	public boolean isTerminated() {
-		lock.lock();
-		try {
-			return shutdown && currentlyExecutedJob == null;
-		} finally {
-			lock.unlock();
-		}
+		return shutdown && state == IDLE && head.next == null;
 	}
 
 	@Override
 	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
-		lock.lock();
-		try {
-			long nanosTimeout = unit.toNanos(timeout);
-			while (!shutdown || currentlyExecutedJob != null) {
-				nanosTimeout = terminated.awaitNanos(nanosTimeout);
+		long nanosTimeout = unit.toNanos(timeout);
+		long end = System.nanoTime() + nanosTimeout;
+		synchronized (this) {
+			while (!isTerminated()) {
 				if (nanosTimeout <= 0) {
-					break;
+					return false;
 				}
+				TimeUnit.NANOSECONDS.timedWait(this, nanosTimeout);
+				nanosTimeout = end - System.nanoTime();
 			}
-			return shutdown && currentlyExecutedJob == null;
-		} finally {
-			lock.unlock();
+			return true;
 		}
 	}
 
 	/**
-	 * Schedule next job from {@link #tasks}. {@link #setOwner()} and
-	 * {@link #clearOwner()} before and after executing the job.
+	 * Signal termination to threads waiting in
+	 * {@link #awaitTermination(long, TimeUnit)}.
 	 */
-	private final void scheduleNextJob() {
-		lock.lock();
+	private void signalTermination() {
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Poll next job from queue.
+	 * 
+	 * Usually only called by the current run. Uses compare-and-set to advance
+	 * the head, so that {@link #shutdownNow(Collection)} is able to drain the
+	 * queue concurrently. Skips nodes, which jobs are rejected by
+	 * {@link #execute(Runnable)} because of a concurrent shutdown.
+	 * 
+	 * @return next job, or {@code null}, if no job is queued.
+	 */
+	private Runnable poll() {
+		while (true) {
+			Node first = head;
+			Node next = first.next;
+			if (next == null) {
+				return null;
+			}
+			if (HEAD.compareAndSet(this, first, next)) {
+				// next is now the head, release job for gc
+				Runnable job = JOB.getAndSet(next, null);
+				if (job != null) {
+					SIZE.decrementAndGet(this);
+					addGlobalQueueSize(-1);
+					return job;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pass {@link #run} to the target executor, if not already scheduled.
+	 * 
+	 * @throws RejectedExecutionException if the target executor rejects the
+	 *             run.
+	 */
+	private void schedule() {
+		if (STATE.compareAndSet(this, IDLE, SCHEDULED)) {
+			try {
+				executor.execute(run);
+			} catch (RejectedExecutionException ex) {
+				state = IDLE;
+				throw ex;
+			}
+		}
+	}
+
+	/**
+	 * Execute up to {@link #batchSize} queued jobs. {@link #setOwner()} and
+	 * {@link #clearOwner()} before and after executing the jobs. Schedule next
+	 * run, if more jobs are queued.
+	 */
+	private void runJobs() {
 		try {
-			currentlyExecutedJob = tasks.poll();
-			if (currentlyExecutedJob != null) {
-				final Runnable command = currentlyExecutedJob;
-				executor.execute(new Runnable() {
-
-					@Override
-					public void run() {
-						try {
-							setOwner();
-							try {
-								command.run();
-							} catch (Throwable t) {
-								LOGGER.error("unexpected error occurred:", t);
-							} finally {
-								clearOwner();
-							}
-						} finally {
-							scheduleNextJob();
-						}
+			setOwner();
+			try {
+				for (int count = 0; count < batchSize; ++count) {
+					Runnable job = poll();
+					if (job == null) {
+						break;
 					}
-				});
-			} else if (shutdown) {
-				terminated.signalAll();
+					try {
+						job.run();
+					} catch (Throwable t) {
+						LOGGER.error("unexpected error occurred:", t);
+					}
+				}
+			} finally {
+				clearOwner();
 			}
 		} finally {
-			lock.unlock();
+			state = IDLE;
+			// jobs added after the last poll, but before the state is
+			// reset to IDLE, are not scheduled by their producer
+			if (head.next != null) {
+				schedule();
+			} else if (shutdown) {
+				signalTermination();
+			}
 		}
 	}
 
@@ -306,4 +505,25 @@ public class SerialExecutor extends AbstractExecutorService {
 		}
 		return null;
 	}
+
+	/**
+	 * Node of the queue.
+	 */
+	private static final class Node {
+
+		/**
+		 * Queued job. Cleared, when the node becomes the head, or when the
+		 * job is rejected because of a concurrent shutdown. Not private to be
+		 * accessible by {@link SerialExecutor#JOB}.
+		 */
+		volatile Runnable job;
+		/**
+		 * Next node. Set by the producer after appending a new node.
+		 */
+		private volatile Node next;
+
+		private Node(Runnable job) {
+			this.job = job;
+		}
+	}
 }
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import java.util.Collection;
+import java.util.concurrent.Executor;
+
+/**
+ * Striped executor.
+ *
+ * Maps keys, e.g. the peer's address, to a fixed number of stripes. Each
+ * stripe is a {@link SerialExecutor} on top of the provided target executor.
+ * Jobs with the same key are therefore executed in the order they are added
+ * and never in parallel, while jobs of different stripes are executed in
+ * parallel by the target executor. Jobs of different keys mapped to the same
+ * stripe are also executed serially, so a job blocking for a longer time
+ * delays the other jobs of its stripe.
+ */
+public class StripedExecutor {
+
+	/**
+	 * Stripes.
+	 */
+	private final SerialExecutor[] stripes;
+
+	/**
+	 * Create striped executor.
+	 *
+	 * @param executor target executor
+	 * @param stripes number of stripes
+	 * @throws NullPointerException if executor is {@code null}
+	 * @throws IllegalArgumentException if stripes is less than {@code 1}
+	 */
+	public StripedExecutor(final Executor executor, final int stripes) {
+		if (executor == null) {
+			throw new NullPointerException("executor must not be null!");
+		}
+		if (stripes < 1) {
+			throw new IllegalArgumentException("stripes " + stripes + " must be at least 1!");
+		}
+		this.stripes = new SerialExecutor[stripes];
+		for (int index = 0; index < stripes; ++index) {
+			this.stripes[index] = new SerialExecutor(executor);
+		}
+	}
+
+	/**
+	 * Gets the number of stripes.
+	 *
+	 * @return number of stripes
+	 */
+	public int getStripes() {
+		return stripes.length;
+	}
+
+	/**
+	 * Gets the index of the stripe for the provided key.
+	 *
+	 * @param key key. e.g. the peer's address
+	 * @return index of stripe
+	 */
+	public int getStripeIndex(final Object key) {
+		return getStripeIndex(key, stripes.length);
+	}
+
+	/**
+	 * Gets the stripe for the provided key.
+	 *
+	 * @param key key. e.g. the peer's address
+	 * @return serial executor of the stripe
+	 */
+	public SerialExecutor getExecutor(final Object key) {
+		return stripes[getStripeIndex(key, stripes.length)];
+	}
+
+	/**
+	 * Gets the stripe for the provided index.
+	 *
+	 * @param index index of stripe
+	 * @return serial executor of the stripe
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 */
+	public SerialExecutor getStripe(final int index) {
+		return stripes[index];
+	}
+
+	/**
+	 * Execute job in the stripe of the provided key.
+	 *
+	 * @param key key. e.g. the peer's address
+	 * @param command job to execute
+	 * @throws java.util.concurrent.RejectedExecutionException if the
+	 *             executor is shutdown or the target executor rejects the job
+	 */
+	public void execute(final Object key, final Runnable command) {
+		getExecutor(key).execute(command);
+	}
+
+	/**
+	 * Check, if the current thread executes the jobs of the stripe of the
+	 * provided key.
+	 *
+	 * @param key key. e.g. the peer's address
+	 * @return {@code true}, if the current thread executes the stripe,
+	 *         {@code false}, otherwise.
+	 */
+	public boolean checkOwner(final Object key) {
+		return getExecutor(key).checkOwner();
+	}
+
+	/**
+	 * Gets the number of queued jobs of all stripes.
+	 *
+	 * @return number of queued jobs
+	 */
+	public int getQueueSize() {
+		int size = 0;
+		for (SerialExecutor stripe : stripes) {
+			size += stripe.getQueueSize();
+		}
+		return size;
+	}
+
+	/**
+	 * Shutdown all stripes.
+	 *
+	 * Doesn't shutdown the target executor.
+	 */
+	public void shutdown() {
+		for (SerialExecutor stripe : stripes) {
+			stripe.shutdown();
+		}
+	}
+
+	/**
+	 * Shutdown all stripes and add all pending jobs to the provided
+	 * collection.
+	 *
+	 * Doesn't shutdown the target executor.
+	 *
+	 * @param jobs collection to add pending jobs.
+	 * @return number of added jobs
+	 */
+	public int shutdownNow(final Collection<Runnable> jobs) {
+		int count = 0;
+		for (SerialExecutor stripe : stripes) {
+			count += stripe.shutdownNow(jobs);
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the index of the stripe for the provided key.
+	 *
+	 * @param key key. e.g. the peer's address
+	 * @param stripes number of stripes
+	 * @return index of stripe
+	 */
+	public static int getStripeIndex(final Object key, final int stripes) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return (hash & Integer.MAX_VALUE) % stripes;
+	}
+}
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations - initial creation based on UDPConnectorTest
+ *    Bosch Software Innovations GmbH - test failing batch delivery
+ ******************************************************************************/
+package org.eclipse.californium.elements;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.californium.elements.category.NativeDatagramSocketImplRequired;
+import org.eclipse.californium.elements.rule.NetworkRule;
+import org.eclipse.californium.elements.rule.ThreadsRule;
+import org.eclipse.californium.elements.util.SimpleMessageCallback;
+import org.eclipse.californium.elements.util.SimpleRawDataChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of {@link NioUdpConnector}.
+ *
+ * The {@link java.nio.channels.DatagramChannel} doesn't use the
+ * {@link java.net.DatagramSocketImpl}, therefore the tests requires native
+ * sockets.
+ */
+@Category(NativeDatagramSocketImplRequired.class)
+public class NioUdpConnectorTest {
+
+	@ClassRule
+	public static NetworkRule network = new NetworkRule(NetworkRule.Mode.NATIVE);
+
+	@Rule
+	public ThreadsRule cleanup = new ThreadsRule();
+
+	NioUdpConnector connector;
+	NioUdpConnector destination;
+	SimpleRawDataChannel channel;
+
+	@Before
+	public void setup() throws IOException {
+		connector = new NioUdpConnector(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		connector.start();
+		channel = new SimpleRawDataChannel(1);
+		destination = new NioUdpConnector(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		destination.setRawDataReceiver(channel);
+		destination.start();
+	}
+
+	@After
+	public void stop() {
+		connector.destroy();
+		destination.destroy();
+	}
+
+	@Test
+	public void testMessageCallbackOnSent() throws InterruptedException {
+		byte[] data = { 0, 1, 2 };
+		InetSocketAddress dest = destination.getAddress();
+		EndpointContext context = new UdpEndpointContext(dest);
+
+		SimpleMessageCallback callback = new SimpleMessageCallback(1, false);
+		RawData message = RawData.outbound(data, context, callback, false);
+		connector.send(message);
+
+		callback.await(100);
+		assertThat(callback.toString(), callback.isSent(), is(true));
+	}
+
+	@Test
+	public void testMessageIsReceived() throws InterruptedException {
+		byte[] data = { 0, 1, 2 };
+		InetSocketAddress dest = destination.getAddress();
+		EndpointContext context = new UdpEndpointContext(dest);
+
+		RawData message = RawData.outbound(data, context, null, false);
+		connector.send(message);
+
+		RawData receivedData = channel.poll(1000, TimeUnit.MILLISECONDS);
+		assertThat("received data:", receivedData, is(notNullValue()));
+		assertThat("bytes received:", receivedData.bytes, is(equalTo(data)));
+		assertThat("source:", receivedData.getInetSocketAddress(), is(connector.getAddress()));
+	}
+
+	@Test
+	public void testTooLargeDatagramIsDropped() throws InterruptedException {
+		// ensure too large datagram is dropped
+		byte[] data = new byte[destination.getReceiverPacketSize() + 1];
+		Arrays.fill(data, (byte) 1);
+		InetSocketAddress dest = destination.getAddress();
+		EndpointContext context = new UdpEndpointContext(dest);
+
+		RawData message = RawData.outbound(data, context, null, false);
+		connector.send(message);
+
+		RawData receivedData = channel.poll(100, TimeUnit.MILLISECONDS);
+		assertThat("first received data:", receivedData, is(nullValue())); // null means packet is dropped
+
+		// ensure next datagram is correctly received
+		data = new byte[5];
+		Arrays.fill(data, (byte) 2);
+		message = RawData.outbound(data, context, null, false);
+		connector.send(message);
+
+		receivedData = channel.poll(100, TimeUnit.SECONDS);
+		assertThat("second received data:", receivedData, is(notNullValue()));
+		assertThat("bytes received:", receivedData.bytes, is(equalTo(data)));
+	}
+
+	@Test
+	public void testLargestDatagramIsReceived() throws InterruptedException {
+		byte[] data = new byte[destination.getReceiverPacketSize()];
+		Arrays.fill(data, (byte) 1);
+		InetSocketAddress dest = destination.getAddress();
+		EndpointContext context = new UdpEndpointContext(dest);
+
+		RawData message = RawData.outbound(data, context, null, false);
+		connector.send(message);
+
+		RawData receivedData = channel.poll(1000, TimeUnit.MILLISECONDS);
+		assertThat("received data:", receivedData, is(notNullValue()));
+		assertThat("bytes received:", receivedData.bytes, is(equalTo(data)));
+	}
+
+	@Test
+	public void testBatchIsReceived() throws InterruptedException, IOException {
+		final SimpleRawDataChannel batchChannel = new SimpleRawDataChannel(10);
+		final AtomicInteger singleCalls = new AtomicInteger();
+		final AtomicInteger batchCalls = new AtomicInteger();
+		destination.stop();
+		destination.setRawDataReceiver(new BatchRawDataChannel() {
+
+			@Override
+			public void receiveData(RawData raw) {
+				singleCalls.incrementAndGet();
+				batchChannel.receiveData(raw);
+			}
+
+			@Override
+			public void receiveData(List<RawData> raws) {
+				batchCalls.incrementAndGet();
+				for (RawData raw : raws) {
+					batchChannel.receiveData(raw);
+				}
+			}
+		});
+		destination.start();
+		InetSocketAddress dest = destination.getAddress();
+		EndpointContext context = new UdpEndpointContext(dest);
+		for (int index = 0; index < 10; ++index) {
+			byte[] data = { 0, 1, (byte) index };
+			connector.send(RawData.outbound(data, context, null, false));
+		}
+		assertThat(batchChannel.await(1000), is(true));
+		assertThat(singleCalls.get(), is(0));
+		assertThat(batchCalls.get(), is(greaterThan(0)));
+	}
+
+	@Test
+	public void testFailingBatchIsNotDeliveredAgain() throws InterruptedException, IOException {
+		final BlockingQueue<List<RawData>> batches = new LinkedBlockingQueue<List<RawData>>();
+		destination.stop();
+		destination.setRawDataReceiver(new BatchRawDataChannel() {
+
+			@Override
+			public void receiveData(RawData raw) {
+				batches.add(Arrays.asList(raw));
+			}
+
+			@Override
+			public void receiveData(List<RawData> raws) {
+				batches.add(new ArrayList<RawData>(raws));
+				if (batches.size() == 1) {
+					throw new IllegalArgumentException("first batch fails!");
+				}
+			}
+		});
+		destination.start();
+		InetSocketAddress dest = destination.getAddress();
+		EndpointContext context = new UdpEndpointContext(dest);
+		byte[] data1 = { 0, 1, 1 };
+		connector.send(RawData.outbound(data1, context, null, false));
+		List<RawData> batch = batches.poll(1000, TimeUnit.MILLISECONDS);
+		assertThat("first batch:", batch, is(notNullValue()));
+		assertThat(batch.size(), is(1));
+
+		byte[] data2 = { 0, 1, 2 };
+		connector.send(RawData.outbound(data2, context, null, false));
+		batch = batches.poll(1000, TimeUnit.MILLISECONDS);
+		assertThat("second batch:", batch, is(notNullValue()));
+		assertThat(batch.size(), is(1));
+		assertThat("bytes received:", batch.get(0).bytes, is(equalTo(data2)));
+	}
+
+	@Test
+	public void testStopCallsMessageCallbackOnError() throws InterruptedException, IOException {
+		byte[] data = { 0, 1, 2 };
+		InetSocketAddress dest = destination.getAddress();
+		EndpointContext context = new UdpEndpointContext(dest);
+
+		connector.stop();
+		SimpleMessageCallback callback = new SimpleMessageCallback(1, false);
+		RawData message = RawData.outbound(data, context, callback, false);
+		connector.send(message);
+
+		assertThat(callback.toString(), callback.await(100), is(true));
+		assertThat(callback.toString(), callback.getError(), is(notNullValue()));
+		connector.start();
+	}
+}
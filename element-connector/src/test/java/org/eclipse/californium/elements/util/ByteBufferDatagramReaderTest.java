@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Verifies behavior of {@link ByteBufferDatagramReader} and
+ * {@link ByteBufferDatagramWriter}.
+ */
+public class ByteBufferDatagramReaderTest {
+
+	ByteBufferDatagramReader reader;
+
+	@Test
+	public void testBitsLeftWorksForBitWiseReading() {
+		givenABuffer(new byte[] { 0x01, 0x02, 0x03 });
+
+		reader.read(6);
+		assertThat(reader.bitsLeft(), is(18));
+
+		reader.readBytes(1);
+		assertThat(reader.bitsLeft(), is(10));
+
+		reader.read(10);
+		assertThat(reader.bitsLeft(), is(0));
+	}
+
+	@Test
+	public void testMarkAndResetBits() {
+		givenABuffer(new byte[] { 0x01, 0x02, 0x03 });
+
+		int value = reader.read(6);
+		assertThat(value, is(0));
+
+		reader.mark();
+
+		value = reader.readBytes(1)[0] & 0xff;
+		assertThat(value, is(0x40));
+		assertThat(reader.bitsLeft(), is(10));
+
+		reader.reset();
+		assertThat(reader.bitsLeft(), is(18));
+		value = reader.read(8);
+		assertThat(value, is(0x40));
+	}
+
+	@Test
+	public void testReadByteAligned() {
+		givenABuffer(new byte[] { 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, (byte) 0x88 });
+
+		assertThat(reader.read(16), is(0x0102));
+		assertThat(reader.readLong(48), is(0x030405060788L));
+		assertThat(reader.bytesAvailable(), is(false));
+	}
+
+	@Test
+	public void testReadByteBufferSharesContent() {
+		byte[] data = { 0x01, 0x02, 0x03, 0x04, 0x05 };
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		buffer.position(1);
+		givenABuffer(buffer);
+
+		assertThat(reader.readNextByte(), is((byte) 0x02));
+		ByteBuffer range = reader.readByteBuffer(2);
+		assertThat(range.remaining(), is(2));
+		assertThat(range.get(0), is((byte) 0x03));
+		data[3] = 0x14;
+		assertThat(range.get(1), is((byte) 0x14));
+		assertThat(reader.readNextByte(), is((byte) 0x05));
+		// position of provided buffer is not changed
+		assertThat(buffer.position(), is(1));
+	}
+
+	@Test
+	public void testCreateRangeReader() {
+		givenABuffer(new byte[] { 0x01, 0x02, 0x03, 0x04 });
+
+		reader.readNextByte();
+		ByteBufferDatagramReader rangeReader = reader.createRangeReader(2);
+		assertThat(rangeReader.read(16), is(0x0203));
+		assertThat(rangeReader.bytesAvailable(), is(false));
+		assertThat(reader.read(8), is(0x04));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReadExceedsAvailable() {
+		givenABuffer(new byte[] { 0x01, 0x02 });
+		reader.read(24);
+	}
+
+	@Test
+	public void testWriteAndRead() {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+		ByteBufferDatagramWriter writer = new ByteBufferDatagramWriter(buffer);
+		writer.write(0x5, 4);
+		writer.write(0xa, 4);
+		writer.write(0, 16);
+		writer.writeLong(0x010203040506L, 48);
+		writer.write(0x1, 2);
+		writer.writeBytes(new byte[] { (byte) 0xff });
+		writer.writeCurrentByte();
+		writer.writeAt(1, 0x1234, 16);
+		assertThat(writer.size(), is(11));
+
+		givenABuffer(writer.toByteBuffer());
+		assertThat(reader.read(8), is(0x5a));
+		assertThat(reader.read(16), is(0x1234));
+		assertThat(reader.readLong(48), is(0x010203040506L));
+		assertThat(reader.read(2), is(0x1));
+		assertThat(reader.read(8), is(0xff));
+		assertThat(reader.bitsLeft(), is(6));
+	}
+
+	@Test
+	public void testToByteArrayReturnsBackingArray() {
+		ByteBufferDatagramWriter writer = new ByteBufferDatagramWriter(3);
+		writer.write(0x010203, 24);
+		byte[] data = writer.toByteArray();
+		assertThat(data, is(new byte[] { 0x01, 0x02, 0x03 }));
+		writer.reset();
+		assertThat(writer.size(), is(0));
+		assertThat(writer.remaining(), is(3));
+	}
+
+	/**
+	 * Write a "flight" of records into datagrams, which are completely filled
+	 * by the records, as DTLSConnector does. The datagrams returned before
+	 * must not be overwritten by the following ones.
+	 */
+	@Test
+	public void testFlightOfFullDatagrams() {
+		int datagramSize = 8;
+		ByteBufferDatagramWriter writer = new ByteBufferDatagramWriter(datagramSize);
+		List<byte[]> datagrams = new ArrayList<byte[]>();
+		for (int record = 0; record < 8; ++record) {
+			if (writer.size() + 4 > datagramSize) {
+				datagrams.add(writer.toByteArray());
+				writer.reset();
+			}
+			writer.write(record, 32);
+		}
+		datagrams.add(writer.toByteArray());
+
+		assertThat(datagrams.size(), is(4));
+		for (int index = 0; index < datagrams.size(); ++index) {
+			givenABuffer(datagrams.get(index));
+			assertThat(reader.read(32), is(index * 2));
+			assertThat(reader.read(32), is(index * 2 + 1));
+		}
+	}
+
+	@Test
+	public void testWriteAtDoesNotModifyReturnedArray() {
+		ByteBufferDatagramWriter writer = new ByteBufferDatagramWriter(3);
+		writer.write(0x010203, 24);
+		byte[] data = writer.toByteArray();
+		writer.writeAt(0, 0xff, 8);
+		assertThat(data, is(new byte[] { 0x01, 0x02, 0x03 }));
+		assertThat(writer.toByteArray(), is(new byte[] { (byte) 0xff, 0x02, 0x03 }));
+	}
+
+	private void givenABuffer(byte[] data) {
+		reader = new ByteBufferDatagramReader(data);
+	}
+
+	private void givenABuffer(ByteBuffer data) {
+		reader = new ByteBufferDatagramReader(data);
+	}
+}
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *                                      based on LeastRecentlyUsedCacheTest
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.californium.elements.util.LeastRecentlyUsedCache.EvictionListener;
+import org.junit.Test;
+
+/**
+ * Verifies behavior of {@code ConcurrentLeastRecentlyUsedCache}.
+ */
+public class ConcurrentLeastRecentlyUsedCacheTest {
+
+	private static final long THRESHOLD_MILLIS = 300;
+
+	ConcurrentLeastRecentlyUsedCache<Integer, String> cache;
+
+	@Test
+	public void testGetFailsWhenExpired() throws InterruptedException {
+		givenACacheWithEntries(5, THRESHOLD_MILLIS, 1);
+		cache.setEvictingOnReadAccess(true);
+		String eldest = cache.getEldest();
+		Integer key = Integer.valueOf(eldest);
+		assertNotNull(cache.get(key));
+		Thread.sleep(THRESHOLD_MILLIS + 100);
+		assertNull(cache.get(key));
+	}
+
+	@Test
+	public void testGetSucceedsEvenExpired() throws InterruptedException {
+		givenACacheWithEntries(5, THRESHOLD_MILLIS, 1);
+		cache.setEvictingOnReadAccess(false);
+		String eldest = cache.getEldest();
+		Integer key = Integer.valueOf(eldest);
+		assertNotNull(cache.get(key));
+		Thread.sleep(THRESHOLD_MILLIS + 100);
+		assertNotNull(cache.get(key));
+	}
+
+	@Test
+	public void testReadAccessUpdatesEldest() {
+		givenACacheWithEntries(5, THRESHOLD_MILLIS, 5);
+		String eldest = cache.getEldest();
+		assertNotNull(cache.get(Integer.valueOf(eldest)));
+		assertThat(cache.getEldest(), is(not(eldest)));
+	}
+
+	@Test
+	public void testStoreEvictsEldestStaleEntry() {
+		int capacity = 10;
+
+		givenACacheWithEntries(capacity, 0L, capacity);
+		assertThat(cache.remainingCapacity(), is(0));
+		String eldest = cache.getEldest();
+
+		String newValue = "50";
+		assertTrue(cache.put(Integer.valueOf(newValue), newValue));
+		assertNull(cache.get(Integer.valueOf(eldest)));
+	}
+
+	@Test
+	public void testStoreFailsIfCapacityReached() {
+		int capacity = 10;
+
+		givenACacheWithEntries(capacity, THRESHOLD_MILLIS * 100, capacity);
+		assertThat(cache.remainingCapacity(), is(0));
+		String eldest = cache.getEldest();
+
+		Integer key = 50;
+		assertFalse(cache.put(key, "50"));
+		assertNull(cache.getOrAdd(key, "50"));
+		assertNull(cache.get(key));
+		assertNotNull(cache.get(Integer.valueOf(eldest)));
+	}
+
+	@Test
+	public void testGetOrAdd() {
+		givenACacheWithEntries(10, THRESHOLD_MILLIS, 5);
+		assertThat(cache.getOrAdd(1, "other"), is("1"));
+		assertThat(cache.getOrAdd(50, "50"), is("50"));
+		assertThat(cache.getOrAdd(50, "other"), is("50"));
+		assertThat(cache.size(), is(6));
+	}
+
+	@Test
+	public void testRemoveWithValue() {
+		givenACacheWithEntries(10, THRESHOLD_MILLIS, 5);
+		assertThat(cache.remove(1, "other"), is(nullValue()));
+		String value = cache.get(1);
+		assertThat(cache.remove(1, value), is(value));
+		assertThat(cache.get(1), is(nullValue()));
+		assertThat(cache.size(), is(4));
+	}
+
+	@Test
+	public void testContinuousEviction() {
+		int capacity = 10;
+
+		givenACacheWithEntries(capacity, 0L, 0);
+		final AtomicInteger evicted = new AtomicInteger(0);
+
+		cache.addEvictionListener(new EvictionListener<String>() {
+
+			@Override
+			public void onEviction(String evictedSession) {
+				evicted.incrementAndGet();
+			}
+		});
+
+		int noOfSessions = 1000;
+		for (int i = 0; i < noOfSessions; i++) {
+			Integer key = i + 1000;
+			String value = String.valueOf(key);
+			assertTrue(cache.put(key, value));
+		}
+		assertThat(evicted.get(), is(noOfSessions - capacity));
+		assertThat(cache.remainingCapacity(), is(0));
+	}
+
+	@Test
+	public void testConcurrentAccess() throws InterruptedException {
+		final int capacity = 100;
+		givenACacheWithEntries(capacity, 0L, 0);
+		final AtomicInteger failures = new AtomicInteger();
+		List<Thread> threads = new ArrayList<>();
+		for (int index = 0; index < 8; ++index) {
+			Thread thread = new Thread() {
+
+				@Override
+				public void run() {
+					for (int loop = 0; loop < 20000; ++loop) {
+						Integer key = loop % (capacity * 2);
+						String value = cache.getOrAdd(key, key.toString());
+						if (!key.toString().equals(value)) {
+							failures.incrementAndGet();
+						}
+						if (loop % 7 == 0) {
+							cache.remove(key);
+						}
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join(10000);
+		}
+		assertThat(failures.get(), is(0));
+		assertThat(cache.size(), is(lessThanOrEqualTo(capacity)));
+		int count = 0;
+		for (String value : cache.values()) {
+			assertThat(value, is(notNullValue()));
+			++count;
+		}
+		assertThat(count, is(cache.size()));
+	}
+
+	private void givenACacheWithEntries(int capacity, long expirationThresholdMillis, int noOfEntries) {
+		cache = new ConcurrentLeastRecentlyUsedCache<>(capacity, 0);
+		cache.setExpirationThreshold(expirationThresholdMillis, TimeUnit.MILLISECONDS);
+		for (int i = 0; i < noOfEntries; i++) {
+			cache.put(i, Integer.toString(i));
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Verifies behavior of {@link HashedWheelTimer}.
+ */
+public class HashedWheelTimerTest {
+
+	HashedWheelTimer timer;
+
+	@Before
+	public void setUp() {
+		// small wheel to test timeouts of multiple rounds
+		timer = new HashedWheelTimer(new TestThreadFactory("timer-"), 10, TimeUnit.MILLISECONDS, 8);
+	}
+
+	@After
+	public void tearDown() {
+		timer.stop();
+	}
+
+	@Test
+	public void testTimeoutsExpire() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(3);
+		long start = System.nanoTime();
+		timer.schedule(countDown(latch), 0, TimeUnit.MILLISECONDS);
+		timer.schedule(countDown(latch), 20, TimeUnit.MILLISECONDS);
+		// more than one round of the wheel
+		timer.schedule(countDown(latch), 200, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+		assertThat(timer.getPendingTimeouts(), is(0L));
+	}
+
+	@Test
+	public void testCancelledTimeoutDoesNotExpire() throws InterruptedException {
+		final AtomicInteger counter = new AtomicInteger();
+		final CountDownLatch latch = new CountDownLatch(1);
+		HashedWheelTimer.Timeout timeout = timer.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				counter.incrementAndGet();
+			}
+		}, 50, TimeUnit.MILLISECONDS);
+		timer.schedule(countDown(latch), 100, TimeUnit.MILLISECONDS);
+		assertThat(timeout.cancel(), is(true));
+		assertThat(timeout.cancel(), is(false));
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertThat(counter.get(), is(0));
+		assertThat(timeout.isCancelled(), is(true));
+		assertThat(timeout.isExpired(), is(false));
+	}
+
+	@Test
+	public void testExpiredTimeoutCouldNotBeCancelled() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		HashedWheelTimer.Timeout timeout = timer.schedule(countDown(latch), 10, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertThat(timeout.isExpired(), is(true));
+		assertThat(timeout.cancel(), is(false));
+	}
+
+	@Test
+	public void testManyTimeouts() throws InterruptedException {
+		final int count = 10000;
+		final CountDownLatch latch = new CountDownLatch(count / 2);
+		HashedWheelTimer.Timeout[] timeouts = new HashedWheelTimer.Timeout[count];
+		for (int index = 0; index < count; ++index) {
+			timeouts[index] = timer.schedule(countDown(latch), 100 + index % 100, TimeUnit.MILLISECONDS);
+		}
+		for (int index = 0; index < count; index += 2) {
+			timeouts[index].cancel();
+		}
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		for (int index = 0; index < count; ++index) {
+			assertThat(timeouts[index].isExpired(), is(index % 2 == 1));
+		}
+	}
+
+	@Test
+	public void testStopReturnsPendingTasks() {
+		Runnable task = new Runnable() {
+
+			@Override
+			public void run() {
+			}
+		};
+		timer.schedule(task, 1, TimeUnit.MINUTES);
+		timer.schedule(task, 1, TimeUnit.MINUTES).cancel();
+		List<Runnable> pending = timer.stop();
+		assertThat(pending.size(), is(1));
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void testScheduleAfterStopIsRejected() {
+		timer.stop();
+		timer.schedule(countDown(new CountDownLatch(1)), 1, TimeUnit.MILLISECONDS);
+	}
+
+	private static Runnable countDown(final CountDownLatch latch) {
+		return new Runnable() {
+
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		};
+	}
+}
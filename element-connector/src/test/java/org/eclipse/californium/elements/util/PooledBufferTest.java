@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Verifies behavior of {@link PooledBuffer}.
+ */
+public class PooledBufferTest {
+
+	ByteBufferPool pool;
+
+	@Before
+	public void setUp() {
+		pool = new ByteBufferPool(16, 4, false);
+	}
+
+	@After
+	public void tearDown() {
+		PooledBuffer.setLeakDetection(false);
+	}
+
+	@Test
+	public void testReleaseReturnsBufferToPool() {
+		PooledBuffer buffer = PooledBuffer.acquire(pool);
+		buffer.setLength(8);
+		assertThat(buffer.references(), is(1));
+		assertThat(buffer.toByteArray().length, is(8));
+
+		buffer.retain();
+		assertThat(buffer.release(), is(false));
+		assertThat(pool.getPooledBuffers(), is(0));
+		assertThat(buffer.release(), is(true));
+		assertThat(buffer.references(), is(0));
+		assertThat(pool.getPooledBuffers(), is(1));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testDoubleReleaseFails() {
+		PooledBuffer buffer = PooledBuffer.acquire(pool);
+		buffer.release();
+		buffer.release();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testAccessAfterReleaseFails() {
+		PooledBuffer buffer = PooledBuffer.acquire(pool);
+		buffer.release();
+		buffer.array();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDirectPoolIsRejected() {
+		PooledBuffer.acquire(new ByteBufferPool(16, 4, true));
+	}
+
+	@Test
+	public void testLeakDetection() throws InterruptedException {
+		PooledBuffer.setLeakDetection(true);
+		long leaks = PooledBuffer.getLeaks();
+		acquireAndForget();
+		for (int loop = 0; loop < 50 && PooledBuffer.getLeaks() == leaks; ++loop) {
+			System.gc();
+			Thread.sleep(20);
+			PooledBuffer.detectLeaks();
+		}
+		assertThat(PooledBuffer.getLeaks(), is(leaks + 1));
+		assertThat(pool.getPooledBuffers(), is(1));
+	}
+
+	private void acquireAndForget() {
+		PooledBuffer.acquire(pool).setLength(4);
+	}
+}
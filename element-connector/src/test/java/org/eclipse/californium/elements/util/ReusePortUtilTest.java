@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.junit.Test;
+
+public class ReusePortUtilTest {
+
+	@Test
+	public void testGetShard() {
+		InetAddress loopback = InetAddress.getLoopbackAddress();
+		for (int port = 5000; port < 5100; ++port) {
+			InetSocketAddress peer = new InetSocketAddress(loopback, port);
+			int shard = ReusePortUtil.getShard(peer, 7);
+			assertThat(shard, is(greaterThanOrEqualTo(0)));
+			assertThat(shard, is(lessThan(7)));
+			assertThat(ReusePortUtil.getShard(peer, 7), is(shard));
+			assertThat(ReusePortUtil.getShard(peer, 1), is(0));
+		}
+	}
+
+	@Test
+	public void testCreateSocketsWithSamePort() throws IOException {
+		assumeTrue(ReusePortUtil.isSupported());
+		InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+		DatagramSocket socket1 = ReusePortUtil.createSocket(address, false);
+		try {
+			DatagramSocket socket2 = ReusePortUtil.createSocket(
+					(InetSocketAddress) socket1.getLocalSocketAddress(), false);
+			try {
+				assertThat(socket2.getLocalPort(), is(socket1.getLocalPort()));
+			} finally {
+				socket2.close();
+			}
+		} finally {
+			socket1.close();
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Verifies behavior of {@link SerialExecutor}.
+ */
+public class SerialExecutorTest {
+
+	private static final int PRODUCERS = 4;
+	private static final int JOBS = 10000;
+
+	ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(4, new TestThreadFactory("serial-"));
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testJobsAreExecutedSerially() throws InterruptedException {
+		final SerialExecutor serialExecutor = new SerialExecutor(executor, 4);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger failures = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(PRODUCERS * JOBS);
+		final Runnable job = new Runnable() {
+
+			@Override
+			public void run() {
+				if (running.incrementAndGet() != 1 || !serialExecutor.checkOwner()) {
+					failures.incrementAndGet();
+				}
+				running.decrementAndGet();
+				done.countDown();
+			}
+		};
+		Thread[] producers = new Thread[PRODUCERS];
+		for (int index = 0; index < PRODUCERS; ++index) {
+			producers[index] = new Thread() {
+
+				@Override
+				public void run() {
+					for (int count = 0; count < JOBS; ++count) {
+						serialExecutor.execute(job);
+					}
+				}
+			};
+			producers[index].start();
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		assertTrue("jobs not executed", done.await(10, TimeUnit.SECONDS));
+		assertThat(failures.get(), is(0));
+		assertThat(serialExecutor.getQueueSize(), is(0));
+	}
+
+	@Test
+	public void testShutdownNowReturnsQueuedJobs() throws InterruptedException {
+		SerialExecutor serialExecutor = new SerialExecutor(executor);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		long globalQueueSize = SerialExecutor.getGlobalQueueSize();
+		serialExecutor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				blocked.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		assertTrue("job not started", blocked.await(1, TimeUnit.SECONDS));
+		for (int count = 0; count < 5; ++count) {
+			serialExecutor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+				}
+			});
+		}
+		assertThat(serialExecutor.getQueueSize(), is(5));
+
+		List<Runnable> pending = serialExecutor.shutdownNow();
+		assertThat(pending.size(), is(5));
+		assertThat(serialExecutor.getQueueSize(), is(0));
+		assertThat(SerialExecutor.getGlobalQueueSize(), is(globalQueueSize));
+
+		release.countDown();
+		assertTrue("not terminated", serialExecutor.awaitTermination(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testExecuteConcurrentToShutdownNowLosesNoJob() throws InterruptedException {
+		final SerialExecutor serialExecutor = new SerialExecutor(executor);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger executed = new AtomicInteger();
+		final AtomicInteger rejected = new AtomicInteger();
+		serialExecutor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				blocked.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		assertTrue("job not started", blocked.await(1, TimeUnit.SECONDS));
+		final Runnable job = new Runnable() {
+
+			@Override
+			public void run() {
+				executed.incrementAndGet();
+			}
+		};
+		Thread[] producers = new Thread[PRODUCERS];
+		for (int index = 0; index < PRODUCERS; ++index) {
+			producers[index] = new Thread() {
+
+				@Override
+				public void run() {
+					for (int count = 0; count < JOBS; ++count) {
+						try {
+							serialExecutor.execute(job);
+						} catch (RejectedExecutionException ex) {
+							rejected.incrementAndGet();
+						}
+					}
+				}
+			};
+			producers[index].start();
+		}
+		List<Runnable> pending = serialExecutor.shutdownNow();
+		release.countDown();
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		assertTrue("not terminated", serialExecutor.awaitTermination(1, TimeUnit.SECONDS));
+		// each job is either executed, returned by shutdownNow, or rejected
+		assertThat(executed.get() + pending.size() + rejected.get(), is(PRODUCERS * JOBS));
+		assertThat(serialExecutor.getQueueSize(), is(0));
+	}
+
+	@Test
+	public void testJobRejectedByTargetExecutorIsRemoved() {
+		SerialExecutor serialExecutor = new SerialExecutor(executor);
+		long globalQueueSize = SerialExecutor.getGlobalQueueSize();
+		executor.shutdown();
+		try {
+			serialExecutor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+				}
+			});
+			fail("job must be rejected!");
+		} catch (RejectedExecutionException ex) {
+			// expected
+		}
+		assertThat(serialExecutor.getQueueSize(), is(0));
+		assertThat(SerialExecutor.getGlobalQueueSize(), is(globalQueueSize));
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void testExecuteAfterShutdownIsRejected() {
+		SerialExecutor serialExecutor = new SerialExecutor(executor);
+		serialExecutor.shutdown();
+		serialExecutor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+			}
+		});
+	}
+}
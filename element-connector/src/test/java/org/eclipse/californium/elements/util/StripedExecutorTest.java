@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Verifies behavior of {@link StripedExecutor}.
+ */
+public class StripedExecutorTest {
+
+	private static final int JOBS = 1000;
+
+	ExecutorService executor;
+	StripedExecutor stripedExecutor;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(4, new TestThreadFactory("striped-"));
+		stripedExecutor = new StripedExecutor(executor, 8);
+	}
+
+	@After
+	public void tearDown() {
+		stripedExecutor.shutdown();
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testSameKeyUsesSameStripe() {
+		InetSocketAddress peer = new InetSocketAddress("192.168.0.1", 5683);
+		InetSocketAddress samePeer = new InetSocketAddress("192.168.0.1", 5683);
+		assertThat(stripedExecutor.getExecutor(peer), is(sameInstance(stripedExecutor.getExecutor(samePeer))));
+		assertThat(stripedExecutor.getStripeIndex(peer), is(StripedExecutor.getStripeIndex(samePeer, 8)));
+	}
+
+	@Test
+	public void testJobsOfPeerAreExecutedInOrder() throws InterruptedException {
+		final InetSocketAddress peer = new InetSocketAddress("192.168.0.1", 5683);
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch done = new CountDownLatch(JOBS);
+		for (int count = 0; count < JOBS; ++count) {
+			final int job = count;
+			stripedExecutor.execute(peer, new Runnable() {
+
+				@Override
+				public void run() {
+					if (stripedExecutor.checkOwner(peer)) {
+						order.add(job);
+					}
+					done.countDown();
+				}
+			});
+		}
+		assertTrue("jobs not executed", done.await(5, TimeUnit.SECONDS));
+		assertThat(order.size(), is(JOBS));
+		for (int count = 0; count < JOBS; ++count) {
+			assertThat(order.get(count), is(count));
+		}
+	}
+}
@@ -19,14 +19,18 @@
  *                                                    currentTimeMillis.
  *    Achim Kraus (Bosch Software Innovations GmbH) - use binary address instead of
  *                                                    string
+ *    Bosch Software Innovations GmbH - lock-free key rotation, per-thread HMAC
+ *                                      and cookie verification with previous key.
  */
 package org.eclipse.californium.scandium;
 
 import java.net.InetSocketAddress;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.security.SecureRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -46,151 +50,174 @@ import org.eclipse.californium.scandium.dtls.cipher.CipherSuite;
  *
  * as suggested
  * <a href="http://tools.ietf.org/html/rfc6347#section-4.2.1">here</a>.
- *
+ * <p>
+ * The secret is replaced every {@link #KEY_LIFE_TIME} without locking. Cookies
+ * are verified against the current and the previous secret, so a client,
+ * which received its cookie just before the secret was replaced, is still
+ * accepted. Each thread uses its own HMAC instances, which are initialized
+ * once per secret and reused afterwards, avoiding to clone a shared one.
+ * </p>
  */
 public class CookieGenerator {
 
+	/**
+	 * HMAC algorithm.
+	 */
+	private static final String ALGORITHM = "HmacSHA256";
 	/**
 	 * Key lifetime in nanos.
 	 */
 	private static final long KEY_LIFE_TIME = TimeUnit.MINUTES.toNanos(5);
 
 	/**
-	 * Nanos of next key generation.
+	 * Current and previous secret. Replaced atomically, when the current
+	 * secret expires.
+	 */
+	private final AtomicReference<Secrets> secrets = new AtomicReference<>();
+	/**
+	 * Per-thread HMAC instances.
 	 */
-	private long nextKeyGenerationNanos;
+	private final ThreadLocal<ThreadMac> threadMac = new ThreadLocal<ThreadMac>() {
+
+		@Override
+		protected ThreadMac initialValue() {
+			return new ThreadMac();
+		}
+	};
 	/**
-	 * Last generated key.
+	 * Number of generated cookies.
 	 */
-	private SecretKeySpec lastSecretKey;
+	private final AtomicLong issuedCookies = new AtomicLong();
 	/**
-	 * Lock to protect {@link #hmac}, {@link #lastSecretKey} and
-	 * {@link #nextKeyGenerationNanos}
+	 * Number of successfully verified cookies.
 	 */
-	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final AtomicLong verifiedCookies = new AtomicLong();
 	/**
-	 * Mac initialized with {@link #lastSecretKey}, if clonable.
+	 * Number of cookies failed to verify.
 	 */
-	private Mac hmac;
+	private final AtomicLong rejectedCookies = new AtomicLong();
 
 	// attributes used for random byte generation
 	private final SecureRandom rng = new SecureRandom();
-	byte[] rd = new byte[32];
 
 	/**
-	 * Create HMAC.
-	 * 
-	 * Create HMAC cloning the master {@link #hmac}, if cloning is supported, or
-	 * create a new HAMC initialized with {@link #lastSecretKey}, if cloning is
-	 * not supported.
+	 * Get current secrets.
 	 * 
-	 * MUST be called in read or write scope of {@link #lock}!
+	 * Replaces the current secret, if it's expired. If multiple threads detect
+	 * the expiration at the same time, only one of the newly generated secrets
+	 * is applied.
 	 * 
-	 * @return new HMAC
-	 * @throws GeneralSecurityException if an security related exception occurs
-	 *             when creating the HMAC.
-	 */
-	private final Mac createHMAC() throws GeneralSecurityException {
-		if (hmac != null) {
-			// clone is supported
-			try {
-				return (Mac) hmac.clone();
-			} catch (CloneNotSupportedException e) {
-				throw new IllegalStateException("hmac doesn't support clone and MUST therefore be null!");
+	 * @return current secrets
+	 */
+	private Secrets getSecrets() {
+		Secrets current = secrets.get();
+		while (current == null || current.isExpired()) {
+			Secrets next = new Secrets(generateSecretKey(current), current == null ? null : current.current);
+			if (secrets.compareAndSet(current, next)) {
+				return next;
 			}
-		} else {
-			// clone is not supported
-			Mac hmac = Mac.getInstance("HmacSHA256");
-			hmac.init(lastSecretKey);
-			return hmac;
+			current = secrets.get();
 		}
+		return current;
 	}
 
 	/**
-	 * Return a fresh HMAC algorithm instance.
+	 * Generate a new secret key for MAC algorithm.
 	 * 
-	 * @return fresh HMAC
-	 * @throws GeneralSecurityException if an security related exception occurs
-	 *             when refreshing the HMAC.
+	 * @param current current secrets. May be {@code null}.
+	 * @return new secret key
 	 */
-	private Mac getHMAC() throws GeneralSecurityException {
+	private Secret generateSecretKey(Secrets current) {
+		byte[] rd = new byte[32];
+		rng.nextBytes(rd);
+		long epoch = current == null ? 0 : current.current.epoch + 1;
+		return new Secret(new SecretKeySpec(rd, "MAC"), epoch, ClockUtil.nanoRealtime() + KEY_LIFE_TIME);
+	}
 
-		lock.readLock().lock();
-		try {
-			// check, if a secret key is already created and not expired
-			if (lastSecretKey != null && !isKeyExpired()) {
-				return createHMAC();
-			}
-		} finally {
-			lock.readLock().unlock();
-		}
+	/**
+	 * Generates a cookie in such a way that they can be verified without
+	 * retaining any per-client state on the server.
+	 *
+	 * <pre>
+	 * Cookie = HMAC(Secret, Client - IP, Client - Parameters)
+	 * </pre>
+	 *
+	 * as suggested
+	 * <a href="http://tools.ietf.org/html/rfc6347#section-4.2.1">here</a>.
+	 *
+	 * @param clientHello received client hello to generate a cookie for
+	 * @return the cookie generated from the client's parameters
+	 * @throws GeneralSecurityException if the cookie cannot be computed
+	 */
+	public byte[] generateCookie(final ClientHello clientHello) throws GeneralSecurityException {
+		byte[] cookie = generateCookie(getSecrets().current, clientHello);
+		issuedCookies.incrementAndGet();
+		return cookie;
+	}
 
-		// if key expired or secret key not initialized;
-		lock.writeLock().lock();
-		try {
-			// Recheck state because another thread might have acquired
-			// write lock and changed state before we did.
-			if (lastSecretKey == null) {
-				// initialize
-				generateSecretKey();
-				hmac = Mac.getInstance("HmacSHA256");
-				hmac.init(lastSecretKey);
-				return (Mac) hmac.clone();
-			} else if (isKeyExpired()) {
-				generateSecretKey();
+	/**
+	 * Verify the cookie of the client hello.
+	 * 
+	 * The cookie is verified against the current and the previous secret.
+	 * 
+	 * @param clientHello received client hello with cookie
+	 * @return {@code true}, if the cookie is valid, {@code false}, otherwise.
+	 * @throws GeneralSecurityException if the cookie cannot be computed
+	 */
+	public boolean isValidCookie(final ClientHello clientHello) throws GeneralSecurityException {
+		byte[] providedCookie = clientHello.getCookie();
+		if (providedCookie.length > 0) {
+			Secrets current = getSecrets();
+			if (MessageDigest.isEqual(providedCookie, generateCookie(current.current, clientHello))
+					|| (current.previous != null && MessageDigest.isEqual(providedCookie,
+							generateCookie(current.previous, clientHello)))) {
+				verifiedCookies.incrementAndGet();
+				return true;
 			}
-			return createHMAC();
-		} catch (CloneNotSupportedException ex) {
-			// catch, if MacSpi is not cloneable (android)!
-			Mac hmac = this.hmac;
-			this.hmac = null;
-			return hmac;
-		} finally {
-			lock.writeLock().unlock();
 		}
+		rejectedCookies.incrementAndGet();
+		return false;
 	}
 
 	/**
-	 * check, if {@link #lastSecretKey} has expired.
+	 * Get the number of generated cookies.
 	 * 
-	 * MUST be called in read or write scope of {@link #lock}!
+	 * @return number of generated cookies
+	 */
+	public long getIssuedCookies() {
+		return issuedCookies.get();
+	}
+
+	/**
+	 * Get the number of successfully verified cookies.
 	 * 
-	 * @return {@code true}, if key is expired, {@code false} otherwise.
+	 * @return number of verified cookies
 	 */
-	private boolean isKeyExpired() {
-		// consider sign wrap in longs (very optimistic about the uptime :-) )
-		return (ClockUtil.nanoRealtime() - nextKeyGenerationNanos) >= 0;
+	public long getVerifiedCookies() {
+		return verifiedCookies.get();
 	}
 
 	/**
-	 * Generate a new secret key for MAC algorithm.
+	 * Get the number of cookies, which failed to verify.
 	 * 
-	 * MUST be called in write scope of {@link #lock}!
+	 * @return number of rejected cookies
 	 */
-	private void generateSecretKey() {
-		nextKeyGenerationNanos = ClockUtil.nanoRealtime() + KEY_LIFE_TIME;
-		rng.nextBytes(rd);
-		lastSecretKey = new SecretKeySpec(rd, "MAC");
+	public long getRejectedCookies() {
+		return rejectedCookies.get();
 	}
 
 	/**
-	 * Generates a cookie in such a way that they can be verified without
-	 * retaining any per-client state on the server.
-	 *
-	 * <pre>
-	 * Cookie = HMAC(Secret, Client - IP, Client - Parameters)
-	 * </pre>
-	 *
-	 * as suggested
-	 * <a href="http://tools.ietf.org/html/rfc6347#section-4.2.1">here</a>.
-	 *
+	 * Calculate the cookie using the provided secret.
+	 * 
+	 * @param secret secret for HMAC
 	 * @param clientHello received client hello to generate a cookie for
 	 * @return the cookie generated from the client's parameters
 	 * @throws GeneralSecurityException if the cookie cannot be computed
 	 */
-	public byte[] generateCookie(final ClientHello clientHello) throws GeneralSecurityException {
+	private byte[] generateCookie(final Secret secret, final ClientHello clientHello)
+			throws GeneralSecurityException {
 		// Cookie = HMAC(Secret, Client-IP, Client-Parameters)
-		final Mac hmac = getHMAC();
+		final Mac hmac = threadMac.get().getMac(secret);
 		// Client-IP
 		InetSocketAddress peer = clientHello.getPeer();
 		hmac.update(peer.getAddress().getAddress());
@@ -206,4 +233,89 @@ public class CookieGenerator {
 		hmac.update(CompressionMethod.listToByteArray(clientHello.getCompressionMethods()));
 		return hmac.doFinal();
 	}
+
+	/**
+	 * Secret key with epoch and expiration.
+	 */
+	private static final class Secret {
+
+		private final SecretKeySpec key;
+		private final long epoch;
+		/**
+		 * Nanos of expiration.
+		 */
+		private final long expirationNanos;
+
+		private Secret(SecretKeySpec key, long epoch, long expirationNanos) {
+			this.key = key;
+			this.epoch = epoch;
+			this.expirationNanos = expirationNanos;
+		}
+	}
+
+	/**
+	 * Current and previous secret.
+	 */
+	private static final class Secrets {
+
+		private final Secret current;
+		private final Secret previous;
+
+		private Secrets(Secret current, Secret previous) {
+			this.current = current;
+			this.previous = previous;
+		}
+
+		/**
+		 * Check, if the current secret has expired.
+		 * 
+		 * @return {@code true}, if expired, {@code false}, otherwise.
+		 */
+		private boolean isExpired() {
+			// consider sign wrap in longs (very optimistic about the uptime :-) )
+			return (ClockUtil.nanoRealtime() - current.expirationNanos) >= 0;
+		}
+	}
+
+	/**
+	 * HMAC instances of a single thread.
+	 * 
+	 * Keeps two HMAC instances, one for the current and one for the previous
+	 * secret. A HMAC is only initialized again, if the secret changes.
+	 */
+	private static final class ThreadMac {
+
+		private final Mac[] macs = new Mac[2];
+		private final Secret[] secrets = new Secret[2];
+
+		/**
+		 * Get HMAC initialized with the provided secret.
+		 * 
+		 * @param secret secret for HMAC
+		 * @return HMAC initialized with the secret
+		 * @throws GeneralSecurityException if the HMAC could not be created or
+		 *             initialized.
+		 */
+		private Mac getMac(Secret secret) throws GeneralSecurityException {
+			for (int index = 0; index < secrets.length; ++index) {
+				if (secrets[index] == secret) {
+					// reset state, in case a previous calculation failed
+					macs[index].reset();
+					return macs[index];
+				}
+			}
+			// replace the HMAC with the older secret
+			int index = secrets[0] == null || (secrets[1] != null && secrets[0].epoch < secrets[1].epoch) ? 0 : 1;
+			Mac mac = macs[index];
+			if (mac == null) {
+				mac = Mac.getInstance(ALGORITHM);
+				macs[index] = mac;
+			}
+			// clear secret first, if initialization fails
+			secrets[index] = null;
+			mac.init(secret.key);
+			secrets[index] = secret;
+			return mac;
+		}
+	}
 }
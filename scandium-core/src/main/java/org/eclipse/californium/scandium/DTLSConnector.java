@@ -116,11 +116,32 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - move serial executor into connection
  *                                                    process new CLIENT_HELLOs without
  *                                                    serial executor.
+ *    Bosch Software Innovations GmbH - add SO_REUSEPORT socket shards
+ *    Bosch Software Innovations GmbH - write records of a flight directly into
+ *                                      the datagram buffer
+ *    Bosch Software Innovations GmbH - configurable batch size of connection executors
+ *    Bosch Software Innovations GmbH - add virtual threads for connection executor
+ *    Bosch Software Innovations GmbH - parse records as slices of a single
+ *                                      datagram copy
+ *    Bosch Software Innovations GmbH - use session cache of configuration
+ *    Bosch Software Innovations GmbH - save and load connection states
+ *    Bosch Software Innovations GmbH - use striped locks instead of the
+ *                                      monitor of the connection store
+ *    Bosch Software Innovations GmbH - add handshake admission control
+ *    Bosch Software Innovations GmbH - verify cookies with previous secret
+ *    Bosch Software Innovations GmbH - verify cookies on the receiver thread
+ *    Bosch Software Innovations GmbH - add inline application data processing
+ *    Bosch Software Innovations GmbH - use hashed wheel timer for flight timeouts
+ *    Bosch Software Innovations GmbH - add path MTU discovery
+ *    Bosch Software Innovations GmbH - mark application data records
+ *                                      atomically on both paths
  ******************************************************************************/
 package org.eclipse.californium.scandium;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.Inet4Address;
@@ -139,8 +160,6 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -149,6 +168,8 @@ import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import javax.crypto.SecretKey;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -161,14 +182,17 @@ import org.eclipse.californium.elements.exception.EndpointUnconnectedException;
 import org.eclipse.californium.elements.exception.MulticastNotSupportedException;
 import org.eclipse.californium.elements.RawData;
 import org.eclipse.californium.elements.RawDataChannel;
+import org.eclipse.californium.elements.util.ByteBufferDatagramWriter;
 import org.eclipse.californium.elements.util.ClockUtil;
 import org.eclipse.californium.elements.util.DaemonThreadFactory;
-import org.eclipse.californium.elements.util.DatagramWriter;
 import org.eclipse.californium.elements.util.ExecutorsUtil;
+import org.eclipse.californium.elements.util.HashedWheelTimer;
 import org.eclipse.californium.elements.util.LeastRecentlyUsedCache;
 import org.eclipse.californium.elements.util.NamedThreadFactory;
+import org.eclipse.californium.elements.util.ReusePortUtil;
 import org.eclipse.californium.elements.util.SerialExecutor;
 import org.eclipse.californium.elements.util.StringUtil;
+import org.eclipse.californium.elements.util.StripedExecutor;
 import org.eclipse.californium.scandium.config.DtlsConnectorConfig;
 import org.eclipse.californium.scandium.dtls.AlertMessage;
 import org.eclipse.californium.scandium.dtls.AlertMessage.AlertDescription;
@@ -190,6 +214,7 @@ import org.eclipse.californium.scandium.dtls.Handshaker;
 import org.eclipse.californium.scandium.dtls.HelloVerifyRequest;
 import org.eclipse.californium.scandium.dtls.InMemoryConnectionStore;
 import org.eclipse.californium.scandium.dtls.MaxFragmentLengthExtension;
+import org.eclipse.californium.scandium.dtls.PathMtu;
 import org.eclipse.californium.scandium.dtls.ProtocolVersion;
 import org.eclipse.californium.scandium.dtls.Record;
 import org.eclipse.californium.scandium.dtls.RecordLayer;
@@ -198,6 +223,7 @@ import org.eclipse.californium.scandium.dtls.ResumingServerHandshaker;
 import org.eclipse.californium.scandium.dtls.ResumptionSupportingConnectionStore;
 import org.eclipse.californium.scandium.dtls.ServerHandshaker;
 import org.eclipse.californium.scandium.dtls.ServerNameExtension;
+import org.eclipse.californium.scandium.dtls.ShardedConnectionStore;
 import org.eclipse.californium.scandium.dtls.SessionAdapter;
 import org.eclipse.californium.scandium.dtls.SessionCache;
 import org.eclipse.californium.scandium.dtls.SessionId;
@@ -227,6 +253,13 @@ public class DTLSConnector implements Connector, RecordLayer {
 	public static final int DEFAULT_IPV6_MTU = 1280;
 	public static final int DEFAULT_IPV4_MTU = 576;
 
+	/**
+	 * Length of the optional IP options, the UDP header and the IP header.
+	 * 
+	 * @see DTLSSession#HEADER_LENGTH
+	 */
+	private static final int IP_UDP_HEADER_LENGTH = 36 + 8 + 20;
+
 	private static final Logger LOGGER = LoggerFactory.getLogger(DTLSConnector.class.getCanonicalName());
 	private static final int MAX_PLAINTEXT_FRAGMENT_LENGTH = 16384; // max. DTLSPlaintext.length (2^14 bytes)
 	private static final int MAX_CIPHERTEXT_EXPANSION = CipherSuite.getOverallMaxCiphertextExpansion();
@@ -245,17 +278,38 @@ public class DTLSConnector implements Connector, RecordLayer {
 
 	private static final long CLIENT_HELLO_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
 
+	/**
+	 * Number of locks used to create connections.
+	 * 
+	 * @see #connectionLocks
+	 */
+	private static final int CONNECTION_LOCKS = 64;
+
 	/** all the configuration options for the DTLS connector */ 
 	private final DtlsConnectorConfig config;
 
 	private final ResumptionSupportingConnectionStore connectionStore;
 
+	/**
+	 * Locks to create new connections. The lock is selected by the peer's
+	 * address, so connections for different peers are created without
+	 * contention on a global monitor.
+	 * 
+	 * @see #getConnectionLock(InetSocketAddress)
+	 */
+	private final Object[] connectionLocks = new Object[CONNECTION_LOCKS];
+
 	/**
 	 * General auto resumption timeout in milliseconds. {@code null}, if auto
 	 * resumption is not used.
 	 */
 	private final Long autoResumptionTimeoutMillis;
 
+	/**
+	 * Admission control for new handshakes.
+	 */
+	private final HandshakeScheduler handshakeScheduler;
+
 	private final int thresholdHandshakesWithoutVerifiedPeer;
 	private final AtomicInteger pendingHandshakesWithoutVerifiedPeer = new AtomicInteger();
 
@@ -272,6 +326,19 @@ public class DTLSConnector implements Connector, RecordLayer {
 	 * Apply address update only for newer records based on epoch/sequence_number.
 	 */
 	private final boolean useCidUpdateAddressOnNewerRecordFilter;
+	/**
+	 * Process APPLICATION_DATA records of established connections on the
+	 * receiver thread.
+	 * 
+	 * @see DtlsConnectorConfig#useInlineApplicationData()
+	 */
+	private final boolean useInlineApplicationData;
+	/**
+	 * Track the path MTU per connection.
+	 * 
+	 * @see DtlsConnectorConfig#usePathMtuDiscovery()
+	 */
+	private final boolean usePathMtuDiscovery;
 
 	/**
 	 * (Down-)counter for pending outbound messages. Initialized with
@@ -291,13 +358,21 @@ public class DTLSConnector implements Connector, RecordLayer {
 	private int maximumTransmissionUnit = DEFAULT_IPV4_MTU;
 	private int inboundDatagramBufferSize = MAX_DATAGRAM_BUFFER_SIZE;
 
-	private CookieGenerator cookieGenerator = new CookieGenerator();
+	private final CookieGenerator cookieGenerator = new CookieGenerator();
 	private Object alertHandlerLock= new Object();
 
 	private volatile DatagramSocket socket;
 
+	/**
+	 * Sockets bound to the local address. Contains only the {@link #socket},
+	 * if no {@code SO_REUSEPORT} shards are used.
+	 * 
+	 * @see DtlsConnectorConfig#getSocketShards()
+	 */
+	private volatile DatagramSocket[] sockets;
+
 	/** The timer daemon to schedule retransmissions. */
-	private ScheduledExecutorService timer;
+	private HashedWheelTimer timer;
 
 	/** Indicates whether the connector has started and not stopped yet */
 	private AtomicBoolean running = new AtomicBoolean(false);
@@ -322,11 +397,14 @@ public class DTLSConnector implements Connector, RecordLayer {
 	 * Creates a DTLS connector from a given configuration object
 	 * using the standard in-memory <code>ConnectionStore</code>. 
 	 * 
+	 * Uses the {@link DtlsConnectorConfig#getSessionCache()} as second level
+	 * cache, if available.
+	 * 
 	 * @param configuration the configuration options
 	 * @throws NullPointerException if the configuration is <code>null</code>
 	 */
 	public DTLSConnector(DtlsConnectorConfig configuration) {
-		this(configuration, (SessionCache) null);
+		this(configuration, configuration.getSessionCache());
 	}
 
 	/**
@@ -342,11 +420,36 @@ public class DTLSConnector implements Connector, RecordLayer {
 	 * @throws NullPointerException if the configuration is <code>null</code>.
 	 */
 	public DTLSConnector(final DtlsConnectorConfig configuration, final SessionCache sessionCache) {
-		this(configuration,
-				new InMemoryConnectionStore(
-						configuration.getMaxConnections(),
-						configuration.getStaleConnectionThreshold(),
-						sessionCache).setTag(configuration.getLoggingTag()));
+		this(configuration, createConnectionStore(configuration, sessionCache));
+	}
+
+	/**
+	 * Create the connection store for the configuration.
+	 * 
+	 * @param configuration The configuration options.
+	 * @param sessionCache An (optional) second level cache for the sessions.
+	 * @return a {@link ShardedConnectionStore}, if
+	 *         {@link DtlsConnectorConfig#getConnectionStoreShards()} is larger
+	 *         than 1, otherwise a {@link InMemoryConnectionStore}.
+	 * @throws NullPointerException if the configuration is <code>null</code>.
+	 */
+	private static ResumptionSupportingConnectionStore createConnectionStore(
+			final DtlsConnectorConfig configuration, final SessionCache sessionCache) {
+		if (configuration == null) {
+			throw new NullPointerException("Configuration must not be null");
+		}
+		Integer shards = configuration.getConnectionStoreShards();
+		if (shards != null && shards > 1) {
+			return new ShardedConnectionStore(
+					configuration.getMaxConnections(),
+					configuration.getStaleConnectionThreshold(),
+					shards,
+					sessionCache).setTag(configuration.getLoggingTag());
+		}
+		return new InMemoryConnectionStore(
+				configuration.getMaxConnections(),
+				configuration.getStaleConnectionThreshold(),
+				sessionCache).setTag(configuration.getLoggingTag());
 	}
 
 	/**
@@ -377,9 +480,17 @@ public class DTLSConnector implements Connector, RecordLayer {
 			this.useWindowFilter = config.useWindowFilter();
 			this.useFilter = config.useAntiReplayFilter() || useWindowFilter;
 			this.useCidUpdateAddressOnNewerRecordFilter = config.useCidUpdateAddressOnNewerRecordFilter();
+			this.useInlineApplicationData = config.useInlineApplicationData();
+			this.usePathMtuDiscovery = config.usePathMtuDiscovery();
 			this.connectionStore = connectionStore;
 			this.connectionStore.attach(connectionIdGenerator);
+			for (int index = 0; index < connectionLocks.length; ++index) {
+				connectionLocks[index] = new Object();
+			}
 			this.connectionStore.setConnectionListener(config.getConnectionListener());
+			this.handshakeScheduler = new HandshakeScheduler(config.getMaxConcurrentHandshakes(),
+					config.getHandshakeQueueSize(), config.getHandshakeRateLimit(), config.getHandshakeRateBurst(),
+					config.getMaxConnections());
 			this.sessionListener = new SessionAdapter() {
 
 				@Override
@@ -581,34 +692,69 @@ public class DTLSConnector implements Connector, RecordLayer {
 
 		pendingOutboundMessagesCountdown.set(config.getOutboundMessageBufferSize());
 
-		if (executorService instanceof ScheduledExecutorService) {
-			timer = (ScheduledExecutorService) executorService;
-		} else {
-			timer = ExecutorsUtil.newSingleThreadScheduledExecutor(
-					new DaemonThreadFactory("DTLS-Retransmit-Task-", NamedThreadFactory.SCANDIUM_THREAD_GROUP)); //$NON-NLS-1$
-		}
-
-		if (executorService == null) {
-			int threadCount = config.getConnectionThreadCount();
-			if (threadCount > 1) {
-				executorService = ExecutorsUtil.newFixedThreadPool(threadCount - 1,
-						new DaemonThreadFactory("DTLS-Connection-Handler-", NamedThreadFactory.SCANDIUM_THREAD_GROUP)); //$NON-NLS-1$
+		timer = new HashedWheelTimer(
+				new DaemonThreadFactory("DTLS-Retransmit-Task-", NamedThreadFactory.SCANDIUM_THREAD_GROUP)); //$NON-NLS-1$
+		timer.start();
+
+		if (executorService == null && config.isVirtualThreadsEnabled()) {
+			if (ExecutorsUtil.isVirtualThreadsSupported()) {
+				try {
+					executorService = ExecutorsUtil.newVirtualThreadPerTaskExecutor("DTLS-Connection-Handler-"); //$NON-NLS-1$
+					this.hasInternalExecutor = true;
+				} catch (UnsupportedOperationException e) {
+					LOGGER.warn("virtual threads failed, using thread pool instead!", e);
+				}
 			} else {
-				executorService = timer;
+				LOGGER.warn("virtual threads are not supported, using thread pool instead!");
 			}
+		}
+		if (executorService == null) {
+			// the timer thread is counted as one of the connection threads
+			int threadCount = Math.max(1, config.getConnectionThreadCount() - 1);
+			executorService = ExecutorsUtil.newFixedThreadPool(threadCount,
+					new DaemonThreadFactory("DTLS-Connection-Handler-", NamedThreadFactory.SCANDIUM_THREAD_GROUP)); //$NON-NLS-1$
 			this.hasInternalExecutor = true;
 		}
-		socket = new DatagramSocket(null);
-		if (bindAddress.getPort() != 0 && config.isAddressReuseEnabled()) {
-			// make it easier to stop/start a server consecutively without delays
-			LOGGER.info("Enable address reuse for socket!");
-			socket.setReuseAddress(true);
-			if (!socket.getReuseAddress()) {
-				LOGGER.warn("Enable address reuse for socket failed!");
-			}
+		int shards = config.getSocketShards();
+		if (shards > 1 && !ReusePortUtil.isSupported()) {
+			LOGGER.warn("SO_REUSEPORT not supported, using a single socket instead of {} shards!", shards);
+			shards = 1;
 		}
+		boolean reuseAddress = bindAddress.getPort() != 0 && config.isAddressReuseEnabled();
+		if (shards > 1) {
+			DatagramSocket[] sockets = new DatagramSocket[shards];
+			try {
+				// the first shard may use an ephemeral port, all others use
+				// the same port
+				InetSocketAddress shardAddress = bindAddress;
+				for (int index = 0; index < shards; ++index) {
+					sockets[index] = ReusePortUtil.createSocket(shardAddress, reuseAddress);
+					shardAddress = (InetSocketAddress) sockets[0].getLocalSocketAddress();
+				}
+			} catch (IOException ex) {
+				for (DatagramSocket shard : sockets) {
+					if (shard != null) {
+						shard.close();
+					}
+				}
+				throw ex;
+			}
+			this.sockets = sockets;
+			this.socket = sockets[0];
+		} else {
+			socket = new DatagramSocket(null);
+			if (reuseAddress) {
+				// make it easier to stop/start a server consecutively without delays
+				LOGGER.info("Enable address reuse for socket!");
+				socket.setReuseAddress(true);
+				if (!socket.getReuseAddress()) {
+					LOGGER.warn("Enable address reuse for socket failed!");
+				}
+			}
 
-		socket.bind(bindAddress);
+			socket.bind(bindAddress);
+			this.sockets = new DatagramSocket[] { socket };
+		}
 		if (lastBindAddress != null && (!socket.getLocalAddress().equals(lastBindAddress.getAddress()) || socket.getLocalPort() != lastBindAddress.getPort())){
 			if (connectionStore instanceof ResumptionSupportingConnectionStore) {
 				((ResumptionSupportingConnectionStore) connectionStore).markAllAsResumptionRequired();
@@ -659,8 +805,10 @@ public class DTLSConnector implements Connector, RecordLayer {
 		lastBindAddress = new InetSocketAddress(socket.getLocalAddress(), socket.getLocalPort());
 		running.set(true);
 
-		int receiverThreadCount = config.getReceiverThreadCount();
+		// each shard requires at least one receiver thread
+		int receiverThreadCount = Math.max(config.getReceiverThreadCount(), shards);
 		for (int i = 0; i < receiverThreadCount; i++) {
+			final DatagramSocket receiverSocket = sockets[i % shards];
 			Worker receiver = new Worker("DTLS-Receiver-" + i + "-" + lastBindAddress) {
 
 				private final byte[] receiverBuffer = new byte[inboundDatagramBufferSize];
@@ -669,7 +817,7 @@ public class DTLSConnector implements Connector, RecordLayer {
 				@Override
 				public void doWork() throws Exception {
 					packet.setData(receiverBuffer);
-					receiveNextDatagramFromNetwork(packet);
+					receiveNextDatagramFromNetwork(receiverSocket, packet);
 				}
 			};
 			receiver.setDaemon(true);
@@ -678,8 +826,8 @@ public class DTLSConnector implements Connector, RecordLayer {
 		}
 
 		LOGGER.info(
-				"DTLS connector listening on [{}] with MTU [{}] using (inbound) datagram buffer size [{} bytes]",
-				lastBindAddress, maximumTransmissionUnit, inboundDatagramBufferSize);
+				"DTLS connector listening on [{}] with MTU [{}] using (inbound) datagram buffer size [{} bytes] and {} socket(s)",
+				lastBindAddress, maximumTransmissionUnit, inboundDatagramBufferSize, shards);
 	}
 
 	/**
@@ -716,13 +864,89 @@ public class DTLSConnector implements Connector, RecordLayer {
 		connectionStore.clear();
 	}
 
+	/**
+	 * Gets the admission control for new handshakes.
+	 * 
+	 * Provides the number of running and queued handshakes and the number of
+	 * rejected CLIENT_HELLOs.
+	 * 
+	 * @return handshake scheduler
+	 */
+	public HandshakeScheduler getHandshakeScheduler() {
+		return handshakeScheduler;
+	}
+
+	/**
+	 * Gets the cookie generator.
+	 * 
+	 * Provides the number of issued, verified and rejected cookies.
+	 * 
+	 * @return cookie generator
+	 */
+	public CookieGenerator getCookieGenerator() {
+		return cookieGenerator;
+	}
+
+	/**
+	 * Save the <em>current</em> connection states of all established
+	 * connections.
+	 * 
+	 * Enables to {@link #loadConnections(InputStream, SecretKey)} after a
+	 * restart of the process, so that the peers continue to exchange
+	 * application data without handshake. The connector must be stopped
+	 * before and must not be started again afterwards, because the saved
+	 * states contain the sequence numbers of the outgoing records.
+	 * 
+	 * @param out output stream to write the connection states
+	 * @param key AES key to encrypt the connection states
+	 * @return number of saved connections
+	 * @throws IOException if an i/o error occurred
+	 * @throws IllegalStateException if the connector is running
+	 * @throws UnsupportedOperationException if the connection store doesn't
+	 *             support to save connections
+	 * @see InMemoryConnectionStore#saveConnections(OutputStream, SecretKey)
+	 */
+	public final synchronized int saveConnections(OutputStream out, SecretKey key) throws IOException {
+		if (running.get()) {
+			throw new IllegalStateException("Connector must be stopped to save the connections!");
+		}
+		if (!(connectionStore instanceof InMemoryConnectionStore)) {
+			throw new UnsupportedOperationException("Connection store doesn't support to save the connections!");
+		}
+		return ((InMemoryConnectionStore) connectionStore).saveConnections(out, key);
+	}
+
+	/**
+	 * Load the connection states saved by
+	 * {@link #saveConnections(OutputStream, SecretKey)}.
+	 * 
+	 * Must be called before the connector is started.
+	 * 
+	 * @param in input stream to read the connection states
+	 * @param key AES key to decrypt the connection states
+	 * @return number of loaded connections
+	 * @throws IOException if an i/o error occurred
+	 * @throws IllegalStateException if the connector is running
+	 * @throws UnsupportedOperationException if the connection store doesn't
+	 *             support to load connections
+	 * @see InMemoryConnectionStore#loadConnections(InputStream, SecretKey)
+	 */
+	public final synchronized int loadConnections(InputStream in, SecretKey key) throws IOException {
+		if (running.get()) {
+			throw new IllegalStateException("Connector must be stopped to load the connections!");
+		}
+		if (!(connectionStore instanceof InMemoryConnectionStore)) {
+			throw new UnsupportedOperationException("Connection store doesn't support to load the connections!");
+		}
+		return ((InMemoryConnectionStore) connectionStore).loadConnections(in, key);
+	}
+
 	private final DatagramSocket getSocket() {
 		return socket;
 	}
 
 	@Override
 	public final void stop() {
-		ExecutorService shutdownTimer = null;
 		ExecutorService shutdown = null;
 		List<Runnable> pending = new ArrayList<>();
 		synchronized (this) {
@@ -731,17 +955,17 @@ public class DTLSConnector implements Connector, RecordLayer {
 				for (Thread t : receiverThreads) {
 					t.interrupt();
 				}
-				if (socket != null) {
-					socket.close();
-					socket = null;
+				if (sockets != null) {
+					for (DatagramSocket shard : sockets) {
+						shard.close();
+					}
+					sockets = null;
 				}
+				socket = null;
 				maximumTransmissionUnit = 0;
 				connectionStore.stop(pending);
-				if (executorService != timer) {
-					pending.addAll(timer.shutdownNow());
-					shutdownTimer = timer;
-					timer = null;
-				}
+				pending.addAll(timer.stop());
+				timer = null;
 				if (hasInternalExecutor) {
 					pending.addAll(executorService.shutdownNow());
 					shutdown = executorService;
@@ -758,14 +982,6 @@ public class DTLSConnector implements Connector, RecordLayer {
 				receiverThreads.clear();
 			}
 		}
-		if (shutdownTimer != null) {
-			try {
-				if (!shutdownTimer.awaitTermination(500, TimeUnit.MILLISECONDS)) {
-					LOGGER.warn("Shutdown DTLS connector on [{}] timer not terminated in time!", lastBindAddress);
-				}
-			} catch (InterruptedException e) {
-			}
-		}
 		if (shutdown != null) {
 			try {
 				if (!shutdown.awaitTermination(500, TimeUnit.MILLISECONDS)) {
@@ -944,15 +1160,16 @@ public class DTLSConnector implements Connector, RecordLayer {
 	 */
 	private final Connection getConnection(InetSocketAddress peerAddress, ConnectionId cid, boolean create) {
 		ExecutorService executor = getExecutorService();
-		synchronized (connectionStore) {
-			Connection connection;
-			if (cid != null) {
-				connection = connectionStore.get(cid);
-			} else {
+		Connection connection;
+		if (cid != null) {
+			connection = connectionStore.get(cid);
+		} else {
+			synchronized (getConnectionLock(peerAddress)) {
 				connection = connectionStore.get(peerAddress);
 				if (connection == null && create) {
 					LOGGER.debug("create new connection for {}", peerAddress);
-					Connection newConnection = new Connection(peerAddress, new SerialExecutor(executor));
+					Connection newConnection = new Connection(peerAddress,
+							new SerialExecutor(executor, config.getConnectionExecutorBatchSize()));
 					if (running.get()) {
 						// only add, if connector is running!
 						if (!connectionStore.put(newConnection)) {
@@ -962,27 +1179,44 @@ public class DTLSConnector implements Connector, RecordLayer {
 					return newConnection;
 				}
 			}
-			if (connection == null) {
-				LOGGER.debug("no connection available for {},{}", peerAddress, cid);
-			} else if (!connection.isExecuting() && running.get()) {
-				LOGGER.debug("revive connection for {},{}", peerAddress, cid);
-				connection.setExecutor(new SerialExecutor(executor));
-			} else {
-				LOGGER.trace("connection available for {},{}", peerAddress, cid);
+		}
+		if (connection == null) {
+			LOGGER.debug("no connection available for {},{}", peerAddress, cid);
+		} else {
+			// a connection may be found by cid and by address concurrently
+			synchronized (connection) {
+				if (!connection.isExecuting() && running.get()) {
+					LOGGER.debug("revive connection for {},{}", peerAddress, cid);
+					connection.setExecutor(new SerialExecutor(executor, config.getConnectionExecutorBatchSize()));
+				} else {
+					LOGGER.trace("connection available for {},{}", peerAddress, cid);
+				}
 			}
-			return connection;
 		}
+		return connection;
+	}
+
+	/**
+	 * Get lock to create a connection for the peer's address.
+	 * 
+	 * Replaces the monitor of the connection store, which serializes the
+	 * creation of all connections.
+	 * 
+	 * @param peerAddress socket address of peer
+	 * @return lock for the peer's address
+	 */
+	private Object getConnectionLock(InetSocketAddress peerAddress) {
+		return connectionLocks[StripedExecutor.getStripeIndex(peerAddress, connectionLocks.length)];
 	}
 
-	private void receiveNextDatagramFromNetwork(DatagramPacket packet) throws IOException {
+	private void receiveNextDatagramFromNetwork(DatagramSocket receiverSocket, DatagramPacket packet) throws IOException {
 
-		DatagramSocket currentSocket = getSocket();
-		if (currentSocket == null) {
+		if (receiverSocket.isClosed()) {
 			// very unlikely race condition.
 			return;
 		}
 
-		currentSocket.receive(packet);
+		receiverSocket.receive(packet);
 
 		if (packet.getLength() == 0) {
 			// nothing to do
@@ -991,8 +1225,14 @@ public class DTLSConnector implements Connector, RecordLayer {
 		long timestamp = ClockUtil.nanoRealtime();
 		InetSocketAddress peerAddress = new InetSocketAddress(packet.getAddress(), packet.getPort());
 
-		byte[] data = Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getLength());
-		List<Record> records = Record.fromByteArray(data, peerAddress, connectionIdGenerator, timestamp);
+		// the packet's buffer is reused for the next datagram, so copy the
+		// datagram once. The records refer to their fragments as slices of
+		// that copy and AEAD fragments are decrypted directly from it into
+		// a new plaintext array per record.
+		int offset = packet.getOffset();
+		int length = packet.getLength();
+		byte[] data = Arrays.copyOfRange(packet.getData(), offset, offset + length);
+		List<Record> records = Record.fromByteArray(data, 0, length, peerAddress, connectionIdGenerator, timestamp);
 		LOGGER.debug("Received {} DTLS records from {} using a {} byte datagram buffer",
 				records.size(), peerAddress, inboundDatagramBufferSize);
 
@@ -1008,13 +1248,13 @@ public class DTLSConnector implements Connector, RecordLayer {
 		final Record fristRecord = records.get(0);
 
 		if (records.size() == 1 && fristRecord.isNewClientHello()) {
-			executorService.execute(new Runnable() {
-
-				@Override
-				public void run() {
-					processNewClientHello(fristRecord);
-				}
-			});
+			if (!handshakeScheduler.acquireToken(peerAddress.getAddress())) {
+				LOGGER.debug("Discarding CLIENT_HELLO from [{}], rate limit exceeded", peerAddress);
+				return;
+			}
+			// verify the cookie on the receiver thread, only verified
+			// CLIENT_HELLOs are passed to the executor
+			processNewClientHello(fristRecord);
 			return;
 		}
 
@@ -1035,6 +1275,9 @@ public class DTLSConnector implements Connector, RecordLayer {
 		SerialExecutor serialExecutor = connection.getExecutor();
 
 		for (final Record record : records) {
+			if (useInlineApplicationData && processInlineApplicationDataRecord(record, connection)) {
+				continue;
+			}
 			try {
 
 				serialExecutor.execute(new Runnable() {
@@ -1060,6 +1303,110 @@ public class DTLSConnector implements Connector, RecordLayer {
 		}
 	}
 
+	/**
+	 * Process received APPLICATION_DATA record on the receiver thread.
+	 * 
+	 * Only records of established connections without ongoing handshake,
+	 * which are received from the connection's address and without
+	 * connection ID, are processed. All other records are left to the serial
+	 * execution of the connection.
+	 * 
+	 * The state of the connection is owned by its serial execution and is
+	 * only read here. It is therefore checked again after the record is
+	 * de-crypted. If a handshake was started or the address was changed in
+	 * the meantime, the record is also left to the serial execution. If the
+	 * established session was replaced, the record is discarded. The receive
+	 * window of the session is checked and updated atomically on both paths,
+	 * so a record is delivered only once, even if it is also processed by the
+	 * serial execution or an other receiver thread. Failures, which terminate
+	 * the connection, are passed to the serial execution.
+	 * 
+	 * The order of the records of a peer is not preserved. Records processed
+	 * here may be delivered before records of the same peer, which are still
+	 * pending in the serial execution, and different receiver threads may
+	 * deliver records of the same peer concurrently.
+	 * 
+	 * @param record received record
+	 * @param connection connection to process record
+	 * @return {@code true}, if the record is processed or discarded,
+	 *         {@code false}, if the record must be processed by the serial
+	 *         execution.
+	 * @see DtlsConnectorConfig#useInlineApplicationData()
+	 */
+	boolean processInlineApplicationDataRecord(final Record record, final Connection connection) {
+		if (record.getType() != ContentType.APPLICATION_DATA || record.getConnectionId() != null
+				|| connection.getOngoingHandshake() != null) {
+			return false;
+		}
+		DTLSSession session = connection.getEstablishedSession();
+		if (session == null || session.getPeer() == null || session.getReadEpoch() != record.getEpoch()
+				|| !connection.equalsPeerAddress(record.getPeerAddress())) {
+			return false;
+		}
+		if (connectionIdGenerator != null && connectionIdGenerator.useConnectionId() && connection.expectCid()) {
+			return false;
+		}
+		try {
+			// replay detection before MAC validation
+			if (useFilter && !session.isRecordProcessable(record.getEpoch(), record.getSequenceNumber(), useWindowFilter)) {
+				LOGGER.debug("Discarding duplicate {} record received from peer [{}]", record.getType(),
+						record.getPeerAddress());
+				return true;
+			}
+			record.applySession(session);
+			ApplicationMessage message = (ApplicationMessage) record.getFragment();
+			// check the connection again, it may be changed by the serial
+			// execution in the meantime
+			if (connection.getEstablishedSession() != session) {
+				LOGGER.debug("Discarding {} record received from peer [{}], session replaced", record.getType(),
+						record.getPeerAddress());
+				return true;
+			}
+			if (connection.getOngoingHandshake() != null || !connection.equalsPeerAddress(record.getPeerAddress())) {
+				return false;
+			}
+			// the fragment could be de-crypted, check and mark it atomically
+			if (useFilter) {
+				if (!session.markRecordAsReadIfProcessable(record.getEpoch(), record.getSequenceNumber(),
+						useWindowFilter)) {
+					LOGGER.debug("Discarding duplicate {} record received from peer [{}]", record.getType(),
+							record.getPeerAddress());
+					return true;
+				}
+			} else {
+				session.markRecordAsRead(record.getEpoch(), record.getSequenceNumber());
+			}
+			connection.refreshAutoResumptionTime();
+			connectionStore.update(connection, null);
+			deliverApplicationData(record, session, message);
+		} catch (final RuntimeException e) {
+			LOGGER.warn("Unexpected error occurred while processing record from peer [{}]",
+					record.getPeerAddress(), e);
+			// the connection is terminated by its serial execution
+			try {
+				connection.getExecutor().execute(new Runnable() {
+
+					@Override
+					public void run() {
+						if (running.get()) {
+							terminateConnection(connection, e, AlertLevel.FATAL, AlertDescription.INTERNAL_ERROR);
+						}
+					}
+				});
+			} catch (RejectedExecutionException ex) {
+				LOGGER.debug("Execution rejected while terminating connection with peer [{}]",
+						record.getPeerAddress(), ex);
+			}
+		} catch (GeneralSecurityException e) {
+			LOGGER.info("error occurred while processing record from peer [{}]",
+					record.getPeerAddress(), e);
+		} catch (HandshakeException e) {
+			LOGGER.info("error occurred while processing record from peer [{}]",
+					record.getPeerAddress(), e);
+		}
+		return true;
+	}
+
 	/**
 	 * Process received record.
 	 * 
@@ -1262,8 +1609,21 @@ public class DTLSConnector implements Connector, RecordLayer {
 				newAddress = null;
 			}
 			// the fragment could be de-crypted, mark it
-			if (!session.markRecordAsRead(record.getEpoch(), record.getSequenceNumber())
-					&& useCidUpdateAddressOnNewerRecordFilter) {
+			boolean newest;
+			if (useFilter) {
+				// check and mark it atomically, the record may also be
+				// processed inline on a receiver thread
+				if (!session.markRecordAsReadIfProcessable(record.getEpoch(), record.getSequenceNumber(),
+						useWindowFilter)) {
+					LOGGER.debug("Discarding duplicate {} record received from peer [{}]", record.getType(),
+							record.getPeerAddress());
+					return;
+				}
+				newest = session.isNewestRecord(record.getEpoch(), record.getSequenceNumber());
+			} else {
+				newest = session.markRecordAsRead(record.getEpoch(), record.getSequenceNumber());
+			}
+			if (!newest && useCidUpdateAddressOnNewerRecordFilter) {
 				// suppress address update!
 				newAddress = null;
 			}
@@ -1273,25 +1633,7 @@ public class DTLSConnector implements Connector, RecordLayer {
 			}
 			connection.refreshAutoResumptionTime();
 			connectionStore.update(connection, newAddress);
-
-			final RawDataChannel channel = messageHandler;
-			// finally, forward de-crypted message to application layer
-			if (channel != null) {
-				// create application message.
-				DtlsEndpointContext context;
-				if (session.getPeer() == null) {
-					// endpoint context would fail ...
-					session.setPeer(record.getPeerAddress());
-					context = session.getConnectionWriteContext();
-					session.setPeer(null);
-					LOGGER.warn("Received APPLICATION_DATA from deprecated {}", record.getPeerAddress());
-				} else {
-					context = session.getConnectionWriteContext();
-				}
-				LOGGER.debug("Received APPLICATION_DATA for {}", context);
-				RawData receivedApplicationMessage = RawData.inbound(message.getData(), context, false, record.getReceiveNanos());
-				channel.receiveData(receivedApplicationMessage);
-			}
+			deliverApplicationData(record, session, message);
 		} else if (ongoingHandshake != null) {
 			// wait for FINISH
 			ongoingHandshake.addRecordsForDeferredProcessing(record);
@@ -1301,6 +1643,34 @@ public class DTLSConnector implements Connector, RecordLayer {
 		}
 	}
 
+	/**
+	 * Forward de-crypted APPLICATION_DATA to the application layer.
+	 * 
+	 * @param record received record
+	 * @param session session of the record
+	 * @param message de-crypted application message
+	 */
+	private void deliverApplicationData(Record record, DTLSSession session, ApplicationMessage message) {
+		final RawDataChannel channel = messageHandler;
+		// finally, forward de-crypted message to application layer
+		if (channel != null) {
+			// create application message.
+			DtlsEndpointContext context;
+			if (session.getPeer() == null) {
+				// endpoint context would fail ...
+				session.setPeer(record.getPeerAddress());
+				context = session.getConnectionWriteContext();
+				session.setPeer(null);
+				LOGGER.warn("Received APPLICATION_DATA from deprecated {}", record.getPeerAddress());
+			} else {
+				context = session.getConnectionWriteContext();
+			}
+			LOGGER.debug("Received APPLICATION_DATA for {}", context);
+			RawData receivedApplicationMessage = RawData.inbound(message.getData(), context, false, record.getReceiveNanos());
+			channel.receiveData(receivedApplicationMessage);
+		}
+	}
+
 	/**
 	 * Process alert record.
 	 * 
@@ -1440,14 +1810,17 @@ public class DTLSConnector implements Connector, RecordLayer {
 	/**
 	 * Process new CLIENT_HELLO message.
 	 * 
-	 * Executed outside the serial execution. Checks for either a valid session
-	 * id or a valid cookie. If the check is passed successfully, check next, if
-	 * a connection for that CLIENT_HELLO already exists using the client random
-	 * contained in the CLIENT_HELLO message. If the connection already exists,
-	 * take that, otherwise create a new one and pass the execution to the
-	 * serial execution of that connection.
+	 * Executed on the receiver thread. Checks for either a valid session id or
+	 * a valid cookie, and sends a HELLO_VERIFY_REQUEST, if that check fails.
+	 * Therefore neither a {@link Connection} is created nor the executor is
+	 * used for CLIENT_HELLOs of peers, which are not verified. If the check
+	 * is passed successfully, pass the CLIENT_HELLO to the
+	 * {@link HandshakeScheduler}, which starts the processing on the executor,
+	 * when the limit of concurrent handshakes allows it.
 	 * 
 	 * @param record record of CLIENT_HELLO message
+	 * @see #startClientHello(ClientHello, Record, AvailableConnections,
+	 *      HandshakeScheduler.Ticket)
 	 */
 	private void processNewClientHello(final Record record) {
 		InetSocketAddress peerAddress = record.getPeerAddress();
@@ -1469,60 +1842,113 @@ public class DTLSConnector implements Connector, RecordLayer {
 			// the IP address indicated in the client hello message
 			final AvailableConnections connections = new AvailableConnections();
 			if (isClientInControlOfSourceIpAddress(clientHello, record, connections)) {
-				boolean verify = false;
-				Connection connection;
-				synchronized (connectionStore) {
-					connection = connectionStore.get(peerAddress);
-					if (connection != null && !connection.isStartedByClientHello(clientHello)) {
-						Connection sessionConnection = connections.getConnectionBySessionId();
-						if (sessionConnection != null && sessionConnection != connection) {
-							// don't overwrite
-							verify = true;
-						} else {
-							if (sessionConnection != null && sessionConnection == connection) {
-								connections.setRemoveConnectionBySessionId(true);
+				boolean resumption = clientHello.hasSessionId();
+				boolean scheduled = handshakeScheduler.execute(getExecutorService(), resumption,
+						new HandshakeScheduler.HandshakeJob() {
+
+							@Override
+							public void start(HandshakeScheduler.Ticket ticket) {
+								startClientHello(clientHello, record, connections, ticket);
 							}
-							connection = null;
+						});
+				if (!scheduled) {
+					LOGGER.debug("Discarding CLIENT_HELLO from peer [{}], too many pending handshakes!", peerAddress);
+				}
+			}
+		} catch (HandshakeException e) {
+			LOGGER.debug("Processing new CLIENT_HELLO from peer [{}] failed!", record.getPeerAddress(), e);
+		} catch (GeneralSecurityException e) {
+			LOGGER.debug("Processing new CLIENT_HELLO from peer [{}] failed!", record.getPeerAddress(), e);
+		} catch (RuntimeException e) {
+			LOGGER.debug("Processing new CLIENT_HELLO from peer [{}] failed!", record.getPeerAddress(), e);
+		}
+	}
+
+	/**
+	 * Start processing a verified CLIENT_HELLO message.
+	 * 
+	 * Executed, when the {@link HandshakeScheduler} admits the handshake.
+	 * Check, if a connection for that CLIENT_HELLO already exists using the
+	 * client random contained in the CLIENT_HELLO message. If the connection
+	 * already exists, take that, otherwise create a new one and pass the
+	 * execution to the serial execution of that connection. The ticket is
+	 * released, when the CLIENT_HELLO is processed.
+	 * 
+	 * @param clientHello CLIENT_HELLO message
+	 * @param record record of CLIENT_HELLO message
+	 * @param connections available connections to process handshake message
+	 * @param ticket ticket of the handshake scheduler
+	 */
+	private void startClientHello(final ClientHello clientHello, final Record record,
+			final AvailableConnections connections, final HandshakeScheduler.Ticket ticket) {
+		InetSocketAddress peerAddress = record.getPeerAddress();
+		boolean release = true;
+		try {
+			boolean verify = false;
+			Connection connection;
+			PathMtu pathMtu = null;
+			synchronized (getConnectionLock(peerAddress)) {
+				connection = connectionStore.get(peerAddress);
+				if (connection != null && !connection.isStartedByClientHello(clientHello)) {
+					Connection sessionConnection = connections.getConnectionBySessionId();
+					if (sessionConnection != null && sessionConnection != connection) {
+						// don't overwrite
+						verify = true;
+					} else {
+						if (sessionConnection != null && sessionConnection == connection) {
+							connections.setRemoveConnectionBySessionId(true);
 						}
+						// same address, same path
+						pathMtu = connection.getPathMtu();
+						connection = null;
 					}
-					if (connection == null) {
-						connection = new Connection(peerAddress, new SerialExecutor(getExecutorService()));
-						connection.startByClientHello(clientHello);
-						if (!connectionStore.put(connection)) {
-							return;
-						}
+				}
+				if (connection == null) {
+					connection = new Connection(peerAddress,
+							new SerialExecutor(getExecutorService(), config.getConnectionExecutorBatchSize()));
+					connection.setPathMtu(pathMtu);
+					connection.startByClientHello(clientHello);
+					if (!connectionStore.put(connection)) {
+						return;
 					}
 				}
-				if (verify) {
-					sendHelloVerify(clientHello, record, null);
-				} else {
-					connections.setConnectionByAddress(connection);
-					try {
-						connection.getExecutor().execute(new Runnable() {
-							@Override
-							public void run() {
+			}
+			if (verify) {
+				sendHelloVerify(clientHello, record);
+			} else {
+				connections.setConnectionByAddress(connection);
+				try {
+					connection.getExecutor().execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
 								if (running.get()) {
 									processClientHello(clientHello, record, connections);
 								}
+							} finally {
+								ticket.release();
 							}
-						});
-					} catch (RejectedExecutionException e) {
-						// dont't terminate connection on shutdown!
-						LOGGER.debug("Execution rejected while processing record [type: {}, peer: {}]",
-								record.getType(), peerAddress, e);
-					} catch (RuntimeException e) {
-						LOGGER.warn("Unexpected error occurred while processing record [type: {}, peer: {}]",
-								record.getType(), peerAddress, e);
-						terminateConnection(connections.getConnectionByAddress(), e, AlertLevel.FATAL, AlertDescription.INTERNAL_ERROR);
-					}
+						}
+					});
+					release = false;
+				} catch (RejectedExecutionException e) {
+					// dont't terminate connection on shutdown!
+					LOGGER.debug("Execution rejected while processing record [type: {}, peer: {}]",
+							record.getType(), peerAddress, e);
+				} catch (RuntimeException e) {
+					LOGGER.warn("Unexpected error occurred while processing record [type: {}, peer: {}]",
+							record.getType(), peerAddress, e);
+					terminateConnection(connections.getConnectionByAddress(), e, AlertLevel.FATAL, AlertDescription.INTERNAL_ERROR);
 				}
 			}
-		} catch (HandshakeException e) {
-			LOGGER.debug("Processing new CLIENT_HELLO from peer [{}] failed!", record.getPeerAddress(), e);
 		} catch (GeneralSecurityException e) {
-			LOGGER.debug("Processing new CLIENT_HELLO from peer [{}] failed!", record.getPeerAddress(), e);
+			LOGGER.debug("Processing new CLIENT_HELLO from peer [{}] failed!", peerAddress, e);
 		} catch (RuntimeException e) {
-			LOGGER.debug("Processing new CLIENT_HELLO from peer [{}] failed!", record.getPeerAddress(), e);
+			LOGGER.debug("Processing new CLIENT_HELLO from peer [{}] failed!", peerAddress, e);
+		} finally {
+			if (release) {
+				ticket.release();
+			}
 		}
 	}
 
@@ -1608,18 +2034,15 @@ public class DTLSConnector implements Connector, RecordLayer {
 		// by exchanging a cookie as described in section 4.2.1 of the DTLS 1.2 spec
 		// see http://tools.ietf.org/html/rfc6347#section-4.2.1
 		try {
-			byte[] expectedCookie = null;
 			byte[] providedCookie = clientHello.getCookie();
 			if (providedCookie.length > 0) {
-				expectedCookie = cookieGenerator.generateCookie(clientHello);
 				// if cookie is present, it must match
-				if (Arrays.equals(expectedCookie, providedCookie)) {
+				if (cookieGenerator.isValidCookie(clientHello)) {
 					return true;
 				}
 				if (LOGGER.isDebugEnabled()) {
-					LOGGER.debug("provided cookie must {} match {}. Send verify request to {}",
+					LOGGER.debug("provided cookie {} doesn't match. Send verify request to {}",
 							StringUtil.byteArray2HexString(providedCookie, StringUtil.NO_SEPARATOR, 6),
-							StringUtil.byteArray2HexString(expectedCookie, StringUtil.NO_SEPARATOR, 6),
 							record.getPeerAddress());
 				}
 				// otherwise send verify request
@@ -1643,7 +2066,7 @@ public class DTLSConnector implements Connector, RecordLayer {
 				}
 			}
 			// for all cases not detected above, use a verify request.
-			sendHelloVerify(clientHello, record, expectedCookie);
+			sendHelloVerify(clientHello, record);
 			return false;
 		} catch (GeneralSecurityException e) {
 			throw new DtlsHandshakeException("Cannot compute cookie for peer", AlertDescription.INTERNAL_ERROR,
@@ -1667,7 +2090,7 @@ public class DTLSConnector implements Connector, RecordLayer {
 		// initialize handshaker based on CLIENT_HELLO (this accounts
 		// for the case that multiple cookie exchanges have taken place)
 		Handshaker handshaker = new ServerHandshaker(clientHello.getMessageSeq(), newSession,
-				this, connection, config, maximumTransmissionUnit);
+				this, connection, config, getHandshakeTransmissionUnit(connection));
 		initializeHandshaker(handshaker);
 		handshaker.processMessage(record);
 	}
@@ -1730,7 +2153,7 @@ public class DTLSConnector implements Connector, RecordLayer {
 			final DTLSSession sessionToResume = new DTLSSession(clientHello.getSessionId(), peerAddress, ticket,
 					record.getSequenceNumber());
 			final Handshaker handshaker = new ResumingServerHandshaker(clientHello.getMessageSeq(), sessionToResume,
-					this, connection, config, maximumTransmissionUnit);
+					this, connection, config, getHandshakeTransmissionUnit(connection));
 			initializeHandshaker(handshaker);
 
 			if (previousConnection.hasEstablishedSession()) {
@@ -1769,13 +2192,11 @@ public class DTLSConnector implements Connector, RecordLayer {
 		}
 	}
 
-	private void sendHelloVerify(ClientHello clientHello, Record record, byte[] expectedCookie) throws GeneralSecurityException {
+	private void sendHelloVerify(ClientHello clientHello, Record record) throws GeneralSecurityException {
 		// send CLIENT_HELLO_VERIFY with cookie in order to prevent
 		// DOS attack as described in DTLS 1.2 spec
 		LOGGER.debug("Verifying client IP address [{}] using HELLO_VERIFY_REQUEST", record.getPeerAddress());
-		if (expectedCookie == null) {
-			expectedCookie = cookieGenerator.generateCookie(clientHello);
-		}
+		byte[] expectedCookie = cookieGenerator.generateCookie(clientHello);
 		HelloVerifyRequest msg = new HelloVerifyRequest(new ProtocolVersion(), expectedCookie, record.getPeerAddress());
 		// because we do not have a handshaker in place yet that
 		// manages message_seq numbers, we need to set it explicitly
@@ -1933,7 +2354,8 @@ public class DTLSConnector implements Connector, RecordLayer {
 				session.setVirtualHost(message.getEndpointContext().getVirtualHost());
 				// no session with peer established nor handshaker started yet,
 				// create new empty session & start handshake
-				handshaker = new ClientHandshaker(session, this, connection, config, maximumTransmissionUnit);
+				handshaker = new ClientHandshaker(session, this, connection, config,
+						getHandshakeTransmissionUnit(connection));
 				initializeHandshaker(handshaker);
 				handshaker.startHandshake();
 			}
@@ -1976,12 +2398,13 @@ public class DTLSConnector implements Connector, RecordLayer {
 					// https://tools.ietf.org/html/rfc5246#section-7.4.1.3
 					DTLSSession newSession = new DTLSSession(peerAddress);
 					newSession.setVirtualHost(message.getEndpointContext().getVirtualHost());
-					handshaker = new ClientHandshaker(newSession, this, connection, config, maximumTransmissionUnit);
+					handshaker = new ClientHandshaker(newSession, this, connection, config,
+							getHandshakeTransmissionUnit(connection));
 				} else {
 					DTLSSession resumableSession = new DTLSSession(sessionId, peerAddress, ticket, 0);
 					resumableSession.setVirtualHost(message.getEndpointContext().getVirtualHost());
 					handshaker = new ResumingClientHandshaker(resumableSession, this, connection, config,
-							maximumTransmissionUnit);
+							getHandshakeTransmissionUnit(connection));
 				}
 				initializeHandshaker(handshaker);
 				if (previous != null) {
@@ -2076,37 +2499,47 @@ public class DTLSConnector implements Connector, RecordLayer {
 
 	private void sendFlightOverNetwork(DTLSFlight flight) throws IOException {
 		int maxDatagramSize = flight.getSession().getMaxDatagramSize();
-		DatagramWriter writer = new DatagramWriter(maxDatagramSize);
+		if (usePathMtuDiscovery) {
+			// the path MTU includes the IP and UDP headers
+			maxDatagramSize -= IP_UDP_HEADER_LENGTH;
+		}
+		// records are written directly into the datagram buffer
+		ByteBufferDatagramWriter writer = new ByteBufferDatagramWriter(maxDatagramSize);
 		// put as many records into one datagram as allowed by the max. payload size
 		List<DatagramPacket> datagrams = new ArrayList<DatagramPacket>();
+		int largestPayload = 0;
 
 		for (Record record : flight.getMessages()) {
-			byte[] recordBytes = record.toByteArray();
-			if (recordBytes.length > maxDatagramSize) {
+			int recordSize = record.size();
+			if (recordSize > maxDatagramSize) {
 				LOGGER.info("{} record of {} bytes for peer [{}] exceeds max. datagram size [{}], discarding...",
-						record.getType(), recordBytes.length, record.getPeerAddress(), maxDatagramSize);
+						record.getType(), recordSize, record.getPeerAddress(), maxDatagramSize);
 				// TODO: inform application layer, e.g. using error handler
 				continue;
 			}
-			LOGGER.trace("Sending record of {} bytes to peer [{}]:\n{}", recordBytes.length, flight.getPeerAddress(),
+			LOGGER.trace("Sending record of {} bytes to peer [{}]:\n{}", recordSize, flight.getPeerAddress(),
 					record);
 
-			if (writer.size() + recordBytes.length > maxDatagramSize) {
+			if (writer.size() + recordSize > maxDatagramSize) {
 				// current record does not fit into datagram anymore
 				// thus, send out current datagram and put record into new one
 				byte[] payload = writer.toByteArray();
+				writer.reset();
+				largestPayload = Math.max(largestPayload, payload.length);
 				DatagramPacket datagram = new DatagramPacket(payload, payload.length,
 						flight.getPeerAddress().getAddress(), flight.getPeerAddress().getPort());
 				datagrams.add(datagram);
 			}
 
-			writer.writeBytes(recordBytes);
+			record.writeTo(writer);
 		}
 
 		byte[] payload = writer.toByteArray();
 		DatagramPacket datagram = new DatagramPacket(payload, payload.length, flight.getPeerAddress().getAddress(),
 				flight.getPeerAddress().getPort());
 		datagrams.add(datagram);
+		largestPayload = Math.max(largestPayload, payload.length);
+		flight.setLargestDatagramSize(largestPayload + IP_UDP_HEADER_LENGTH);
 
 		// send it over the UDP socket
 		LOGGER.debug("Sending flight of {} message(s) to peer [{}] using {} datagram(s) of max. {} bytes",
@@ -2123,7 +2556,12 @@ public class DTLSConnector implements Connector, RecordLayer {
 	}
 
 	protected void sendNextDatagramOverNetwork(final DatagramPacket datagramPacket) throws IOException {
-		DatagramSocket socket = getSocket();
+		DatagramSocket[] sockets = this.sockets;
+		DatagramSocket socket = null;
+		if (sockets != null) {
+			InetSocketAddress peer = (InetSocketAddress) datagramPacket.getSocketAddress();
+			socket = sockets[ReusePortUtil.getShard(peer, sockets.length)];
+		}
 		if (socket != null && !socket.isClosed()) {
 			try {
 				socket.send(datagramPacket);
@@ -2173,8 +2611,8 @@ public class DTLSConnector implements Connector, RecordLayer {
 							flight.incrementTries();
 							LOGGER.debug("schedule handshake timeout {}ms after flight {}", flight.getTimeout(),
 									flight.getFlightNumber());
-							ScheduledFuture<?> f = timer.schedule(new TimeoutPeerTask(connection, flight), flight.getTimeout(),
-									TimeUnit.MILLISECONDS);
+							HashedWheelTimer.Timeout f = timer.schedule(new TimeoutPeerTask(connection, flight),
+									flight.getTimeout(), TimeUnit.MILLISECONDS);
 							flight.setTimeoutTask(f);
 							return;
 						}
@@ -2183,6 +2621,13 @@ public class DTLSConnector implements Connector, RecordLayer {
 								flight.getPeerAddress(), max - tries - 1);
 						try {
 							flight.incrementTries();
+							PathMtu pathMtu = connection.getPathMtu();
+							if (pathMtu != null && pathMtu.flightLost(flight.getLargestDatagramSize())) {
+								int mtu = pathMtu.getProbeMtu();
+								LOGGER.debug("Re-transmitting flight for [{}] using MTU {}", flight.getPeerAddress(),
+										mtu);
+								flight.setMaxTransmissionUnit(mtu);
+							}
 							flight.setNewSequenceNumbers();
 							sendFlightOverNetwork(flight);
 
@@ -2218,6 +2663,36 @@ public class DTLSConnector implements Connector, RecordLayer {
 		}
 	}
 
+	/**
+	 * Get the MTU for the flights of a new handshake.
+	 * 
+	 * Creates the path MTU of the connection on the first handshake, starting
+	 * with the minimum MTU of the IP version of the peer.
+	 * 
+	 * @param connection connection of the new handshake
+	 * @return the probe MTU of the connection, if path MTU discovery is used,
+	 *         the MTU of the connector, otherwise.
+	 * @see DtlsConnectorConfig#usePathMtuDiscovery()
+	 */
+	private int getHandshakeTransmissionUnit(Connection connection) {
+		if (!usePathMtuDiscovery) {
+			return maximumTransmissionUnit;
+		}
+		PathMtu pathMtu = connection.getPathMtu();
+		if (pathMtu == null) {
+			InetSocketAddress peer = connection.getPeerAddress();
+			int minMtu = peer == null || peer.getAddress() instanceof Inet4Address ? DEFAULT_IPV4_MTU
+					: DEFAULT_IPV6_MTU;
+			minMtu = Math.min(minMtu, maximumTransmissionUnit);
+			if (minMtu <= DTLSSession.HEADER_LENGTH) {
+				return maximumTransmissionUnit;
+			}
+			pathMtu = new PathMtu(minMtu, maximumTransmissionUnit);
+			connection.setPathMtu(pathMtu);
+		}
+		return pathMtu.getProbeMtu();
+	}
+
 	private void scheduleRetransmission(DTLSFlight flight, Connection connection) {
 
 		if (flight.isRetransmissionNeeded()) {
@@ -2232,7 +2707,8 @@ public class DTLSConnector implements Connector, RecordLayer {
 			}
 
 			// schedule retransmission task
-			ScheduledFuture<?> f = timer.schedule(new TimeoutPeerTask(connection, flight), flight.getTimeout(), TimeUnit.MILLISECONDS);
+			HashedWheelTimer.Timeout f = timer.schedule(new TimeoutPeerTask(connection, flight), flight.getTimeout(),
+					TimeUnit.MILLISECONDS);
 			flight.setTimeoutTask(f);
 		}
 	}
@@ -2265,8 +2741,10 @@ public class DTLSConnector implements Connector, RecordLayer {
 	 * <p>
 	 * The value returned by this method considers the <em>current write state</em> of the connection
 	 * to the peer and any potential ciphertext expansion introduced by this cipher suite used to
-	 * secure the connection. However, if no connection exists to the peer, the value returned is
-	 * determined as follows:
+	 * secure the connection. If {@link DtlsConnectorConfig#usePathMtuDiscovery()} is enabled,
+	 * the session is limited to the path MTU confirmed for the peer and a connection without
+	 * established session uses that confirmed path MTU instead of the network interface's MTU.
+	 * However, if no connection exists to the peer, the value returned is determined as follows:
 	 * </p>
 	 * <pre>
 	 *   maxFragmentLength = network interface's <em>Maximum Transmission Unit</em>
@@ -2284,6 +2762,10 @@ public class DTLSConnector implements Connector, RecordLayer {
 		Connection con = connectionStore.get(peer);
 		if (con != null && con.hasEstablishedSession()) {
 			return con.getEstablishedSession().getMaxFragmentLength();
+		}
+		PathMtu pathMtu = con == null ? null : con.getPathMtu();
+		if (pathMtu != null) {
+			return pathMtu.getConfirmedMtu() - DTLSSession.HEADER_LENGTH;
 		} else {
 			return maximumTransmissionUnit - DTLSSession.HEADER_LENGTH;
 		}
@@ -0,0 +1,506 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *    Bosch Software Innovations GmbH - disable limit by default, shared token
+ *                                      bucket for exceeding sources, start
+ *                                      queued handshakes on reclaimed tickets
+ ******************************************************************************/
+package org.eclipse.californium.scandium;
+
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.californium.elements.util.ClockUtil;
+import org.eclipse.californium.elements.util.ConcurrentLeastRecentlyUsedCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admission control for new handshakes.
+ * <p>
+ * Limits the number of handshakes, which process their first flight
+ * concurrently. Handshakes exceeding that limit are queued, resumption
+ * handshakes are preferred over full handshakes. If the queue is full, the
+ * handshake is rejected and the CLIENT_HELLO is dropped. The client will
+ * then retransmit its CLIENT_HELLO later. With a limit of {@code 0}, the
+ * handshakes are not limited and never queued.
+ * </p>
+ * <p>
+ * Additionally the CLIENT_HELLOs could be limited per source ip-address
+ * using token buckets. That check is cheap and intended to be done before
+ * any other processing of the CLIENT_HELLO. If the maximum number of
+ * source ip-addresses with token buckets is reached, all further sources
+ * share one token bucket. A flood of different source ip-addresses
+ * therefore doesn't switch the rate limit off.
+ * </p>
+ * <p>
+ * A started handshake holds a {@link Ticket}, which must be released, when
+ * the first flight is processed. Tickets, which are not released after
+ * {@link #TICKET_TIMEOUT_NANOS}, e.g. because the job was dropped by a stopped
+ * serial executor, are reclaimed, when the limit is reached.
+ * </p>
+ */
+public class HandshakeScheduler {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(HandshakeScheduler.class.getName());
+
+	/**
+	 * Timeout for tickets in nanoseconds.
+	 */
+	public static final long TICKET_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	/**
+	 * Maximum number of concurrent handshakes. {@code 0}, if not limited.
+	 */
+	private final int maxHandshakes;
+	/**
+	 * Maximum number of queued handshakes per priority.
+	 */
+	private final int maxQueueSize;
+	/**
+	 * Tokens per second and source ip-address. {@code 0} to disable the
+	 * token buckets.
+	 */
+	private final int tokensPerSecond;
+	/**
+	 * Maximum number of tokens of the token buckets.
+	 */
+	private final int tokenBurst;
+	/**
+	 * Token buckets by source ip-address. {@code null}, if not used.
+	 */
+	private final ConcurrentLeastRecentlyUsedCache<InetAddress, TokenBucket> buckets;
+	/**
+	 * Token bucket shared by the source ip-addresses, which don't get an own
+	 * token bucket, because {@link #buckets} is full. {@code null}, if not
+	 * used.
+	 */
+	private final TokenBucket sharedBucket;
+	/**
+	 * Queued resumption handshakes.
+	 */
+	private final Queue<PendingHandshake> resumptions = new ArrayDeque<>();
+	/**
+	 * Queued full handshakes.
+	 */
+	private final Queue<PendingHandshake> fullHandshakes = new ArrayDeque<>();
+	/**
+	 * Tickets of the running handshakes in the order of their start.
+	 */
+	private final LinkedHashSet<Ticket> tickets = new LinkedHashSet<>();
+
+	private final AtomicLong rejectedByRateLimit = new AtomicLong();
+	private final AtomicLong rejectedByQueueLimit = new AtomicLong();
+	private final AtomicLong reclaimedTickets = new AtomicLong();
+
+	/**
+	 * Create handshake scheduler.
+	 *
+	 * @param maxHandshakes maximum number of concurrent handshakes. {@code 0},
+	 *            not limited.
+	 * @param maxQueueSize maximum number of queued handshakes per priority
+	 * @param tokensPerSecond tokens per second and source ip-address. Each
+	 *            CLIENT_HELLO requires a token. {@code 0} to disable the
+	 *            limit per source ip-address.
+	 * @param tokenBurst maximum number of tokens of a source ip-address.
+	 * @param maxSources maximum number of source ip-addresses with token
+	 *            buckets.
+	 * @throws IllegalArgumentException if a value is negative, or tokenBurst
+	 *             or maxSources are 0, when tokensPerSecond is not 0.
+	 */
+	public HandshakeScheduler(int maxHandshakes, int maxQueueSize, int tokensPerSecond, int tokenBurst,
+			int maxSources) {
+		if (maxHandshakes < 0) {
+			throw new IllegalArgumentException("max. handshakes " + maxHandshakes + " must not be negative!");
+		}
+		if (maxQueueSize < 0) {
+			throw new IllegalArgumentException("max. queue size " + maxQueueSize + " must not be negative!");
+		}
+		if (tokensPerSecond < 0) {
+			throw new IllegalArgumentException("tokens per second " + tokensPerSecond + " must not be negative!");
+		}
+		this.maxHandshakes = maxHandshakes;
+		this.maxQueueSize = maxQueueSize;
+		this.tokensPerSecond = tokensPerSecond;
+		this.tokenBurst = tokenBurst;
+		if (tokensPerSecond > 0) {
+			if (tokenBurst < 1) {
+				throw new IllegalArgumentException("token burst " + tokenBurst + " must be at least 1!");
+			}
+			if (maxSources < 1) {
+				throw new IllegalArgumentException("max. sources " + maxSources + " must be at least 1!");
+			}
+			// a bucket, which was not used for that period, is full again.
+			// therefore such stale buckets could be evicted.
+			long threshold = (tokenBurst + tokensPerSecond - 1) / tokensPerSecond + 1;
+			this.buckets = new ConcurrentLeastRecentlyUsedCache<>(maxSources, threshold);
+			this.sharedBucket = new TokenBucket(ClockUtil.nanoRealtime());
+		} else {
+			this.buckets = null;
+			this.sharedBucket = null;
+		}
+	}
+
+	/**
+	 * Acquire token for a CLIENT_HELLO of the provided source ip-address.
+	 *
+	 * @param source source ip-address
+	 * @return {@code true}, if a token was available or the token buckets are
+	 *         disabled, {@code false}, if the CLIENT_HELLO should be dropped.
+	 */
+	public boolean acquireToken(InetAddress source) {
+		if (buckets == null) {
+			return true;
+		}
+		long now = ClockUtil.nanoRealtime();
+		TokenBucket bucket = buckets.get(source);
+		if (bucket == null) {
+			bucket = buckets.getOrAdd(source, new TokenBucket(now));
+			if (bucket == null) {
+				// too many sources, all with recently used buckets
+				LOGGER.debug("no token bucket available for {}, use shared one!", source);
+				bucket = sharedBucket;
+			}
+		}
+		if (bucket.acquire(now)) {
+			return true;
+		}
+		rejectedByRateLimit.incrementAndGet();
+		LOGGER.debug("CLIENT_HELLO rate limit exceeded for {}!", source);
+		return false;
+	}
+
+	/**
+	 * Execute handshake, if the limit of concurrent handshakes is not
+	 * reached, queue it otherwise.
+	 *
+	 * If expired tickets are reclaimed, the queued handshakes are started
+	 * first, so the new handshake doesn't overtake them.
+	 *
+	 * @param executor executor to execute the handshake job
+	 * @param resumption {@code true} for resumption handshakes, which are
+	 *            preferred, {@code false}, for full handshakes.
+	 * @param job handshake job. Must release the provided ticket, when the
+	 *            first flight is processed.
+	 * @return {@code true}, if the job is executed or queued, {@code false},
+	 *         if the job is rejected because the queue is full.
+	 */
+	public boolean execute(Executor executor, boolean resumption, HandshakeJob job) {
+		Ticket ticket = null;
+		List<PendingHandshake> next = null;
+		List<Ticket> nextTickets = null;
+		synchronized (this) {
+			if (maxHandshakes == 0) {
+				// not limited, only reclaim the tickets to keep the running
+				// handshakes accurate.
+				reclaimTickets();
+				ticket = newTicket();
+			} else if (tickets.size() < maxHandshakes) {
+				ticket = newTicket();
+			} else {
+				if (reclaimTickets()) {
+					next = new ArrayList<>();
+					nextTickets = new ArrayList<>();
+					PendingHandshake pending;
+					while (tickets.size() < maxHandshakes && (pending = pollPending()) != null) {
+						next.add(pending);
+						nextTickets.add(newTicket());
+					}
+					if (tickets.size() < maxHandshakes) {
+						ticket = newTicket();
+					}
+				}
+				if (ticket == null) {
+					Queue<PendingHandshake> queue = resumption ? resumptions : fullHandshakes;
+					if (queue.size() >= maxQueueSize) {
+						rejectedByQueueLimit.incrementAndGet();
+						LOGGER.debug("{} handshakes queue is full, {} max. entries!",
+								resumption ? "resumption" : "full", maxQueueSize);
+						job = null;
+					} else {
+						queue.add(new PendingHandshake(executor, job));
+					}
+				}
+			}
+		}
+		if (next != null) {
+			for (int index = 0; index < next.size(); ++index) {
+				PendingHandshake pending = next.get(index);
+				dispatch(pending.executor, pending.job, nextTickets.get(index));
+			}
+		}
+		if (ticket != null) {
+			dispatch(executor, job, ticket);
+		}
+		return job != null;
+	}
+
+	/**
+	 * Release ticket and start the next queued handshake.
+	 *
+	 * @param ticket ticket to release
+	 */
+	private void release(Ticket ticket) {
+		PendingHandshake next;
+		Ticket nextTicket = null;
+		synchronized (this) {
+			if (!tickets.remove(ticket)) {
+				// already released or reclaimed
+				return;
+			}
+			next = pollPending();
+			if (next != null) {
+				nextTicket = newTicket();
+			}
+		}
+		if (next != null) {
+			dispatch(next.executor, next.job, nextTicket);
+		}
+	}
+
+	/**
+	 * Poll next queued handshake. Resumption handshakes are preferred.
+	 *
+	 * Must be called holding the monitor of this scheduler.
+	 *
+	 * @return next queued handshake, or {@code null}, if no handshake is
+	 *         queued.
+	 */
+	private PendingHandshake pollPending() {
+		PendingHandshake next = resumptions.poll();
+		if (next == null) {
+			next = fullHandshakes.poll();
+		}
+		return next;
+	}
+
+	/**
+	 * Create new ticket.
+	 *
+	 * Must be called holding the monitor of this scheduler.
+	 *
+	 * @return new ticket
+	 */
+	private Ticket newTicket() {
+		Ticket ticket = new Ticket(ClockUtil.nanoRealtime());
+		tickets.add(ticket);
+		return ticket;
+	}
+
+	/**
+	 * Reclaim expired tickets.
+	 *
+	 * Must be called holding the monitor of this scheduler.
+	 *
+	 * @return {@code true}, if at least one ticket is reclaimed.
+	 */
+	private boolean reclaimTickets() {
+		long expired = ClockUtil.nanoRealtime() - TICKET_TIMEOUT_NANOS;
+		boolean reclaimed = false;
+		Iterator<Ticket> iterator = tickets.iterator();
+		while (iterator.hasNext()) {
+			Ticket ticket = iterator.next();
+			if (ticket.startNanos - expired > 0) {
+				break;
+			}
+			iterator.remove();
+			reclaimedTickets.incrementAndGet();
+			reclaimed = true;
+		}
+		if (reclaimed) {
+			LOGGER.warn("reclaimed expired handshake tickets!");
+		}
+		return reclaimed;
+	}
+
+	private void dispatch(final Executor executor, final HandshakeJob job, final Ticket ticket) {
+		try {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					job.start(ticket);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			LOGGER.debug("Execution of handshake rejected!", e);
+			ticket.release();
+		}
+	}
+
+	/**
+	 * Get the maximum number of concurrent handshakes.
+	 *
+	 * @return maximum number of concurrent handshakes. {@code 0}, if not
+	 *         limited.
+	 */
+	public int getMaxHandshakes() {
+		return maxHandshakes;
+	}
+
+	/**
+	 * Get the number of currently running handshakes.
+	 *
+	 * @return number of running handshakes
+	 */
+	public synchronized int getRunningHandshakes() {
+		return tickets.size();
+	}
+
+	/**
+	 * Get the number of queued resumption handshakes.
+	 *
+	 * @return number of queued resumption handshakes
+	 */
+	public synchronized int getQueuedResumptions() {
+		return resumptions.size();
+	}
+
+	/**
+	 * Get the number of queued full handshakes.
+	 *
+	 * @return number of queued full handshakes
+	 */
+	public synchronized int getQueuedFullHandshakes() {
+		return fullHandshakes.size();
+	}
+
+	/**
+	 * Get the number of CLIENT_HELLOs dropped by the rate limit per source
+	 * ip-address.
+	 *
+	 * @return number of dropped CLIENT_HELLOs
+	 */
+	public long getRejectedByRateLimit() {
+		return rejectedByRateLimit.get();
+	}
+
+	/**
+	 * Get the number of handshakes rejected because the queue was full.
+	 *
+	 * @return number of rejected handshakes
+	 */
+	public long getRejectedByQueueLimit() {
+		return rejectedByQueueLimit.get();
+	}
+
+	/**
+	 * Get the number of reclaimed tickets, which were not released within
+	 * {@link #TICKET_TIMEOUT_NANOS}.
+	 *
+	 * @return number of reclaimed tickets
+	 */
+	public long getReclaimedTickets() {
+		return reclaimedTickets.get();
+	}
+
+	@Override
+	public String toString() {
+		synchronized (this) {
+			return "handshakes: " + tickets.size() + "/" + maxHandshakes + ", queued resumptions: "
+					+ resumptions.size() + ", queued full handshakes: " + fullHandshakes.size()
+					+ ", rejected by rate: " + rejectedByRateLimit.get() + ", rejected by queue: "
+					+ rejectedByQueueLimit.get();
+		}
+	}
+
+	/**
+	 * Handshake job.
+	 */
+	public interface HandshakeJob {
+
+		/**
+		 * Start the handshake.
+		 *
+		 * @param ticket ticket of the handshake. Must be released, when the
+		 *            first flight is processed.
+		 */
+		void start(Ticket ticket);
+	}
+
+	/**
+	 * Ticket of a running handshake.
+	 */
+	public final class Ticket {
+
+		private final long startNanos;
+
+		private Ticket(long startNanos) {
+			this.startNanos = startNanos;
+		}
+
+		/**
+		 * Release this ticket and start the next queued handshake. Further
+		 * calls have no effect.
+		 */
+		public void release() {
+			HandshakeScheduler.this.release(this);
+		}
+	}
+
+	private static final class PendingHandshake {
+
+		private final Executor executor;
+		private final HandshakeJob job;
+
+		private PendingHandshake(Executor executor, HandshakeJob job) {
+			this.executor = executor;
+			this.job = job;
+		}
+	}
+
+	/**
+	 * Token bucket of a source ip-address, or shared by the source
+	 * ip-addresses exceeding the maximum number of token buckets.
+	 */
+	private final class TokenBucket {
+
+		/**
+		 * Nanoseconds per token.
+		 */
+		private final long nanosPerToken = TimeUnit.SECONDS.toNanos(1) / tokensPerSecond;
+		/**
+		 * Time of the last refill in nanoseconds.
+		 */
+		private long lastRefillNanos;
+		private int tokens;
+
+		private TokenBucket(long nanos) {
+			this.lastRefillNanos = nanos;
+			this.tokens = tokenBurst;
+		}
+
+		private synchronized boolean acquire(long nanos) {
+			long refill = (nanos - lastRefillNanos) / nanosPerToken;
+			if (refill > 0) {
+				tokens = (int) Math.min(tokenBurst, tokens + refill);
+				lastRefillNanos += refill * nanosPerToken;
+			}
+			if (tokens > 0) {
+				--tokens;
+				return true;
+			}
+			return false;
+		}
+	}
+}
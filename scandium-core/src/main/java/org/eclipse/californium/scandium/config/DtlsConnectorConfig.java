@@ -31,6 +31,17 @@
  *                                                    move default thread numbers to this configuration.
  *    Achim Kraus (Bosch Software Innovations GmbH) - add deferred processed messages
  *    Achim Kraus (Bosch Software Innovations GmbH) - add server only.
+ *    Bosch Software Innovations GmbH - add SO_REUSEPORT socket shards.
+ *    Bosch Software Innovations GmbH - add connection executor batch size.
+ *    Bosch Software Innovations GmbH - add virtual threads.
+ *    Bosch Software Innovations GmbH - add session cache.
+ *    Bosch Software Innovations GmbH - add connection store shards.
+ *    Bosch Software Innovations GmbH - add handshake admission control.
+ *    Bosch Software Innovations GmbH - add ECDHE key pair pool.
+ *    Bosch Software Innovations GmbH - add certificate verifier cache.
+ *    Bosch Software Innovations GmbH - add inline application data processing.
+ *    Bosch Software Innovations GmbH - add path MTU discovery.
+ *    Bosch Software Innovations GmbH - add supported groups.
  *******************************************************************************/
 
 package org.eclipse.californium.scandium.config;
@@ -45,6 +56,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import org.eclipse.californium.elements.DtlsEndpointContext;
+import org.eclipse.californium.elements.util.SerialExecutor;
 import org.eclipse.californium.elements.util.SslContextUtil;
 import org.eclipse.californium.scandium.ConnectionListener;
 import org.eclipse.californium.scandium.auth.ApplicationLevelInfoSupplier;
@@ -53,10 +65,12 @@ import org.eclipse.californium.scandium.dtls.ConnectionIdGenerator;
 import org.eclipse.californium.scandium.dtls.SessionCache;
 import org.eclipse.californium.scandium.dtls.cipher.CipherSuite;
 import org.eclipse.californium.scandium.dtls.cipher.CipherSuite.KeyExchangeAlgorithm;
+import org.eclipse.californium.scandium.dtls.cipher.ECDHECryptography.SupportedGroup;
 import org.eclipse.californium.scandium.dtls.pskstore.PskStore;
 import org.eclipse.californium.scandium.dtls.rpkstore.TrustAllRpks;
 import org.eclipse.californium.scandium.dtls.rpkstore.TrustedRpkStore;
 import org.eclipse.californium.scandium.dtls.x509.CertificateVerifier;
+import org.eclipse.californium.scandium.dtls.x509.CachingCertificateVerifier;
 import org.eclipse.californium.scandium.dtls.x509.StaticCertificateVerifier;
 import org.eclipse.californium.scandium.util.ListUtils;
 
@@ -114,6 +128,14 @@ public final class DtlsConnectorConfig {
 	 * property.
 	 */
 	public static final int DEFAULT_VERIFY_PEERS_ON_RESUMPTION_THRESHOLD_IN_PERCENT = 30;
+	/**
+	 * The default value for the <em>handshakeQueueSize</em> property.
+	 */
+	public static final int DEFAULT_HANDSHAKE_QUEUE_SIZE = 200;
+	/**
+	 * The default value for the <em>ecdheKeyPairPoolSize</em> property.
+	 */
+	public static final int DEFAULT_ECDHE_KEY_PAIR_POOL_SIZE = 16;
 	/**
 	 * The default size of the executor's thread pool which is used for processing records.
 	 * <p>
@@ -221,6 +243,66 @@ public final class DtlsConnectorConfig {
 
 	private Integer receiverThreadCount;
 
+	/**
+	 * Maximum number of jobs of a connection executed in one run.
+	 */
+	private Integer connectionExecutorBatchSize;
+
+	/**
+	 * Use virtual threads for the connection executor.
+	 */
+	private Boolean virtualThreadsEnabled;
+
+	/**
+	 * Number of sockets bound to the same address using
+	 * {@code SO_REUSEPORT}.
+	 */
+	private Integer socketShards;
+
+	/**
+	 * Number of shards of the connection store.
+	 */
+	private Integer connectionStoreShards;
+
+	/**
+	 * Maximum number of handshakes, which process their first flight
+	 * concurrently. {@code 0}, if not limited.
+	 */
+	private Integer maxConcurrentHandshakes;
+
+	/**
+	 * Maximum number of queued handshakes per priority.
+	 */
+	private Integer handshakeQueueSize;
+
+	/**
+	 * CLIENT_HELLOs per second and source ip-address. {@code 0}, if not
+	 * limited.
+	 */
+	private Integer handshakeRateLimit;
+
+	/**
+	 * Burst of CLIENT_HELLOs per source ip-address.
+	 */
+	private Integer handshakeRateBurst;
+
+	/**
+	 * Number of pre-generated ephemeral ECDHE key pairs per supported group.
+	 * {@code 0}, if key pairs are generated inline.
+	 */
+	private Integer ecdheKeyPairPoolSize;
+
+	/**
+	 * Supported groups for ECDHE in the order of preference.
+	 */
+	private List<SupportedGroup> supportedGroups;
+
+	/**
+	 * Number of verified issuer chains cached by the certificate verifier
+	 * created for the trust store. {@code 0}, if not cached.
+	 */
+	private Integer certificateVerifierCacheSize;
+
 	/**
 	 * Automatic session resumption timeout. Triggers session resumption
 	 * automatically, if no messages are exchanged for this timeout. Intended to
@@ -284,6 +366,17 @@ public final class DtlsConnectorConfig {
 	 */
 	private Boolean useCidUpdateAddressOnNewerRecordFilter;
 
+	/**
+	 * Process APPLICATION_DATA records of established connections on the
+	 * receiver thread.
+	 */
+	private Boolean useInlineApplicationData;
+
+	/**
+	 * Track the path MTU per connection.
+	 */
+	private Boolean usePathMtuDiscovery;
+
 	/**
 	 * Logging tag.
 	 * 
@@ -311,6 +404,11 @@ public final class DtlsConnectorConfig {
 
 	private ConnectionListener connectionListener;
 
+	/**
+	 * Second level cache for the session state of established sessions.
+	 */
+	private SessionCache sessionCache;
+
 	private DtlsConnectorConfig() {
 		// empty
 	}
@@ -700,6 +798,153 @@ public final class DtlsConnectorConfig {
 		return receiverThreadCount;
 	}
 
+	/**
+	 * Gets the maximum number of jobs of a connection, which are executed in
+	 * one run, before the remaining jobs are passed again to the connection
+	 * thread pool.
+	 * <p>
+	 * The default value is {@link SerialExecutor#DEFAULT_BATCH_SIZE}.
+	 * 
+	 * @return the maximum number of jobs executed in one run.
+	 */
+	public Integer getConnectionExecutorBatchSize() {
+		return connectionExecutorBatchSize;
+	}
+
+	/**
+	 * Checks, if the connection executor uses virtual threads.
+	 * <p>
+	 * If enabled and supported by the JVM (Java 21), the DTLS connections,
+	 * including the handshakes, are processed by virtual threads instead of a
+	 * pool of {@link #getConnectionThreadCount()} threads. The receiver
+	 * threads and the timer for retransmissions are not affected. Only used,
+	 * if no executor is provided by
+	 * {@link org.eclipse.californium.scandium.DTLSConnector#setExecutor(java.util.concurrent.ExecutorService)}.
+	 * <p>
+	 * The default value is {@code false}.
+	 * 
+	 * @return {@code true}, if virtual threads are used, {@code false},
+	 *         otherwise.
+	 */
+	public Boolean isVirtualThreadsEnabled() {
+		return virtualThreadsEnabled;
+	}
+
+	/**
+	 * Gets the number of sockets, which are bound to the same address using
+	 * {@code SO_REUSEPORT}.
+	 * <p>
+	 * The default value is {@code 1}, no additional sockets.
+	 * 
+	 * @return the number of sockets.
+	 */
+	public Integer getSocketShards() {
+		return socketShards;
+	}
+
+	/**
+	 * Gets the number of shards of the connection store.
+	 * <p>
+	 * The default value is {@code 1}, use the
+	 * {@link org.eclipse.californium.scandium.dtls.InMemoryConnectionStore}.
+	 * 
+	 * @return the number of shards.
+	 * @see org.eclipse.californium.scandium.dtls.ShardedConnectionStore
+	 */
+	public Integer getConnectionStoreShards() {
+		return connectionStoreShards;
+	}
+
+	/**
+	 * Gets the maximum number of handshakes, which process their first
+	 * flight concurrently.
+	 * <p>
+	 * The default value is {@code 0}, not limited.
+	 * 
+	 * @return the maximum number of concurrent handshakes, or {@code 0}, if
+	 *         not limited.
+	 * @see org.eclipse.californium.scandium.HandshakeScheduler
+	 */
+	public Integer getMaxConcurrentHandshakes() {
+		return maxConcurrentHandshakes;
+	}
+
+	/**
+	 * Gets the maximum number of queued handshakes per priority.
+	 * <p>
+	 * Only used, if the number of concurrent handshakes is limited, see
+	 * {@link #getMaxConcurrentHandshakes()}. The default value is
+	 * {@link #DEFAULT_HANDSHAKE_QUEUE_SIZE}.
+	 * 
+	 * @return the maximum number of queued handshakes.
+	 * @see org.eclipse.californium.scandium.HandshakeScheduler
+	 */
+	public Integer getHandshakeQueueSize() {
+		return handshakeQueueSize;
+	}
+
+	/**
+	 * Gets the rate limit of CLIENT_HELLOs per second and source ip-address.
+	 * <p>
+	 * The default value is {@code 0}, not limited.
+	 * 
+	 * @return the rate limit of CLIENT_HELLOs.
+	 * @see org.eclipse.californium.scandium.HandshakeScheduler
+	 */
+	public Integer getHandshakeRateLimit() {
+		return handshakeRateLimit;
+	}
+
+	/**
+	 * Gets the burst of CLIENT_HELLOs per source ip-address.
+	 * <p>
+	 * The default value is the rate limit.
+	 * 
+	 * @return the burst of CLIENT_HELLOs.
+	 * @see #getHandshakeRateLimit()
+	 */
+	public Integer getHandshakeRateBurst() {
+		return handshakeRateBurst;
+	}
+
+	/**
+	 * Gets the number of pre-generated ephemeral ECDHE key pairs per supported
+	 * group.
+	 * <p>
+	 * The default value is {@link #DEFAULT_ECDHE_KEY_PAIR_POOL_SIZE}, or
+	 * {@code 0} for client only configurations.
+	 * 
+	 * @return the number of pre-generated key pairs. {@code 0}, if key pairs
+	 *         are generated inline.
+	 */
+	public Integer getEcdheKeyPairPoolSize() {
+		return ecdheKeyPairPoolSize;
+	}
+
+	/**
+	 * Gets the supported groups for ECDHE in the order of preference.
+	 * <p>
+	 * The default value is {@link SupportedGroup#getPreferredGroups()}.
+	 * 
+	 * @return the supported groups
+	 */
+	public List<SupportedGroup> getSupportedGroups() {
+		return supportedGroups;
+	}
+
+	/**
+	 * Gets the number of verified issuer chains cached by the certificate
+	 * verifier created for the trust store.
+	 * <p>
+	 * The default value is {@code 0}, not cached.
+	 * 
+	 * @return the number of cached issuer chains. {@code 0}, if not cached.
+	 * @see CachingCertificateVerifier
+	 */
+	public Integer getCertificateVerifierCacheSize() {
+		return certificateVerifierCacheSize;
+	}
+
 	/**
 	 * Get the timeout for automatic session resumption.
 	 * 
@@ -757,6 +1002,39 @@ public final class DtlsConnectorConfig {
 		return useCidUpdateAddressOnNewerRecordFilter;
 	}
 
+	/**
+	 * Use inline processing of APPLICATION_DATA records.
+	 * 
+	 * APPLICATION_DATA records of established connections without ongoing
+	 * handshake are decrypted, filtered and forwarded to the application on
+	 * the receiver thread instead of the connection's serial execution.
+	 * The order of the records of a peer is then not preserved.
+	 * 
+	 * The default value is {@code false}.
+	 * 
+	 * @return {@code true}, if APPLICATION_DATA records are processed on the
+	 *         receiver thread
+	 */
+	public Boolean useInlineApplicationData() {
+		return useInlineApplicationData;
+	}
+
+	/**
+	 * Use path MTU discovery.
+	 * 
+	 * Handshakes start with the minimum MTU of the IP version and adapt the
+	 * MTU of each connection to the outcome of the handshake flights, limited
+	 * by {@link #getMaxTransmissionUnit()} or the MTU of the network
+	 * interface.
+	 * 
+	 * The default value is {@code false}.
+	 * 
+	 * @return {@code true}, if the path MTU is tracked per connection
+	 */
+	public Boolean usePathMtuDiscovery() {
+		return usePathMtuDiscovery;
+	}
+
 	/**
 	 * @return The trust store for raw public keys verified out-of-band for
 	 *         DTLS-RPK handshakes
@@ -778,6 +1056,17 @@ public final class DtlsConnectorConfig {
 		return connectionListener;
 	}
 
+	/**
+	 * Gets the second level cache for the session state of established
+	 * sessions.
+	 * 
+	 * @return session cache, or {@code null}, if not used.
+	 * @see org.eclipse.californium.scandium.DTLSConnector#DTLSConnector(DtlsConnectorConfig)
+	 */
+	public SessionCache getSessionCache() {
+		return sessionCache;
+	}
+
 	/**
 	 * Get instance logging tag.
 	 * 
@@ -821,6 +1110,17 @@ public final class DtlsConnectorConfig {
 		cloned.staleConnectionThreshold = staleConnectionThreshold;
 		cloned.connectionThreadCount = connectionThreadCount;
 		cloned.receiverThreadCount = receiverThreadCount;
+		cloned.connectionExecutorBatchSize = connectionExecutorBatchSize;
+		cloned.virtualThreadsEnabled = virtualThreadsEnabled;
+		cloned.socketShards = socketShards;
+		cloned.connectionStoreShards = connectionStoreShards;
+		cloned.maxConcurrentHandshakes = maxConcurrentHandshakes;
+		cloned.handshakeQueueSize = handshakeQueueSize;
+		cloned.handshakeRateLimit = handshakeRateLimit;
+		cloned.handshakeRateBurst = handshakeRateBurst;
+		cloned.ecdheKeyPairPoolSize = ecdheKeyPairPoolSize;
+		cloned.supportedGroups = supportedGroups;
+		cloned.certificateVerifierCacheSize = certificateVerifierCacheSize;
 		cloned.autoResumptionTimeoutMillis = autoResumptionTimeoutMillis;
 		cloned.sniEnabled = sniEnabled;
 		cloned.verifyPeersOnResumptionThreshold = verifyPeersOnResumptionThreshold;
@@ -829,10 +1129,13 @@ public final class DtlsConnectorConfig {
 		cloned.useAntiReplayFilter = useAntiReplayFilter;
 		cloned.useWindowFilter = useWindowFilter;
 		cloned.useCidUpdateAddressOnNewerRecordFilter = useCidUpdateAddressOnNewerRecordFilter;
+		cloned.useInlineApplicationData = useInlineApplicationData;
+		cloned.usePathMtuDiscovery = usePathMtuDiscovery;
 		cloned.connectionIdGenerator = connectionIdGenerator;
 		cloned.applicationLevelInfoSupplier = applicationLevelInfoSupplier;
 		cloned.useHandshakeStateValidation = useHandshakeStateValidation;
 		cloned.connectionListener = connectionListener;
+		cloned.sessionCache = sessionCache;
 		return cloned;
 	}
 
@@ -1723,6 +2026,260 @@ public final class DtlsConnectorConfig {
 			return this;
 		}
 
+		/**
+		 * Set the maximum number of jobs of a connection, which are executed
+		 * in one run, before the remaining jobs are passed again to the
+		 * connection thread pool. Larger values reduce the scheduling
+		 * overhead for connections with many jobs, but delay the jobs of
+		 * other connections.
+		 * <p>
+		 * The default value is {@link SerialExecutor#DEFAULT_BATCH_SIZE}.
+		 * 
+		 * @param batchSize the maximum number of jobs executed in one run.
+		 * @return this builder for command chaining.
+		 * @throws IllegalArgumentException if batchSize is less than 1
+		 */
+		public Builder setConnectionExecutorBatchSize(int batchSize) {
+			if (batchSize < 1) {
+				throw new IllegalArgumentException("batch size must be at least 1!");
+			}
+			config.connectionExecutorBatchSize = batchSize;
+			return this;
+		}
+
+		/**
+		 * Set, if the connection executor uses virtual threads.
+		 * <p>
+		 * If enabled and supported by the JVM (Java 21), the DTLS
+		 * connections, including the handshakes, are processed by virtual
+		 * threads instead of a pool of threads. If not supported, the pool is
+		 * used.
+		 * <p>
+		 * The default value is {@code false}.
+		 * 
+		 * @param enable {@code true}, to use virtual threads, {@code false},
+		 *            otherwise.
+		 * @return this builder for command chaining.
+		 */
+		public Builder setVirtualThreadsEnabled(boolean enable) {
+			config.virtualThreadsEnabled = enable;
+			return this;
+		}
+
+		/**
+		 * Set the number of sockets, which are bound to the same address
+		 * using {@code SO_REUSEPORT}.
+		 * <p>
+		 * On Linux the kernel spreads the received datagrams over these
+		 * sockets based on the peer's address. Each socket is served by at
+		 * least one receiver thread, the receiver threads are assigned round
+		 * robin to the sockets. If {@code SO_REUSEPORT} is not supported, a
+		 * single socket is used.
+		 * <p>
+		 * The default value is {@code 1}, no additional sockets.
+		 * 
+		 * @param shards the number of sockets.
+		 * @return this builder for command chaining.
+		 * @throws IllegalArgumentException if shards is less than {@code 1}
+		 * @see org.eclipse.californium.elements.util.ReusePortUtil#isSupported()
+		 */
+		public Builder setSocketShards(int shards) {
+			if (shards < 1) {
+				throw new IllegalArgumentException("socket shards " + shards + " must be at least 1!");
+			}
+			config.socketShards = shards;
+			return this;
+		}
+
+		/**
+		 * Set the number of shards of the connection store.
+		 * <p>
+		 * With more than one shard, the
+		 * {@link org.eclipse.californium.scandium.DTLSConnector} uses a
+		 * {@link org.eclipse.californium.scandium.dtls.ShardedConnectionStore}
+		 * instead of the
+		 * {@link org.eclipse.californium.scandium.dtls.InMemoryConnectionStore},
+		 * if created without explicit connection store. The
+		 * <em>maxConnections</em> are split equally into the shards. That
+		 * reduces the contention of many receiver and connection threads on
+		 * the store.
+		 * <p>
+		 * The default value is {@code 1}, no sharding.
+		 * 
+		 * @param shards the number of shards.
+		 * @return this builder for command chaining.
+		 * @throws IllegalArgumentException if shards is less than {@code 1}
+		 */
+		public Builder setConnectionStoreShards(int shards) {
+			if (shards < 1) {
+				throw new IllegalArgumentException("connection store shards " + shards + " must be at least 1!");
+			}
+			config.connectionStoreShards = shards;
+			return this;
+		}
+
+		/**
+		 * Set the maximum number of handshakes, which process their first
+		 * flight concurrently.
+		 * <p>
+		 * Limits the connection threads used for (expensive) handshakes, so
+		 * that the application data of established connections is still
+		 * processed during a reconnect storm. Exceeding handshakes are
+		 * queued, resumption handshakes are preferred. A value of half of
+		 * the connection threads is a good starting point.
+		 * <p>
+		 * The default value is {@code 0}, not limited.
+		 * 
+		 * @param maxHandshakes the maximum number of concurrent handshakes.
+		 *            {@code 0}, not limited.
+		 * @return this builder for command chaining.
+		 * @throws IllegalArgumentException if maxHandshakes is negative
+		 * @see #setHandshakeQueueSize(int)
+		 */
+		public Builder setMaxConcurrentHandshakes(int maxHandshakes) {
+			if (maxHandshakes < 0) {
+				throw new IllegalArgumentException("max. concurrent handshakes " + maxHandshakes + " must not be negative!");
+			}
+			config.maxConcurrentHandshakes = maxHandshakes;
+			return this;
+		}
+
+		/**
+		 * Set the maximum number of queued handshakes per priority.
+		 * <p>
+		 * If the queue is full, CLIENT_HELLOs are dropped. Only used, if the
+		 * number of concurrent handshakes is limited.
+		 * <p>
+		 * The default value is {@link DtlsConnectorConfig#DEFAULT_HANDSHAKE_QUEUE_SIZE}.
+		 * 
+		 * @param queueSize the maximum number of queued handshakes.
+		 * @return this builder for command chaining.
+		 * @throws IllegalArgumentException if queueSize is negative
+		 * @see #setMaxConcurrentHandshakes(int)
+		 */
+		public Builder setHandshakeQueueSize(int queueSize) {
+			if (queueSize < 0) {
+				throw new IllegalArgumentException("handshake queue size " + queueSize + " must not be negative!");
+			}
+			config.handshakeQueueSize = queueSize;
+			return this;
+		}
+
+		/**
+		 * Set the rate limit of CLIENT_HELLOs per source ip-address.
+		 * <p>
+		 * CLIENT_HELLOs exceeding the limit are dropped before any other
+		 * processing.
+		 * <p>
+		 * The default value is {@code 0}, not limited.
+		 * 
+		 * @param clientHellosPerSecond CLIENT_HELLOs per second. {@code 0},
+		 *            not limited.
+		 * @param burst maximum number of CLIENT_HELLOs, which are accepted
+		 *            at once.
+		 * @return this builder for command chaining.
+		 * @throws IllegalArgumentException if clientHellosPerSecond is
+		 *             negative, or burst is less than {@code 1}
+		 */
+		public Builder setHandshakeRateLimit(int clientHellosPerSecond, int burst) {
+			if (clientHellosPerSecond < 0) {
+				throw new IllegalArgumentException("handshake rate limit " + clientHellosPerSecond + " must not be negative!");
+			}
+			if (burst < 1) {
+				throw new IllegalArgumentException("handshake rate burst " + burst + " must be at least 1!");
+			}
+			config.handshakeRateLimit = clientHellosPerSecond;
+			config.handshakeRateBurst = burst;
+			return this;
+		}
+
+		/**
+		 * Set the number of pre-generated ephemeral ECDHE key pairs per
+		 * supported group.
+		 * <p>
+		 * The key pairs are generated by a background thread with low
+		 * priority and are shared by all connectors. If no pre-generated key
+		 * pair is available, the key pair is generated inline.
+		 * <p>
+		 * The default value is
+		 * {@link DtlsConnectorConfig#DEFAULT_ECDHE_KEY_PAIR_POOL_SIZE}, or
+		 * {@code 0} for client only configurations.
+		 * 
+		 * @param poolSize number of pre-generated key pairs. {@code 0}, to
+		 *            generate the key pairs inline.
+		 * @return this builder for command chaining.
+		 * @throws IllegalArgumentException if pool size is negative
+		 */
+		public Builder setEcdheKeyPairPoolSize(int poolSize) {
+			if (poolSize < 0) {
+				throw new IllegalArgumentException("ECDHE key pair pool size " + poolSize + " must not be negative!");
+			}
+			config.ecdheKeyPairPoolSize = poolSize;
+			return this;
+		}
+
+		/**
+		 * Set the supported groups for ECDHE in the order of preference.
+		 * <p>
+		 * A client proposes the groups in this order, a server selects the
+		 * first group proposed by the client, which is contained in this
+		 * list. Use this to enable x25519 or x448, e.g. with
+		 * {@code setSupportedGroups(SupportedGroup.x25519, SupportedGroup.secp256r1)}.
+		 * <p>
+		 * The default value is {@link SupportedGroup#getPreferredGroups()},
+		 * which contains only the secp curves.
+		 * 
+		 * @param groups the supported groups in the order of preference
+		 * @return this builder for command chaining.
+		 * @throws NullPointerException if groups is {@code null}
+		 * @throws IllegalArgumentException if groups is empty, or contains
+		 *             {@code null} or a group, which is not usable with the
+		 *             JVM.
+		 */
+		public Builder setSupportedGroups(SupportedGroup... groups) {
+			if (groups == null) {
+				throw new NullPointerException("Connector must support at least one group");
+			}
+			if (groups.length == 0) {
+				throw new IllegalArgumentException("Connector must support at least one group");
+			}
+			for (SupportedGroup group : groups) {
+				if (group == null) {
+					throw new IllegalArgumentException("Connector does not support null group");
+				} else if (!group.isUsable()) {
+					throw new IllegalArgumentException("group " + group + " is not supported by JVM!");
+				}
+			}
+			config.supportedGroups = Arrays.asList(groups);
+			return this;
+		}
+
+		/**
+		 * Set the number of verified issuer chains cached by the certificate
+		 * verifier created for the trust store.
+		 * <p>
+		 * A certificate chain with a cached issuer chain is verified by
+		 * checking the leaf certificate only. A custom verifier set with
+		 * {@link #setCertificateVerifier(CertificateVerifier)} is not affected
+		 * by this value, it may be wrapped with a
+		 * {@link CachingCertificateVerifier} explicitly.
+		 * <p>
+		 * The default value is {@code 0}, not cached.
+		 * 
+		 * @param cacheSize number of cached issuer chains. {@code 0}, not
+		 *            cached.
+		 * @return this builder for command chaining.
+		 * @throws IllegalArgumentException if cache size is negative
+		 * @see #setTrustStore(Certificate[])
+		 */
+		public Builder setCertificateVerifierCacheSize(int cacheSize) {
+			if (cacheSize < 0) {
+				throw new IllegalArgumentException("certificate verifier cache size " + cacheSize + " must not be negative!");
+			}
+			config.certificateVerifierCacheSize = cacheSize;
+			return this;
+		}
+
 		/**
 		 * Set the timeout of automatic session resumption in milliseconds.
 		 * <p>
@@ -1857,6 +2414,55 @@ public final class DtlsConnectorConfig {
 			return this;
 		}
 
+		/**
+		 * Use inline processing of APPLICATION_DATA records.
+		 * 
+		 * If enabled, APPLICATION_DATA records of established connections
+		 * without ongoing handshake are decrypted, filtered and forwarded to
+		 * the application on the receiver thread. That saves passing each
+		 * record to the connection's serial execution, but the
+		 * {@code RawDataChannel} is then called by the receiver threads and
+		 * must therefore return fast. Records with a connection ID or a
+		 * changed source address are always processed by the serial
+		 * execution.
+		 * <p>
+		 * The order of the records of a peer is not preserved. Records may
+		 * be delivered by several receiver threads concurrently and before
+		 * records of the same peer, which are still pending in the serial
+		 * execution. Each record is still delivered only once.
+		 * 
+		 * @param enable {@code true} to process APPLICATION_DATA records on
+		 *            the receiver thread. Default {@code false}.
+		 * @return this builder for command chaining.
+		 */
+		public Builder setUseInlineApplicationData(boolean enable) {
+			config.useInlineApplicationData = enable;
+			return this;
+		}
+
+		/**
+		 * Use path MTU discovery.
+		 * 
+		 * If enabled, the handshake flights of a connection start with the
+		 * minimum MTU of the IP version (576 bytes for IPv4, 1280 bytes for
+		 * IPv6). Flights, which are answered by the peer, confirm their
+		 * datagram size, and the MTU of the next handshakes grows towards the
+		 * {@link #setMaxTransmissionUnit(int)} or the MTU of the network
+		 * interface. A client pads the CLIENT_HELLO of a full handshake up to
+		 * that MTU to probe it. Repeatedly lost flights shrink the MTU again
+		 * and are retransmitted using smaller fragments. Established sessions
+		 * use the confirmed MTU, which is also reported by
+		 * {@code DTLSConnector#getMaximumFragmentLength(InetSocketAddress)}.
+		 * 
+		 * @param enable {@code true} to track the path MTU per connection.
+		 *            Default {@code false}.
+		 * @return this builder for command chaining.
+		 */
+		public Builder setUsePathMtuDiscovery(boolean enable) {
+			config.usePathMtuDiscovery = enable;
+			return this;
+		}
+
 		/**
 		 * Use the handshake state validation to verify valid handshakes.
 		 * 
@@ -1891,6 +2497,26 @@ public final class DtlsConnectorConfig {
 			return this;
 		}
 
+		/**
+		 * Sets the second level cache for the session state of established
+		 * sessions.
+		 * 
+		 * Used by {@link org.eclipse.californium.scandium.DTLSConnector}, if
+		 * created without explicit session cache or connection store. A
+		 * {@link org.eclipse.californium.scandium.dtls.ClientSessionCache},
+		 * e.g. the
+		 * {@link org.eclipse.californium.scandium.dtls.FileClientSessionCache},
+		 * enables a client to resume the sessions with its peers after a
+		 * restart.
+		 * 
+		 * @param sessionCache session cache. {@code null}, if not used.
+		 * @return this builder for command chaining.
+		 */
+		public Builder setSessionCache(SessionCache sessionCache) {
+			config.sessionCache = sessionCache;
+			return this;
+		}
+
 		private boolean isConfiguredWithKeyPair() {
 			return config.privateKey != null && config.publicKey != null;
 		}
@@ -1987,6 +2613,40 @@ public final class DtlsConnectorConfig {
 			if (config.receiverThreadCount == null) {
 				config.receiverThreadCount = DEFAULT_RECEIVER_THREADS;
 			}
+			if (config.connectionExecutorBatchSize == null) {
+				config.connectionExecutorBatchSize = SerialExecutor.DEFAULT_BATCH_SIZE;
+			}
+			if (config.virtualThreadsEnabled == null) {
+				config.virtualThreadsEnabled = Boolean.FALSE;
+			}
+			if (config.socketShards == null) {
+				config.socketShards = 1;
+			}
+			if (config.connectionStoreShards == null) {
+				config.connectionStoreShards = 1;
+			}
+			if (config.maxConcurrentHandshakes == null) {
+				config.maxConcurrentHandshakes = 0;
+			}
+			if (config.handshakeQueueSize == null) {
+				config.handshakeQueueSize = DEFAULT_HANDSHAKE_QUEUE_SIZE;
+			}
+			if (config.handshakeRateLimit == null) {
+				config.handshakeRateLimit = 0;
+			}
+			if (config.handshakeRateBurst == null) {
+				config.handshakeRateBurst = Math.max(1, config.handshakeRateLimit);
+			}
+			if (config.supportedGroups == null) {
+				config.supportedGroups = SupportedGroup.getPreferredGroups();
+			}
+			if (config.ecdheKeyPairPoolSize == null) {
+				config.ecdheKeyPairPoolSize = clientOnly ? 0 : DEFAULT_ECDHE_KEY_PAIR_POOL_SIZE;
+			}
+			if (config.connectionStoreShards > config.maxConnections) {
+				throw new IllegalStateException("connection store shards " + config.connectionStoreShards
+						+ " must not be larger than max. connections " + config.maxConnections + "!");
+			}
 			if (config.staleConnectionThreshold == null) {
 				config.staleConnectionThreshold = DEFAULT_STALE_CONNECTION_TRESHOLD;
 			}
@@ -2002,11 +2662,24 @@ public final class DtlsConnectorConfig {
 			if (config.useCidUpdateAddressOnNewerRecordFilter == null) {
 				config.useCidUpdateAddressOnNewerRecordFilter = Boolean.TRUE;
 			}
+			if (config.useInlineApplicationData == null) {
+				config.useInlineApplicationData = Boolean.FALSE;
+			}
+			if (config.usePathMtuDiscovery == null) {
+				config.usePathMtuDiscovery = Boolean.FALSE;
+			}
 			if (config.verifyPeersOnResumptionThreshold == null) {
 				config.verifyPeersOnResumptionThreshold = DEFAULT_VERIFY_PEERS_ON_RESUMPTION_THRESHOLD_IN_PERCENT;
 			}
+			if (config.certificateVerifierCacheSize == null) {
+				config.certificateVerifierCacheSize = 0;
+			}
 			if (config.certificateVerifier == null && config.trustStore != null) {
 				config.certificateVerifier = new StaticCertificateVerifier(config.trustStore);
+				if (config.certificateVerifierCacheSize > 0) {
+					config.certificateVerifier = new CachingCertificateVerifier(config.certificateVerifier,
+							config.certificateVerifierCacheSize);
+				}
 			}
 			if (config.trustCertificateTypes == null) {
 				if (config.trustedRPKs != null || config.certificateVerifier != null) {
@@ -2084,6 +2757,7 @@ public final class DtlsConnectorConfig {
 			config.trustCertificateTypes = ListUtils.init(config.trustCertificateTypes);
 			config.identityCertificateTypes = ListUtils.init(config.identityCertificateTypes);
 			config.supportedCipherSuites = ListUtils.init(config.supportedCipherSuites);
+			config.supportedGroups = ListUtils.init(config.supportedGroups);
 			config.certChain = ListUtils.init(config.certChain);
 
 			return config;
@@ -42,6 +42,10 @@
  *                                                    process reordered handshake messages
  *    Achim Kraus (Bosch Software Innovations GmbH) - add dtls flight number
  *    Achim Kraus (Bosch Software Innovations GmbH) - redesign DTLSFlight and RecordLayer
+ *    Bosch Software Innovations GmbH - use ECDHE key pair pool.
+ *    Bosch Software Innovations GmbH - support x25519 and x448 public keys.
+ *    Bosch Software Innovations GmbH - use configured supported groups.
+ *    Bosch Software Innovations GmbH - pad CLIENT_HELLO to probe the path MTU
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
@@ -50,7 +54,6 @@ import java.security.MessageDigest;
 import java.security.PublicKey;
 import java.security.cert.CertPath;
 import java.security.cert.X509Certificate;
-import java.security.interfaces.ECPublicKey;
 import java.util.Collections;
 import java.util.List;
 
@@ -65,6 +68,7 @@ import org.eclipse.californium.scandium.dtls.CertificateType;
 import org.eclipse.californium.scandium.dtls.SupportedPointFormatsExtension.ECPointFormat;
 import org.eclipse.californium.scandium.dtls.cipher.CipherSuite;
 import org.eclipse.californium.scandium.dtls.cipher.ECDHECryptography;
+import org.eclipse.californium.scandium.dtls.cipher.ECDHECryptography.SupportedGroup;
 import org.eclipse.californium.scandium.util.PskUtil;
 import org.eclipse.californium.scandium.util.ServerNames;
 
@@ -98,7 +102,7 @@ public class ClientHandshaker extends Handshaker {
 	private CertPath peerCertPath;
 
 	/** The server's ephemeral public key, used for key agreement */
-	protected ECPublicKey ephemeralServerPublicKey;
+	protected PublicKey ephemeralServerPublicKey;
 
 	/** The client's hello handshake message. Store it, to add the cookie in the second flight. */
 	protected ClientHello clientHello = null;
@@ -106,6 +110,9 @@ public class ClientHandshaker extends Handshaker {
 	/** the preferred cipher suites ordered by preference */
 	private final List<CipherSuite> preferredCipherSuites;
 
+	/** the supported groups ordered by preference */
+	protected final List<SupportedGroup> supportedGroups;
+
 	protected Integer maxFragmentLengthCode;
 
 	/**
@@ -151,6 +158,7 @@ public class ClientHandshaker extends Handshaker {
 			DtlsConnectorConfig config, int maxTransmissionUnit) {
 		super(true, 0, session, recordLayer, connection, config, maxTransmissionUnit);
 		this.preferredCipherSuites = config.getSupportedCipherSuites();
+		this.supportedGroups = config.getSupportedGroups();
 		this.maxFragmentLengthCode = config.getMaxFragmentLengthCode();
 
 		this.supportedServerCertificateTypes = config.getTrustCertificateTypes();
@@ -256,7 +264,13 @@ public class ClientHandshaker extends Handshaker {
 		// HelloVerifyRequest and messages before are not included in the handshake hashs
 		handshakeMessages.clear();
 
+		// the HELLO_VERIFY_REQUEST confirms the size of the CLIENT_HELLO
+		// without cookie, don't exceed it with the cookie
+		int confirmedLength = clientHello.getMessageLength();
 		clientHello.setCookie(message.getCookie());
+		if (clientHello.getPaddingExtension() != null) {
+			clientHello.padTo(confirmedLength);
+		}
 
 		flightNumber = 3;
 		DTLSFlight flight = new DTLSFlight(getSession(), flightNumber);
@@ -404,9 +418,9 @@ public class ClientHandshaker extends Handshaker {
 		} else {
 			session.setPeerIdentity(new RawPublicKeyIdentity(serverPublicKey));
 		}
-		ephemeralServerPublicKey = message.getPublicKey();
+		ephemeralServerPublicKey = message.getEphemeralPublicKey();
 		try {
-			ecdhe = new ECDHECryptography(ephemeralServerPublicKey.getParams());
+			ecdhe = createEcdhe(message.getCurveId());
 		} catch (GeneralSecurityException e) {
 			throw new HandshakeException(
 				String.format(
@@ -416,6 +430,23 @@ public class ClientHandshaker extends Handshaker {
 		}
 	}
 
+	/**
+	 * Create the ephemeral keys for the named curve provided by the server.
+	 * 
+	 * Uses a pre-generated key pair, if available.
+	 * 
+	 * @param curveId the named curve id provided by the server
+	 * @return the object containing the ephemeral keys
+	 * @throws GeneralSecurityException if the keys could not be created
+	 */
+	private ECDHECryptography createEcdhe(int curveId) throws GeneralSecurityException {
+		SupportedGroup group = SupportedGroup.fromId(curveId);
+		if (group == null) {
+			throw new GeneralSecurityException("Unknown named curve " + curveId);
+		}
+		return ECDHECryptography.fromKeyPairPool(ecdheKeyPairPool, group);
+	}
+
 	/**
 	 * This method is called after receiving {@link ServerKeyExchange} message in ECDHE_PSK mode 
 	 * to extract the ServerDHEParams that includes the ephemeral public key.
@@ -424,9 +455,9 @@ public class ClientHandshaker extends Handshaker {
 	 * @throws HandshakeException
 	 */
 	private void receivedServerKeyExchange(EcdhPskServerKeyExchange message) throws HandshakeException {
-		ephemeralServerPublicKey = message.getPublicKey();
+		ephemeralServerPublicKey = message.getEphemeralPublicKey();
 		try {
-			ecdhe = new ECDHECryptography(ephemeralServerPublicKey.getParams());
+			ecdhe = createEcdhe(message.getCurveId());
 		} catch (GeneralSecurityException e) {
 			throw new HandshakeException(
 				String.format(
@@ -459,7 +490,7 @@ public class ClientHandshaker extends Handshaker {
 		byte[] premasterSecret;
 		switch (getKeyExchangeAlgorithm()) {
 		case EC_DIFFIE_HELLMAN:
-			clientKeyExchange = new ECDHClientKeyExchange(ecdhe.getPublicKey(), session.getPeer());
+			clientKeyExchange = new ECDHClientKeyExchange(ecdhe.getEphemeralPublicKey(), session.getPeer());
 			premasterSecret = ecdhe.getSecret(ephemeralServerPublicKey).getEncoded();
 			generateKeys(premasterSecret);
 			break;
@@ -475,7 +506,7 @@ public class ClientHandshaker extends Handshaker {
 			PskUtil pskUtil = new PskUtil(sniEnabled, session, pskStore);
 			LOGGER.debug("Using PSK identity: {}", pskUtil.getPskPrincipal());
 			session.setPeerIdentity(pskUtil.getPskPrincipal());
-			clientKeyExchange = new EcdhPskClientKeyExchange(pskUtil.getPskPublicIdentity(), ecdhe.getPublicKey(), session.getPeer());
+			clientKeyExchange = new EcdhPskClientKeyExchange(pskUtil.getPskPublicIdentity(), ecdhe.getEphemeralPublicKey(), session.getPeer());
 			byte[] otherSecret = ecdhe.getSecret(ephemeralServerPublicKey).getEncoded();
 			premasterSecret = generatePremasterSecretFromPSK(pskUtil.getPreSharedKey(), otherSecret);
 			generateKeys(premasterSecret);
@@ -638,7 +669,7 @@ public class ClientHandshaker extends Handshaker {
 
 		handshakeStarted();
 
-		ClientHello startMessage = new ClientHello(maxProtocolVersion, preferredCipherSuites,
+		ClientHello startMessage = new ClientHello(maxProtocolVersion, preferredCipherSuites, supportedGroups,
 				supportedClientCertificateTypes, supportedServerCertificateTypes, session.getPeer());
 
 		// store client random for later calculations
@@ -652,6 +683,8 @@ public class ClientHandshaker extends Handshaker {
 
 		addServerNameIndication(startMessage);
 
+		addPadding(startMessage);
+
 		// store for later calculations
 		flightNumber = 1;
 		clientHello = startMessage;
@@ -687,6 +720,30 @@ public class ClientHandshaker extends Handshaker {
 		}
 	}
 
+	/**
+	 * Pad the CLIENT_HELLO to probe the path MTU.
+	 * 
+	 * If the MTU of the handshake exceeds the confirmed path MTU, the
+	 * CLIENT_HELLO is padded up to the max. fragment length. The response of
+	 * the server confirms that size for established sessions.
+	 * 
+	 * Only the CLIENT_HELLO of a full handshake is padded. The server answers
+	 * it without cookie statelessly with a HELLO_VERIFY_REQUEST, so the
+	 * padding may be reduced, if that CLIENT_HELLO is lost. A CLIENT_HELLO,
+	 * which resumes a session, may be processed by the server without cookie
+	 * exchange and is therefore not padded.
+	 * 
+	 * @param helloMessage the CLIENT_HELLO to pad
+	 * @see PathMtu
+	 */
+	protected void addPadding(final ClientHello helloMessage) {
+		PathMtu pathMtu = getConnection().getPathMtu();
+		if (pathMtu != null && session.getMaxDatagramSize() > pathMtu.getConfirmedMtu()) {
+			helloMessage.padTo(session.getMaxFragmentLength());
+			LOGGER.debug("Probing path MTU {} to server [{}]", session.getMaxDatagramSize(), getPeerAddress());
+		}
+	}
+
 	protected void addServerNameIndication(final ClientHello helloMessage) {
 
 		if (sniEnabled && session.getVirtualHost() != null) {
@@ -20,6 +20,9 @@
  *                                                    if ECC-based cipher suites are used.
  *                                                    replace add cipher suite with
  *                                                    list in constructor parameters
+ *    Bosch Software Innovations GmbH - add supported groups to constructor
+ *                                      parameters
+ *    Bosch Software Innovations GmbH - add padding to probe the path MTU
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
@@ -119,7 +122,34 @@ public final class ClientHello extends HandshakeMessage {
 			List<CertificateType> supportedServerCertificateTypes,
 			InetSocketAddress peerAddress) {
 
-		this(version, null, supportedCipherSuites, supportedClientCertificateTypes,
+		this(version, supportedCipherSuites, SupportedGroup.getPreferredGroups(), supportedClientCertificateTypes,
+				supportedServerCertificateTypes, peerAddress);
+	}
+
+	/**
+	 * Creates a <em>Client Hello</em> message to be sent to a server.
+	 * 
+	 * @param version the protocol version to use
+	 * @param supportedCipherSuites the list of the supported cipher suites in order of
+	 *            the client’s preference (favorite choice first)
+	 * @param supportedGroups the list of the supported groups in order of the
+	 *            client's preference (favorite choice first)
+	 * @param supportedClientCertificateTypes the list of certificate types
+	 *            supported by the client
+	 * @param supportedServerCertificateTypes the list of certificate types
+	 *            supported by the server
+	 * @param peerAddress the IP address and port of the peer this message has
+	 *            been received from or should be sent to
+	 */
+	public ClientHello(
+			ProtocolVersion version,
+			List<CipherSuite> supportedCipherSuites,
+			List<SupportedGroup> supportedGroups,
+			List<CertificateType> supportedClientCertificateTypes,
+			List<CertificateType> supportedServerCertificateTypes,
+			InetSocketAddress peerAddress) {
+
+		this(version, null, supportedCipherSuites, supportedGroups, supportedClientCertificateTypes,
 				supportedServerCertificateTypes, peerAddress);
 	}
 
@@ -140,8 +170,32 @@ public final class ClientHello extends HandshakeMessage {
 			List<CertificateType> supportedClientCertificateTypes,
 			List<CertificateType> supportedServerCertificateTypes) {
 
+		this(version, session, SupportedGroup.getPreferredGroups(), supportedClientCertificateTypes,
+				supportedServerCertificateTypes);
+	}
+
+	/**
+	 * Creates a <em>Client Hello</em> message to be used for resuming an
+	 * existing DTLS session.
+	 * 
+	 * @param version the protocol version to use
+	 * @param session the (already existing) DTLS session to resume
+	 * @param supportedGroups the list of the supported groups in order of the
+	 *            client's preference (favorite choice first)
+	 * @param supportedClientCertificateTypes the list of certificate types
+	 *            supported by the client
+	 * @param supportedServerCertificateTypes the list of certificate types
+	 *            supported by the server
+	 */
+	public ClientHello(
+			ProtocolVersion version,
+			DTLSSession session,
+			List<SupportedGroup> supportedGroups,
+			List<CertificateType> supportedClientCertificateTypes,
+			List<CertificateType> supportedServerCertificateTypes) {
+
 		this(version, session.getSessionIdentifier(),
-				Arrays.asList(session.getCipherSuite()), supportedClientCertificateTypes,
+				Arrays.asList(session.getCipherSuite()), supportedGroups, supportedClientCertificateTypes,
 				supportedServerCertificateTypes, session.getPeer());
 		addCompressionMethod(session.getWriteState().getCompressionMethod());
 	}
@@ -150,6 +204,7 @@ public final class ClientHello extends HandshakeMessage {
 			ProtocolVersion version,
 			SessionId sessionId,
 			List<CipherSuite> supportedCipherSuites,
+			List<SupportedGroup> supportedGroups,
 			List<CertificateType> supportedClientCertificateTypes,
 			List<CertificateType> supportedServerCertificateTypes,
 			InetSocketAddress peerAddress) {
@@ -171,9 +226,8 @@ public final class ClientHello extends HandshakeMessage {
 		// if the client supports at least one ECC based cipher suite
 		if (CipherSuite.containsEccBasedCipherSuite(supportedCipherSuites)) {
 			// the supported groups
-			// TODO make list of supported groups configurable
-			SupportedGroup[] supportedGroups = SupportedGroup.getPreferredGroups().toArray(new SupportedGroup[] {});
-			this.extensions.addExtension(new SupportedEllipticCurvesExtension(supportedGroups));
+			this.extensions.addExtension(new SupportedEllipticCurvesExtension(
+					supportedGroups.toArray(new SupportedGroup[supportedGroups.size()])));
 
 			// the supported point formats
 			List<ECPointFormat> formats = Arrays.asList(ECPointFormat.UNCOMPRESSED);
@@ -423,6 +477,44 @@ public final class ClientHello extends HandshakeMessage {
 		}
 	}
 
+	/**
+	 * Pad this message using the padding extension.
+	 * <p>
+	 * See <a href="https://tools.ietf.org/html/rfc7685">RFC 7685</a>. Replaces
+	 * the padding of a previous call. If the message is too large to add the
+	 * padding extension, the padding is removed.
+	 * 
+	 * @param messageLength length of the padded message, without the
+	 *            handshake message header.
+	 * @return {@code true}, if the padding has changed, {@code false},
+	 *         otherwise.
+	 * @see PathMtu
+	 */
+	boolean padTo(int messageLength) {
+		if (extensions == null) {
+			return false;
+		}
+		PaddingExtension previous = (PaddingExtension) extensions.removeExtension(ExtensionType.PADDING);
+		// adding the first extension adds also 2 bytes for the length
+		int overhead = PaddingExtension.OVERHEAD + (extensions.isEmpty() ? 2 : 0);
+		int paddingLength = messageLength - getMessageLength() - overhead;
+		PaddingExtension padding = null;
+		if (paddingLength >= 0) {
+			padding = new PaddingExtension(paddingLength);
+			extensions.addExtension(padding);
+		}
+		boolean changed;
+		if (previous == null) {
+			changed = padding != null;
+		} else {
+			changed = padding == null || padding.getPaddingLength() != previous.getPaddingLength();
+		}
+		if (changed) {
+			fragmentChanged();
+		}
+		return changed;
+	}
+
 	/**
 	 * Gets the client hello extensions the client has included in this message.
 	 * 
@@ -486,6 +578,20 @@ public final class ClientHello extends HandshakeMessage {
 		}
 	}
 
+	/**
+	 * Gets the <em>padding</em> extension data from this message.
+	 * 
+	 * @return the extension data or <code>null</code> if this message does not
+	 *         contain the <em>padding</em> extension.
+	 */
+	public PaddingExtension getPaddingExtension() {
+		if (extensions != null) {
+			return (PaddingExtension) extensions.getExtension(ExtensionType.PADDING);
+		} else {
+			return null;
+		}
+	}
+
 	/**
 	 * Gets the <em>MaximumFragmentLength</em> extension data from this message.
 	 * 
@@ -35,6 +35,13 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - add connection id as primary 
  *                                                    lookup key. redesign to make 
  *                                                    the connection modifiable
+ *    Bosch Software Innovations GmbH - add number of queued jobs
+ *    Bosch Software Innovations GmbH - add constructor to restore connection state
+ *    Bosch Software Innovations GmbH - add path MTU
+ *    Bosch Software Innovations GmbH - get session ticket of client session
+ *                                      cache on demand
+ *    Bosch Software Innovations GmbH - release connection states of replaced
+ *                                      sessions
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
@@ -79,8 +86,18 @@ public final class Connection {
 	private ConnectionId cid;
 	private SessionTicket ticket;
 	private SessionId sessionId;
+	/**
+	 * Client session cache to get the {@link #ticket} on demand. {@code null},
+	 * if the ticket is already available or not provided by a client session
+	 * cache.
+	 */
+	private ClientSessionCache clientSessionCache;
 
 	private volatile DTLSSession establishedSession;
+	/**
+	 * Path MTU. {@code null}, if path MTU discovery is not used.
+	 */
+	private volatile PathMtu pathMtu;
 	// Used to know when an abbreviated handshake should be initiated
 	private volatile boolean resumptionRequired; 
 
@@ -134,6 +151,67 @@ public final class Connection {
 		}
 	}
 
+	/**
+	 * Creates a new connection for a session of the client session cache.
+	 * 
+	 * The session ticket is only fetched from the cache on the first call of
+	 * {@link #getSessionTicket()}, which enables the cache to decode it on
+	 * demand. If the cache doesn't provide the ticket anymore, the connection
+	 * is treated as created without session ticket.
+	 * 
+	 * The connection is not {@link #isExecuting()}.
+	 * 
+	 * @param clientSessionCache client session cache of the session ticket
+	 * @param sessionId session id of the session ticket
+	 * @param peerAddress peer address of the session ticket
+	 * @throws NullPointerException if any of the parameters is {@code null}
+	 */
+	Connection(ClientSessionCache clientSessionCache, SessionId sessionId, InetSocketAddress peerAddress) {
+		if (clientSessionCache == null) {
+			throw new NullPointerException("client session cache must not be null");
+		} else if (sessionId == null) {
+			throw new NullPointerException("session identity must not be null");
+		} else if (peerAddress == null) {
+			throw new NullPointerException("Peer address must not be null");
+		} else {
+			this.clientSessionCache = clientSessionCache;
+			this.sessionId = sessionId;
+			this.resumptionRequired = true;
+			this.peerAddress = peerAddress;
+			this.cid = null;
+			this.serialExecutor = null;
+		}
+	}
+
+	/**
+	 * Creates a connection from a session restored with its <em>current</em>
+	 * connection state.
+	 * 
+	 * The connection is not {@link #isExecuting()}.
+	 * 
+	 * @param establishedSession restored session
+	 * @param cid connection id
+	 * @throws NullPointerException if the session or connection id is
+	 *             {@code null}
+	 * @see DTLSSession#decodeConnectionState(InetSocketAddress,
+	 *      org.eclipse.californium.elements.util.DatagramReader)
+	 */
+	Connection(DTLSSession establishedSession, ConnectionId cid) {
+		if (establishedSession == null) {
+			throw new NullPointerException("established session must not be null");
+		} else if (cid == null) {
+			throw new NullPointerException("connection id must not be null");
+		} else {
+			long now = ClockUtil.nanoRealtime();
+			this.establishedSession = establishedSession;
+			this.peerAddress = establishedSession.getPeer();
+			this.cid = cid;
+			this.serialExecutor = null;
+			this.lastPeerAddressNanos = now;
+			this.lastMessageNanos = now;
+		}
+	}
+
 	/**
 	 * Set new executor to restart execution for stopped connection.
 	 * 
@@ -190,7 +268,7 @@ public final class Connection {
 	 *         contains a session ticket that it can be resumed from.
 	 */
 	public boolean isActive() {
-		return establishedSession != null || ticket != null;
+		return establishedSession != null || ticket != null || clientSessionCache != null;
 	}
 
 	/**
@@ -205,9 +283,25 @@ public final class Connection {
 	/**
 	 * Gets the session ticket this connection can be resumed from.
 	 * 
+	 * For connections of the client session cache, the ticket is fetched from
+	 * that cache on the first call.
+	 * 
 	 * @return The ticket or {@code null} if this connection has not been created from a session ticket.
 	 */
 	public SessionTicket getSessionTicket() {
+		ClientSessionCache cache = clientSessionCache;
+		SessionId id = sessionId;
+		if (cache != null && id != null) {
+			SessionTicket ticket = cache.get(id);
+			this.ticket = ticket;
+			clientSessionCache = null;
+			if (ticket == null) {
+				LOGGER.debug("session ticket {} of {} not longer available!", id, peerAddress);
+				sessionId = null;
+				resumptionRequired = false;
+			}
+			return ticket;
+		}
 		return ticket;
 	}
 
@@ -448,15 +542,41 @@ public final class Connection {
 	 *             ticket is available
 	 */
 	public void resetSession() {
-		if (establishedSession == null && ticket == null) {
+		if (!isActive()) {
 			throw new IllegalStateException("No session established nor ticket available!");
 		}
+		DTLSSession session = establishedSession;
+		if (session != null) {
+			session.releaseConnectionStates();
+		}
 		establishedSession = null;
 		sessionId = null;
 		ticket = null;
+		clientSessionCache = null;
 		resumptionRequired = false;
 	}
 
+	/**
+	 * Get the path MTU.
+	 * 
+	 * @return path MTU, or {@code null}, if path MTU discovery is not used.
+	 */
+	public PathMtu getPathMtu() {
+		return pathMtu;
+	}
+
+	/**
+	 * Set the path MTU.
+	 * 
+	 * The confirmed MTU is applied to sessions, when they get established.
+	 * 
+	 * @param pathMtu path MTU, or {@code null}, if path MTU discovery is not
+	 *            used.
+	 */
+	public void setPathMtu(PathMtu pathMtu) {
+		this.pathMtu = pathMtu;
+	}
+
 	/**
 	 * Check, if resumption is required.
 	 * 
@@ -543,6 +663,10 @@ public final class Connection {
 		}
 		if (isExecuting()) {
 			builder.append(", is alive");
+			int queued = serialExecutor.getQueueSize();
+			if (queued > 0) {
+				builder.append(", ").append(queued).append(" queued jobs");
+			}
 		}
 		return builder.toString();
 	}
@@ -556,6 +680,14 @@ public final class Connection {
 
 		@Override
 		public void sessionEstablished(Handshaker handshaker, DTLSSession session) throws HandshakeException {
+			PathMtu mtu = pathMtu;
+			if (mtu != null) {
+				session.setMaxTransmissionUnit(mtu.getConfirmedMtu());
+			}
+			DTLSSession previous = establishedSession;
+			if (previous != null && previous != session) {
+				previous.releaseConnectionStates();
+			}
 			establishedSession = session;
 			LOGGER.debug("Session with [{}] has been established", session.getPeer());
 		}
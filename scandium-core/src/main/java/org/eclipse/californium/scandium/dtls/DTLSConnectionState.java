@@ -18,6 +18,7 @@
  *    Kai Hudalla (Bosch Software Innovations GmbH) - add toString()
  *    Kai Hudalla (Bosch Software Innovations GmbH) - improve JavaDocs, add method for retrieving
  *                                                    maximum ciphertext expansion of cipher suite
+ *    Bosch Software Innovations GmbH - release cached cipher contexts
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
@@ -25,6 +26,8 @@ import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
 
 import org.eclipse.californium.elements.util.StringUtil;
+import org.eclipse.californium.scandium.dtls.cipher.AeadBlockCipher;
+import org.eclipse.californium.scandium.dtls.cipher.CCMBlockCipher;
 import org.eclipse.californium.scandium.dtls.cipher.CipherSuite;
 
 /**
@@ -188,6 +191,19 @@ class DTLSConnectionState {
 		return cipherSuite.getMaxCiphertextExpansion();
 	}
 
+	/**
+	 * Releases the cipher contexts cached for the encryption key.
+	 * 
+	 * Called, when this state is no longer used by a connection.
+	 * 
+	 * @see CCMBlockCipher#release(SecretKey)
+	 */
+	void release() {
+		if (encryptionKey != null && AeadBlockCipher.AES_CCM.equals(cipherSuite.getTransformation())) {
+			CCMBlockCipher.release(encryptionKey);
+		}
+	}
+
 	@Override
 	public final String toString() {
 		StringBuilder b = new StringBuilder("DTLSConnectionState:");
@@ -28,6 +28,8 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - redesign using response started, 
  *                                                    response completed, and timeout
  *                                                    task
+ *    Bosch Software Innovations GmbH - use hashed wheel timer timeout
+ *    Bosch Software Innovations GmbH - adapt to path MTU
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
@@ -36,9 +38,9 @@ import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ScheduledFuture;
 
 import org.eclipse.californium.elements.MessageCallback;
+import org.eclipse.californium.elements.util.HashedWheelTimer;
 import org.eclipse.californium.scandium.config.DtlsConnectorConfig;
 
 /**
@@ -129,7 +131,14 @@ public class DTLSFlight {
 	 * The scheduled timeout task. Used to cancel the timeout task, if the
 	 * response could be received completely within the timeout and retries.
 	 */
-	private ScheduledFuture<?> timeoutTask;
+	private HashedWheelTimer.Timeout timeoutTask;
+
+	/**
+	 * Size of the largest datagram of the last transmission of this flight.
+	 * Includes the IP and UDP headers as
+	 * {@link DTLSSession#getMaxDatagramSize()}.
+	 */
+	private int largestDatagramSize;
 
 	/**
 	 * Creates an empty flight to be sent within a session with a peer.
@@ -212,6 +221,27 @@ public class DTLSFlight {
 		this.timeout *= 2;
 	}
 
+	/**
+	 * Get the size of the largest datagram of the last transmission.
+	 * 
+	 * @return size of the largest datagram, including the IP and UDP
+	 *         headers. {@code 0}, if not sent.
+	 * @see PathMtu
+	 */
+	public int getLargestDatagramSize() {
+		return largestDatagramSize;
+	}
+
+	/**
+	 * Set the size of the largest datagram of the last transmission.
+	 * 
+	 * @param largestDatagramSize size of the largest datagram, including the
+	 *            IP and UDP headers.
+	 */
+	public void setLargestDatagramSize(int largestDatagramSize) {
+		this.largestDatagramSize = largestDatagramSize;
+	}
+
 	public boolean isRetransmissionNeeded() {
 		return retransmissionNeeded;
 	}
@@ -244,9 +274,7 @@ public class DTLSFlight {
 	 */
 	private final void cancelTimeout() {
 		if (timeoutTask != null) {
-			if (!timeoutTask.isDone()) {
-				timeoutTask.cancel(true);
-			}
+			timeoutTask.cancel();
 			timeoutTask = null;
 		}
 	}
@@ -257,7 +285,7 @@ public class DTLSFlight {
 	 * Response flight is received completely.
 	 * 
 	 * Note: a already cancelled flight could not be restarted using
-	 * {@link #setTimeoutTask(ScheduledFuture)}.
+	 * {@link #setTimeoutTask(HashedWheelTimer.Timeout)}.
 	 */
 	public void setResponseCompleted() {
 		responseCompleted = true;
@@ -284,9 +312,9 @@ public class DTLSFlight {
 	 * 
 	 * @param timeoutTask new retransmit or timeout task.
 	 */
-	public void setTimeoutTask(final ScheduledFuture<?> timeoutTask) {
+	public void setTimeoutTask(final HashedWheelTimer.Timeout timeoutTask) {
 		if (responseCompleted) {
-			timeoutTask.cancel(true);
+			timeoutTask.cancel();
 		} else {
 			cancelTimeout();
 			this.timeoutTask = timeoutTask;
@@ -313,4 +341,65 @@ public class DTLSFlight {
 		}
 	}
 
+	/**
+	 * Adapt this flight to a smaller path MTU.
+	 * 
+	 * Reduces the MTU of the session and splits the handshake records of
+	 * epoch 0, which don't fit into that MTU. Handshake records of later
+	 * epochs contain only the small FINISHED message and are kept.
+	 * {@link #setNewSequenceNumbers()} must be called before the flight is
+	 * sent again.
+	 * 
+	 * A CLIENT_HELLO is never split, because servers don't support fragmented
+	 * CLIENT_HELLOs. Only the padding of a CLIENT_HELLO without cookie and
+	 * session id is reduced, because the server answers such a CLIENT_HELLO
+	 * statelessly. Any other CLIENT_HELLO may be already processed by the
+	 * server and is part of the handshake hash, therefore such a flight is
+	 * kept unchanged.
+	 * 
+	 * @param mtu the path MTU, including the IP and UDP headers.
+	 * @throws GeneralSecurityException if a split record could not be
+	 *             encrypted
+	 * @throws IllegalArgumentException if the mtu is less than
+	 *             {@link DTLSSession#HEADER_LENGTH} + 1.
+	 */
+	public void setMaxTransmissionUnit(int mtu) throws GeneralSecurityException {
+		int maxFragmentLength = mtu - DTLSSession.HEADER_LENGTH;
+		if (maxFragmentLength < 1) {
+			throw new IllegalArgumentException("MTU " + mtu + " too small!");
+		}
+		for (int index = 0; index < messages.size(); ++index) {
+			Record record = messages.get(index);
+			if (record.getEpoch() == 0) {
+				DTLSMessage fragment = record.getFragment();
+				if (fragment instanceof ClientHello) {
+					ClientHello clientHello = (ClientHello) fragment;
+					if (clientHello.getPaddingExtension() == null || clientHello.getCookie().length > 0
+							|| clientHello.hasSessionId()) {
+						return;
+					}
+					session.setMaxTransmissionUnit(mtu);
+					if (clientHello.padTo(maxFragmentLength)) {
+						record = new Record(ContentType.HANDSHAKE, 0, record.getSequenceNumber(), clientHello,
+								session, false, 0);
+						messages.set(index, record);
+					}
+					return;
+				}
+			}
+		}
+		session.setMaxTransmissionUnit(mtu);
+		for (int index = 0; index < messages.size(); ++index) {
+			Record record = messages.get(index);
+			if (record.getEpoch() == 0) {
+				List<Record> records = record.split(maxFragmentLength);
+				if (records != null) {
+					messages.remove(index);
+					messages.addAll(index, records);
+					index += records.size() - 1;
+				}
+			}
+		}
+	}
+
 }
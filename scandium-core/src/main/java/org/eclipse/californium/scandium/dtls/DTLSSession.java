@@ -43,6 +43,10 @@
  *                                                    session and endpoint context.
  *    Achim Kraus (Bosch Software Innovations GmbH) - replace raw public key flags by
  *                                                    certificate types
+ *    Bosch Software Innovations GmbH - encode and decode current connection state
+ *    Bosch Software Innovations GmbH - update receive window atomically
+ *    Bosch Software Innovations GmbH - check newest record
+ *    Bosch Software Innovations GmbH - release connection states
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
@@ -52,7 +56,14 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
 import org.eclipse.californium.elements.DtlsEndpointContext;
+import org.eclipse.californium.elements.util.DatagramReader;
+import org.eclipse.californium.elements.util.DatagramWriter;
+import org.eclipse.californium.elements.util.StandardCharsets;
 import org.eclipse.californium.elements.util.StringUtil;
 import org.eclipse.californium.scandium.dtls.cipher.CipherSuite;
 import org.eclipse.californium.scandium.dtls.cipher.CipherSuite.KeyExchangeAlgorithm;
@@ -673,6 +684,17 @@ public final class DTLSSession {
 		LOGGER.trace("Setting current write state to{}{}", StringUtil.lineSeparator(), writeState);
 	}
 
+	/**
+	 * Releases the current read and write state.
+	 * 
+	 * Drops the cipher contexts cached for their keys. Called, when the
+	 * session is no longer used by a connection.
+	 */
+	void releaseConnectionStates() {
+		readState.release();
+		writeState.release();
+	}
+
 	/**
 	 * Gets the name of the current write state's cipher suite.
 	 * 
@@ -908,7 +930,7 @@ public final class DTLSSession {
 	 *            returned.
 	 * @return {@code true} if the record satisfies the conditions above
 	 */
-	public boolean isRecordProcessable(long epoch, long sequenceNo, boolean useWindowOnly) {
+	public synchronized boolean isRecordProcessable(long epoch, long sequenceNo, boolean useWindowOnly) {
 		if (epoch < getReadEpoch()) {
 			// record is from a previous epoch
 			// discard record as proposed in DTLS 1.2
@@ -939,7 +961,7 @@ public final class DTLSSession {
 	 * @param sequenceNo the record's sequence number
 	 * @return <code>true</code> if the record has already been received
 	 */
-	boolean isDuplicate(long sequenceNo) {
+	synchronized boolean isDuplicate(long sequenceNo) {
 		if (sequenceNo > receiveWindowUpperCurrent) {
 			return false;
 		} else {
@@ -971,7 +993,7 @@ public final class DTLSSession {
 	 * @return {@code true}, if the epoch/sequenceNo is newer than the current
 	 *         newest. {@code false}, if not.
 	 */
-	public boolean markRecordAsRead(long epoch, long sequenceNo) {
+	public synchronized boolean markRecordAsRead(long epoch, long sequenceNo) {
 		if (epoch == getReadEpoch()) {
 			boolean newest = sequenceNo > receiveWindowUpperCurrent;
 			if (newest) {
@@ -995,13 +1017,55 @@ public final class DTLSSession {
 		}
 	}
 
+	/**
+	 * Marks a record as having been received, if it is processable.
+	 * 
+	 * Checks and updates the receive window atomically, so records, which are
+	 * processed concurrently, are marked only once.
+	 * 
+	 * @param epoch the record's epoch
+	 * @param sequenceNo the record's sequence number
+	 * @param useWindowOnly {@code true} use only message window for filter.
+	 *            For message too old for the message window {@code true} is
+	 *            returned.
+	 * @return {@code true}, if the record was processable and is marked as
+	 *         read, {@code false}, if the record is discarded.
+	 * @see #isRecordProcessable(long, long, boolean)
+	 * @see #markRecordAsRead(long, long)
+	 */
+	public synchronized boolean markRecordAsReadIfProcessable(long epoch, long sequenceNo, boolean useWindowOnly) {
+		if (!isRecordProcessable(epoch, sequenceNo, useWindowOnly)) {
+			return false;
+		}
+		if (sequenceNo >= receiveWindowLowerBoundary) {
+			// records too old for the window are not marked
+			markRecordAsRead(epoch, sequenceNo);
+		}
+		return true;
+	}
+
+	/**
+	 * Checks, if a record is the newest record received in the current read
+	 * epoch.
+	 * 
+	 * @param epoch the record's epoch
+	 * @param sequenceNo the record's sequence number
+	 * @return {@code true}, if no record with a higher sequence number of the
+	 *         current read epoch has been marked as read, {@code false},
+	 *         otherwise.
+	 * @see #markRecordAsReadIfProcessable(long, long, boolean)
+	 */
+	public synchronized boolean isNewestRecord(long epoch, long sequenceNo) {
+		return epoch == getReadEpoch() && sequenceNo >= receiveWindowUpperCurrent;
+	}
+
 	/**
 	 * Re-initializes the receive window to detect duplicates for a new epoch.
 	 * 
 	 * The receive window is reset to sequence number zero and all
 	 * information about received records is cleared.
 	 */
-	private void resetReceiveWindow() {
+	private synchronized void resetReceiveWindow() {
 		receivedRecordsVector = 0;
 		receiveWindowUpperCurrent = -1;
 		receiveWindowLowerBoundary = 0;
@@ -1027,4 +1091,140 @@ public final class DTLSSession {
 			throw new IllegalStateException("session has no valid crypto params, not fully negotiated yet?");
 		}
 	}
+
+	/**
+	 * Encodes the <em>current</em> connection state of this session.
+	 * 
+	 * In difference to the {@link #getSessionTicket()}, the connection state
+	 * contains also the keys of the current read and write state, the epochs,
+	 * the next write sequence number and the receive window. A session decoded
+	 * by {@link #decodeConnectionState(InetSocketAddress, DatagramReader)}
+	 * therefore continues to exchange records without handshake. The encoded
+	 * state contains the secrets and so it must be protected.
+	 * 
+	 * Note: write sequence numbers used after encoding the state will be
+	 * reused by the decoded session. Therefore encode the state only, if the
+	 * session isn't used anymore.
+	 * 
+	 * @param writer writer to encode the state
+	 * @throws IllegalStateException if this session does not have its current
+	 *             connection state set yet.
+	 */
+	void encodeConnectionState(DatagramWriter writer) {
+		DatagramWriter ticket = new DatagramWriter();
+		getSessionTicket().encode(ticket);
+		writeBytes(writer, sessionIdentifier.getBytes(), Byte.SIZE);
+		writeBytes(writer, ticket.toByteArray(), Short.SIZE);
+		writer.writeLong(creationTime, Long.SIZE);
+		writeBytes(writer, writeConnectionId == null ? null : writeConnectionId.getBytes(), Short.SIZE);
+		writer.write(sendCertificateType.getCode(), Byte.SIZE);
+		writer.write(receiveCertificateType.getCode(), Byte.SIZE);
+		writer.write(parameterAvailable ? 1 : 0, Byte.SIZE);
+		writer.write(peerSupportsSni ? 1 : 0, Byte.SIZE);
+		writeBytes(writer, virtualHost == null ? null : virtualHost.getBytes(StandardCharsets.UTF_8), Short.SIZE);
+		writer.write(maxTransmissionUnit, Short.SIZE);
+		writer.write(maxFragmentLength, Short.SIZE);
+		writer.write(readEpoch, Short.SIZE);
+		writeKeys(writer, readState);
+		writer.writeLong(receiveWindowUpperCurrent, Long.SIZE);
+		writer.writeLong(receiveWindowLowerBoundary, Long.SIZE);
+		writer.writeLong(receivedRecordsVector, Long.SIZE);
+		writer.write(writeEpoch, Short.SIZE);
+		writeKeys(writer, writeState);
+		writer.writeLong(sequenceNumbers.get(writeEpoch), 48);
+	}
+
+	/**
+	 * Decodes a session from the <em>current</em> connection state encoded by
+	 * {@link #encodeConnectionState(DatagramWriter)}.
+	 * 
+	 * @param peer address of the peer
+	 * @param reader reader with the encoded state
+	 * @return decoded session, or {@code null}, if the state could not be
+	 *         decoded.
+	 */
+	static DTLSSession decodeConnectionState(InetSocketAddress peer, DatagramReader reader) {
+		SessionId id = new SessionId(readBytes(reader, Byte.SIZE));
+		byte[] encodedTicket = readBytes(reader, Short.SIZE);
+		SessionTicket ticket = SessionTicket.decode(new DatagramReader(encodedTicket, false));
+		if (ticket == null) {
+			return null;
+		}
+		DTLSSession session = new DTLSSession(id, peer, ticket, 0);
+		session.creationTime = reader.readLong(Long.SIZE);
+		byte[] cid = readBytes(reader, Short.SIZE);
+		if (cid != null) {
+			session.writeConnectionId = new ConnectionId(cid);
+		}
+		session.sendCertificateType = CertificateType.getTypeFromCode(reader.read(Byte.SIZE));
+		session.receiveCertificateType = CertificateType.getTypeFromCode(reader.read(Byte.SIZE));
+		session.parameterAvailable = reader.read(Byte.SIZE) == 1;
+		session.peerSupportsSni = reader.read(Byte.SIZE) == 1;
+		byte[] virtualHost = readBytes(reader, Short.SIZE);
+		if (virtualHost != null) {
+			session.virtualHost = new String(virtualHost, StandardCharsets.UTF_8);
+		}
+		session.maxTransmissionUnit = reader.read(Short.SIZE);
+		session.maxFragmentLength = reader.read(Short.SIZE);
+		session.readEpoch = reader.read(Short.SIZE);
+		session.readState = readKeys(reader, ticket);
+		session.receiveWindowUpperCurrent = reader.readLong(Long.SIZE);
+		session.receiveWindowLowerBoundary = reader.readLong(Long.SIZE);
+		session.receivedRecordsVector = reader.readLong(Long.SIZE);
+		session.writeEpoch = reader.read(Short.SIZE);
+		session.writeState = readKeys(reader, ticket);
+		session.sequenceNumbers.put(session.writeEpoch, reader.readLong(48));
+		return session;
+	}
+
+	private static void writeKeys(DatagramWriter writer, DTLSConnectionState state) {
+		SecretKey encryptionKey = state.getEncryptionKey();
+		IvParameterSpec iv = state.getIv();
+		SecretKey macKey = state.getMacKey();
+		writeBytes(writer, encryptionKey == null ? null : encryptionKey.getEncoded(), Byte.SIZE);
+		writeBytes(writer, iv == null ? null : iv.getIV(), Byte.SIZE);
+		writeBytes(writer, macKey == null ? null : macKey.getEncoded(), Byte.SIZE);
+	}
+
+	private static DTLSConnectionState readKeys(DatagramReader reader, SessionTicket ticket) {
+		byte[] encryptionKey = readBytes(reader, Byte.SIZE);
+		byte[] iv = readBytes(reader, Byte.SIZE);
+		byte[] macKey = readBytes(reader, Byte.SIZE);
+		return new DTLSConnectionState(ticket.getCipherSuite(), ticket.getCompressionMethod(),
+				encryptionKey == null ? null : new SecretKeySpec(encryptionKey, "AES"),
+				iv == null ? null : new IvParameterSpec(iv),
+				macKey == null ? null : new SecretKeySpec(macKey, "Mac"));
+	}
+
+	/**
+	 * Write bytes with leading length. {@code null} is encoded with a length
+	 * of {@code 0}, all other lengths are incremented by {@code 1}.
+	 * 
+	 * @param writer writer to write the bytes
+	 * @param bytes bytes to write. May be {@code null}.
+	 * @param numBits number of bits for the length
+	 */
+	private static void writeBytes(DatagramWriter writer, byte[] bytes, int numBits) {
+		if (bytes == null) {
+			writer.write(0, numBits);
+		} else {
+			writer.write(bytes.length + 1, numBits);
+			writer.writeBytes(bytes);
+		}
+	}
+
+	/**
+	 * Read bytes written by {@link #writeBytes(DatagramWriter, byte[], int)}.
+	 * 
+	 * @param reader reader to read the bytes
+	 * @param numBits number of bits for the length
+	 * @return bytes, or {@code null}, if {@code null} was written
+	 */
+	private static byte[] readBytes(DatagramReader reader, int numBits) {
+		int length = reader.read(numBits);
+		if (length == 0) {
+			return null;
+		}
+		return reader.readBytes(length - 1);
+	}
 }
@@ -12,12 +12,15 @@
  * 
  * Contributors:
  *    Achim Kraus (Bosch Software Innovations GmbH) - Initial creation
+ *    Bosch Software Innovations GmbH - dump number of queued jobs
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
 import java.net.InetSocketAddress;
 import java.util.concurrent.ConcurrentMap;
 
+import org.eclipse.californium.elements.util.SerialExecutor;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -79,11 +82,14 @@ public final class DebugConnectionStore extends InMemoryConnectionStore {
 	 * Dump connection to logger. Intended to be used for unit tests.
 	 */
 	private void dump(Connection connection) {
+		SerialExecutor executor = connection.getExecutor();
+		int queued = executor == null ? 0 : executor.getQueueSize();
 		if (connection.hasEstablishedSession()) {
-			LOG.info("  {}connection: {} - {} : {}", tag, connection.getConnectionId(),
-					connection.getPeerAddress(), connection.getEstablishedSession().getSessionIdentifier());
+			LOG.info("  {}connection: {} - {} : {}, {} queued jobs", tag, connection.getConnectionId(),
+					connection.getPeerAddress(), connection.getEstablishedSession().getSessionIdentifier(), queued);
 		} else {
-			LOG.info("  {}connection: {} - {}", tag, connection.getConnectionId(), connection.getPeerAddress());
+			LOG.info("  {}connection: {} - {}, {} queued jobs", tag, connection.getConnectionId(),
+					connection.getPeerAddress(), queued);
 		}
 	}
 
@@ -14,14 +14,12 @@
  *    Matthias Kovatsch - creator and main architect
  *    Stefan Jucker - DTLS implementation
  *    Kai Hudalla (Bosch Software Innovations GmbH) - add accessor for peer address
+ *    Bosch Software Innovations GmbH - support x25519 and x448 public keys.
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
 import java.net.InetSocketAddress;
 import java.security.PublicKey;
-import java.security.interfaces.ECPublicKey;
-import java.security.spec.ECParameterSpec;
-import java.security.spec.ECPoint;
 import java.util.Arrays;
 
 import org.eclipse.californium.elements.util.DatagramReader;
@@ -59,11 +57,7 @@ public final class ECDHClientKeyExchange extends ClientKeyExchange {
 	 */
 	public ECDHClientKeyExchange(PublicKey clientPublicKey, InetSocketAddress peerAddress) {
 		super(peerAddress);
-		ECPublicKey publicKey = (ECPublicKey) clientPublicKey;
-		ECPoint point = publicKey.getW();
-		ECParameterSpec params = publicKey.getParams();
-		
-		pointEncoded = ECDHECryptography.encodePoint(point, params.getCurve());
+		pointEncoded = ECDHECryptography.encodePublicKey(clientPublicKey);
 	}
 
 	/**
@@ -16,6 +16,8 @@
  *    Kai Hudalla (Bosch Software Innovations GmbH) - add accessor for peer address
  *    Kai Hudalla (Bosch Software Innovations GmbH) - move EC curve params to SupportedGroup enum
  *    Bosch Software Innovations GmbH - migrate to SLF4J
+ *    Bosch Software Innovations GmbH - support x25519 and x448 public keys.
+ *    Bosch Software Innovations GmbH - keep ECPublicKey accessor.
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
@@ -23,13 +25,11 @@ import java.net.InetSocketAddress;
 import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
 import java.security.Signature;
 import java.security.SignatureException;
-import java.security.interfaces.ECPublicKey;
-import java.security.spec.ECParameterSpec;
 import java.util.Arrays;
 
-import org.eclipse.californium.elements.util.Asn1DerDecoder;
 import org.eclipse.californium.elements.util.DatagramReader;
 import org.eclipse.californium.elements.util.DatagramWriter;
 import org.eclipse.californium.elements.util.StringUtil;
@@ -75,7 +75,7 @@ public final class ECDHServerKeyExchange extends ServerKeyExchange {
 	// Members ////////////////////////////////////////////////////////
 
 	/** ephemeral keys */
-	private ECPublicKey publicKey = null;
+	private PublicKey publicKey = null;
 
 	private byte[] pointEncoded = null;
 
@@ -118,10 +118,8 @@ public final class ECDHServerKeyExchange extends ServerKeyExchange {
 
 		this(signatureAndHashAlgorithm, namedCurveId, peerAddress);
 		
-		publicKey = ecdhe.getPublicKey();
-		ECParameterSpec parameters = publicKey.getParams();
-
-		pointEncoded = ECDHECryptography.encodePoint(publicKey.getW(), parameters.getCurve());
+		publicKey = ecdhe.getEphemeralPublicKey();
+		pointEncoded = ECDHECryptography.encodePublicKey(publicKey);
 
 		// make signature
 		// See http://tools.ietf.org/html/rfc4492#section-2.2
@@ -164,9 +162,7 @@ public final class ECDHServerKeyExchange extends ServerKeyExchange {
 				new AlertMessage(AlertLevel.FATAL, AlertDescription.HANDSHAKE_FAILURE, peerAddress));
 		} else {
 			try {
-				ECParameterSpec params = group.getEcParams();
-				DatagramReader reader = new DatagramReader(pointEncoded, false);
-				publicKey = Asn1DerDecoder.readEcPublicKey(reader, params);
+				publicKey = ECDHECryptography.decodePublicKey(group, pointEncoded);
 			} catch (GeneralSecurityException e) {
 				LOGGER.debug("Cannot re-create server's public key from params", e);
 				throw new HandshakeException(
@@ -366,7 +362,25 @@ public final class ECDHServerKeyExchange extends ServerKeyExchange {
 		signature.update(pointEncoded);
 	}
 
+	/**
+	 * Gets the ephemeral EC public key of the server.
+	 * 
+	 * @return the EC public key, or {@code null}, for x25519 and x448, which
+	 *         have no EC public key.
+	 * @deprecated use {@link #getEphemeralPublicKey()}, which supports all
+	 *             groups.
+	 */
+	@Deprecated
 	public ECPublicKey getPublicKey() {
+		return publicKey instanceof ECPublicKey ? (ECPublicKey) publicKey : null;
+	}
+
+	/**
+	 * Gets the ephemeral public key of the server.
+	 * 
+	 * @return the EC public key, or the XDH public key for x25519 and x448.
+	 */
+	public PublicKey getEphemeralPublicKey() {
 		return publicKey;
 	}
 
@@ -379,7 +393,7 @@ public final class ECDHServerKeyExchange extends ServerKeyExchange {
 		StringBuilder sb = new StringBuilder();
 		sb.append(super.toString());
 		sb.append("\t\tDiffie-Hellman public key: ");
-		sb.append(getPublicKey().toString());
+		sb.append(publicKey.toString());
 		// bug in ECPublicKey.toString() gives object pointer
 		sb.append(StringUtil.lineSeparator());
 
@@ -12,14 +12,12 @@
  * 
  * Contributors:
  *    Vikram (University of Rostock)- Initial creation, adapted from ECDHClientKeyExchange
+ *    Bosch Software Innovations GmbH - support x25519 and x448 public keys.
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
 import java.net.InetSocketAddress;
 import java.security.PublicKey;
-import java.security.interfaces.ECPublicKey;
-import java.security.spec.ECParameterSpec;
-import java.security.spec.ECPoint;
 import java.util.Arrays;
 
 import org.eclipse.californium.elements.util.DatagramReader;
@@ -61,11 +59,7 @@ public final class EcdhPskClientKeyExchange extends ClientKeyExchange {
 			throw new NullPointerException("ephemeral public key cannot be null");
 		}
 		this.identity = identity;
-		ECPublicKey publicKey = (ECPublicKey) clientPublicKey;
-		ECPoint point = publicKey.getW();
-		ECParameterSpec params = publicKey.getParams();
-			
-		this.pointEncoded = ECDHECryptography.encodePoint(point, params.getCurve());
+		this.pointEncoded = ECDHECryptography.encodePublicKey(clientPublicKey);
 	}
 	
 	/**
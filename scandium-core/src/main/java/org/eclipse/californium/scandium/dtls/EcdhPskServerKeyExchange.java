@@ -12,16 +12,17 @@
  * 
  * Contributors:
  *    Vikram (University of Rostock)- Initial creation, adapted from ECDHServerKeyExchange
+ *    Bosch Software Innovations GmbH - support x25519 and x448 public keys.
+ *    Bosch Software Innovations GmbH - keep ECPublicKey accessor.
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
 import java.net.InetSocketAddress;
 import java.security.GeneralSecurityException;
+import java.security.PublicKey;
 import java.security.interfaces.ECPublicKey;
-import java.security.spec.ECParameterSpec;
 import java.util.Arrays;
 
-import org.eclipse.californium.elements.util.Asn1DerDecoder;
 import org.eclipse.californium.elements.util.DatagramReader;
 import org.eclipse.californium.elements.util.DatagramWriter;
 import org.eclipse.californium.elements.util.StringUtil;
@@ -68,7 +69,7 @@ public final class EcdhPskServerKeyExchange extends ServerKeyExchange {
 	private static final int NAMED_CURVE = 3;
 
 	/** ephemeral public key */
-	private ECPublicKey publicKey = null;
+	private PublicKey publicKey = null;
 
 	private byte[] pointEncoded = null;
 
@@ -101,9 +102,8 @@ public final class EcdhPskServerKeyExchange extends ServerKeyExchange {
 		}
 		this.hint = pskHint;
 		this.curveId = namedCurveId;
-		publicKey = ecdhe.getPublicKey();
-		ECParameterSpec parameters = publicKey.getParams();
-		pointEncoded = ECDHECryptography.encodePoint(publicKey.getW(), parameters.getCurve());
+		publicKey = ecdhe.getEphemeralPublicKey();
+		pointEncoded = ECDHECryptography.encodePublicKey(publicKey);
 	}
 
 	private EcdhPskServerKeyExchange(byte[] hintEncoded, int curveId, byte[] pointEncoded, InetSocketAddress peerAddress) throws HandshakeException {		
@@ -122,9 +122,7 @@ public final class EcdhPskServerKeyExchange extends ServerKeyExchange {
 				new AlertMessage(AlertLevel.FATAL, AlertDescription.HANDSHAKE_FAILURE, peerAddress));
 		} else {
 			try {
-				ECParameterSpec params = group.getEcParams();
-				DatagramReader reader = new DatagramReader(pointEncoded, false);
-				publicKey = Asn1DerDecoder.readEcPublicKey(reader, params);
+				publicKey = ECDHECryptography.decodePublicKey(group, pointEncoded);
 			} catch (GeneralSecurityException e) {
 				LOGGER.debug("Cannot re-create server's public key from params", e);
 				throw new HandshakeException(
@@ -214,9 +212,22 @@ public final class EcdhPskServerKeyExchange extends ServerKeyExchange {
 	/**
 	 * This method returns the ephemeral (EC) Public key from {@code EcdhPskServerKeyExchange}.
 	 * 
-	 * @return - EC Public key 
+	 * @return - EC Public key, or {@code null}, for x25519 and x448, which
+	 *         have no EC public key.
+	 * @deprecated use {@link #getEphemeralPublicKey()}, which supports all
+	 *             groups.
 	 */
+	@Deprecated
 	public ECPublicKey getPublicKey() {
+		return publicKey instanceof ECPublicKey ? (ECPublicKey) publicKey : null;
+	}
+
+	/**
+	 * This method returns the ephemeral public key from {@code EcdhPskServerKeyExchange}.
+	 * 
+	 * @return - EC Public key, or XDH public key for x25519 and x448.
+	 */
+	public PublicKey getEphemeralPublicKey() {
 		return publicKey;
 	}
 	
@@ -249,7 +260,7 @@ public final class EcdhPskServerKeyExchange extends ServerKeyExchange {
 			sb.append("\t\tPSK Identity Hint: ").append(hint);
 		}
 		sb.append("\t\tEC Diffie-Hellman public key: ");
-		sb.append(getPublicKey().toString());
+		sb.append(publicKey.toString());
 		// bug in ECPublicKey.toString() gives object pointer
 		sb.append(StringUtil.lineSeparator());
 
@@ -0,0 +1,618 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *    Bosch Software Innovations GmbH - keep the old file until the compacted
+ *                                      file replaced it, discard malformed
+ *                                      entries, write flushes in order
+ ******************************************************************************/
+package org.eclipse.californium.scandium.dtls;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.eclipse.californium.elements.util.DaemonThreadFactory;
+import org.eclipse.californium.elements.util.DatagramReader;
+import org.eclipse.californium.elements.util.DatagramWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A client session cache, which keeps the {@link SessionTicket}s and the
+ * addresses of the peers in a local file.
+ *
+ * Enables a client to resume the sessions with its peers after a restart
+ * instead of executing full handshakes.
+ *
+ * The file is loaded lazily on the first access of the cache. The session
+ * tickets are kept encrypted in memory and are only decrypted and decoded on
+ * the first access of the session of a peer. Entries, which could not be
+ * decrypted with the provided key, are then removed.
+ *
+ * Changes are written asynchronously. All changes within the flush interval
+ * are written as one batch. Multiple changes of the same peer within that
+ * interval are reduced to the last one. As {@link FileSessionCache}, the file
+ * is an append-only log of put and remove entries, which is compacted, when
+ * the number of entries exceeds twice the number of cached sessions, and
+ * replaces the file in the same way. A malformed entry discards that entry
+ * and all following ones. The session tickets are encrypted with AES-CCM, using the address of the peer
+ * and the session id as additional authenticated data.
+ *
+ * {@link #close()} must be called to write the pending changes.
+ */
+public class FileClientSessionCache implements ClientSessionCache, Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(FileClientSessionCache.class.getName());
+
+	/**
+	 * Default flush interval in milliseconds.
+	 */
+	public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+	/**
+	 * Type of entry to add a session ticket.
+	 */
+	private static final int TYPE_PUT = 1;
+	/**
+	 * Type of entry to remove a session ticket.
+	 */
+	private static final int TYPE_REMOVE = 2;
+	/**
+	 * Maximum length of an entry.
+	 */
+	private static final int MAX_ENTRY_LENGTH = 0xffff;
+	/**
+	 * Minimum number of appended entries before the file is compacted.
+	 */
+	private static final int MIN_COMPACTION_THRESHOLD = 1024;
+
+	private final File file;
+	private final SecretKey key;
+	private final long flushIntervalMillis;
+	/**
+	 * Executor to write the changes.
+	 */
+	private final ScheduledExecutorService executor;
+	/**
+	 * Session by peer.
+	 */
+	private final ConcurrentMap<InetSocketAddress, ClientSession> connectionTickets = new ConcurrentHashMap<>();
+	/**
+	 * Session by id.
+	 */
+	private final Map<SessionId, ClientSession> sessionTickets = new ConcurrentHashMap<>();
+	/**
+	 * Pending changes by peer. Removes are represented by a client session
+	 * without session id. Guarded by {@code this}.
+	 * 
+	 * Note: to write the changes in the order of their flushes, the changes
+	 * are taken while holding the {@link #fileLock}. Therefore the lock of
+	 * {@code this} must not be held, when acquiring the {@link #fileLock}.
+	 */
+	private final Map<InetSocketAddress, ClientSession> pendingChanges = new LinkedHashMap<>();
+	/**
+	 * Lock for the file related fields.
+	 */
+	private final Object fileLock = new Object();
+	/**
+	 * Indicates, that the file is loaded.
+	 */
+	private volatile boolean loaded;
+	/**
+	 * Indicates, that a flush of the pending changes is scheduled. Guarded by
+	 * {@code this}.
+	 */
+	private boolean flushScheduled;
+	/**
+	 * Indicates, that the cache is closed. Guarded by {@code this}.
+	 */
+	private boolean closed;
+	/**
+	 * Indicates, that the changes are written to the file. Disabled on i/o
+	 * errors. Guarded by {@link #fileLock}.
+	 */
+	private boolean persistent = true;
+	/**
+	 * Number of entries in the file. Guarded by {@link #fileLock}.
+	 */
+	private int entries;
+	/**
+	 * Output stream to append entries. Guarded by {@link #fileLock}.
+	 */
+	private DataOutputStream out;
+
+	private final Runnable flush = new Runnable() {
+
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+	/**
+	 * Create client session cache with {@link #DEFAULT_FLUSH_INTERVAL_MILLIS}.
+	 *
+	 * @param file file to store the sessions. Created, if not available.
+	 * @param key AES key to encrypt the session tickets.
+	 * @throws NullPointerException if file or key is {@code null}
+	 */
+	public FileClientSessionCache(File file, SecretKey key) {
+		this(file, key, DEFAULT_FLUSH_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Create client session cache.
+	 *
+	 * @param file file to store the sessions. Created, if not available.
+	 * @param key AES key to encrypt the session tickets.
+	 * @param flushIntervalMillis interval in milliseconds to collect changes,
+	 *            before they are written as batch.
+	 * @throws NullPointerException if file or key is {@code null}
+	 * @throws IllegalArgumentException if flush interval is negative
+	 */
+	public FileClientSessionCache(File file, SecretKey key, long flushIntervalMillis) {
+		if (file == null) {
+			throw new NullPointerException("file must not be null!");
+		}
+		if (key == null) {
+			throw new NullPointerException("key must not be null!");
+		}
+		if (flushIntervalMillis < 0) {
+			throw new IllegalArgumentException("flush interval " + flushIntervalMillis + " must not be negative!");
+		}
+		this.file = file;
+		this.key = key;
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("ClientSessionCache#"));
+	}
+
+	@Override
+	public String toString() {
+		return sessionTickets.size() + " sessions";
+	}
+
+	@Override
+	public Iterator<InetSocketAddress> iterator() {
+		ensureLoaded();
+		return connectionTickets.keySet().iterator();
+	}
+
+	@Override
+	public SessionTicket getSessionTicket(InetSocketAddress peer) {
+		ensureLoaded();
+		return getTicket(connectionTickets.get(peer));
+	}
+
+	@Override
+	public SessionId getSessionIdentity(InetSocketAddress peer) {
+		ensureLoaded();
+		ClientSession clientSession = connectionTickets.get(peer);
+		return clientSession == null ? null : clientSession.id;
+	}
+
+	@Override
+	public void put(DTLSSession session) {
+		if (session == null) {
+			return;
+		}
+		final InetSocketAddress peer = session.getPeer();
+		final SessionId id = session.getSessionIdentifier();
+		if (peer == null || peer.isUnresolved() || id == null || id.isEmpty()) {
+			return;
+		}
+		final SessionTicket ticket = session.getSessionTicket();
+		DatagramWriter writer = new DatagramWriter();
+		ticket.encode(writer);
+		byte[] sealed;
+		try {
+			sealed = FileSessionCache.seal(key, additionalData(peer, id), writer.toByteArray());
+		} catch (GeneralSecurityException e) {
+			LOGGER.warn("failed to encrypt session ticket {} of {}!", id, peer, e);
+			return;
+		}
+		ClientSession clientSession = new ClientSession(peer, id, sealed, ticket);
+		if (entryLength(clientSession) > MAX_ENTRY_LENGTH) {
+			LOGGER.warn("session ticket {} of {} with {} bytes is too large!", id, peer, sealed.length);
+			return;
+		}
+		ensureLoaded();
+		synchronized (this) {
+			ClientSession previous = connectionTickets.put(peer, clientSession);
+			if (previous != null) {
+				sessionTickets.remove(previous.id);
+			}
+			sessionTickets.put(id, clientSession);
+			addChange(clientSession);
+		}
+	}
+
+	@Override
+	public SessionTicket get(SessionId id) {
+		ensureLoaded();
+		return getTicket(sessionTickets.get(id));
+	}
+
+	@Override
+	public void remove(SessionId id) {
+		ensureLoaded();
+		synchronized (this) {
+			ClientSession clientSession = sessionTickets.remove(id);
+			if (clientSession != null && connectionTickets.remove(clientSession.peer, clientSession)) {
+				addChange(new ClientSession(clientSession.peer, null, null, null));
+			}
+		}
+	}
+
+	/**
+	 * Write pending changes to the file.
+	 */
+	public void flush() {
+		synchronized (fileLock) {
+			List<ClientSession> changes;
+			synchronized (this) {
+				flushScheduled = false;
+				if (pendingChanges.isEmpty()) {
+					return;
+				}
+				changes = new ArrayList<>(pendingChanges.values());
+				pendingChanges.clear();
+			}
+			if (!persistent) {
+				return;
+			}
+			try {
+				if (out == null || entries >= Math.max(MIN_COMPACTION_THRESHOLD, connectionTickets.size() * 2)) {
+					// the compaction already contains the changes
+					compact();
+					return;
+				}
+				for (ClientSession change : changes) {
+					write(out, change);
+				}
+				out.flush();
+				entries += changes.size();
+				LOGGER.debug("wrote {} changes to {}", changes.size(), file);
+			} catch (IOException e) {
+				LOGGER.warn("failed to write {}, continue in memory!", file, e);
+				persistent = false;
+				closeFile();
+			}
+		}
+	}
+
+	/**
+	 * Write pending changes and close the file.
+	 *
+	 * Further changes are only applied in memory.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		executor.shutdownNow();
+		try {
+			executor.awaitTermination(flushIntervalMillis + 1000, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (loaded) {
+			flush();
+		}
+		synchronized (fileLock) {
+			persistent = false;
+			closeFile();
+		}
+	}
+
+	/**
+	 * Get the ticket of the client session.
+	 *
+	 * Decrypts and decodes the ticket on the first access. If that fails, the
+	 * client session is removed.
+	 *
+	 * @param clientSession client session. May be {@code null}.
+	 * @return session ticket, or {@code null}, if not available.
+	 */
+	private SessionTicket getTicket(ClientSession clientSession) {
+		if (clientSession == null) {
+			return null;
+		}
+		SessionTicket ticket = clientSession.ticket;
+		if (ticket == null) {
+			try {
+				byte[] data = FileSessionCache.unseal(key, additionalData(clientSession.peer, clientSession.id),
+						clientSession.sealed);
+				ticket = SessionTicket.decode(new DatagramReader(data, false));
+			} catch (GeneralSecurityException e) {
+				LOGGER.warn("failed to decrypt session ticket {} of {}!", clientSession.id, clientSession.peer, e);
+			}
+			if (ticket == null) {
+				remove(clientSession.id);
+			} else {
+				clientSession.ticket = ticket;
+			}
+		}
+		return ticket;
+	}
+
+	/**
+	 * Add change and schedule the flush, if not already scheduled.
+	 *
+	 * Must be called with the lock of {@code this}.
+	 *
+	 * @param change client session to put, or client session without session
+	 *            id to remove the session of that peer.
+	 */
+	private void addChange(ClientSession change) {
+		pendingChanges.put(change.peer, change);
+		if (!flushScheduled && !closed) {
+			try {
+				executor.schedule(flush, flushIntervalMillis, TimeUnit.MILLISECONDS);
+				flushScheduled = true;
+			} catch (RejectedExecutionException e) {
+				LOGGER.debug("flush rejected!", e);
+			}
+		}
+	}
+
+	/**
+	 * Load the file on the first access.
+	 */
+	private void ensureLoaded() {
+		if (!loaded) {
+			synchronized (fileLock) {
+				if (!loaded) {
+					try {
+						load();
+					} catch (IOException e) {
+						LOGGER.warn("failed to load {}, continue in memory!", file, e);
+						connectionTickets.clear();
+						sessionTickets.clear();
+						persistent = false;
+					}
+					loaded = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Load client sessions from file.
+	 *
+	 * The session tickets are not decrypted.
+	 *
+	 * @throws IOException if an i/o error occurred
+	 */
+	private void load() throws IOException {
+		FileSessionCache.recover(file);
+		if (!file.exists()) {
+			return;
+		}
+		int count = 0;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			while (true) {
+				int length;
+				try {
+					length = in.readUnsignedShort();
+				} catch (EOFException e) {
+					break;
+				}
+				byte[] data = new byte[length];
+				try {
+					in.readFully(data);
+				} catch (EOFException e) {
+					LOGGER.info("discard truncated entry at the end of {}", file);
+					break;
+				}
+				DatagramReader reader = new DatagramReader(data, false);
+				int type;
+				InetSocketAddress peer;
+				SessionId id = null;
+				try {
+					type = reader.read(Byte.SIZE);
+					peer = readAddress(reader);
+					if (type == TYPE_PUT) {
+						int idLength = reader.read(Byte.SIZE);
+						id = new SessionId(reader.readBytes(idLength));
+					}
+				} catch (IllegalArgumentException e) {
+					type = 0;
+					peer = null;
+				} catch (IOException e) {
+					type = 0;
+					peer = null;
+				}
+				if (type != TYPE_PUT && type != TYPE_REMOVE) {
+					// the following length fields are not reliable anymore
+					LOGGER.warn("discard malformed entry and the following ones at entry {} of {}", count, file);
+					break;
+				}
+				++count;
+				if (type == TYPE_PUT) {
+					ClientSession clientSession = new ClientSession(peer, id, reader.readBytesLeft(), null);
+					ClientSession previous = connectionTickets.put(peer, clientSession);
+					if (previous != null) {
+						sessionTickets.remove(previous.id);
+					}
+					sessionTickets.put(id, clientSession);
+				} else {
+					ClientSession previous = connectionTickets.remove(peer);
+					if (previous != null) {
+						sessionTickets.remove(previous.id);
+					}
+				}
+			}
+		} finally {
+			in.close();
+		}
+		entries = count;
+		LOGGER.info("loaded {} client sessions from {} entries of {}", connectionTickets.size(), count, file);
+	}
+
+	/**
+	 * Compact file.
+	 *
+	 * Write all cached client sessions into a temporary file and replace the
+	 * file with that temporary file.
+	 *
+	 * @throws IOException if an i/o error occurred
+	 */
+	private void compact() throws IOException {
+		closeFile();
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream tempOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		int count = 0;
+		try {
+			for (ClientSession clientSession : connectionTickets.values()) {
+				write(tempOut, clientSession);
+				++count;
+			}
+		} finally {
+			tempOut.close();
+		}
+		FileSessionCache.replace(temp, file);
+		entries = count;
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+		LOGGER.debug("compacted {} to {} client sessions", file, count);
+	}
+
+	/**
+	 * Close the output stream.
+	 */
+	private void closeFile() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				LOGGER.warn("failed to close {}!", file, e);
+			}
+			out = null;
+		}
+	}
+
+	/**
+	 * Calculate the length of the entry for the client session.
+	 *
+	 * @param clientSession client session
+	 * @return length of entry
+	 */
+	private static int entryLength(ClientSession clientSession) {
+		int length = 1 + 1 + clientSession.peer.getAddress().getAddress().length + 2;
+		if (clientSession.id != null) {
+			length += 1 + clientSession.id.length() + clientSession.sealed.length;
+		}
+		return length;
+	}
+
+	/**
+	 * Write entry.
+	 *
+	 * @param out output stream to write the entry to
+	 * @param clientSession client session to put, or client session without
+	 *            session id to remove the session of that peer.
+	 * @throws IOException if an i/o error occurred
+	 */
+	private static void write(DataOutputStream out, ClientSession clientSession) throws IOException {
+		byte[] address = clientSession.peer.getAddress().getAddress();
+		out.writeShort(entryLength(clientSession));
+		out.writeByte(clientSession.id == null ? TYPE_REMOVE : TYPE_PUT);
+		out.writeByte(address.length);
+		out.write(address);
+		out.writeShort(clientSession.peer.getPort());
+		if (clientSession.id != null) {
+			out.writeByte(clientSession.id.length());
+			out.write(clientSession.id.getBytes());
+			out.write(clientSession.sealed);
+		}
+	}
+
+	/**
+	 * Read address of peer.
+	 *
+	 * @param reader reader of entry
+	 * @return address of peer
+	 * @throws IOException if the address is malformed
+	 */
+	private static InetSocketAddress readAddress(DatagramReader reader) throws IOException {
+		int length = reader.read(Byte.SIZE);
+		byte[] address = reader.readBytes(length);
+		int port = reader.read(Short.SIZE);
+		try {
+			return new InetSocketAddress(InetAddress.getByAddress(address), port);
+		} catch (UnknownHostException e) {
+			throw new IOException("malformed address with " + length + " bytes!", e);
+		}
+	}
+
+	/**
+	 * Get additional authenticated data to encrypt the session ticket.
+	 *
+	 * @param peer address of peer
+	 * @param id session id
+	 * @return additional authenticated data
+	 */
+	private static byte[] additionalData(InetSocketAddress peer, SessionId id) {
+		DatagramWriter writer = new DatagramWriter();
+		writer.writeBytes(peer.getAddress().getAddress());
+		writer.write(peer.getPort(), Short.SIZE);
+		writer.writeBytes(id.getBytes());
+		return writer.toByteArray();
+	}
+
+	private static class ClientSession {
+
+		private final InetSocketAddress peer;
+		private final SessionId id;
+		private final byte[] sealed;
+		/**
+		 * Session ticket. Decrypted and decoded on the first access.
+		 */
+		private volatile SessionTicket ticket;
+
+		private ClientSession(InetSocketAddress peer, SessionId id, byte[] sealed, SessionTicket ticket) {
+			this.peer = peer;
+			this.id = id;
+			this.sealed = sealed;
+			this.ticket = ticket;
+		}
+	}
+}
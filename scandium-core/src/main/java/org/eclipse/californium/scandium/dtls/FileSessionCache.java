@@ -0,0 +1,513 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *    Bosch Software Innovations GmbH - keep the old file until the compacted
+ *                                      file replaced it, discard malformed
+ *                                      entries
+ ******************************************************************************/
+package org.eclipse.californium.scandium.dtls;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+
+import org.eclipse.californium.elements.util.DatagramReader;
+import org.eclipse.californium.elements.util.DatagramWriter;
+import org.eclipse.californium.scandium.dtls.cipher.CCMBlockCipher;
+import org.eclipse.californium.scandium.dtls.cipher.InvalidMacException;
+import org.eclipse.californium.scandium.dtls.cipher.RandomManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A session cache, which keeps the {@link SessionTicket}s in a local file.
+ *
+ * Enables abbreviated handshakes for sessions established before a restart.
+ *
+ * The file is an append-only log of put and remove entries. On creation, the
+ * file is loaded and compacted. It's compacted again, when the number of
+ * appended entries exceeds twice the number of cached sessions. The
+ * compacted file replaces the file by a rename. If the file system doesn't
+ * support to rename onto an existing file, the old file is kept as backup
+ * until the rename succeeded, and restored on the next start, if that was
+ * interrupted. Truncated entries at the end of the file, e.g. caused by a
+ * crash while writing, are discarded. A malformed entry discards that entry
+ * and all following ones.
+ *
+ * The session tickets, including the master secrets, are encrypted with
+ * AES-CCM using the provided key and a random nonce. The session id is used as
+ * additional authenticated data. The tickets are also kept encrypted in
+ * memory and only decrypted by {@link #get(SessionId)}. Entries, which could
+ * not be decrypted with the provided key, are discarded when loading.
+ *
+ * The number of cached sessions is bounded by an LRU policy. Evictions are
+ * appended as remove entries. The access order is only persisted by
+ * compactions.
+ *
+ * Writes are flushed to the file system, but not synchronized to the storage
+ * device.
+ */
+public class FileSessionCache implements SessionCache, Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(FileSessionCache.class.getName());
+
+	/**
+	 * Type of entry to add a session ticket.
+	 */
+	private static final int TYPE_PUT = 1;
+	/**
+	 * Type of entry to remove a session ticket.
+	 */
+	private static final int TYPE_REMOVE = 2;
+	/**
+	 * Length of random nonce for the encryption of session tickets.
+	 */
+	static final int NONCE_LENGTH = 12;
+	/**
+	 * Length of the authentication field of the encrypted session tickets.
+	 */
+	static final int MAC_LENGTH = 8;
+	/**
+	 * Maximum length of an entry.
+	 */
+	private static final int MAX_ENTRY_LENGTH = 0xffff;
+	/**
+	 * Minimum number of appended entries before the file is compacted.
+	 */
+	private static final int MIN_COMPACTION_THRESHOLD = 1024;
+
+	private final File file;
+	private final SecretKey key;
+	/**
+	 * LRU index of sealed session tickets. Iterates in access order, starting
+	 * with the least recently used session.
+	 */
+	private final LinkedHashMap<SessionId, byte[]> cache;
+	/**
+	 * Session evicted by the last {@link LinkedHashMap#put(Object, Object)}.
+	 */
+	private SessionId evicted;
+	/**
+	 * Maximum number of cached sessions.
+	 */
+	private final int capacity;
+	/**
+	 * Indicates, that the file is being loaded. Evictions are suspended while
+	 * loading, because the recorded removes must be applied first.
+	 */
+	private boolean loading;
+	/**
+	 * Number of entries in the file.
+	 */
+	private int entries;
+	/**
+	 * Output stream to append entries.
+	 */
+	private DataOutputStream out;
+
+	/**
+	 * Create session cache and load the sessions from the file.
+	 *
+	 * @param file file to store the sessions. Created, if not available.
+	 * @param key AES key to encrypt the session tickets.
+	 * @param capacity maximum number of cached sessions.
+	 * @throws NullPointerException if file or key is {@code null}
+	 * @throws IllegalArgumentException if capacity is less than {@code 1}
+	 * @throws IOException if an i/o error occurred when loading the file.
+	 */
+	public FileSessionCache(File file, SecretKey key, int capacity) throws IOException {
+		if (file == null) {
+			throw new NullPointerException("file must not be null!");
+		}
+		if (key == null) {
+			throw new NullPointerException("key must not be null!");
+		}
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity " + capacity + " must be at least 1!");
+		}
+		this.file = file;
+		this.key = key;
+		this.capacity = capacity;
+		this.cache = new LinkedHashMap<SessionId, byte[]>(Math.min(capacity, 1024), 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<SessionId, byte[]> eldest) {
+				if (!loading && size() > FileSessionCache.this.capacity) {
+					evicted = eldest.getKey();
+					return true;
+				}
+				return false;
+			}
+		};
+		load();
+		compact();
+	}
+
+	@Override
+	public void put(DTLSSession session) {
+		if (session == null) {
+			return;
+		}
+		SessionId id = session.getSessionIdentifier();
+		if (id == null || id.isEmpty()) {
+			return;
+		}
+		DatagramWriter writer = new DatagramWriter();
+		session.getSessionTicket().encode(writer);
+		byte[] sealed;
+		try {
+			sealed = seal(key, id.getBytes(), writer.toByteArray());
+		} catch (GeneralSecurityException e) {
+			LOGGER.warn("failed to encrypt session ticket {}!", id, e);
+			return;
+		}
+		if (2 + id.length() + sealed.length > MAX_ENTRY_LENGTH) {
+			LOGGER.warn("session ticket {} with {} bytes is too large!", id, sealed.length);
+			return;
+		}
+		synchronized (this) {
+			evicted = null;
+			cache.put(id, sealed);
+			append(TYPE_PUT, id, sealed);
+			if (evicted != null) {
+				// keep the eviction on restart
+				append(TYPE_REMOVE, evicted, null);
+				evicted = null;
+			}
+		}
+	}
+
+	@Override
+	public SessionTicket get(SessionId id) {
+		if (id == null) {
+			return null;
+		}
+		byte[] sealed;
+		synchronized (this) {
+			sealed = cache.get(id);
+		}
+		if (sealed == null) {
+			return null;
+		}
+		try {
+			byte[] ticket = unseal(key, id.getBytes(), sealed);
+			return SessionTicket.decode(new DatagramReader(ticket, false));
+		} catch (GeneralSecurityException e) {
+			LOGGER.warn("failed to decrypt session ticket {}!", id, e);
+			return null;
+		}
+	}
+
+	@Override
+	public void remove(SessionId id) {
+		if (id == null) {
+			return;
+		}
+		synchronized (this) {
+			if (cache.remove(id) != null) {
+				append(TYPE_REMOVE, id, null);
+			}
+		}
+	}
+
+	/**
+	 * Get number of cached sessions.
+	 *
+	 * @return number of cached sessions
+	 */
+	public synchronized int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Close the file.
+	 *
+	 * Further changes are only applied in memory.
+	 */
+	@Override
+	public synchronized void close() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				LOGGER.warn("failed to close {}!", file, e);
+			}
+			out = null;
+		}
+	}
+
+	/**
+	 * Append entry to file.
+	 *
+	 * Compacts the file, if the number of entries exceeds the threshold.
+	 *
+	 * @param type type of entry
+	 * @param id session id
+	 * @param sealed sealed session ticket. {@code null} for
+	 *            {@link #TYPE_REMOVE}.
+	 */
+	private void append(int type, SessionId id, byte[] sealed) {
+		if (out == null) {
+			return;
+		}
+		try {
+			if (entries >= Math.max(MIN_COMPACTION_THRESHOLD, cache.size() * 2)) {
+				// the compaction already contains this change
+				compact();
+				return;
+			}
+			write(out, type, id, sealed);
+			out.flush();
+			++entries;
+		} catch (IOException e) {
+			LOGGER.warn("failed to write {}, continue in memory!", file, e);
+			close();
+		}
+	}
+
+	/**
+	 * Load sessions from file.
+	 *
+	 * @throws IOException if an i/o error occurred
+	 */
+	private void load() throws IOException {
+		recover(file);
+		if (!file.exists()) {
+			return;
+		}
+		int count = 0;
+		int failures = 0;
+		loading = true;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			while (true) {
+				int length;
+				try {
+					length = in.readUnsignedShort();
+				} catch (EOFException e) {
+					break;
+				}
+				byte[] data = new byte[length];
+				try {
+					in.readFully(data);
+				} catch (EOFException e) {
+					LOGGER.info("discard truncated entry at the end of {}", file);
+					break;
+				}
+				DatagramReader reader = new DatagramReader(data, false);
+				int type;
+				SessionId id;
+				try {
+					type = reader.read(Byte.SIZE);
+					int idLength = reader.read(Byte.SIZE);
+					id = new SessionId(reader.readBytes(idLength));
+				} catch (IllegalArgumentException e) {
+					type = 0;
+					id = null;
+				}
+				if (type != TYPE_PUT && type != TYPE_REMOVE) {
+					// the following length fields are not reliable anymore
+					LOGGER.warn("discard malformed entry and the following ones at entry {} of {}", count, file);
+					break;
+				}
+				++count;
+				if (type == TYPE_PUT) {
+					byte[] sealed = reader.readBytesLeft();
+					try {
+						unseal(key, id.getBytes(), sealed);
+						cache.put(id, sealed);
+					} catch (GeneralSecurityException e) {
+						++failures;
+					}
+				} else {
+					cache.remove(id);
+				}
+			}
+		} finally {
+			loading = false;
+			in.close();
+		}
+		Iterator<SessionId> iterator = cache.keySet().iterator();
+		while (cache.size() > capacity && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+		if (failures > 0) {
+			LOGGER.warn("discarded {} not decryptable session tickets of {}", failures, file);
+		}
+		LOGGER.info("loaded {} sessions from {} entries of {}", cache.size(), count, file);
+	}
+
+	/**
+	 * Compact file.
+	 *
+	 * Write all cached sessions into a temporary file in LRU order and replace
+	 * the file with that temporary file.
+	 *
+	 * @throws IOException if an i/o error occurred
+	 */
+	private void compact() throws IOException {
+		close();
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream tempOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		int count = 0;
+		try {
+			for (Map.Entry<SessionId, byte[]> entry : cache.entrySet()) {
+				write(tempOut, TYPE_PUT, entry.getKey(), entry.getValue());
+				++count;
+			}
+		} finally {
+			tempOut.close();
+		}
+		replace(temp, file);
+		entries = count;
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+		LOGGER.debug("compacted {} to {} sessions", file, count);
+	}
+
+	/**
+	 * Replace file by temporary file.
+	 *
+	 * Renames the temporary file onto the file, which is atomic on POSIX file
+	 * systems. If the file system doesn't support that, e.g. Windows, the
+	 * file is renamed into a backup file before and that backup is removed
+	 * after the temporary file is renamed. If that is interrupted by a crash,
+	 * {@link #recover(File)} restores the backup.
+	 *
+	 * @param temp temporary file
+	 * @param file file to be replaced
+	 * @throws IOException if the file could not be replaced
+	 */
+	static void replace(File temp, File file) throws IOException {
+		if (temp.renameTo(file)) {
+			return;
+		}
+		File backup = new File(file.getPath() + ".bak");
+		if (backup.exists() && !backup.delete()) {
+			throw new IOException("failed to delete " + backup);
+		}
+		if (file.exists() && !file.renameTo(backup)) {
+			throw new IOException("failed to rename " + file + " to " + backup);
+		}
+		if (!temp.renameTo(file)) {
+			if (backup.exists() && !backup.renameTo(file)) {
+				LOGGER.warn("failed to restore {} from {}!", file, backup);
+			}
+			throw new IOException("failed to rename " + temp + " to " + file);
+		}
+		if (backup.exists() && !backup.delete()) {
+			LOGGER.warn("failed to delete {}!", backup);
+		}
+	}
+
+	/**
+	 * Recover file from backup.
+	 *
+	 * Restores the backup file of an interrupted {@link #replace(File, File)},
+	 * if the file is missing, or deletes the backup, if the file was already
+	 * replaced.
+	 *
+	 * @param file file to recover
+	 * @throws IOException if the backup could not be restored
+	 */
+	static void recover(File file) throws IOException {
+		File backup = new File(file.getPath() + ".bak");
+		if (!backup.exists()) {
+			return;
+		}
+		if (file.exists()) {
+			if (!backup.delete()) {
+				LOGGER.warn("failed to delete {}!", backup);
+			}
+		} else if (backup.renameTo(file)) {
+			LOGGER.info("restored {} from {}", file, backup);
+		} else {
+			throw new IOException("failed to restore " + file + " from " + backup);
+		}
+	}
+
+	/**
+	 * Write entry.
+	 *
+	 * @param out output stream to write the entry to
+	 * @param type type of entry
+	 * @param id session id
+	 * @param sealed sealed session ticket. {@code null} for
+	 *            {@link #TYPE_REMOVE}.
+	 * @throws IOException if an i/o error occurred
+	 */
+	private static void write(DataOutputStream out, int type, SessionId id, byte[] sealed) throws IOException {
+		int length = 2 + id.length() + (sealed == null ? 0 : sealed.length);
+		out.writeShort(length);
+		out.writeByte(type);
+		out.writeByte(id.length());
+		out.write(id.getBytes());
+		if (sealed != null) {
+			out.write(sealed);
+		}
+	}
+
+	/**
+	 * Encrypt data with a random nonce.
+	 *
+	 * @param key AES key
+	 * @param additionalData additional authenticated data
+	 * @param data data to encrypt
+	 * @return nonce and encrypted data
+	 * @throws GeneralSecurityException if the encryption fails
+	 */
+	static byte[] seal(SecretKey key, byte[] additionalData, byte[] data) throws GeneralSecurityException {
+		byte[] nonce = new byte[NONCE_LENGTH];
+		RandomManager.currentSecureRandom().nextBytes(nonce);
+		byte[] sealed = Arrays.copyOf(nonce, NONCE_LENGTH + data.length + MAC_LENGTH);
+		CCMBlockCipher.encrypt(key, nonce, additionalData, data, 0, data.length, sealed, NONCE_LENGTH, MAC_LENGTH);
+		Arrays.fill(data, (byte) 0);
+		return sealed;
+	}
+
+	/**
+	 * Decrypt data sealed by {@link #seal(SecretKey, byte[], byte[])}.
+	 *
+	 * @param key AES key
+	 * @param additionalData additional authenticated data
+	 * @param sealed nonce and encrypted data
+	 * @return decrypted data
+	 * @throws InvalidMacException if the data could not be authenticated
+	 * @throws GeneralSecurityException if the decryption fails
+	 */
+	static byte[] unseal(SecretKey key, byte[] additionalData, byte[] sealed) throws GeneralSecurityException {
+		if (sealed.length < NONCE_LENGTH + MAC_LENGTH) {
+			throw new GeneralSecurityException("sealed data too short!");
+		}
+		byte[] nonce = Arrays.copyOf(sealed, NONCE_LENGTH);
+		return CCMBlockCipher.decrypt(key, nonce, additionalData, sealed, NONCE_LENGTH,
+				sealed.length - NONCE_LENGTH, MAC_LENGTH);
+	}
+}
@@ -55,6 +55,10 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - redesign DTLSFlight and RecordLayer
  *    Achim Kraus (Bosch Software Innovations GmbH) - remove copy of master secret
  *    Achim Kraus (Bosch Software Innovations GmbH) - redesign wrapMessage
+ *    Bosch Software Innovations GmbH - use ECDHE key pair pool.
+ *    Bosch Software Innovations GmbH - report delivered flights to path MTU
+ *    Bosch Software Innovations GmbH - remove buffered records using the
+ *                                      iterator
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
@@ -68,6 +72,7 @@ import java.security.PublicKey;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -94,6 +99,7 @@ import org.eclipse.californium.scandium.dtls.AlertMessage.AlertDescription;
 import org.eclipse.californium.scandium.dtls.AlertMessage.AlertLevel;
 import org.eclipse.californium.scandium.dtls.cipher.CipherSuite.KeyExchangeAlgorithm;
 import org.eclipse.californium.scandium.dtls.cipher.ECDHECryptography;
+import org.eclipse.californium.scandium.dtls.cipher.ECDHEKeyPairPool;
 import org.eclipse.californium.scandium.dtls.cipher.PseudoRandomFunction;
 import org.eclipse.californium.scandium.dtls.cipher.PseudoRandomFunction.Label;
 import org.eclipse.californium.scandium.dtls.pskstore.PskStore;
@@ -146,6 +152,12 @@ public abstract class Handshaker {
 	/** Used to retrieve identity/pre-shared-key for a given destination */
 	protected final PskStore pskStore;
 
+	/**
+	 * Pool of pre-generated ephemeral key pairs. {@code null}, if key pairs
+	 * are generated inline.
+	 */
+	protected final ECDHEKeyPairPool ecdheKeyPairPool;
+
 	/**
 	 * The configured connection id length. {@code null}, not supported,
 	 * {@code 0} supported but not used.
@@ -289,6 +301,8 @@ public abstract class Handshaker {
 		this.certificateVerifier = config.getCertificateVerifier();
 		this.rpkStore = config.getRpkTrustStore();
 		this.pskStore = config.getPskStore();
+		Integer ecdheKeyPairPoolSize = config.getEcdheKeyPairPoolSize();
+		this.ecdheKeyPairPool = ecdheKeyPairPoolSize == null ? null : ECDHEKeyPairPool.getInstance(ecdheKeyPairPoolSize);
 		this.session.setMaxTransmissionUnit(maxTransmissionUnit);
 		this.applicationLevelInfoSupplier = config.getApplicationLevelInfoSupplier();
 		this.inboundMessageBuffer = new InboundMessageBuffer();
@@ -330,12 +344,14 @@ public abstract class Handshaker {
 				result = changeCipherSpec;
 				changeCipherSpec = null;
 			} else {
-				for (Record record : queue) {
+				Iterator<Record> iterator = queue.iterator();
+				while (iterator.hasNext()) {
+					Record record = iterator.next();
 					int messageSeq = ((HandshakeMessage) record.getFragment()).getMessageSeq();
 					if (messageSeq > nextReceiveMessageSequence) {
 						break;
 					}
-					queue.remove(record);
+					iterator.remove();
 					removeDeferredProcessedRecord(record);
 					if (messageSeq == nextReceiveMessageSequence) {
 						result = record;
@@ -439,9 +455,11 @@ public abstract class Handshaker {
 			if (changeCipherSpec != null && changeCipherSpec.getSequenceNumber() == recordSequenceNumber) {
 				changeCipherSpec = null;
 			}
-			for (Record record : queue) {
+			Iterator<Record> iterator = queue.iterator();
+			while (iterator.hasNext()) {
+				Record record = iterator.next();
 				if (record.getSequenceNumber() == recordSequenceNumber) {
-					queue.remove(record);
+					iterator.remove();
 					removeDeferredProcessedRecord(record);
 				}
 			}
@@ -539,6 +557,10 @@ public abstract class Handshaker {
 					DTLSFlight flight = pendingFlight.get();
 					if (flight != null) {
 						LOGGER.debug("response for flight {} started", flight.getFlightNumber());
+						PathMtu pathMtu = connection.getPathMtu();
+						if (pathMtu != null && !flight.isResponseStarted()) {
+							pathMtu.flightDelivered(flight.getLargestDatagramSize());
+						}
 						flight.setResponseStarted();
 					}
 					if (handshakeMessage instanceof FragmentedHandshakeMessage) {
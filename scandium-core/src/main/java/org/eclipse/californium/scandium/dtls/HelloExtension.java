@@ -16,6 +16,7 @@
  *    Kai Hudalla (Bosch Software Innovations GmbH) - improve toString()
  *    Kai Hudalla (Bosch Software Innovations GmbH) - add support for <em>MaxFragmentLength</em> extension
  *    Kai Hudalla (Bosch Software Innovations GmbH) - improve documentation, provide peer address to subclasses 
+ *    Bosch Software Innovations GmbH - add padding extension type
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
@@ -238,6 +239,9 @@ public abstract class HelloExtension {
 		CLIENT_CERT_TYPE(19, "client_certificate_type"),
 		SERVER_CERT_TYPE(20, "server_certificate_type"),
 
+		/** See <a href="http://www.iana.org/go/rfc7685">RFC 7685</a> **/
+		PADDING(21, "padding"),
+
 		/** See <a href="http://www.iana.org/go/rfc7366">RFC 7366</a> **/
 		ENCRYPT_THEN_MAC(22, "encrypt_then_mac"),
 
@@ -19,6 +19,7 @@
  *    Kai Hudalla (Bosch Software Innovations GmbH) - use peer address when parsing
  *                                                    from byte array
  *    Bosch Software Innovations GmbH - migrate to SLF4J
+ *    Bosch Software Innovations GmbH - add removeExtension
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
@@ -105,6 +106,21 @@ public final class HelloExtensions {
 		}
 	}
 
+	/**
+	 * Remove hello extension.
+	 * 
+	 * @param type the type of extension to remove
+	 * @return the removed extension, or {@code null}, if no extension of the
+	 *         given type is present
+	 */
+	HelloExtension removeExtension(ExtensionType type) {
+		HelloExtension extension = getExtension(type);
+		if (extension != null) {
+			this.extensions.remove(extension);
+		}
+		return extension;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
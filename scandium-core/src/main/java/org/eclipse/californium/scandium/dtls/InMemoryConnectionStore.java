@@ -31,16 +31,45 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - add putEstablishedSession
  *                                                    and removeFromEstablishedSessions
  *                                                    for faster find
+ *    Bosch Software Innovations GmbH - use ConcurrentLeastRecentlyUsedCache,
+ *                                      don't synchronize read access.
+ *    Bosch Software Innovations GmbH - save and load connection states.
+ *    Bosch Software Innovations GmbH - fetch session tickets of the client
+ *                                      session cache on demand.
+ *    Bosch Software Innovations GmbH - release connection states of removed
+ *                                      connections.
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import javax.crypto.SecretKey;
+
+import org.eclipse.californium.elements.util.ConcurrentLeastRecentlyUsedCache;
+import org.eclipse.californium.elements.util.DaemonThreadFactory;
+import org.eclipse.californium.elements.util.DatagramReader;
+import org.eclipse.californium.elements.util.DatagramWriter;
+import org.eclipse.californium.elements.util.ExecutorsUtil;
 import org.eclipse.californium.elements.util.LeastRecentlyUsedCache;
+import org.eclipse.californium.elements.util.NamedThreadFactory;
 import org.eclipse.californium.elements.util.SerialExecutor;
 import org.eclipse.californium.scandium.ConnectionListener;
 import org.slf4j.Logger;
@@ -68,17 +97,18 @@ import org.slf4j.LoggerFactory;
  * place for the new connection to be added.</li>
  * </ul>
  * <p>
- * This implementation uses three <code>java.util.HashMap</code>. One with a
- * connection's id as key as its backing store, one with the peer address as
- * key, and one with the session id as key. In addition to that the store keeps
- * a doubly-linked list of the connections in access-time order.
+ * This implementation uses a {@link ConcurrentLeastRecentlyUsedCache} with a
+ * connection's id as key as its backing store, and two
+ * <code>java.util.concurrent.ConcurrentHashMap</code>, one with the peer
+ * address as key, and one with the session id as key.
  * </p>
  * <p>
  * Insertion, lookup and removal of connections is done in
  * <em>O(log n)</em>.
  * </p>
  * <p>
- * Storing and reading to/from the store is thread safe.
+ * Storing and reading to/from the store is thread safe. Reading doesn't
+ * block.
  * </p>
  */
 public class InMemoryConnectionStore implements ResumptionSupportingConnectionStore {
@@ -87,8 +117,11 @@ public class InMemoryConnectionStore implements ResumptionSupportingConnectionSt
 	private static final int DEFAULT_EXTRA_CID_LENGTH = 2; // extra cid bytes additionally to required bytes for the capacity.
 	private static final int DEFAULT_CACHE_SIZE = 150000;
 	private static final long DEFAULT_EXPIRATION_THRESHOLD = 36 * 60 * 60; // 36h
+	private static final int CONNECTION_STATE_VERSION = 1;
+	private static final int MAX_CONNECTION_STATE_LENGTH = 0xffff;
+	private static final int LOAD_BATCH_SIZE = 4096;
 	private final SessionCache sessionCache;
-	protected final LeastRecentlyUsedCache<ConnectionId, Connection> connections;
+	protected final ConcurrentLeastRecentlyUsedCache<ConnectionId, Connection> connections;
 	protected final ConcurrentMap<InetSocketAddress, Connection> connectionsByAddress;
 	protected final ConcurrentMap<SessionId, Connection> connectionsByEstablishedSession;
 
@@ -146,7 +179,7 @@ public class InMemoryConnectionStore implements ResumptionSupportingConnectionSt
 	 *            and mark them to resume.
 	 */
 	public InMemoryConnectionStore(int capacity, long threshold, SessionCache sessionCache) {
-		this.connections = new LeastRecentlyUsedCache<>(capacity, threshold);
+		this.connections = new ConcurrentLeastRecentlyUsedCache<>(capacity, threshold);
 		this.connections.setEvictingOnReadAccess(false);
 		this.connections.setUpdatingOnReadAccess(false);
 		this.connectionsByEstablishedSession = new ConcurrentHashMap<>();
@@ -170,6 +203,7 @@ public class InMemoryConnectionStore implements ResumptionSupportingConnectionSt
 							synchronized (InMemoryConnectionStore.this) {
 								removeFromAddressConnections(staleConnection);
 								removeFromEstablishedSessions(staleConnection);
+								releaseConnectionStates(staleConnection);
 								removeSessionFromCache(staleConnection);
 								ConnectionListener listener = connectionListener;
 								if (listener != null) {
@@ -245,11 +279,10 @@ public class InMemoryConnectionStore implements ResumptionSupportingConnectionSt
 			ClientSessionCache clientCache = (ClientSessionCache) sessionCache;
 			LOG.debug("resume client sessions {}", clientCache);
 			for (InetSocketAddress peer : clientCache) {
-				SessionTicket ticket = clientCache.getSessionTicket(peer);
 				SessionId id = clientCache.getSessionIdentity(peer);
-				if (ticket != null && id != null) {
-					// restore connection from session ticket
-					Connection connection = new Connection(ticket, id, peer);
+				if (id != null) {
+					// restore connection, the session ticket is fetched on demand
+					Connection connection = new Connection(clientCache, id, peer);
 					ConnectionId connectionId = newConnectionId();
 					if (connectionId != null) {
 						connection.setConnectionId(connectionId);
@@ -456,14 +489,14 @@ public class InMemoryConnectionStore implements ResumptionSupportingConnectionSt
 	}
 
 	@Override
-	public synchronized int remainingCapacity() {
+	public int remainingCapacity() {
 		int remaining = connections.remainingCapacity();
 		LOG.debug("{}connection: size {}, remaining {}!", tag, connections.size(), remaining);
 		return remaining;
 	}
 
 	@Override
-	public synchronized Connection get(final InetSocketAddress peerAddress) {
+	public Connection get(final InetSocketAddress peerAddress) {
 		Connection connection = connectionsByAddress.get(peerAddress);
 		if (connection == null) {
 			LOG.debug("{}connection: missing connection for {}!", tag, peerAddress);
@@ -479,7 +512,7 @@ public class InMemoryConnectionStore implements ResumptionSupportingConnectionSt
 	}
 
 	@Override
-	public synchronized Connection get(final ConnectionId cid) {
+	public Connection get(final ConnectionId cid) {
 		Connection connection = connections.get(cid);
 		if (connection == null) {
 			LOG.debug("{}connection: missing connection for {}!", tag, cid);
@@ -503,7 +536,8 @@ public class InMemoryConnectionStore implements ResumptionSupportingConnectionSt
 	public synchronized boolean remove(final Connection connection, final boolean removeFromSessionCache) {
 		boolean removed = connections.remove(connection.getConnectionId(), connection) == connection;
 		if (removed) {
-			List<Runnable> pendings = connection.getExecutor().shutdownNow();
+			SerialExecutor executor = connection.getExecutor();
+			List<Runnable> pendings = executor == null ? Collections.<Runnable>emptyList() : executor.shutdownNow();
 			if (LOG.isTraceEnabled()) {
 				LOG.trace("{}connection: remove {} (size {}, left jobs: {})", tag, connection, connections.size(),
 						pendings.size(), new Throwable("connection removed!"));
@@ -515,6 +549,7 @@ public class InMemoryConnectionStore implements ResumptionSupportingConnectionSt
 			}
 			removeFromEstablishedSessions(connection);
 			removeFromAddressConnections(connection);
+			releaseConnectionStates(connection);
 			if (removeFromSessionCache) {
 				removeSessionFromCache(connection);
 			}
@@ -526,6 +561,19 @@ public class InMemoryConnectionStore implements ResumptionSupportingConnectionSt
 		return removed;
 	}
 
+	/**
+	 * Release the connection states of the established session of the
+	 * connection.
+	 * 
+	 * @param connection removed connection
+	 */
+	private static void releaseConnectionStates(Connection connection) {
+		DTLSSession establishedSession = connection.getEstablishedSession();
+		if (establishedSession != null) {
+			establishedSession.releaseConnectionStates();
+		}
+	}
+
 	private void removeFromEstablishedSessions(Connection connection) {
 		DTLSSession establishedSession = connection.getEstablishedSession();
 		if (establishedSession != null) {
@@ -605,10 +653,237 @@ public class InMemoryConnectionStore implements ResumptionSupportingConnectionSt
 		}
 	}
 
+	/**
+	 * Save the <em>current</em> connection states of all connections with
+	 * established sessions.
+	 * 
+	 * Each connection state is encrypted with AES-CCM using the provided key
+	 * and a random nonce. The states contain the write sequence numbers, so
+	 * the connections must not be used after saving them. Therefore save the
+	 * connections only, if the connector is stopped.
+	 * 
+	 * @param out output stream to write the connection states
+	 * @param key AES key to encrypt the connection states
+	 * @return number of saved connections
+	 * @throws IOException if an i/o error occurred
+	 * @see #loadConnections(InputStream, SecretKey)
+	 * @see DTLSSession#encodeConnectionState(DatagramWriter)
+	 */
+	public synchronized int saveConnections(final OutputStream out, final SecretKey key) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeByte(CONNECTION_STATE_VERSION);
+		int count = 0;
+		for (Connection connection : connections.values()) {
+			DTLSSession session = connection.getEstablishedSession();
+			InetSocketAddress peer = connection.getPeerAddress();
+			if (session == null || peer == null || connection.hasOngoingHandshake()) {
+				continue;
+			}
+			DatagramWriter writer = new DatagramWriter();
+			byte[] cid = connection.getConnectionId().getBytes();
+			byte[] address = peer.getAddress().getAddress();
+			writer.write(address.length, Byte.SIZE);
+			writer.writeBytes(address);
+			writer.write(peer.getPort(), Short.SIZE);
+			session.encodeConnectionState(writer);
+			byte[] sealed;
+			try {
+				sealed = FileSessionCache.seal(key, cid, writer.toByteArray());
+			} catch (GeneralSecurityException e) {
+				throw new IOException("failed to encrypt connection state!", e);
+			}
+			int length = 1 + cid.length + sealed.length;
+			if (length > MAX_CONNECTION_STATE_LENGTH) {
+				LOG.warn("{}connection state {} with {} bytes is too large!", tag, connection.getConnectionId(), length);
+				continue;
+			}
+			data.writeShort(length);
+			data.writeByte(cid.length);
+			data.write(cid);
+			data.write(sealed);
+			++count;
+		}
+		data.writeShort(0);
+		data.flush();
+		LOG.info("{}saved {} connections", tag, count);
+		return count;
+	}
+
+	/**
+	 * Load the connection states saved by
+	 * {@link #saveConnections(OutputStream, SecretKey)}.
+	 * 
+	 * The connections are added directly, without calling the connection
+	 * listener or the session cache. The connection states are decrypted and
+	 * decoded in parallel using a temporary thread pool. The connections are not
+	 * {@link Connection#isExecuting()}, they get their executor on the
+	 * first use. Connections, which could not be decrypted, or collide with
+	 * the connection id of an existing connection, are discarded. If the
+	 * store is full, the left connections are also discarded.
+	 * 
+	 * @param in input stream to read the connection states
+	 * @param key AES key to decrypt the connection states
+	 * @return number of loaded connections
+	 * @throws IOException if an i/o error occurred, or the input is not a
+	 *             supported connection state
+	 * @throws IllegalStateException if no connection id generator is
+	 *             attached.
+	 */
+	public synchronized int loadConnections(final InputStream in, final SecretKey key) throws IOException {
+		if (connectionIdGenerator == null) {
+			throw new IllegalStateException("Connection id generator must be attached before!");
+		}
+		DataInputStream data = new DataInputStream(in);
+		int version = data.readUnsignedByte();
+		if (version != CONNECTION_STATE_VERSION) {
+			throw new IOException("connection state version " + version + " is not supported!");
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = null;
+		if (threads > 1) {
+			executor = ExecutorsUtil.newFixedThreadPool(threads,
+					new DaemonThreadFactory("DTLS-Connection-Loader-", NamedThreadFactory.SCANDIUM_THREAD_GROUP));
+		}
+		int count = 0;
+		int discarded = 0;
+		boolean full = false;
+		boolean last = false;
+		try {
+			while (!last) {
+				List<byte[]> entries = new ArrayList<>(LOAD_BATCH_SIZE);
+				try {
+					while (entries.size() < LOAD_BATCH_SIZE) {
+						int length = data.readUnsignedShort();
+						if (length == 0) {
+							last = true;
+							break;
+						}
+						byte[] entry = new byte[length];
+						data.readFully(entry);
+						entries.add(entry);
+					}
+				} catch (EOFException e) {
+					LOG.warn("{}truncated connection states!", tag);
+					last = true;
+				}
+				for (Connection connection : readConnections(entries, key, executor, threads)) {
+					if (full || connection == null || connections.get(connection.getConnectionId()) != null) {
+						++discarded;
+						continue;
+					}
+					if (!connections.put(connection.getConnectionId(), connection)) {
+						LOG.info("{}connection store is full! {} max. entries.", tag, connections.getCapacity());
+						full = true;
+						++discarded;
+						continue;
+					}
+					connectionsByAddress.put(connection.getPeerAddress(), connection);
+					DTLSSession session = connection.getEstablishedSession();
+					if (!session.getSessionIdentifier().isEmpty()) {
+						connectionsByEstablishedSession.put(session.getSessionIdentifier(), connection);
+					}
+					++count;
+				}
+			}
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+		if (discarded > 0) {
+			LOG.warn("{}discarded {} connections", tag, discarded);
+		}
+		LOG.info("{}loaded {} connections", tag, count);
+		return count;
+	}
+
+	/**
+	 * Read connections from entries of the saved connection states.
+	 * 
+	 * Decrypting and decoding the entries is expensive. If an executor is
+	 * provided, the entries are therefore split into slices, which are read
+	 * in parallel.
+	 * 
+	 * @param entries entries with connection id and sealed connection state
+	 * @param key AES key to decrypt the connection states
+	 * @param executor executor to read slices in parallel. May be
+	 *            {@code null}, to read all entries in the current thread.
+	 * @param slices number of slices
+	 * @return array with the connections in the order of the entries.
+	 *         Contains {@code null} for entries, which could not be read.
+	 * @throws InterruptedIOException if the current thread is interrupted
+	 */
+	private Connection[] readConnections(final List<byte[]> entries, final SecretKey key,
+			final ExecutorService executor, final int slices) throws InterruptedIOException {
+		final Connection[] result = new Connection[entries.size()];
+		if (executor == null || entries.size() < slices) {
+			for (int index = 0; index < result.length; ++index) {
+				result[index] = readConnection(entries.get(index), key);
+			}
+			return result;
+		}
+		List<Future<?>> futures = new ArrayList<>(slices);
+		int sliceSize = (result.length + slices - 1) / slices;
+		for (int start = 0; start < result.length; start += sliceSize) {
+			final int from = start;
+			final int to = Math.min(start + sliceSize, result.length);
+			futures.add(executor.submit(new Runnable() {
+
+				@Override
+				public void run() {
+					for (int index = from; index < to; ++index) {
+						result[index] = readConnection(entries.get(index), key);
+					}
+				}
+			}));
+		}
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("loading connections interrupted!");
+		} catch (ExecutionException e) {
+			// readConnection handles the expected exceptions
+			throw new IllegalStateException("loading connections failed!", e.getCause());
+		}
+		return result;
+	}
+
+	/**
+	 * Read connection from an entry of the saved connection states.
+	 * 
+	 * @param entry entry with connection id and sealed connection state
+	 * @param key AES key to decrypt the connection state
+	 * @return connection, or {@code null}, if the connection state could not
+	 *         be decrypted or decoded.
+	 */
+	private Connection readConnection(byte[] entry, SecretKey key) {
+		try {
+			DatagramReader reader = new DatagramReader(entry, false);
+			ConnectionId cid = new ConnectionId(reader.readBytes(reader.read(Byte.SIZE)));
+			byte[] state = FileSessionCache.unseal(key, cid.getBytes(), reader.readBytesLeft());
+			reader = new DatagramReader(state, false);
+			InetAddress address = InetAddress.getByAddress(reader.readBytes(reader.read(Byte.SIZE)));
+			InetSocketAddress peer = new InetSocketAddress(address, reader.read(Short.SIZE));
+			DTLSSession session = DTLSSession.decodeConnectionState(peer, reader);
+			if (session != null) {
+				return new Connection(session, cid);
+			}
+		} catch (GeneralSecurityException e) {
+			LOG.debug("{}failed to decrypt connection state!", tag, e);
+		} catch (IOException e) {
+			LOG.debug("{}failed to decode connection state!", tag, e);
+		} catch (IllegalArgumentException e) {
+			LOG.debug("{}failed to decode connection state!", tag, e);
+		}
+		return null;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * 
-	 * @see LeastRecentlyUsedCache#valuesIterator()
+	 * @see ConcurrentLeastRecentlyUsedCache#valuesIterator()
 	 */
 	@Override
 	public Iterator<Connection> iterator() {
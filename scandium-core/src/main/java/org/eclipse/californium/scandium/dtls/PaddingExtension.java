@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.scandium.dtls;
+
+import org.eclipse.californium.elements.util.DatagramWriter;
+
+/**
+ * An object representation of the <em>padding</em> extension for the
+ * <em>Transport Level Security</em> protocol.
+ * <p>
+ * See <a href="https://tools.ietf.org/html/rfc7685">RFC 7685</a>. The
+ * extension data consists of zero bytes and is only used to increase the
+ * size of the <em>CLIENT_HELLO</em>. Servers ignore it. Used to probe the
+ * path MTU with the <em>CLIENT_HELLO</em>.
+ *
+ * @see PathMtu
+ */
+public class PaddingExtension extends HelloExtension {
+
+	/**
+	 * Length of the extension without padding. 2 bytes type ID and 2 bytes
+	 * length of extension data.
+	 */
+	public static final int OVERHEAD = 4;
+
+	private final int paddingLength;
+
+	/**
+	 * Create padding extension.
+	 *
+	 * @param paddingLength number of zero bytes
+	 * @throws IllegalArgumentException if padding length is negative or
+	 *             exceeds the extension data length
+	 */
+	public PaddingExtension(int paddingLength) {
+		super(ExtensionType.PADDING);
+		if (paddingLength < 0 || paddingLength >= (1 << LENGTH_BITS)) {
+			throw new IllegalArgumentException("padding length " + paddingLength + " out of range!");
+		}
+		this.paddingLength = paddingLength;
+	}
+
+	/**
+	 * Get the number of zero bytes.
+	 *
+	 * @return number of zero bytes
+	 */
+	public int getPaddingLength() {
+		return paddingLength;
+	}
+
+	@Override
+	public int getLength() {
+		return OVERHEAD + paddingLength;
+	}
+
+	@Override
+	protected void addExtensionData(DatagramWriter writer) {
+		writer.write(paddingLength, LENGTH_BITS);
+		writer.writeBytes(new byte[paddingLength]);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(super.toString());
+		sb.append("\t\t\t\tPadding: ").append(paddingLength).append(" bytes");
+		return sb.toString();
+	}
+}
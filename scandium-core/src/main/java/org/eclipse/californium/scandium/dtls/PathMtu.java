@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *    Bosch Software Innovations GmbH - probe with padded CLIENT_HELLO
+ ******************************************************************************/
+package org.eclipse.californium.scandium.dtls;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Path MTU of a connection.
+ * <p>
+ * Tracks the path MTU to a peer based on the outcome of handshake flights. The
+ * tracking starts with the conservative minimum MTU. A flight, which is
+ * answered by the peer, confirms the size of its largest datagram. If the
+ * current probe MTU is confirmed, the probe MTU grows halfway towards the
+ * upper bound for the flights of the next handshakes. If a flight with
+ * datagrams above the confirmed MTU is lost repeatedly, the probe MTU falls
+ * back to the confirmed MTU and the upper bound is lowered below the lost
+ * datagram size. If a flight with datagrams within the confirmed MTU is lost
+ * repeatedly, the path is assumed to be changed and the tracking starts over
+ * with the minimum MTU.
+ * </p>
+ * <p>
+ * A client pads the CLIENT_HELLO of a full handshake up to the probe MTU
+ * using the {@link PaddingExtension}. Therefore every full handshake of a
+ * client probes the path, even if it only uses small messages, as PSK
+ * handshakes do. A CLIENT_HELLO, which resumes a session, isn't padded,
+ * because the server may process it without cookie exchange and so its size
+ * can't be reduced after a loss. A server can't pad its flights. On the
+ * server side only flights with large messages, e.g. certificate chains,
+ * confirm a larger MTU.
+ * </p>
+ * <p>
+ * The MTU values include the IP and UDP headers as
+ * {@link DTLSSession#getMaxDatagramSize()}.
+ * </p>
+ */
+public final class PathMtu {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PathMtu.class.getName());
+
+	/**
+	 * Minimum growth of the probe MTU. If the confirmed MTU is closer to the
+	 * upper bound lowered by a failed probe, the probing is finished.
+	 */
+	public static final int MIN_PROBE_STEP = 32;
+	/**
+	 * Number of consecutive losses of flights with datagrams above the
+	 * confirmed MTU, before the probe MTU falls back to the confirmed MTU.
+	 */
+	public static final int PROBE_LOSS_THRESHOLD = 2;
+	/**
+	 * Number of consecutive losses of flights with datagrams within the
+	 * confirmed MTU, before the tracking starts over with the minimum MTU.
+	 */
+	public static final int LOSS_THRESHOLD = 3;
+
+	private final int minMtu;
+	private final int maxMtu;
+	/**
+	 * Largest MTU, which is confirmed by a flight.
+	 */
+	private int confirmedMtu;
+	/**
+	 * Upper bound for probing. Lowered, if a probe fails.
+	 */
+	private int upperMtu;
+	/**
+	 * MTU for the flights of new handshakes.
+	 */
+	private int probeMtu;
+	/**
+	 * Number of consecutive lost flights since the last delivered flight or
+	 * the last adjustment.
+	 */
+	private int losses;
+
+	/**
+	 * Create path MTU.
+	 *
+	 * @param minMtu conservative minimum MTU. Used as start value.
+	 * @param maxMtu upper bound of the MTU, usually the MTU of the network
+	 *            interface.
+	 * @throws IllegalArgumentException if minMtu is not larger than
+	 *             {@link DTLSSession#HEADER_LENGTH}, or maxMtu is less than
+	 *             minMtu.
+	 */
+	public PathMtu(int minMtu, int maxMtu) {
+		if (minMtu <= DTLSSession.HEADER_LENGTH) {
+			throw new IllegalArgumentException(
+					"min. MTU " + minMtu + " must be larger than " + DTLSSession.HEADER_LENGTH + " bytes!");
+		}
+		if (maxMtu < minMtu) {
+			throw new IllegalArgumentException("max. MTU " + maxMtu + " must not be less than min. MTU " + minMtu + "!");
+		}
+		this.minMtu = minMtu;
+		this.maxMtu = maxMtu;
+		this.confirmedMtu = minMtu;
+		this.upperMtu = maxMtu;
+		this.probeMtu = minMtu;
+	}
+
+	/**
+	 * Get the MTU for the flights of new handshakes.
+	 *
+	 * @return the probe MTU
+	 */
+	public synchronized int getProbeMtu() {
+		return probeMtu;
+	}
+
+	/**
+	 * Get the largest MTU, which is confirmed by the peer. Used for
+	 * established sessions.
+	 *
+	 * @return the confirmed MTU
+	 */
+	public synchronized int getConfirmedMtu() {
+		return confirmedMtu;
+	}
+
+	/**
+	 * Report a flight, which is answered by the peer.
+	 *
+	 * @param datagramSize size of the largest datagram of the flight,
+	 *            including the IP and UDP headers.
+	 */
+	public synchronized void flightDelivered(int datagramSize) {
+		losses = 0;
+		if (datagramSize > confirmedMtu) {
+			confirmedMtu = Math.min(datagramSize, upperMtu);
+		}
+		if (confirmedMtu >= probeMtu) {
+			int probe = confirmedMtu + Math.max((upperMtu - confirmedMtu) / 2, MIN_PROBE_STEP);
+			if (probe <= upperMtu) {
+				probeMtu = probe;
+			} else if (upperMtu == maxMtu) {
+				probeMtu = maxMtu;
+			} else {
+				// close to a failed probe, finished
+				probeMtu = confirmedMtu;
+			}
+			LOGGER.debug("path MTU {} confirmed, probe {}", confirmedMtu, probeMtu);
+		}
+	}
+
+	/**
+	 * Report a lost flight.
+	 *
+	 * @param datagramSize size of the largest datagram of the flight,
+	 *            including the IP and UDP headers.
+	 * @return {@code true}, if the flight exceeds the adjusted
+	 *         {@link #getProbeMtu()} and should be sent using that smaller
+	 *         MTU, {@code false}, otherwise.
+	 */
+	public synchronized boolean flightLost(int datagramSize) {
+		++losses;
+		if (datagramSize > confirmedMtu) {
+			if (losses >= PROBE_LOSS_THRESHOLD) {
+				losses = 0;
+				upperMtu = Math.max(datagramSize - 1, confirmedMtu);
+				probeMtu = confirmedMtu;
+				LOGGER.debug("path MTU probe {} failed, fall back to {}", datagramSize, confirmedMtu);
+				return true;
+			}
+		} else if (losses >= LOSS_THRESHOLD && confirmedMtu > minMtu) {
+			losses = 0;
+			confirmedMtu = minMtu;
+			upperMtu = maxMtu;
+			probeMtu = minMtu;
+			LOGGER.debug("path MTU {} lost, start over with {}", datagramSize, minMtu);
+			return datagramSize > minMtu;
+		}
+		return false;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "PathMtu[confirmed=" + confirmedMtu + ", probe=" + probeMtu + ", upper=" + upperMtu + "]";
+	}
+}
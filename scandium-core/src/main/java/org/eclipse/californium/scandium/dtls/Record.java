@@ -23,6 +23,14 @@
  *                                                    generic handshake messages to
  *                                                    process reordered handshake messages
  *    Achim Kraus (Bosch Software Innovations GmbH) - cleanup
+ *    Bosch Software Innovations GmbH - serialize into ByteBufferDatagramWriter
+ *                                      to save intermediate arrays
+ *    Bosch Software Innovations GmbH - parse records as slices of the received
+ *                                      datagram and decrypt AEAD fragments
+ *                                      without intermediate copies
+ *    Bosch Software Innovations GmbH - encrypt AEAD fragments directly behind
+ *                                      the explicit nonce
+ *    Bosch Software Innovations GmbH - split handshake records for path MTU
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
@@ -34,10 +42,10 @@ import java.util.List;
 
 import javax.crypto.SecretKey;
 
+import org.eclipse.californium.elements.util.ByteBufferDatagramWriter;
 import org.eclipse.californium.elements.util.Bytes;
 import org.eclipse.californium.elements.util.ClockUtil;
 import org.eclipse.californium.elements.util.DatagramReader;
-import org.eclipse.californium.elements.util.DatagramWriter;
 import org.eclipse.californium.elements.util.StringUtil;
 import org.eclipse.californium.scandium.dtls.cipher.CipherSuite;
 import org.eclipse.californium.scandium.dtls.cipher.AeadBlockCipher;
@@ -110,9 +118,22 @@ public class Record {
 	 */
 	private DTLSMessage fragment;
 
-	/** The raw byte representation of the fragment. */
+	/**
+	 * The raw byte representation of the fragment.
+	 * 
+	 * For received records, this may be the shared array of the complete
+	 * datagram. The fragment is then the range starting at
+	 * {@link #fragmentOffset} with {@link #fragmentLength} bytes and only
+	 * copied into a separate array, if {@link #getFragmentBytes()} is called.
+	 */
 	private byte[] fragmentBytes;
 
+	/** Offset of the fragment in {@link #fragmentBytes}. */
+	private int fragmentOffset;
+
+	/** Length of the fragment in {@link #fragmentBytes}. */
+	private int fragmentLength;
+
 	/** The connection id. */
 	private ConnectionId connectionId;
 
@@ -168,17 +189,48 @@ public class Record {
 	 */
 	Record(ContentType type, ProtocolVersion version, int epoch, long sequenceNumber, ConnectionId connectionId,
 			byte[] fragmentBytes, InetSocketAddress peerAddress, long receiveNanos) {
+		this(type, version, epoch, sequenceNumber, connectionId, fragmentBytes, 0,
+				fragmentBytes == null ? 0 : fragmentBytes.length, peerAddress, receiveNanos);
+	}
+
+	/**
+	 * Creates a record from a range of a <em>DTLSCiphertext</em> struct
+	 * received from the network.
+	 * 
+	 * The provided array is not copied. It must therefore not be changed
+	 * afterwards.
+	 * 
+	 * @param type the content type. The new record type
+	 *            {@link ContentType#TLS12_CID} is directly supported.
+	 * @param version the version
+	 * @param epoch the epoch
+	 * @param sequenceNumber the sequence number
+	 * @param connectionId the connection id
+	 * @param datagram the received data containing the encrypted fragment
+	 * @param offset offset of the encrypted fragment in the received data
+	 * @param length length of the encrypted fragment
+	 * @param peerAddress peer address
+	 * @param receiveNanos uptime nanoseconds of receiving this record
+	 * @throws IllegalArgumentException if the given sequence number is longer
+	 *             than 48 bits or less than 0. Or the given epoch is less than 0.
+	 * @throws NullPointerException if the given type, protocol version,
+	 *             fragment bytes or peer address is {@code null}.
+	 */
+	Record(ContentType type, ProtocolVersion version, int epoch, long sequenceNumber, ConnectionId connectionId,
+			byte[] datagram, int offset, int length, InetSocketAddress peerAddress, long receiveNanos) {
 		this(version, epoch, sequenceNumber, receiveNanos, null, peerAddress);
 		if (type == null) {
 			throw new NullPointerException("Type must not be null");
-		} else if (fragmentBytes == null) {
+		} else if (datagram == null) {
 			throw new NullPointerException("Fragment bytes must not be null");
 		} else if (peerAddress == null) {
 			throw new NullPointerException("Peer address must not be null");
 		}
 		this.type = type;
 		this.connectionId = connectionId;
-		this.fragmentBytes = fragmentBytes;
+		this.fragmentBytes = datagram;
+		this.fragmentOffset = offset;
+		this.fragmentLength = length;
 	}
 
 	/**
@@ -266,6 +318,30 @@ public class Record {
 		if (fragmentBytes == null) {
 			throw new IllegalArgumentException("Fragment missing encoded bytes!");
 		}
+		this.fragmentLength = fragmentBytes.length;
+	}
+
+	/**
+	 * Creates an outbound record for a part of the payload of an other
+	 * outbound record.
+	 * 
+	 * Uses the type, epoch, sequence number and write state of the other
+	 * record, but no connection id.
+	 * 
+	 * @param record outbound record
+	 * @param fragment part of the payload of the outbound record
+	 * @throws GeneralSecurityException if the message could not be encrypted
+	 * @see #split(int)
+	 */
+	private Record(Record record, DTLSMessage fragment) throws GeneralSecurityException {
+		this.version = record.version;
+		this.epoch = record.epoch;
+		this.sequenceNumber = record.sequenceNumber;
+		this.receiveNanos = 0;
+		this.outgoingWriteState = record.outgoingWriteState;
+		this.peerAddress = record.peerAddress;
+		setType(record.type);
+		setEncodedFragment(fragment);
 	}
 
 	private Record(ProtocolVersion version, int epoch, long sequenceNumber, long receiveNanos, DTLSSession session, InetSocketAddress peer) {
@@ -298,8 +374,21 @@ public class Record {
 	 * @return a byte array containing the <em>DTLSCiphertext</em> structure
 	 */
 	public byte[] toByteArray() {
-		DatagramWriter writer = new DatagramWriter();
+		ByteBufferDatagramWriter writer = new ByteBufferDatagramWriter(size());
+		writeTo(writer);
+		return writer.toByteArray();
+	}
 
+	/**
+	 * Encodes this record into its corresponding <em>DTLSCiphertext</em>
+	 * structure and writes that to the provided writer.
+	 * 
+	 * @param writer writer to write the <em>DTLSCiphertext</em> structure to.
+	 *            Must have at least {@link #size()} bytes remaining.
+	 * @throws java.nio.BufferOverflowException if the remaining bytes of the
+	 *             writer are not sufficient
+	 */
+	public void writeTo(ByteBufferDatagramWriter writer) {
 		if (useConnectionId()) {
 			writer.write(ContentType.TLS12_CID.getCode(), CONTENT_TYPE_BITS);
 		} else {
@@ -314,14 +403,22 @@ public class Record {
 		if (useConnectionId()) {
 			writer.writeBytes(connectionId.getBytes());
 		}
-		writer.write(fragmentBytes.length, LENGTH_BITS);
-		writer.writeBytes(fragmentBytes);
-
-		return writer.toByteArray();
+		writer.write(fragmentLength, LENGTH_BITS);
+		writer.writeBytes(fragmentBytes, fragmentOffset, fragmentLength);
 	}
 
+	/**
+	 * Gets the size of the <em>DTLSCiphertext</em> structure of this record.
+	 * 
+	 * @return size in bytes, including the record header and connection id,
+	 *         if used.
+	 */
 	public int size() {
-		return RECORD_HEADER_BITS / Byte.SIZE + getFragmentLength();
+		int size = RECORD_HEADER_BITS / Byte.SIZE + getFragmentLength();
+		if (useConnectionId()) {
+			size += connectionId.length();
+		}
+		return size;
 	}
 
 	/**
@@ -337,8 +434,42 @@ public class Record {
 	 * @param receiveNanos uptime nanoseconds of receiving this record
 	 * @return the {@code Record} instances
 	 * @throws NullPointerException if either one of the byte array or peer address is {@code null}
+	 * @see #fromByteArray(byte[], int, int, InetSocketAddress, ConnectionIdGenerator, long)
 	 */
 	public static List<Record> fromByteArray(byte[] byteArray, InetSocketAddress peerAddress, ConnectionIdGenerator cidGenerator, long receiveNanos) {
+		if (byteArray == null) {
+			throw new NullPointerException("Byte array must not be null");
+		}
+		return fromByteArray(byteArray, 0, byteArray.length, peerAddress, cidGenerator, receiveNanos);
+	}
+
+	/**
+	 * Parses a sequence of <em>DTLSCiphertext</em> structures from a range of
+	 * a byte array into {@code Record}> instances.
+	 * 
+	 * The records refer to their fragments as slices of the provided byte
+	 * array, the array is not copied. It must therefore not be changed as long
+	 * as the records are used. This is not a zero-copy receive path: the
+	 * {@link org.eclipse.californium.scandium.DTLSConnector} copies each
+	 * received datagram once, and decrypting a record allocates a new array
+	 * for its plaintext.
+	 * 
+	 * @param byteArray the raw binary representation containing one or more
+	 *            DTLSCiphertext structures
+	 * @param offset offset of the DTLSCiphertext structures in the byte array
+	 * @param length length of the DTLSCiphertext structures
+	 * @param peerAddress the IP address and port of the peer from which the
+	 *            bytes have been received
+	 * @param cidGenerator the connection id generator. May be {@code null}.
+	 * @param receiveNanos uptime nanoseconds of receiving this record
+	 * @return the {@code Record} instances
+	 * @throws NullPointerException if either one of the byte array or peer
+	 *             address is {@code null}
+	 * @throws IndexOutOfBoundsException if the range doesn't fit into the
+	 *             byte array
+	 */
+	public static List<Record> fromByteArray(byte[] byteArray, int offset, int length, InetSocketAddress peerAddress,
+			ConnectionIdGenerator cidGenerator, long receiveNanos) {
 		if (byteArray == null) {
 			throw new NullPointerException("Byte array must not be null");
 		} else if (peerAddress == null) {
@@ -347,7 +478,8 @@ public class Record {
 
 		List<Record> records = new ArrayList<Record>();
 
-		DatagramReader reader = new DatagramReader(byteArray, false);
+		int end = offset + length;
+		DatagramReader reader = new DatagramReader(byteArray, offset, length);
 
 		while (reader.bytesAvailable()) {
 
@@ -385,22 +517,23 @@ public class Record {
 					return records;
 				}
 			}
-			int length = reader.read(LENGTH_BITS);
+			int fragmentLength = reader.read(LENGTH_BITS);
 
-			if (reader.bitsLeft() < (length * Byte.SIZE)) {
+			if (reader.bitsLeft() < (fragmentLength * Byte.SIZE)) {
 				LOGGER.debug("Received truncated DTLS record(s). Discarding ...");
 				return records;
 			}
 
-			// delay decryption/interpretation of fragment
-			byte[] fragmentBytes = reader.readBytes(length);
+			// delay decryption/interpretation and extraction of fragment
+			int fragmentOffset = end - reader.bitsLeft() / Byte.SIZE;
+			reader.skipBytes(fragmentLength);
 
 			ContentType contentType = ContentType.getTypeByValue(type);
 			if (contentType == null) {
 				LOGGER.debug("Received DTLS record of unsupported type [{}]. Discarding ...", type);
 			} else {
-				records.add(new Record(contentType, version, epoch, sequenceNumber, connectionId, fragmentBytes,
-						peerAddress, receiveNanos));
+				records.add(new Record(contentType, version, epoch, sequenceNumber, connectionId, byteArray,
+						fragmentOffset, fragmentLength, peerAddress, receiveNanos));
 			}
 		}
 
@@ -456,22 +589,23 @@ public class Record {
 	}
 
 	/**
-	 * Decrypts a TLSCiphertext.fragment according to the <em>current</em> DTLS connection state.
+	 * Decrypts the TLSCiphertext.fragment of this record according to the
+	 * <em>current</em> DTLS connection state.
 	 * 
-	 * So, potentially no decryption takes place at all.
+	 * So, potentially no decryption takes place at all. AEAD ciphers decrypt
+	 * the fragment directly from the received datagram, all other cases
+	 * extract the fragment first.
 	 * 
-	 * @param ciphertextFragment
-	 *            the TLSCiphertext.fragment to decrypt
 	 * @return the (de-crypted) TLSPlaintext.fragment
 	 * @throws GeneralSecurityException
 	 *             if de-cryption fails, e.g. because the MAC could not be validated.
 	 */
-	private byte[] decryptFragment(byte[] ciphertextFragment) throws GeneralSecurityException {
+	private byte[] decryptFragment() throws GeneralSecurityException {
 		if (epoch == 0) {
-			return ciphertextFragment;
+			return getFragmentBytes();
 		}
 
-		byte[] result = ciphertextFragment;
+		byte[] result = null;
 
 		CipherSuite cipherSuite = incomingReadState.getCipherSuite();
 		LOGGER.trace("Decrypting record fragment using current read state{}{}", StringUtil.lineSeparator(), incomingReadState);
@@ -482,11 +616,11 @@ public class Record {
 			break;
 
 		case AEAD:
-			result = decryptAEAD(ciphertextFragment);
+			result = decryptAEAD(fragmentBytes, fragmentOffset, fragmentLength);
 			break;
 
 		case BLOCK:
-			result = decryptBlockCipher(ciphertextFragment);
+			result = decryptBlockCipher(getFragmentBytes());
 			break;
 
 		case STREAM:
@@ -499,6 +633,9 @@ public class Record {
 			break;
 		}
 
+		if (result == null) {
+			result = getFragmentBytes();
+		}
 		return result;
 	}
 
@@ -625,13 +762,16 @@ public class Record {
 			LOGGER.trace("nonce: {}", StringUtil.byteArray2HexString(nonce));
 			LOGGER.trace("adata: {}", StringUtil.byteArray2HexString(additionalData));
 		}
-		byte[] encryptedFragment = AeadBlockCipher.encrypt(outgoingWriteState.getCipherSuite(), key, nonce, additionalData, byteArray);
+		CipherSuite cipherSuite = outgoingWriteState.getCipherSuite();
+		byte[] encryptedFragment = new byte[explicitNonce.length + byteArray.length + cipherSuite.getMacLength()];
 		/*
 		 * Prepend the explicit nonce as specified in
 		 * http://tools.ietf.org/html/rfc5246#section-6.2.3.3 and
 		 * http://tools.ietf.org/html/draft-mcgrew-tls-aes-ccm-04#section-3
 		 */
-		encryptedFragment = Bytes.concatenate(explicitNonce, encryptedFragment);
+		System.arraycopy(explicitNonce, 0, encryptedFragment, 0, explicitNonce.length);
+		AeadBlockCipher.encrypt(cipherSuite, key, nonce, additionalData, byteArray, 0, byteArray.length,
+				encryptedFragment, explicitNonce.length);
 		LOGGER.trace("==> {} bytes", encryptedFragment.length);
 
 		return encryptedFragment;
@@ -650,7 +790,29 @@ public class Record {
 	protected byte[] decryptAEAD(byte[] byteArray) throws GeneralSecurityException {
 		if (byteArray == null) {
 			throw new NullPointerException("Ciphertext must not be null");
-		} else if (byteArray.length < incomingReadState.getRecordIvLength() + incomingReadState.getMacLength()) {
+		}
+		return decryptAEAD(byteArray, 0, byteArray.length);
+	}
+
+	/**
+	 * Decrypts a range of the given byte array using a AEAD cipher.
+	 * 
+	 * Neither the range nor the explicit nonce are copied into intermediate
+	 * arrays. The plaintext is returned in a new array, the range is not
+	 * decrypted in place.
+	 * 
+	 * @param byteArray byte array containing the ciphertext to be decrypted
+	 * @param offset offset of the ciphertext in the byte array
+	 * @param length length of the ciphertext
+	 * @return the decrypted message
+	 * @throws NullPointerException if the given ciphertext or encryption params is <code>null</code>
+	 * @throws InvalidMacException if message authentication failed
+	 * @throws GeneralSecurityException if de-cryption failed
+	 */
+	protected byte[] decryptAEAD(byte[] byteArray, int offset, int length) throws GeneralSecurityException {
+		if (byteArray == null) {
+			throw new NullPointerException("Ciphertext must not be null");
+		} else if (length < incomingReadState.getRecordIvLength() + incomingReadState.getMacLength()) {
 			throw new GeneralSecurityException("Ciphertext too short!");
 		}
 		CipherSuite cipherSuite = incomingReadState.getCipherSuite();
@@ -666,15 +828,13 @@ public class Record {
 		 * The decrypted message is always 16 bytes shorter than the cipher (8
 		 * for the authentication tag and 8 for the explicit nonce).
 		 */
-		int applicationDataLength = byteArray.length - cipherSuite.getRecordIvLength() - cipherSuite.getMacLength();
+		int recordIvLength = cipherSuite.getRecordIvLength();
+		int applicationDataLength = length - recordIvLength - cipherSuite.getMacLength();
 		byte[] additionalData = generateAdditionalData(applicationDataLength);
 
-		DatagramReader reader = new DatagramReader(byteArray);
-	
-		// retrieve actual explicit nonce as contained in GenericAEADCipher struct (8 bytes long)
-		byte[] explicitNonceUsed = reader.readBytes(cipherSuite.getRecordIvLength());
-
-		byte[] nonce = Bytes.concatenate(iv, explicitNonceUsed);
+		// the actual explicit nonce is contained in GenericAEADCipher struct (8 bytes long)
+		byte[] nonce = Arrays.copyOf(iv, iv.length + recordIvLength);
+		System.arraycopy(byteArray, offset, nonce, iv.length, recordIvLength);
 		if (LOGGER.isTraceEnabled()) {
 			LOGGER.trace("decrypt: {} bytes", applicationDataLength);
 			LOGGER.trace("nonce: {}", StringUtil.byteArray2HexString(nonce));
@@ -684,6 +844,7 @@ public class Record {
 			// create explicit nonce from values provided in DTLS record 
 			byte[] explicitNonce = generateExplicitNonce();
 			// retrieve actual explicit nonce as contained in GenericAEADCipher struct (8 bytes long)
+			byte[] explicitNonceUsed = Arrays.copyOfRange(byteArray, offset, offset + recordIvLength);
 			if ( !Arrays.equals(explicitNonce, explicitNonceUsed)) {
 				StringBuilder b = new StringBuilder("The explicit nonce used by the sender does not match the values provided in the DTLS record");
 				b.append(StringUtil.lineSeparator()).append("Used    : ").append(StringUtil.byteArray2HexString(explicitNonceUsed));
@@ -691,7 +852,8 @@ public class Record {
 				LOGGER.debug(b.toString());
 			}
 		}
-		return AeadBlockCipher.decrypt(cipherSuite, key, nonce, additionalData, reader.readBytesLeft());
+		return AeadBlockCipher.decrypt(cipherSuite, key, nonce, additionalData, byteArray, offset + recordIvLength,
+				length - recordIvLength);
 	}
 
 	// Cryptography Helper Methods ////////////////////////////////////
@@ -707,8 +869,7 @@ public class Record {
 	 */
 	private byte[] generateExplicitNonce() {
 		
-		//TODO: re-factor to use simple byte array manipulation instead of using bit-based DatagramWriter
-		DatagramWriter writer = new DatagramWriter();
+		ByteBufferDatagramWriter writer = new ByteBufferDatagramWriter((EPOCH_BITS + SEQUENCE_NUMBER_BITS) / Byte.SIZE);
 		
 		writer.write(epoch, EPOCH_BITS);
 		writer.writeLong(sequenceNumber, SEQUENCE_NUMBER_BITS);
@@ -740,7 +901,12 @@ public class Record {
 	 * @return the additional authentication data.
 	 */
 	private byte[] generateAdditionalData(int length) {
-		DatagramWriter writer = new DatagramWriter();
+		int size = (EPOCH_BITS + SEQUENCE_NUMBER_BITS + CONTENT_TYPE_BITS + VERSION_BITS + VERSION_BITS
+				+ LENGTH_BITS) / Byte.SIZE;
+		if (useConnectionId()) {
+			size += connectionId.length() + CID_LENGTH_BITS / Byte.SIZE;
+		}
+		ByteBufferDatagramWriter writer = new ByteBufferDatagramWriter(size);
 		
 		writer.write(epoch, EPOCH_BITS);
 		writer.writeLong(sequenceNumber, SEQUENCE_NUMBER_BITS);
@@ -772,10 +938,10 @@ public class Record {
 	 *         {@code false} otherwise.
 	 */
 	public boolean isNewClientHello() {
-		if (0 < epoch || type != ContentType.HANDSHAKE || 0 == fragmentBytes.length) {
+		if (0 < epoch || type != ContentType.HANDSHAKE || 0 == fragmentLength) {
 			return false;
 		}
-		HandshakeType handshakeType = HandshakeType.getTypeByCode(fragmentBytes[0]);
+		HandshakeType handshakeType = HandshakeType.getTypeByCode(fragmentBytes[fragmentOffset]);
 		return handshakeType == HandshakeType.CLIENT_HELLO;
 	}
 
@@ -835,6 +1001,50 @@ public class Record {
 		}
 	}
 
+	/**
+	 * Splits the handshake message of this outbound record into records with
+	 * fragments of the provided maximum length.
+	 * 
+	 * The records use the same epoch and sequence number as this record.
+	 * Therefore {@link #updateSequenceNumber(long)} must be called before
+	 * they are sent.
+	 * 
+	 * @param maxFragmentLength maximum length of the handshake message
+	 *            fragments
+	 * @return list of records, or {@code null}, if this record doesn't
+	 *         contain a handshake message, uses a connection id, or the
+	 *         handshake message is not larger than the provided length.
+	 * @throws GeneralSecurityException if the fragments could not be encrypted
+	 * @throws IllegalArgumentException if maxFragmentLength is less than
+	 *             {@code 1}.
+	 */
+	List<Record> split(int maxFragmentLength) throws GeneralSecurityException {
+		if (maxFragmentLength < 1) {
+			throw new IllegalArgumentException("max. fragment length " + maxFragmentLength + " must be at least 1!");
+		}
+		if (type != ContentType.HANDSHAKE || useConnectionId() || !(fragment instanceof HandshakeMessage)
+				|| outgoingWriteState == null) {
+			return null;
+		}
+		HandshakeMessage message = (HandshakeMessage) fragment;
+		int length = message.getFragmentLength();
+		if (length <= maxFragmentLength) {
+			return null;
+		}
+		byte[] messageBytes = message.fragmentToByteArray();
+		int messageOffset = message.getFragmentOffset();
+		List<Record> records = new ArrayList<Record>();
+		for (int offset = 0; offset < length; offset += maxFragmentLength) {
+			int fragmentLength = Math.min(maxFragmentLength, length - offset);
+			byte[] fragmentBytes = Arrays.copyOfRange(messageBytes, offset, offset + fragmentLength);
+			FragmentedHandshakeMessage fragmentedMessage = new FragmentedHandshakeMessage(message.getMessageType(),
+					message.getMessageLength(), message.getMessageSeq(), messageOffset + offset, fragmentBytes,
+					peerAddress);
+			records.add(new Record(this, fragmentedMessage));
+		}
+		return records;
+	}
+
 	/**
 	 * Gets the length of the fragment contained in this record in bytes.
 	 * <p>
@@ -845,7 +1055,7 @@ public class Record {
 	 * @return the fragment length excluding record headers
 	 */
 	public int getFragmentLength() {
-		return fragmentBytes.length;
+		return fragmentLength;
 	}
 
 	/**
@@ -924,9 +1134,16 @@ public class Record {
 	/**
 	 * Get fragment payload as byte array.
 	 * 
+	 * For received records, the fragment is copied from the received datagram
+	 * on the first call.
+	 * 
 	 * @return fragments byte array.
 	 */
 	public byte[] getFragmentBytes() {
+		if (fragmentOffset != 0 || fragmentLength != fragmentBytes.length) {
+			fragmentBytes = Arrays.copyOfRange(fragmentBytes, fragmentOffset, fragmentOffset + fragmentLength);
+			fragmentOffset = 0;
+		}
 		return fragmentBytes;
 	}
 
@@ -966,7 +1183,7 @@ public class Record {
 			throws GeneralSecurityException, HandshakeException {
 		ContentType actualType = type;
 		// decide, which type of fragment need de-cryption
-		byte[] decryptedMessage = decryptFragment(fragmentBytes);
+		byte[] decryptedMessage = decryptFragment();
 
 		if (ContentType.TLS12_CID == type) {
 			int index = decryptedMessage.length - 1;
@@ -1059,6 +1276,8 @@ public class Record {
 			byteArray[index] = (byte) type.getCode();
 		}
 		this.fragmentBytes = encryptFragment(byteArray);
+		this.fragmentOffset = 0;
+		this.fragmentLength = fragmentBytes.length;
 		this.fragment = fragment;
 	}
 
@@ -1106,7 +1325,7 @@ public class Record {
 		if (connectionId != null) {
 			sb.append(StringUtil.lineSeparator()).append("connection id: ").append(connectionId.getAsString());
 		}
-		sb.append(StringUtil.lineSeparator()).append("Length: ").append(fragmentBytes.length);
+		sb.append(StringUtil.lineSeparator()).append("Length: ").append(fragmentLength);
 		sb.append(StringUtil.lineSeparator()).append("Fragment:");
 		if (fragment != null) {
 			sb.append(StringUtil.lineSeparator()).append(fragment);
@@ -34,6 +34,7 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - adjust dtls flight number
  *                                                    for short resumption
  *    Achim Kraus (Bosch Software Innovations GmbH) - redesign DTLSFlight and RecordLayer
+ *    Bosch Software Innovations GmbH - use configured supported groups.
 ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
@@ -220,7 +221,7 @@ public class ResumingClientHandshaker extends ClientHandshaker {
 	@Override
 	public void startHandshake() throws HandshakeException {
 		handshakeStarted();
-		ClientHello message = new ClientHello(new ProtocolVersion(), session,
+		ClientHello message = new ClientHello(new ProtocolVersion(), session, supportedGroups,
 				supportedClientCertificateTypes, supportedServerCertificateTypes);
 
 		clientRandom = message.getRandom();
@@ -51,6 +51,10 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - add preSharedKeyIdentity to
  *                                                    support creating statistics.
  *    Achim Kraus (Bosch Software Innovations GmbH) - redesign DTLSFlight and RecordLayer
+ *    Bosch Software Innovations GmbH - use ECDHE key pair pool.
+ *    Bosch Software Innovations GmbH - use configured supported groups.
+ *    Bosch Software Innovations GmbH - establish the session before sending
+ *                                      the last flight
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
@@ -122,6 +126,9 @@ public class ServerHandshaker extends Handshaker {
 	 */
 	private final List<CertificateType> supportedServerCertificateTypes;
 
+	/** the supported groups ordered by preference */
+	private final List<SupportedGroup> supportedGroups;
+
 	private CertificateType negotiatedClientCertificateType;
 	private CertificateType negotiatedServerCertificateType;
 	private SupportedGroup negotiatedSupportedGroup;
@@ -173,6 +180,7 @@ public class ServerHandshaker extends Handshaker {
 		super(false, initialMessageSequenceNo, session, recordLayer, connection, config, maxTransmissionUnit);
 
 		this.supportedCipherSuites = config.getSupportedCipherSuites();
+		this.supportedGroups = config.getSupportedGroups();
 
 		this.clientAuthenticationWanted = config.isClientAuthenticationWanted();
 		this.clientAuthenticationRequired = config.isClientAuthenticationRequired();
@@ -363,8 +371,10 @@ public class ServerHandshaker extends Handshaker {
 		mdWithClientFinished.update(message.toByteArray());
 		Finished finished = new Finished(session.getCipherSuite().getThreadLocalPseudoRandomFunctionMac(), session.getMasterSecret(), isClient, mdWithClientFinished.digest(), session.getPeer());
 		wrapMessage(flight, finished);
-		sendLastFlight(flight);
+		// make the session available for resumption before the client
+		// receives the last flight
 		sessionEstablished();
+		sendLastFlight(flight);
 	}
 
 	/**
@@ -474,7 +484,7 @@ public class ServerHandshaker extends Handshaker {
 			// TODO SHA256withECDSA is default but should be configurable
 			signatureAndHashAlgorithm = new SignatureAndHashAlgorithm(SignatureAndHashAlgorithm.HashAlgorithm.SHA256, SignatureAndHashAlgorithm.SignatureAlgorithm.ECDSA);
 			try {
-				ecdhe = new ECDHECryptography(negotiatedSupportedGroup.getEcParams());
+				ecdhe = ECDHECryptography.fromKeyPairPool(ecdheKeyPairPool, negotiatedSupportedGroup);
 				serverKeyExchange = new ECDHServerKeyExchange(signatureAndHashAlgorithm, ecdhe, privateKey, clientRandom, serverRandom,
 						negotiatedSupportedGroup.getId(), session.getPeer());
 				break;
@@ -497,7 +507,7 @@ public class ServerHandshaker extends Handshaker {
 		case ECDHE_PSK:
 			
 			try {
-				ecdhe = new ECDHECryptography(negotiatedSupportedGroup.getEcParams());
+				ecdhe = ECDHECryptography.fromKeyPairPool(ecdheKeyPairPool, negotiatedSupportedGroup);
 				serverKeyExchange = new EcdhPskServerKeyExchange(PskPublicInformation.EMPTY, ecdhe, clientRandom, serverRandom,
 						negotiatedSupportedGroup.getId(), session.getPeer());
 				break;
@@ -760,9 +770,9 @@ public class ServerHandshaker extends Handshaker {
 	 *            preferred elliptic curves
 	 * @return the selected curve or {@code null} if server and client have no curves in common
 	 */
-	private static SupportedGroup negotiateNamedCurve(ClientHello clientHello) {
+	private SupportedGroup negotiateNamedCurve(ClientHello clientHello) {
 		SupportedGroup result = null;
-		List<SupportedGroup> preferredGroups = SupportedGroup.getPreferredGroups();
+		List<SupportedGroup> preferredGroups = supportedGroups;
 		SupportedEllipticCurvesExtension extension = clientHello.getSupportedEllipticCurvesExtension();
 		if (extension == null) {
 			// according to RFC 4492, section 4 (https://tools.ietf.org/html/rfc4492#section-4)
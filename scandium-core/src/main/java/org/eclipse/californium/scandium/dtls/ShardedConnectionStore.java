@@ -0,0 +1,712 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.scandium.dtls;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.californium.elements.util.ConcurrentLeastRecentlyUsedCache;
+import org.eclipse.californium.elements.util.LeastRecentlyUsedCache;
+import org.eclipse.californium.elements.util.SerialExecutor;
+import org.eclipse.californium.elements.util.StripedExecutor;
+import org.eclipse.californium.scandium.ConnectionListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in-memory <code>ResumptionSupportingConnectionStore</code>, which is
+ * partitioned into shards to avoid a global monitor.
+ * <p>
+ * The connections are assigned to the shards by the hash of their connection
+ * id. Each shard uses its own {@link ConcurrentLeastRecentlyUsedCache} with
+ * a part of the overall capacity and the connection expiration threshold, so
+ * eviction of stale connections is done per shard. Modifications of the
+ * connections of a shard are serialized by the monitor of that shard, but
+ * never hold more than one shard monitor. The lookups by address and
+ * session id use two <code>java.util.concurrent.ConcurrentHashMap</code>
+ * shared by all shards.
+ * </p>
+ * <p>
+ * Storing and reading to/from the store is thread safe. Reading doesn't
+ * block.
+ * </p>
+ * <p>
+ * Note: because the capacity is split into the shards, a connection with a
+ * provided connection id may be rejected, though other shards have remaining
+ * capacity. If the store creates the connection id, it tries other shards
+ * before rejecting the connection.
+ * </p>
+ */
+public class ShardedConnectionStore implements ResumptionSupportingConnectionStore {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ShardedConnectionStore.class.getName());
+	private static final int DEFAULT_EXTRA_CID_LENGTH = 2; // extra cid bytes additionally to required bytes for the capacity.
+	private static final int CONNECTION_ID_ATTEMPTS = 10;
+	private final SessionCache sessionCache;
+	private final Shard[] shards;
+	private final int capacity;
+	protected final ConcurrentMap<InetSocketAddress, Connection> connectionsByAddress;
+	protected final ConcurrentMap<SessionId, Connection> connectionsByEstablishedSession;
+
+	private volatile ConnectionListener connectionListener;
+	/**
+	 * Connection id generator.
+	 *
+	 * @see #attach(ConnectionIdGenerator)
+	 */
+	private ConnectionIdGenerator connectionIdGenerator;
+
+	protected volatile String tag = "";
+
+	/**
+	 * Creates a store based on given configuration parameters.
+	 *
+	 * @param capacity the maximum number of connections the store can manage.
+	 *            The capacity is split equally into the shards.
+	 * @param threshold the period of time of inactivity (in seconds) after
+	 *            which a connection is considered stale and can be evicted from
+	 *            the store if a new connection is to be added to the store
+	 * @param shards number of shards
+	 * @param sessionCache a second level cache to use for <em>current</em>
+	 *            connection state of established DTLS sessions. If implements
+	 *            {@link ClientSessionCache}, restore connection from the cache
+	 *            and mark them to resume.
+	 * @throws IllegalArgumentException if the number of shards is less than
+	 *             1, or larger than the capacity.
+	 */
+	public ShardedConnectionStore(int capacity, long threshold, int shards, SessionCache sessionCache) {
+		if (shards < 1) {
+			throw new IllegalArgumentException("Shards " + shards + " must be at least 1!");
+		}
+		if (capacity < shards) {
+			throw new IllegalArgumentException("Capacity " + capacity + " must not be less than shards " + shards + "!");
+		}
+		this.capacity = capacity;
+		this.shards = new Shard[shards];
+		this.connectionsByEstablishedSession = new ConcurrentHashMap<>();
+		this.connectionsByAddress = new ConcurrentHashMap<>();
+		this.sessionCache = sessionCache;
+		int shardCapacity = (capacity + shards - 1) / shards;
+		for (int index = 0; index < shards; ++index) {
+			this.shards[index] = new Shard(shardCapacity, threshold);
+		}
+		LOG.info("Created new ShardedConnectionStore [capacity: {}, shards: {}, connection expiration threshold: {}s]",
+				capacity, shards, threshold);
+	}
+
+	/**
+	 * Set tag for logging outputs.
+	 *
+	 * @param tag tag for logging
+	 * @return this connection store for calls chaining
+	 */
+	public ShardedConnectionStore setTag(final String tag) {
+		if (tag.isEmpty() || tag.endsWith(" ")) {
+			this.tag = tag;
+		} else {
+			this.tag = tag + " ";
+		}
+		return this;
+	}
+
+	/**
+	 * Get the shard for the provided connection id.
+	 *
+	 * @param cid connection id
+	 * @return shard for the connection id
+	 */
+	private Shard getShard(final ConnectionId cid) {
+		return shards[StripedExecutor.getStripeIndex(cid, shards.length)];
+	}
+
+	/**
+	 * Creates a new unused connection id.
+	 *
+	 * @return connection id, or {@code null}, if no free connection id could
+	 *         created
+	 * @see ConnectionIdGenerator
+	 */
+	private ConnectionId newConnectionId() {
+		for (int i = 0; i < CONNECTION_ID_ATTEMPTS; ++i) {
+			ConnectionId cid = connectionIdGenerator.createConnectionId();
+			if (getShard(cid).connections.get(cid) == null) {
+				return cid;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void setConnectionListener(ConnectionListener listener) {
+		this.connectionListener = listener;
+	}
+
+	@Override
+	public void attach(ConnectionIdGenerator connectionIdGenerator) {
+		if (this.connectionIdGenerator != null) {
+			throw new IllegalStateException("Connection id generator already attached!");
+		}
+		if (connectionIdGenerator == null || !connectionIdGenerator.useConnectionId()) {
+			int bits = Integer.SIZE - Integer.numberOfLeadingZeros(capacity);
+			int cidLength = ((bits + 7) / 8) + DEFAULT_EXTRA_CID_LENGTH;
+			this.connectionIdGenerator = new SingleNodeConnectionIdGenerator(cidLength);
+		} else {
+			this.connectionIdGenerator = connectionIdGenerator;
+		}
+		if (sessionCache instanceof ClientSessionCache) {
+			ClientSessionCache clientCache = (ClientSessionCache) sessionCache;
+			LOG.debug("resume client sessions {}", clientCache);
+			for (InetSocketAddress peer : clientCache) {
+				SessionId id = clientCache.getSessionIdentity(peer);
+				if (id != null) {
+					// restore connection, the session ticket is fetched on demand
+					Connection connection = new Connection(clientCache, id, peer);
+					ConnectionId connectionId = newConnectionId();
+					if (connectionId != null && getShard(connectionId).connections.put(connectionId, connection)) {
+						connection.setConnectionId(connectionId);
+						connectionsByAddress.put(peer, connection);
+						LOG.debug("{}resume {} {}", tag, peer, id);
+					} else {
+						LOG.info("{}drop session {} {}, could not allocated cid!", tag, peer, id);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * A connection can be successfully added to the store if any of the
+	 * following conditions is met:
+	 * <ul>
+	 * <li>The remaining capacity of the connection's shard is greater than
+	 * zero.</li>
+	 * <li>The connection's shard contains at least one <em>stale</em>
+	 * connection, i.e. a connection that has not been accessed for at least
+	 * the store's <em> connection expiration threshold</em> period. In such a
+	 * case the least- recently accessed stale connection of that shard gets
+	 * evicted to make place for the new connection to be added.</li>
+	 * </ul>
+	 * If the connection has no connection id, the store creates one and tries
+	 * other shards, if the first shard is full.
+	 */
+	@Override
+	public boolean put(final Connection connection) {
+
+		if (connection != null) {
+			if (!connection.isExecuting()) {
+				throw new IllegalStateException("Connection is not executing!");
+			}
+			ConnectionId connectionId = connection.getConnectionId();
+			boolean added;
+			if (connectionId == null) {
+				if (connectionIdGenerator == null) {
+					throw new IllegalStateException("Connection id generator must be attached before!");
+				}
+				added = false;
+				for (int attempt = 0; attempt < shards.length && attempt < CONNECTION_ID_ATTEMPTS && !added; ++attempt) {
+					connectionId = newConnectionId();
+					if (connectionId == null) {
+						throw new IllegalStateException("Connection ids exhausted!");
+					}
+					Shard shard = getShard(connectionId);
+					synchronized (shard) {
+						if (shard.connections.get(connectionId) == null) {
+							connection.setConnectionId(connectionId);
+							added = shard.add(connectionId, connection);
+							if (!added) {
+								connection.setConnectionId(null);
+							}
+						}
+					}
+				}
+			} else if (connectionId.isEmpty()) {
+				throw new IllegalStateException("Connection must have a none empty connection id!");
+			} else {
+				Shard shard = getShard(connectionId);
+				synchronized (shard) {
+					if (shard.connections.get(connectionId) != null) {
+						throw new IllegalStateException("Connection id already used! " + connectionId);
+					}
+					added = shard.add(connectionId, connection);
+				}
+			}
+			if (added) {
+				// outside of the shard's monitor, may remove connections
+				// of other shards
+				addToAddressConnections(connection);
+				DTLSSession session = connection.getEstablishedSession();
+				if (session != null) {
+					putEstablishedSession(session, connection);
+				}
+				return true;
+			} else {
+				LOG.info("{}connection store is full! {} max. entries.", tag, capacity);
+				return false;
+			}
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public boolean update(final Connection connection, InetSocketAddress newPeerAddress) {
+		if (connection == null) {
+			return false;
+		}
+		ConnectionId connectionId = connection.getConnectionId();
+		Shard shard = getShard(connectionId);
+		boolean addAddress = false;
+		synchronized (shard) {
+			if (!shard.connections.update(connectionId)) {
+				LOG.debug("{}connection: {} - {} update failed!", tag, connectionId, newPeerAddress);
+				return false;
+			}
+			if (newPeerAddress == null) {
+				LOG.debug("{}connection: {} updated usage!", tag, connectionId);
+			} else if (!connection.equalsPeerAddress(newPeerAddress)) {
+				InetSocketAddress oldPeerAddress = connection.getPeerAddress();
+				LOG.debug("{}connection: {} updated, address changed from {} to {}!", tag, connectionId,
+						oldPeerAddress, newPeerAddress);
+				if (oldPeerAddress != null) {
+					connectionsByAddress.remove(oldPeerAddress, connection);
+					connection.updatePeerAddress(null);
+				}
+				connection.updatePeerAddress(newPeerAddress);
+				addAddress = true;
+			}
+		}
+		if (addAddress) {
+			addToAddressConnections(connection);
+		}
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Must not be called holding the monitor of a shard, because a previous
+	 * connection with the same session id, which may be in an other shard,
+	 * is removed.
+	 * </p>
+	 */
+	@Override
+	public void putEstablishedSession(final DTLSSession session, final Connection connection) {
+		ConnectionListener listener = connectionListener;
+		if (listener != null) {
+			listener.onConnectionEstablished(connection);
+		}
+		SessionId sessionId = session.getSessionIdentifier();
+		if (!sessionId.isEmpty()) {
+			if (sessionCache != null) {
+				sessionCache.put(session);
+			}
+			final Connection previous = connectionsByEstablishedSession.put(sessionId, connection);
+			if (previous != null && previous != connection) {
+				Runnable removePreviousConnection = new Runnable() {
+
+					@Override
+					public void run() {
+						remove(previous, false);
+					}
+				};
+				if (previous.isExecuting()) {
+					previous.getExecutor().execute(removePreviousConnection);
+				} else {
+					removePreviousConnection.run();
+				}
+			}
+		}
+	}
+
+	@Override
+	public void removeFromEstablishedSessions(final DTLSSession session, final Connection connection) {
+		SessionId sessionId = session.getSessionIdentifier();
+		if (!sessionId.isEmpty()) {
+			connectionsByEstablishedSession.remove(sessionId, connection);
+		}
+	}
+
+	@Override
+	public Connection find(final SessionId id) {
+
+		if (id == null || id.isEmpty()) {
+			return null;
+		} else {
+			Connection conFromLocalCache = findLocally(id);
+
+			if (sessionCache == null) {
+
+				return conFromLocalCache;
+
+			} else {
+
+				// make sure a stale session cannot be resumed
+				SessionTicket ticket = sessionCache.get(id);
+				if (ticket == null) {
+					// either a session with the given ID has never been established (on other nodes)
+					// or another node has removed the session from the cache, e.g. because it became
+					// stale
+
+					if (conFromLocalCache != null) {
+						// remove corresponding connection from this store
+						remove(conFromLocalCache, false);
+					}
+
+					return null;
+
+				} else if (conFromLocalCache == null) {
+					// this probably means that we are taking over the session from a failed node
+					return new Connection(ticket, id, null);
+					// connection will be put to first level cache as part of
+					// the abbreviated handshake
+				} else {
+					// resume connection found in local cache (i.e. this store)
+					return conFromLocalCache;
+				}
+			}
+		}
+	}
+
+	private Connection findLocally(final SessionId id) {
+		Connection connection = connectionsByEstablishedSession.get(id);
+		if (connection != null) {
+			DTLSSession establishedSession = connection.getEstablishedSession();
+			if (establishedSession != null) {
+				if (!establishedSession.getSessionIdentifier().equals(id)) {
+					LOG.warn("{}connection {} changed session {}!={}!", tag, connection.getConnectionId(), id,
+							establishedSession.getSessionIdentifier());
+				}
+			} else {
+				LOG.warn("{}connection {} lost session {}!", tag, connection.getConnectionId(), id);
+			}
+			ConnectionId connectionId = connection.getConnectionId();
+			getShard(connectionId).connections.update(connectionId);
+		}
+		return connection;
+	}
+
+	@Override
+	public void markAllAsResumptionRequired() {
+		for (Shard shard : shards) {
+			for (Connection connection : shard.connections.values()) {
+				if (connection.getPeerAddress() != null && !connection.isResumptionRequired()) {
+					connection.setResumptionRequired(true);
+					LOG.debug("{}connection: mark for resumption {}!", tag, connection);
+				}
+			}
+		}
+	}
+
+	@Override
+	public int remainingCapacity() {
+		int size = 0;
+		int remaining = 0;
+		for (Shard shard : shards) {
+			size += shard.connections.size();
+			remaining += shard.connections.remainingCapacity();
+		}
+		LOG.debug("{}connection: size {}, remaining {}!", tag, size, remaining);
+		return remaining;
+	}
+
+	@Override
+	public Connection get(final InetSocketAddress peerAddress) {
+		Connection connection = connectionsByAddress.get(peerAddress);
+		if (connection == null) {
+			LOG.debug("{}connection: missing connection for {}!", tag, peerAddress);
+		} else {
+			InetSocketAddress address = connection.getPeerAddress();
+			if (address == null) {
+				LOG.warn("{}connection {} lost ip-address {}!", tag, connection.getConnectionId(), peerAddress);
+			} else if (!address.equals(peerAddress)) {
+				LOG.warn("{}connection {} changed ip-address {}!={}!", tag, connection.getConnectionId(), peerAddress, address);
+			}
+		}
+		return connection;
+	}
+
+	@Override
+	public Connection get(final ConnectionId cid) {
+		Connection connection = getShard(cid).connections.get(cid);
+		if (connection == null) {
+			LOG.debug("{}connection: missing connection for {}!", tag, cid);
+		} else {
+			ConnectionId connectionId = connection.getConnectionId();
+			if (connectionId == null) {
+				LOG.warn("{}connection lost cid {}!", tag,  cid);
+			} else if (!connectionId.equals(cid)) {
+				LOG.warn("{}connection changed cid {}!={}!", tag, connectionId, cid);
+			}
+		}
+		return connection;
+	}
+
+	@Override
+	public boolean remove(final Connection connection) {
+		return remove(connection, true);
+	}
+
+	@Override
+	public boolean remove(final Connection connection, final boolean removeFromSessionCache) {
+		ConnectionId connectionId = connection.getConnectionId();
+		Shard shard = getShard(connectionId);
+		synchronized (shard) {
+			boolean removed = shard.connections.remove(connectionId, connection) == connection;
+			if (removed) {
+				SerialExecutor executor = connection.getExecutor();
+				List<Runnable> pendings = executor == null ? Collections.<Runnable>emptyList() : executor.shutdownNow();
+				if (LOG.isTraceEnabled()) {
+					LOG.trace("{}connection: remove {} (shard size {}, left jobs: {})", tag, connection,
+							shard.connections.size(), pendings.size(), new Throwable("connection removed!"));
+				} else if (pendings.isEmpty()) {
+					LOG.debug("{}connection: remove {} (shard size {})", tag, connection, shard.connections.size());
+				} else {
+					LOG.debug("{}connection: remove {} (shard size {}, left jobs: {})", tag, connection,
+							shard.connections.size(), pendings.size());
+				}
+				removeFromEstablishedSessions(connection);
+				removeFromAddressConnections(connection);
+				releaseConnectionStates(connection);
+				if (removeFromSessionCache) {
+					removeSessionFromCache(connection);
+				}
+				ConnectionListener listener = connectionListener;
+				if (listener != null) {
+					listener.onConnectionRemoved(connection);
+				}
+			}
+			return removed;
+		}
+	}
+
+	/**
+	 * Release the connection states of the established session of the
+	 * connection.
+	 * 
+	 * @param connection removed connection
+	 */
+	private static void releaseConnectionStates(Connection connection) {
+		DTLSSession establishedSession = connection.getEstablishedSession();
+		if (establishedSession != null) {
+			establishedSession.releaseConnectionStates();
+		}
+	}
+
+	private void removeFromEstablishedSessions(Connection connection) {
+		DTLSSession establishedSession = connection.getEstablishedSession();
+		if (establishedSession != null) {
+			SessionId sessionId = establishedSession.getSessionIdentifier();
+			connectionsByEstablishedSession.remove(sessionId, connection);
+		}
+	}
+
+	private void removeFromAddressConnections(Connection connection) {
+		InetSocketAddress peerAddress = connection.getPeerAddress();
+		if (peerAddress != null) {
+			connectionsByAddress.remove(peerAddress, connection);
+			connection.updatePeerAddress(null);
+		}
+	}
+
+	private void removeSessionFromCache(final Connection connection) {
+		if (sessionCache != null) {
+			DTLSSession establishedSession = connection.getEstablishedSession();
+			if (establishedSession != null) {
+				SessionId sessionId = establishedSession.getSessionIdentifier();
+				sessionCache.remove(sessionId);
+			}
+		}
+	}
+
+	private void addToAddressConnections(Connection connection) {
+		final InetSocketAddress peerAddress = connection.getPeerAddress();
+		if (peerAddress != null) {
+			final Connection previous = connectionsByAddress.put(peerAddress, connection);
+			if (previous != null && previous != connection) {
+				Runnable removeAddress = new Runnable() {
+
+					@Override
+					public void run() {
+						if (previous.equalsPeerAddress(peerAddress)) {
+							previous.updatePeerAddress(null);
+						}
+					}
+				};
+				LOG.debug("{}connection: {} - {} added! {} removed from address.", tag, connection.getConnectionId(),
+						peerAddress, previous.getConnectionId());
+				if (previous.isExecuting()) {
+					previous.getExecutor().execute(removeAddress);
+				} else {
+					removeAddress.run();
+				}
+			} else {
+				LOG.debug("{}connection: {} - {} added!", tag, connection.getConnectionId(), peerAddress);
+			}
+		} else {
+			LOG.debug("{}connection: {} - missing address!", tag, connection.getConnectionId());
+		}
+	}
+
+	@Override
+	public final void clear() {
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				for (Connection connection : shard.connections.values()) {
+					SerialExecutor executor = connection.getExecutor();
+					if (executor != null) {
+						executor.shutdownNow();
+					}
+				}
+				shard.connections.clear();
+			}
+		}
+		connectionsByEstablishedSession.clear();
+		connectionsByAddress.clear();
+	}
+
+	@Override
+	public final void stop(List<Runnable> pending) {
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				for (Connection connection : shard.connections.values()) {
+					SerialExecutor executor = connection.getExecutor();
+					if (executor != null) {
+						executor.shutdownNow(pending);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Iterates the shards one after the other.
+	 *
+	 * @see ConcurrentLeastRecentlyUsedCache#valuesIterator()
+	 */
+	@Override
+	public Iterator<Connection> iterator() {
+		return new Iterator<Connection>() {
+
+			private int index;
+			private Iterator<Connection> current = shards[0].connections.valuesIterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!current.hasNext()) {
+					if (++index >= shards.length) {
+						return false;
+					}
+					current = shards[index].connections.valuesIterator();
+				}
+				return true;
+			}
+
+			@Override
+			public Connection next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return current.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Shard of the connection store.
+	 *
+	 * The monitor of the shard is used to serialize modifications of the
+	 * connections of this shard.
+	 */
+	private final class Shard {
+
+		private final ConcurrentLeastRecentlyUsedCache<ConnectionId, Connection> connections;
+
+		private Shard(int capacity, long threshold) {
+			this.connections = new ConcurrentLeastRecentlyUsedCache<>(capacity, threshold);
+			this.connections.setEvictingOnReadAccess(false);
+			this.connections.setUpdatingOnReadAccess(false);
+			// make sure that stale (evicted) connections are removed from the
+			// address and session maps and from the second level cache
+			this.connections.addEvictionListener(new LeastRecentlyUsedCache.EvictionListener<Connection>() {
+
+				@Override
+				public void onEviction(final Connection staleConnection) {
+					Runnable remove = new Runnable() {
+
+						@Override
+						public void run() {
+							Handshaker handshaker = staleConnection.getOngoingHandshake();
+							if (handshaker != null) {
+								handshaker.handshakeFailed(new RuntimeException("Evicted!"));
+							}
+							synchronized (Shard.this) {
+								removeFromAddressConnections(staleConnection);
+								removeFromEstablishedSessions(staleConnection);
+								releaseConnectionStates(staleConnection);
+								removeSessionFromCache(staleConnection);
+								ConnectionListener listener = connectionListener;
+								if (listener != null) {
+									listener.onConnectionRemoved(staleConnection);
+								}
+							}
+						}
+					};
+					if (staleConnection.isExecuting()) {
+						staleConnection.getExecutor().execute(remove);
+					} else {
+						remove.run();
+					}
+				}
+			});
+		}
+
+		/**
+		 * Add connection to this shard.
+		 *
+		 * Must be called holding the monitor of this shard.
+		 *
+		 * @param connectionId connection id of the connection
+		 * @param connection connection to add
+		 * @return {@code true}, if added, {@code false}, if the shard is full.
+		 */
+		private boolean add(ConnectionId connectionId, Connection connection) {
+			if (connections.put(connectionId, connection)) {
+				if (LOG.isTraceEnabled()) {
+					LOG.trace("{}connection: add {} (shard size {})", tag, connection, connections.size(),
+							new Throwable("connection added!"));
+				} else {
+					LOG.debug("{}connection: add {} (shard size {})", tag, connectionId, connections.size());
+				}
+				return true;
+			}
+			return false;
+		}
+	}
+}
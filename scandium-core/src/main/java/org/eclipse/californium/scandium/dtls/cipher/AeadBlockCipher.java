@@ -12,6 +12,8 @@
  * 
  * Contributors:
  *    Bosch Software Innovations - initial creation
+ *    Bosch Software Innovations GmbH - decrypt range of byte array
+ *    Bosch Software Innovations GmbH - encrypt into provided buffer
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls.cipher;
 
@@ -77,10 +79,34 @@ public class AeadBlockCipher {
 	 */
 	public final static byte[] decrypt(CipherSuite suite, SecretKey key, byte[] nonce, byte[] a, byte[] c)
 			throws GeneralSecurityException {
+		return decrypt(suite, key, nonce, a, c, 0, c.length);
+	}
+
+	/**
+	 * Decrypt a range of a byte array with AEAD cipher.
+	 * 
+	 * The range is not copied, but the decrypted message is returned in a new
+	 * array. The decryption is not done in place.
+	 * 
+	 * @param suite the cipher suite
+	 * @param key the encryption key K.
+	 * @param nonce the nonce N.
+	 * @param a the additional authenticated data a.
+	 * @param c byte array containing the encrypted and authenticated message c.
+	 * @param cOffset offset of the message c in the byte array
+	 * @param cLength length of the message c
+	 * @return the decrypted message
+	 * 
+	 * @throws GeneralSecurityException if the message could not be de-crypted,
+	 *             e.g. because the ciphertext's block size is not correct
+	 * @throws InvalidMacException if the message could not be authenticated
+	 */
+	public final static byte[] decrypt(CipherSuite suite, SecretKey key, byte[] nonce, byte[] a, byte[] c,
+			int cOffset, int cLength) throws GeneralSecurityException {
 		if (AES_CCM.equals(suite.getTransformation())) {
-			return CCMBlockCipher.decrypt(key, nonce, a, c, suite.getMacLength());
+			return CCMBlockCipher.decrypt(key, nonce, a, c, cOffset, cLength, suite.getMacLength());
 		} else {
-			return jreDecrypt(suite, key, nonce, a, c);
+			return jreDecrypt(suite, key, nonce, a, c, cOffset, cLength);
 		}
 	}
 
@@ -105,6 +131,34 @@ public class AeadBlockCipher {
 		}
 	}
 
+	/**
+	 * Encrypt a range of a byte array with AEAD cipher into the provided
+	 * output buffer.
+	 * 
+	 * @param suite the cipher suite
+	 * @param key the encryption key K.
+	 * @param nonce the nonce N.
+	 * @param a the additional authenticated data a.
+	 * @param m byte array containing the message to authenticate and encrypt.
+	 * @param mOffset offset of the message in the byte array
+	 * @param mLength length of the message
+	 * @param out output buffer for the encrypted and authenticated message.
+	 *            Requires {@code mLength + suite.getMacLength()} bytes
+	 *            starting at outOffset.
+	 * @param outOffset offset in output buffer
+	 * @return length of the encrypted and authenticated message.
+	 * @throws GeneralSecurityException if the data could not be encrypted, e.g.
+	 *             because the JVM does not support the AES cipher algorithm
+	 */
+	public final static int encrypt(CipherSuite suite, SecretKey key, byte[] nonce, byte[] a, byte[] m, int mOffset,
+			int mLength, byte[] out, int outOffset) throws GeneralSecurityException {
+		if (AES_CCM.equals(suite.getTransformation())) {
+			return CCMBlockCipher.encrypt(key, nonce, a, m, mOffset, mLength, out, outOffset, suite.getMacLength());
+		} else {
+			return jreEncrypt(suite, key, nonce, a, m, mOffset, mLength, out, outOffset);
+		}
+	}
+
 	/**
 	 * Decrypt with jre AEAD cipher.
 	 * 
@@ -112,7 +166,9 @@ public class AeadBlockCipher {
 	 * @param key the encryption key K.
 	 * @param nonce the nonce N.
 	 * @param a the additional authenticated data a.
-	 * @param c the encrypted and authenticated message c.
+	 * @param c byte array containing the encrypted and authenticated message c.
+	 * @param cOffset offset of the message c in the byte array
+	 * @param cLength length of the message c
 	 * @return the decrypted message
 	 * 
 	 * @throws GeneralSecurityException if the message could not be de-crypted,
@@ -120,14 +176,14 @@ public class AeadBlockCipher {
 	 * @throws InvalidMacException if the message could not be authenticated
 	 */
 	@NotForAndroid
-	private final static byte[] jreDecrypt(CipherSuite suite, SecretKey key, byte[] nonce, byte[] a, byte[] c)
-			throws GeneralSecurityException {
+	private final static byte[] jreDecrypt(CipherSuite suite, SecretKey key, byte[] nonce, byte[] a, byte[] c,
+			int cOffset, int cLength) throws GeneralSecurityException {
 
 		Cipher cipher = suite.getThreadLocalCipher();
 		GCMParameterSpec parameterSpec = new GCMParameterSpec(suite.getMacLength() * 8, nonce);
 		cipher.init(Cipher.DECRYPT_MODE, key, parameterSpec);
 		cipher.updateAAD(a);
-		return cipher.doFinal(c);
+		return cipher.doFinal(c, cOffset, cLength);
 	}
 
 	/**
@@ -151,4 +207,31 @@ public class AeadBlockCipher {
 		cipher.updateAAD(a);
 		return cipher.doFinal(m);
 	}
+
+	/**
+	 * Encrypt a range of a byte array with jre AEAD cipher into the provided
+	 * output buffer.
+	 * 
+	 * @param suite the cipher suite
+	 * @param key the encryption key K.
+	 * @param nonce the nonce N.
+	 * @param a the additional authenticated data a.
+	 * @param m byte array containing the message to authenticate and encrypt.
+	 * @param mOffset offset of the message in the byte array
+	 * @param mLength length of the message
+	 * @param out output buffer for the encrypted and authenticated message.
+	 * @param outOffset offset in output buffer
+	 * @return length of the encrypted and authenticated message.
+	 * @throws GeneralSecurityException if the data could not be encrypted, e.g.
+	 *             because the JVM does not support the AES cipher algorithm
+	 */
+	@NotForAndroid
+	private final static int jreEncrypt(CipherSuite suite, SecretKey key, byte[] nonce, byte[] a, byte[] m,
+			int mOffset, int mLength, byte[] out, int outOffset) throws GeneralSecurityException {
+		Cipher cipher = suite.getThreadLocalCipher();
+		GCMParameterSpec parameterSpec = new GCMParameterSpec(suite.getMacLength() * 8, nonce);
+		cipher.init(Cipher.ENCRYPT_MODE, key, parameterSpec);
+		cipher.updateAAD(a);
+		return cipher.doFinal(m, mOffset, mLength, out, outOffset);
+	}
 }
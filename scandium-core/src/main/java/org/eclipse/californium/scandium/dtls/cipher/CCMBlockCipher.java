@@ -18,11 +18,17 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - redesigned implementation
  *                                                    to improve performance
  *    Achim Kraus (Bosch Software Innovations GmbH) - use NoPadding for android support
+ *    Bosch Software Innovations GmbH - decrypt range of byte array
+ *    Bosch Software Innovations GmbH - en-/decrypt in place into provided
+ *                                      buffers, reuse thread local cipher
+ *                                      context and key schedule
+ *    Bosch Software Innovations GmbH - cache a few cipher contexts per thread,
+ *                                      release them with the connection state
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls.cipher;
 
 import java.security.GeneralSecurityException;
-import java.security.MessageDigest;
+import java.lang.ref.WeakReference;
 import java.util.Arrays;
 
 import javax.crypto.Cipher;
@@ -33,6 +39,17 @@ import javax.crypto.ShortBufferException;
  * A generic authenticated encryption block cipher mode which uses the 128-bit
  * block cipher AES. See <a href="http://tools.ietf.org/html/rfc3610">RFC
  * 3610</a> for details.
+ * 
+ * The en- and decryption uses thread local contexts, which hold the
+ * underlying block cipher and all intermediate blocks. Each thread keeps the
+ * contexts of the {@link #CONTEXTS_PER_THREAD} most recently used key
+ * instances. Using the same {@link SecretKey} instance for a connection state
+ * therefore saves the key schedule setup for consecutive records processed by
+ * the same thread, even if the thread alternates between the read and write
+ * state of a connection, or between a few connections.
+ * 
+ * If a connection state is no longer used, {@link #release(SecretKey)} drops
+ * the contexts of its key from all threads.
  */
 public class CCMBlockCipher {
 
@@ -48,71 +65,189 @@ public class CCMBlockCipher {
 	public static final String CIPHER_NAME = "AES/ECB/NoPadding";
 	public static final ThreadLocalCipher CIPHER = new ThreadLocalCipher(CIPHER_NAME);
 
-	private static abstract class Block {
+	/**
+	 * Number of cipher contexts kept per thread.
+	 */
+	public static final int CONTEXTS_PER_THREAD = 4;
+
+	/**
+	 * Thread local contexts.
+	 */
+	private static final ThreadLocal<ContextCache> CONTEXTS = new ThreadLocal<ContextCache>();
 
-		protected final int blockSize;
-		protected final byte[] block;
+	/**
+	 * Most recently released keys, indexed by their release generation
+	 * modulo the array length (power of two). Weak references in order to not keep the key
+	 * material reachable. Guarded by itself.
+	 */
+	@SuppressWarnings("unchecked")
+	private static final WeakReference<SecretKey>[] RELEASED_KEYS = new WeakReference[64];
 
-		protected Block(int blockSize) {
-			this.blockSize = blockSize;
-			this.block = new byte[blockSize];
-		}
+	/**
+	 * Generation of released keys. Incremented on each
+	 * {@link #release(SecretKey)}, so the threads only check their contexts
+	 * against {@link #RELEASED_KEYS}, if keys have been released since their
+	 * last check.
+	 */
+	private static volatile int releaseGeneration;
 
+	/**
+	 * Thread local cache of cipher contexts.
+	 * 
+	 * Holds the contexts in most recently used order. On a miss, the least
+	 * recently used context is initialized with the new key.
+	 */
+	private static final class ContextCache {
+
+		private final CipherContext[] contexts = new CipherContext[CONTEXTS_PER_THREAD];
 		/**
-		 * Set integer at the end of the block.
-		 * 
-		 * Lowest byte at the end.
-		 * 
-		 * <pre>
-		 * block[end] = number & 0xff;
-		 * block[end - 1] = (number >>= 8) & 0xff;
-		 * block[end - 2] = (number >>= 8) & 0xff;
-		 * block[offset] = (number >>= 8) & 0xff;
-		 * </pre>
-		 * 
-		 * Return remaining bytes in number.
-		 * 
-		 * <pre>
-		 * blockSize = 16;
-		 * number = 0x20103
-		 * left = updateBlock(14, number); // write number to two bytes
-		 * left == 2 // highest third byte 0x2 will be left
-		 * </pre>
+		 * Generation of released keys, the contexts have been checked
+		 * against.
+		 */
+		private int generation = releaseGeneration;
+		/**
+		 * Number of key schedule setups of this thread.
+		 */
+		private int keySetups;
+
+		/**
+		 * Get context initialized with the provided key.
 		 * 
-		 * @param offset offset at which the number will be written, right
-		 *            padded with 0
-		 * @param number number to write
-		 * @return left bytes of the number, if number is too large, 0, if the
-		 *         complete number could be set.
+		 * @param key key
+		 * @return context initialized with the key
+		 * @throws GeneralSecurityException if the JVM does not support the
+		 *             AES cipher algorithm, or the key is not supported
 		 */
-		protected int setIntAtEnd(int offset, int number) {
-			int backOffset = blockSize;
-			while (backOffset > offset) {
-				block[--backOffset] = (byte) number;
-				number >>>= 8;
+		private CipherContext get(SecretKey key) throws GeneralSecurityException {
+			if (generation != releaseGeneration) {
+				synchronized (RELEASED_KEYS) {
+					int current = releaseGeneration;
+					if (current - generation > RELEASED_KEYS.length) {
+						// too many released keys since last check
+						Arrays.fill(contexts, null);
+					} else {
+						while (generation != current) {
+							++generation;
+							SecretKey released = RELEASED_KEYS[generation & (RELEASED_KEYS.length - 1)].get();
+							if (released != null) {
+								remove(released);
+							}
+						}
+					}
+					generation = current;
+				}
 			}
-			return number;
+			int last = contexts.length - 1;
+			int index = 0;
+			for (; index < last; ++index) {
+				CipherContext context = contexts[index];
+				if (context == null || context.key == key) {
+					break;
+				}
+			}
+			CipherContext context = contexts[index];
+			if (context == null) {
+				context = new CipherContext(Cipher.getInstance(CIPHER_NAME));
+			}
+			if (context.key != key) {
+				context.init(key);
+				++keySetups;
+			}
+			// move to front
+			System.arraycopy(contexts, 0, contexts, 1, index);
+			contexts[0] = context;
+			return context;
 		}
 
+		/**
+		 * Drop context of the provided key.
+		 * 
+		 * @param key key
+		 */
+		private void remove(SecretKey key) {
+			for (int index = 0; index < contexts.length; ++index) {
+				CipherContext context = contexts[index];
+				if (context != null && context.key == key) {
+					contexts[index] = null;
+				}
+			}
+		}
 	}
 
-	private static class BlockCipher extends Block {
+	/**
+	 * Context of the cipher.
+	 * 
+	 * Holds the underlying block cipher, the key it's initialized with, and the
+	 * blocks used for the counter mode and the CBC-MAC.
+	 */
+	private static final class CipherContext {
 
+		/**
+		 * Underlying block cipher. Not shared with {@link CCMBlockCipher#CIPHER}
+		 * in order to keep the initialization with {@link #key}.
+		 */
 		private final Cipher cipher;
-		private final byte[] xblock;
-		private final int nonceL;
+		private final int blockSize;
+		/**
+		 * Counter block A_i.
+		 */
+		private final byte[] counter;
+		/**
+		 * Key stream block S_i.
+		 */
+		private final byte[] stream;
+		/**
+		 * CBC-MAC block X_i.
+		 */
+		private final byte[] mac;
+		/**
+		 * Received authentication field T.
+		 */
+		private final byte[] tag;
+		/**
+		 * Key the cipher is initialized with.
+		 */
+		private SecretKey key;
+		/**
+		 * Length of the nonce in the current counter block.
+		 */
+		private int nonceL;
 
-		private BlockCipher(Cipher cipher, byte[] nonce) {
-			super(cipher == null ? 0 : cipher.getBlockSize());
+		private CipherContext(Cipher cipher) {
 			this.cipher = cipher;
-			this.nonceL = nonce.length;
+			this.blockSize = cipher.getBlockSize();
+			this.counter = new byte[blockSize];
+			this.stream = new byte[blockSize];
+			this.mac = new byte[blockSize];
+			this.tag = new byte[blockSize];
+		}
+
+		/**
+		 * Initialize cipher with key.
+		 * 
+		 * @param key key
+		 * @throws GeneralSecurityException if the key is not supported
+		 */
+		private void init(SecretKey key) throws GeneralSecurityException {
+			this.key = null;
+			cipher.init(Cipher.ENCRYPT_MODE, key);
+			this.key = key;
+		}
+
+		/**
+		 * Initialize counter block with flags and nonce.
+		 * 
+		 * @param nonce nonce
+		 * @throws IllegalArgumentException if the nonce length is not valid
+		 */
+		private void initCounter(byte[] nonce) {
+			nonceL = nonce.length;
 			int L = blockSize - 1 - nonceL;
 			if (L < 2 || L > 8) {
 				throw new IllegalArgumentException("Nonce length " + nonceL + " invalid for blocksize " + blockSize
 						+ " (valid length [" + (blockSize - 9) + "-" + (blockSize - 3) + "])");
 			}
 
-			xblock = new byte[blockSize];
 			// Octet Number Contents
 			// ------------ ---------
 			// 0 Flags
@@ -120,46 +255,47 @@ public class CCMBlockCipher {
 			// 16-L ... 15 Counter i
 
 			// write the first byte: Flags
-			block[0] = (byte) (L - 1);
+			counter[0] = (byte) (L - 1);
 			// the Nonce N
-			System.arraycopy(nonce, 0, block, 1, nonceL);
+			System.arraycopy(nonce, 0, counter, 1, nonceL);
 		}
 
-		private byte[] updateBlock(int index) throws ShortBufferException {
+		/**
+		 * Encrypt counter block A_i into key stream block S_i.
+		 * 
+		 * @param index counter i
+		 * @return key stream block S_i
+		 * @throws ShortBufferException if cipher can not be realized.
+		 */
+		private byte[] updateCounter(int index) throws ShortBufferException {
 			// writer the Counter i (L bytes)
-			if (setIntAtEnd(nonceL + 1, index) != 0) {
+			if (setIntAtEnd(counter, nonceL + 1, index) != 0) {
 				throw new IllegalArgumentException("Index " + index + " too large for nonce " + nonceL
 						+ " and blocksize " + blockSize + " bytes.");
 			}
 
-			cipher.update(block, 0, blockSize, xblock);
-			return xblock;
+			cipher.update(counter, 0, blockSize, stream);
+			return stream;
 		}
-	}
-
-	private static class MacCipher extends Block {
-
-		private final Cipher cipher;
-		private final byte[] mac;
 
 		/**
 		 * Computes CBC-MAC. See
 		 * <a href="http://tools.ietf.org/html/rfc3610#section-2.2">RFC 3610 -
 		 * Authentication</a> for details.
 		 * 
-		 * @param cipher the cipher.
+		 * The first numAuthenticationBytes of {@link #mac} contains the result.
+		 * 
 		 * @param nonce the nonce.
 		 * @param a the additional authenticated data.
-		 * @param m the message to authenticate and encrypt.
+		 * @param m byte array containing the message to authenticate.
+		 * @param mOffset offset of the message in the byte array
+		 * @param lengthM length of the message
 		 * @param numAuthenticationBytes Number of octets in authentication
 		 *            field.
 		 * @throws ShortBufferException if cipher can not be realized.
 		 */
-		private MacCipher(Cipher cipher, byte[] nonce, byte[] a, byte[] m, int numAuthenticationBytes)
+		private void computeMac(byte[] nonce, byte[] a, byte[] m, int mOffset, int lengthM, int numAuthenticationBytes)
 				throws ShortBufferException {
-			super(cipher == null ? 0 : cipher.getBlockSize());
-			this.cipher = cipher;
-			int lengthM = m.length;
 			int lengthA = a.length;
 			int nonceL = nonce.length;
 			int L = blockSize - 1 - nonceL;
@@ -195,18 +331,18 @@ public class CCMBlockCipher {
 			// 2 ... 0 L'
 
 			// Flags = 64*Adata + 8*M' + L'
-			block[0] = (byte) (64 * adata + 8 * mPrime + lPrime);
+			mac[0] = (byte) (64 * adata + 8 * mPrime + lPrime);
 
 			// 1 ... 15-L Nonce N
-			System.arraycopy(nonce, 0, block, 1, nonceL);
+			System.arraycopy(nonce, 0, mac, 1, nonceL);
 
 			// writer the length (L bytes)
-			if (setIntAtEnd(nonceL + 1, lengthM) != 0) {
+			if (setIntAtEnd(mac, nonceL + 1, lengthM) != 0) {
 				throw new IllegalArgumentException("Length " + lengthM + " too large for nonce " + nonceL
 						+ " and blocksize " + blockSize + " bytes.");
 			}
 
-			cipher.update(block, 0, blockSize, block);
+			cipher.update(mac, 0, blockSize, mac);
 
 			// If l(a)>0 (as indicated by the Adata field), then one or more
 			// blocks
@@ -243,40 +379,51 @@ public class CCMBlockCipher {
 					offset = 6;
 				}
 
-				update(a, offset);
+				updateMac(a, 0, lengthA, offset);
 			}
-			update(m, 0);
-			mac = Arrays.copyOf(block, numAuthenticationBytes);
+			updateMac(m, mOffset, lengthM, 0);
 		}
 
-		private void update(byte[] data, int initialBlockOffset) throws ShortBufferException {
-			int length = data.length;
+		private void updateMac(byte[] data, int offset, int length, int initialBlockOffset)
+				throws ShortBufferException {
 			for (int i = 0; i < length;) {
 				int blockEnd = i + blockSize - initialBlockOffset;
 				if (blockEnd > length) {
 					blockEnd = length;
 				}
 				for (int j = initialBlockOffset; i < blockEnd; ++i, ++j) {
-					block[j] ^= data[i];
+					mac[j] ^= data[offset + i];
 				}
 				initialBlockOffset = 0;
-				cipher.update(block, 0, blockSize, block);
+				cipher.update(mac, 0, blockSize, mac);
 			}
 		}
 
-		private byte[] getMac() {
-			return mac;
-		}
-
-		protected int xorInt(int offset, int end, int number) {
+		private int xorInt(int offset, int end, int number) {
 			while (end > offset) {
-				block[--end] ^= (byte) number;
+				mac[--end] ^= (byte) number;
 				number >>>= 8;
 			}
 			return number;
 		}
 
+		/**
+		 * Compare the computed CBC-MAC with the received authentication field
+		 * in constant time.
+		 * 
+		 * @param numAuthenticationBytes Number of octets in authentication
+		 *            field.
+		 * @return {@code true}, if equal, {@code false}, otherwise
+		 */
+		private boolean isMacValid(int numAuthenticationBytes) {
+			int diff = 0;
+			for (int i = 0; i < numAuthenticationBytes; ++i) {
+				diff |= mac[i] ^ tag[i];
+			}
+			return diff == 0;
+		}
 	}
+
 	// Static methods /////////////////////////////////////////////////
 
 	/**
@@ -296,40 +443,98 @@ public class CCMBlockCipher {
 	 */
 	public final static byte[] decrypt(SecretKey key, byte[] nonce, byte[] a, byte[] c, int numAuthenticationBytes)
 			throws GeneralSecurityException {
+		return decrypt(key, nonce, a, c, 0, c.length, numAuthenticationBytes);
+	}
+
+	/**
+	 * See <a href="http://tools.ietf.org/html/rfc3610#section-2.5">RFC 3610</a>
+	 * for details.
+	 * 
+	 * Decrypts a range of the provided byte array without copying it.
+	 * 
+	 * @param key the encryption key K.
+	 * @param nonce the nonce N.
+	 * @param a the additional authenticated data a.
+	 * @param c byte array containing the encrypted and authenticated message c.
+	 * @param cOffset offset of the message c in the byte array
+	 * @param cLength length of the message c
+	 * @param numAuthenticationBytes Number of octets in authentication field.
+	 * @return the decrypted message
+	 * 
+	 * @throws GeneralSecurityException if the message could not be de-crypted,
+	 *             e.g. because the ciphertext's block size is not correct
+	 * @throws InvalidMacException if the message could not be authenticated
+	 */
+	public final static byte[] decrypt(SecretKey key, byte[] nonce, byte[] a, byte[] c, int cOffset, int cLength,
+			int numAuthenticationBytes) throws GeneralSecurityException {
 		/*
 		 * http://tools.ietf.org/html/draft-mcgrew-tls-aes-ccm-04#section-6.1:
 		 * "AEAD_AES_128_CCM_8 ciphertext is exactly 8 octets longer than its
 		 * corresponding plaintext"
 		 */
-
-		// instantiate the underlying block cipher
-		Cipher cipher = CIPHER.current();
-		cipher.init(Cipher.ENCRYPT_MODE, key);
-
-		int lengthM = c.length - numAuthenticationBytes;
-		int blockSize = cipher.getBlockSize();
-
+		int lengthM = cLength - numAuthenticationBytes;
+		if (lengthM < 0) {
+			throw new GeneralSecurityException("Ciphertext too short!");
+		}
 		// decrypted data without MAC
 		byte[] decrypted = new byte[lengthM];
-		// separate MAC
-		byte[] T = new byte[numAuthenticationBytes];
+		decrypt(key, nonce, a, c, cOffset, cLength, decrypted, 0, numAuthenticationBytes);
+		return decrypted;
+	}
 
-		BlockCipher blockCiper = new BlockCipher(cipher, nonce);
+	/**
+	 * See <a href="http://tools.ietf.org/html/rfc3610#section-2.5">RFC 3610</a>
+	 * for details.
+	 * 
+	 * Decrypts a range of the provided byte array into the provided output
+	 * buffer. Doesn't allocate any intermediate arrays. The output range may
+	 * be the same as the input range in order to decrypt in place. If the
+	 * message could not be authenticated, the output range is cleared.
+	 * 
+	 * @param key the encryption key K.
+	 * @param nonce the nonce N.
+	 * @param a the additional authenticated data a.
+	 * @param c byte array containing the encrypted and authenticated message c.
+	 * @param cOffset offset of the message c in the byte array
+	 * @param cLength length of the message c
+	 * @param out output buffer for the decrypted message. Requires
+	 *            {@code cLength - numAuthenticationBytes} bytes starting at
+	 *            outOffset.
+	 * @param outOffset offset in output buffer
+	 * @param numAuthenticationBytes Number of octets in authentication field.
+	 * @return length of the decrypted message
+	 * 
+	 * @throws GeneralSecurityException if the message could not be de-crypted,
+	 *             e.g. because the ciphertext's block size is not correct
+	 * @throws InvalidMacException if the message could not be authenticated
+	 */
+	public final static int decrypt(SecretKey key, byte[] nonce, byte[] a, byte[] c, int cOffset, int cLength,
+			byte[] out, int outOffset, int numAuthenticationBytes) throws GeneralSecurityException {
+		int lengthM = cLength - numAuthenticationBytes;
+		if (lengthM < 0) {
+			throw new GeneralSecurityException("Ciphertext too short!");
+		}
+		CipherContext context = getContext(key);
+		int blockSize = context.blockSize;
+
+		context.initCounter(nonce);
 		// block 0 for MAC
 		int blockNo = 0;
-		byte[] block = blockCiper.updateBlock(blockNo++);
+		byte[] block = context.updateCounter(blockNo++);
+		// separate MAC
+		byte[] T = context.tag;
 		for (int i = 0; i < numAuthenticationBytes; ++i) {
-			T[i] = (byte) (c[lengthM + i] ^ block[i]);
+			T[i] = (byte) (c[cOffset + lengthM + i] ^ block[i]);
 		}
 
 		for (int i = 0; i < lengthM;) {
-			block = blockCiper.updateBlock(blockNo++);
+			block = context.updateCounter(blockNo++);
 			int blockEnd = i + blockSize;
 			if (blockEnd > lengthM) {
 				blockEnd = lengthM;
 			}
 			for (int j = 0; i < blockEnd; ++i, ++j) {
-				decrypted[i] = (byte) (c[i] ^ block[j]);
+				out[outOffset + i] = (byte) (c[cOffset + i] ^ block[j]);
 			}
 		}
 
@@ -337,8 +542,7 @@ public class CCMBlockCipher {
 		 * The message and additional authentication data is then used to
 		 * recompute the CBC-MAC value and check T.
 		 */
-		MacCipher macCipher = new MacCipher(cipher, nonce, a, decrypted, numAuthenticationBytes);
-		byte[] mac = macCipher.getMac();
+		context.computeMac(nonce, a, out, outOffset, lengthM, numAuthenticationBytes);
 
 		/*
 		 * If the T value is not correct, the receiver MUST NOT reveal any
@@ -346,12 +550,13 @@ public class CCMBlockCipher {
 		 * MUST NOT reveal the decrypted message, the value T, or any other
 		 * information.
 		 */
-		if (MessageDigest.isEqual(T, mac)) {
-			return decrypted;
+		if (context.isMacValid(numAuthenticationBytes)) {
+			return lengthM;
 		} else {
-			throw new InvalidMacException(mac, T);
+			Arrays.fill(out, outOffset, outOffset + lengthM, (byte) 0);
+			throw new InvalidMacException(Arrays.copyOf(context.mac, numAuthenticationBytes),
+					Arrays.copyOf(T, numAuthenticationBytes));
 		}
-
 	}
 
 	/**
@@ -369,43 +574,160 @@ public class CCMBlockCipher {
 	 */
 	public final static byte[] encrypt(SecretKey key, byte[] nonce, byte[] a, byte[] m, int numAuthenticationBytes)
 			throws GeneralSecurityException {
+		// encrypted data with MAC
+		byte[] encrypted = new byte[m.length + numAuthenticationBytes];
+		encrypt(key, nonce, a, m, 0, m.length, encrypted, 0, numAuthenticationBytes);
+		return encrypted;
+	}
 
-		// instantiate the cipher
-		Cipher cipher = CIPHER.current();
-		cipher.init(Cipher.ENCRYPT_MODE, key);
-		int blockSize = cipher.getBlockSize();
-		int lengthM = m.length;
+	/**
+	 * See <a href="http://tools.ietf.org/html/rfc3610#section-2.2">RFC 3610</a>
+	 * for details.
+	 * 
+	 * Encrypts a range of the provided byte array into the provided output
+	 * buffer. Doesn't allocate any intermediate arrays. The output range may
+	 * start at the same offset as the input range in order to encrypt in
+	 * place. The authentication field is then appended after the message.
+	 * 
+	 * @param key the encryption key K.
+	 * @param nonce the nonce N.
+	 * @param a the additional authenticated data a.
+	 * @param m byte array containing the message to authenticate and encrypt.
+	 * @param mOffset offset of the message in the byte array
+	 * @param mLength length of the message
+	 * @param out output buffer for the encrypted and authenticated message.
+	 *            Requires {@code mLength + numAuthenticationBytes} bytes
+	 *            starting at outOffset.
+	 * @param outOffset offset in output buffer
+	 * @param numAuthenticationBytes Number of octets in authentication field.
+	 * @return length of the encrypted and authenticated message.
+	 * @throws GeneralSecurityException if the data could not be encrypted, e.g.
+	 *             because the JVM does not support the AES cipher algorithm
+	 */
+	public final static int encrypt(SecretKey key, byte[] nonce, byte[] a, byte[] m, int mOffset, int mLength,
+			byte[] out, int outOffset, int numAuthenticationBytes) throws GeneralSecurityException {
+		CipherContext context = getContext(key);
+		int blockSize = context.blockSize;
 
 		/*
 		 * First, authentication: http://tools.ietf.org/html/rfc3610#section-2.2
 		 */
 		// compute the authentication field T
-		MacCipher macCipher = new MacCipher(cipher, nonce, a, m, numAuthenticationBytes);
-		byte[] mac = macCipher.getMac();
+		context.computeMac(nonce, a, m, mOffset, mLength, numAuthenticationBytes);
+		byte[] mac = context.mac;
 
 		/*
 		 * Second, encryption http://tools.ietf.org/html/rfc3610#section-2.3
 		 */
-		// encrypted data with MAC
-		byte[] encrypted = new byte[lengthM + numAuthenticationBytes];
-		BlockCipher blockCiper = new BlockCipher(cipher, nonce);
+		context.initCounter(nonce);
 		// block 0 for MAC
 		int blockNo = 0;
-		byte[] block = blockCiper.updateBlock(blockNo++);
+		byte[] block = context.updateCounter(blockNo++);
 		for (int i = 0; i < numAuthenticationBytes; ++i) {
-			encrypted[i + lengthM] = (byte) (mac[i] ^ block[i]);
+			out[outOffset + mLength + i] = (byte) (mac[i] ^ block[i]);
 		}
-		for (int i = 0; i < lengthM;) {
-			block = blockCiper.updateBlock(blockNo++);
+		for (int i = 0; i < mLength;) {
+			block = context.updateCounter(blockNo++);
 			int blockEnd = i + blockSize;
-			if (blockEnd > lengthM) {
-				blockEnd = lengthM;
+			if (blockEnd > mLength) {
+				blockEnd = mLength;
 			}
 			for (int j = 0; i < blockEnd; ++i, ++j) {
-				encrypted[i] = (byte) (m[i] ^ block[j]);
+				out[outOffset + i] = (byte) (m[mOffset + i] ^ block[j]);
 			}
 		}
 
-		return encrypted;
+		return mLength + numAuthenticationBytes;
+	}
+
+	/**
+	 * Release the cipher contexts of the provided key.
+	 * 
+	 * The contexts of the calling thread are dropped immediately, the
+	 * contexts of other threads on their next en- or decryption. Intended to
+	 * be called, when the connection state using that key is destroyed. Using
+	 * the key afterwards is still possible, but requires a new key schedule
+	 * setup.
+	 * 
+	 * @param key the encryption key K. May be {@code null}.
+	 */
+	public static void release(SecretKey key) {
+		if (key != null) {
+			synchronized (RELEASED_KEYS) {
+				int next = releaseGeneration + 1;
+				RELEASED_KEYS[next & (RELEASED_KEYS.length - 1)] = new WeakReference<SecretKey>(key);
+				releaseGeneration = next;
+			}
+			ContextCache cache = CONTEXTS.get();
+			if (cache != null) {
+				cache.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Get number of key schedule setups of the calling thread.
+	 * 
+	 * Intended for unit tests.
+	 * 
+	 * @return number of key schedule setups
+	 */
+	static int getKeySetups() {
+		ContextCache cache = CONTEXTS.get();
+		return cache == null ? 0 : cache.keySetups;
+	}
+
+	/**
+	 * Get thread local cipher context initialized with the provided key.
+	 * 
+	 * @param key the encryption key K.
+	 * @return thread local cipher context
+	 * @throws GeneralSecurityException if the JVM does not support the AES
+	 *             cipher algorithm, or the key is not supported
+	 */
+	private static CipherContext getContext(SecretKey key) throws GeneralSecurityException {
+		ContextCache cache = CONTEXTS.get();
+		if (cache == null) {
+			cache = new ContextCache();
+			CONTEXTS.set(cache);
+		}
+		return cache.get(key);
+	}
+
+	/**
+	 * Set integer at the end of the block.
+	 * 
+	 * Lowest byte at the end.
+	 * 
+	 * <pre>
+	 * block[end] = number & 0xff;
+	 * block[end - 1] = (number >>= 8) & 0xff;
+	 * block[end - 2] = (number >>= 8) & 0xff;
+	 * block[offset] = (number >>= 8) & 0xff;
+	 * </pre>
+	 * 
+	 * Return remaining bytes in number.
+	 * 
+	 * <pre>
+	 * blockSize = 16;
+	 * number = 0x20103
+	 * left = setIntAtEnd(block, 14, number); // write number to two bytes
+	 * left == 2 // highest third byte 0x2 will be left
+	 * </pre>
+	 * 
+	 * @param block block to write the number to
+	 * @param offset offset at which the number will be written, right padded
+	 *            with 0
+	 * @param number number to write
+	 * @return left bytes of the number, if number is too large, 0, if the
+	 *         complete number could be set.
+	 */
+	private static int setIntAtEnd(byte[] block, int offset, int number) {
+		int backOffset = block.length;
+		while (backOffset > offset) {
+			block[--backOffset] = (byte) number;
+			number >>>= 8;
+		}
+		return number;
 	}
 }
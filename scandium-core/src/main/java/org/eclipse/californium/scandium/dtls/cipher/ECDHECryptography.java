@@ -19,11 +19,18 @@
  *    Bosch Software Innovations GmbH - migrate to SLF4J
  *    Achim Kraus (Bosch Software Innovations GmbH) - include only usable groups into the
  *                                                    preferred groups.
+ *    Bosch Software Innovations GmbH - use pre-generated key pairs of the
+ *                                      ECDHEKeyPairPool.
+ *    Bosch Software Innovations GmbH - add x25519 and x448, if supported by
+ *                                      the JRE.
+ *    Bosch Software Innovations GmbH - keep ECPublicKey accessor, x25519 and
+ *                                      x448 are not preferred by default.
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls.cipher;
 
 import java.math.BigInteger;
 import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.PrivateKey;
@@ -39,7 +46,9 @@ import java.security.spec.ECGenParameterSpec;
 import java.security.spec.ECParameterSpec;
 import java.security.spec.ECPoint;
 import java.security.spec.EllipticCurve;
+import java.security.spec.X509EncodedKeySpec;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.eclipse.californium.elements.util.Asn1DerDecoder;
@@ -82,13 +91,27 @@ public final class ECDHECryptography {
 	 */
 	private static final String KEY_AGREEMENT_INSTANCE = "ECDH";
 
+	/**
+	 * Montgomery curve Diffie-Hellman algorithm name (x25519 and x448). Only
+	 * available, if the JRE supports it (java 11 or newer). See also <a href=
+	 * "https://docs.oracle.com/en/java/javase/11/docs/specs/security/standard-names.html#keyagreement-algorithms"
+	 * >KeyAgreement Algorithms</a>.
+	 */
+	private static final String XDH_KEY_AGREEMENT_INSTANCE = "XDH";
+
 	// Members ////////////////////////////////////////////////////////
-	
+
+	/**
+	 * The supported group of the keys. {@code null}, if the keys are created
+	 * for explicit EC domain parameters.
+	 */
+	private SupportedGroup group;
+
 	/** The ephemeral private key. */
-	private ECPrivateKey privateKey;
+	private PrivateKey privateKey;
 	
 	/** The ephemeral public key. */
-	private ECPublicKey publicKey;
+	private PublicKey publicKey;
 
 	// Constructors ///////////////////////////////////////////////////
 
@@ -111,14 +134,50 @@ public final class ECDHECryptography {
 	 * Creates an ephemeral ECDH key pair for a given supported group.
 	 * 
 	 * @param supportedGroup
-	 *            the name of the supported group to use as defined in
+	 *            the supported group to use as defined in
 	 *            the <a href="http://www.iana.org/assignments/tls-parameters/tls-parameters.xhtml#tls-parameters-8">
 	 *            IANA Supported Groups Registry</a>
-	 * @throws GeneralSecurityException if the key pair cannot be created from the
-	 *            given name, e.g. because the JRE's crypto provider doesn't support the group
+	 * @throws GeneralSecurityException if the key pair cannot be created for the
+	 *            given group, e.g. because the JRE's crypto provider doesn't support the group
 	 */
-	private ECDHECryptography(String supportedGroup) throws GeneralSecurityException {
-		createKeys(new ECGenParameterSpec(supportedGroup));
+	private ECDHECryptography(SupportedGroup supportedGroup) throws GeneralSecurityException {
+		this(supportedGroup, generateKeyPair(supportedGroup));
+	}
+
+	/**
+	 * Creates an ECDH key agreement for a pre-generated ephemeral key pair.
+	 * 
+	 * @param supportedGroup the supported group of the key pair
+	 * @param keyPair the ephemeral key pair
+	 */
+	private ECDHECryptography(SupportedGroup supportedGroup, KeyPair keyPair) {
+		group = supportedGroup;
+		privateKey = keyPair.getPrivate();
+		publicKey = keyPair.getPublic();
+	}
+
+	/**
+	 * Creates an ephemeral ECDH key pair for a supported group.
+	 * 
+	 * Takes a pre-generated key pair out of the pool, if available.
+	 * Otherwise the key pair is created inline.
+	 * 
+	 * @param pool pool of pre-generated key pairs. {@code null}, if no pool
+	 *            is used.
+	 * @param group the supported group to create the keys for
+	 * @return the object containing the keys
+	 * @throws GeneralSecurityException if the key pair cannot be created for
+	 *             the group
+	 */
+	public static ECDHECryptography fromKeyPairPool(ECDHEKeyPairPool pool, SupportedGroup group)
+			throws GeneralSecurityException {
+		if (pool != null) {
+			KeyPair keyPair = pool.take(group);
+			if (keyPair != null) {
+				return new ECDHECryptography(group, keyPair);
+			}
+		}
+		return new ECDHECryptography(group);
 	}
 
 	/**
@@ -136,7 +195,7 @@ public final class ECDHECryptography {
 			return null;
 		} else {
 			try {
-				return new ECDHECryptography(group.name());
+				return new ECDHECryptography(group);
 			} catch (GeneralSecurityException e) {
 				LOGGER.warn(
 					"Cannot create ephemeral keys for group [{}]: {}",
@@ -147,19 +206,69 @@ public final class ECDHECryptography {
 	}
 	
 	private void createKeys(AlgorithmParameterSpec params) throws GeneralSecurityException {
+		KeyPair keyPair = generateKeyPair(params);
+		privateKey = keyPair.getPrivate();
+		publicKey = keyPair.getPublic();
+	}
+
+	/**
+	 * Generate ephemeral key pair for a supported group.
+	 * 
+	 * @param group the supported group to create the keys for
+	 * @return the generated key pair
+	 * @throws GeneralSecurityException if the key pair cannot be created for
+	 *             the group
+	 */
+	static KeyPair generateKeyPair(SupportedGroup group) throws GeneralSecurityException {
+		if (group.isXdh()) {
+			// the algorithm name already selects the curve
+			KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(group.getAlgorithmName());
+			return keyPairGenerator.generateKeyPair();
+		} else if (group.getEcParams() == null) {
+			throw new GeneralSecurityException("Group " + group.name() + " has no known domain params!");
+		}
+		return generateKeyPair(group.getEcParams());
+	}
+
+	/**
+	 * Generate ephemeral key pair.
+	 * 
+	 * @param params the domain parameters to create the keys for
+	 * @return the generated key pair
+	 * @throws GeneralSecurityException if the key pair cannot be created from
+	 *             the given parameters
+	 */
+	static KeyPair generateKeyPair(AlgorithmParameterSpec params) throws GeneralSecurityException {
 		KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(KEYPAIR_GENERATOR_ALGORITHM);
 		keyPairGenerator.initialize(params, new SecureRandom());
-
-		KeyPair keyPair = keyPairGenerator.generateKeyPair();
-		privateKey = (ECPrivateKey) keyPair.getPrivate();
-		publicKey = (ECPublicKey) keyPair.getPublic();
+		return keyPairGenerator.generateKeyPair();
 	}
 	
 	public PrivateKey getPrivateKey() {
 		return privateKey;
 	}
 
+	/**
+	 * Gets the ephemeral EC public key.
+	 * 
+	 * @return the EC public key, or {@code null}, for x25519 and x448, which
+	 *         have no EC public key.
+	 * @deprecated use {@link #getEphemeralPublicKey()}, which supports all
+	 *             groups.
+	 */
+	@Deprecated
 	public ECPublicKey getPublicKey() {
+		return publicKey instanceof ECPublicKey ? (ECPublicKey) publicKey : null;
+	}
+
+	/**
+	 * Gets the ephemeral public key.
+	 * 
+	 * @return the public key. A {@link ECPublicKey} for the secp and
+	 *         brainpool groups, a XDH public key for x25519 and x448.
+	 * @see #encodePublicKey(PublicKey)
+	 */
+	public PublicKey getEphemeralPublicKey() {
 		return publicKey;
 	}
 
@@ -176,9 +285,14 @@ public final class ECDHECryptography {
 		SecretKey secretKey = null;
 		try {
 			// extract public key
-			ECParameterSpec params = publicKey.getParams();
-			DatagramReader reader = new DatagramReader(encodedPoint, false);
-			PublicKey peerPublicKey = Asn1DerDecoder.readEcPublicKey(reader, params);
+			PublicKey peerPublicKey;
+			if (group != null) {
+				peerPublicKey = decodePublicKey(group, encodedPoint);
+			} else {
+				ECParameterSpec params = ((ECPublicKey) publicKey).getParams();
+				DatagramReader reader = new DatagramReader(encodedPoint, false);
+				peerPublicKey = Asn1DerDecoder.readEcPublicKey(reader, params);
+			}
 
 			secretKey = getSecret(peerPublicKey);
 
@@ -199,7 +313,12 @@ public final class ECDHECryptography {
 	public SecretKey getSecret(PublicKey peerPublicKey) {
 		SecretKey secretKey = null;
 		try {
-			KeyAgreement keyAgreement = KeyAgreement.getInstance(KEY_AGREEMENT_INSTANCE);
+			KeyAgreement keyAgreement;
+			if (privateKey instanceof ECPrivateKey) {
+				keyAgreement = KeyAgreement.getInstance(KEY_AGREEMENT_INSTANCE);
+			} else {
+				keyAgreement = KeyAgreement.getInstance(XDH_KEY_AGREEMENT_INSTANCE);
+			}
 			keyAgreement.init(privateKey);
 			keyAgreement.doPhase(peerPublicKey, true);
 			
@@ -212,6 +331,60 @@ public final class ECDHECryptography {
 	
 	// Serialization //////////////////////////////////////////////////
 
+	/**
+	 * Encodes an ephemeral public key for the key exchange messages.
+	 * 
+	 * EC public keys are encoded as point according to the X9.62
+	 * specification, x25519 and x448 public keys as defined in <a href=
+	 * "https://tools.ietf.org/html/rfc8422#section-5.4.1">RFC 8422, Section
+	 * 5.4.1</a>.
+	 * 
+	 * @param publicKey the public key to be encoded.
+	 * @return the encoded public key, or {@code null}, if the public key is
+	 *         not supported.
+	 */
+	public static byte[] encodePublicKey(PublicKey publicKey) {
+		if (publicKey instanceof ECPublicKey) {
+			ECPublicKey ecPublicKey = (ECPublicKey) publicKey;
+			return encodePoint(ecPublicKey.getW(), ecPublicKey.getParams().getCurve());
+		}
+		byte[] encoded = publicKey.getEncoded();
+		for (SupportedGroup group : SupportedGroup.values()) {
+			if (group.isXdh() && group.isX509Encoded(encoded)) {
+				return Arrays.copyOfRange(encoded, group.x509Prefix.length, encoded.length);
+			}
+		}
+		LOGGER.error("Public key {} is not supported.", publicKey.getAlgorithm());
+		return null;
+	}
+
+	/**
+	 * Decodes an ephemeral public key of the key exchange messages.
+	 * 
+	 * @param group the supported group of the public key
+	 * @param encodedPoint the encoded public key
+	 * @return the public key
+	 * @throws GeneralSecurityException if the public key could not be decoded
+	 * @see #encodePublicKey(PublicKey)
+	 */
+	public static PublicKey decodePublicKey(SupportedGroup group, byte[] encodedPoint)
+			throws GeneralSecurityException {
+		if (group.isXdh()) {
+			if (encodedPoint.length != group.keySize) {
+				throw new GeneralSecurityException("Public key for " + group.name() + " must have " + group.keySize
+						+ " bytes, not " + encodedPoint.length + "!");
+			}
+			byte[] encoded = Arrays.copyOf(group.x509Prefix, group.x509Prefix.length + encodedPoint.length);
+			System.arraycopy(encodedPoint, 0, encoded, group.x509Prefix.length, encodedPoint.length);
+			KeyFactory factory = KeyFactory.getInstance(group.getAlgorithmName());
+			return factory.generatePublic(new X509EncodedKeySpec(encoded));
+		} else if (group.getEcParams() == null) {
+			throw new GeneralSecurityException("Group " + group.name() + " has no known domain params!");
+		}
+		DatagramReader reader = new DatagramReader(encodedPoint, false);
+		return Asn1DerDecoder.readEcPublicKey(reader, group.getEcParams());
+	}
+
 	/**
 	 * Trims the leading zeros.
 	 * 
@@ -389,6 +562,9 @@ public final class ECDHECryptography {
 				"7DDE385D566332ECC0EABFA9CF7822FDF209F70024A57B1AA000C55B881F8111B2DCDE494A5F485E5BCA4BD88A2763AED1CA2B2FA8F0540678CD1E0F3AD80892",
 				"AADD9DB8DBE9C48B3FD4E6AE33C9FC07CB308DB3B3C9D20ED6639CCA70330870553E5C414CA92619418661197FAC10471DB1D381085DDADDB58796829CA90069",
 				1),
+		// RFC 8422, requires XDH support of the JRE (java 11 or newer)
+		x25519(29, "X25519", 32, new byte[] { 0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x6e, 0x03, 0x21, 0x00 }),
+		x448(30, "X448", 56, new byte[] { 0x30, 0x42, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x6f, 0x03, 0x39, 0x00 }),
 		ffdhe2048(256),
 		ffdhe3072(257),
 		ffdhe4096(258),
@@ -400,11 +576,39 @@ public final class ECDHECryptography {
 		private int id;
 		private ECParameterSpec params = null;
 		private boolean usable;
+		/**
+		 * JCA algorithm name of XDH groups. {@code null} for EC groups.
+		 */
+		private String xdhAlgorithm;
+		/**
+		 * Size of the XDH keys in bytes.
+		 */
+		private int keySize;
+		/**
+		 * Prefix of the X.509 (ASN.1) encoding of XDH public keys. Followed by
+		 * the {@link #keySize} bytes of the public key.
+		 */
+		private byte[] x509Prefix;
 
 		private SupportedGroup(int code) {
 			this.id = code;
 		}
 
+		private SupportedGroup(int code, String xdhAlgorithm, int keySize, byte[] x509Prefix) {
+			this(code);
+			this.xdhAlgorithm = xdhAlgorithm;
+			this.keySize = keySize;
+			this.x509Prefix = x509Prefix;
+			try {
+				KeyPairGenerator.getInstance(xdhAlgorithm);
+				KeyFactory.getInstance(xdhAlgorithm);
+				KeyAgreement.getInstance(XDH_KEY_AGREEMENT_INSTANCE);
+				usable = true;
+			} catch (GeneralSecurityException e) {
+				LOGGER.debug("Group [{}] is not supported by JRE", name());
+			}
+		}
+
 		private SupportedGroup(int code, int type, String p, String a, String b, String x, String y,
 				String n, int h) {
 			this(code);
@@ -465,12 +669,44 @@ public final class ECDHECryptography {
 		 * Gets this group's corresponding EC parameters.
 		 * 
 		 * @return the parameter object or <code>null</code> if the params
-		 *           for this group are not (yet) registered
+		 *           for this group are not (yet) registered, or the group
+		 *           is a XDH group
 		 */
 		public ECParameterSpec getEcParams() {
 			return params;
 		}
 
+		/**
+		 * Gets the JCA algorithm name of the keys of this group.
+		 * 
+		 * @return {@code "EC"}, or {@code "X25519"} and {@code "X448"} for
+		 *         the XDH groups
+		 */
+		public String getAlgorithmName() {
+			return xdhAlgorithm == null ? KEYPAIR_GENERATOR_ALGORITHM : xdhAlgorithm;
+		}
+
+		/**
+		 * Checks, whether this group is a XDH group (x25519 or x448).
+		 * 
+		 * @return {@code true}, if XDH group, {@code false}, if EC group
+		 */
+		public boolean isXdh() {
+			return xdhAlgorithm != null;
+		}
+
+		private boolean isX509Encoded(byte[] encoded) {
+			if (encoded.length != x509Prefix.length + keySize) {
+				return false;
+			}
+			for (int index = 0; index < x509Prefix.length; ++index) {
+				if (encoded[index] != x509Prefix[index]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
 		/**
 		 * Checks whether this group can be used on this platform.
 		 * 
@@ -500,6 +736,11 @@ public final class ECDHECryptography {
 		/**
 		 * Gets the preferred <em>supported groups</em>.
 		 * 
+		 * x25519 and x448 are not contained, in order to not change the
+		 * groups negotiated with existing peers. They must be enabled
+		 * explicitly using
+		 * {@code DtlsConnectorConfig.Builder.setSupportedGroups}.
+		 * 
 		 * @return the groups in order of preference
 		 */
 		public static List<SupportedGroup> getPreferredGroups() {
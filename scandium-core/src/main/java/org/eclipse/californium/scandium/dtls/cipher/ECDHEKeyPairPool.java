@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *    Bosch Software Innovations GmbH - terminate idle refill thread
+ ******************************************************************************/
+package org.eclipse.californium.scandium.dtls.cipher;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.californium.elements.util.DaemonThreadFactory;
+import org.eclipse.californium.elements.util.NamedThreadFactory;
+import org.eclipse.californium.scandium.dtls.cipher.ECDHECryptography.SupportedGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of pre-generated ephemeral ECDHE key pairs.
+ * <p>
+ * Generating the ephemeral key pair is a considerable part of the costs of a
+ * ECDHE handshake. The pool moves that generation out of the handshake into a
+ * background thread with low priority. The pool keeps a bounded number of key
+ * pairs per {@link SupportedGroup}, but only for groups, which are requested.
+ * Each key pair is handed out once. If the pool is empty, the key pair is
+ * generated inline. The background thread terminates, when it's idle, and is
+ * started again on the next request.
+ * </p>
+ * <p>
+ * The pool is shared by all connectors of a process, see
+ * {@link #getInstance(int)}.
+ * </p>
+ */
+public final class ECDHEKeyPairPool {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ECDHEKeyPairPool.class.getName());
+
+	/**
+	 * Time in milliseconds the refill thread waits for new requests before it
+	 * terminates.
+	 */
+	private static final long REFILLER_KEEP_ALIVE_MILLIS = 500;
+
+	/**
+	 * Shared pool.
+	 */
+	private static final ECDHEKeyPairPool INSTANCE = new ECDHEKeyPairPool(0);
+
+	/**
+	 * Pre-generated key pairs by group.
+	 */
+	private final ConcurrentMap<SupportedGroup, GroupPool> pools = new ConcurrentHashMap<>();
+	/**
+	 * Groups requested to be refilled.
+	 */
+	private final BlockingQueue<SupportedGroup> refills = new LinkedBlockingQueue<>();
+	/**
+	 * Groups pending in {@link #refills}.
+	 */
+	private final Set<SupportedGroup> pendingRefills = Collections
+			.newSetFromMap(new ConcurrentHashMap<SupportedGroup, Boolean>());
+	/**
+	 * Maximum number of key pairs per group.
+	 */
+	private volatile int capacity;
+	/**
+	 * Background thread to refill the pool. Started on demand and terminated,
+	 * when idle. Guarded by {@code this}.
+	 */
+	private Thread refiller;
+
+	/**
+	 * Create pool.
+	 *
+	 * @param capacity maximum number of key pairs per group
+	 * @throws IllegalArgumentException if capacity is negative
+	 */
+	public ECDHEKeyPairPool(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity " + capacity + " must not be negative!");
+		}
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Get the shared pool.
+	 *
+	 * @param capacity the minimum number of key pairs per group. The capacity
+	 *            of the shared pool is enlarged, if required.
+	 * @return the shared pool, or {@code null}, if the provided capacity is
+	 *         {@code 0}, which disables the pool.
+	 */
+	public static ECDHEKeyPairPool getInstance(int capacity) {
+		if (capacity <= 0) {
+			return null;
+		}
+		INSTANCE.ensureCapacity(capacity);
+		return INSTANCE;
+	}
+
+	/**
+	 * Enlarge the capacity of the pool.
+	 *
+	 * @param capacity the minimum number of key pairs per group.
+	 */
+	public synchronized void ensureCapacity(int capacity) {
+		if (this.capacity < capacity) {
+			this.capacity = capacity;
+		}
+	}
+
+	/**
+	 * Get the maximum number of key pairs per group.
+	 *
+	 * @return maximum number of key pairs per group
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Get the number of available key pairs of a group.
+	 *
+	 * @param group group of the key pairs
+	 * @return number of available key pairs
+	 */
+	public int size(SupportedGroup group) {
+		GroupPool pool = pools.get(group);
+		return pool == null ? 0 : pool.size.get();
+	}
+
+	/**
+	 * Take a pre-generated key pair out of the pool and request to refill
+	 * the pool.
+	 *
+	 * @param group group of the key pair
+	 * @return key pair, or {@code null}, if no key pair is available.
+	 */
+	public KeyPair take(SupportedGroup group) {
+		if (capacity == 0 || !group.isUsable()) {
+			return null;
+		}
+		GroupPool pool = pools.get(group);
+		if (pool == null) {
+			pool = new GroupPool();
+			GroupPool previous = pools.putIfAbsent(group, pool);
+			if (previous != null) {
+				pool = previous;
+			}
+		}
+		KeyPair keyPair = pool.poll();
+		requestRefill(group);
+		return keyPair;
+	}
+
+	/**
+	 * Request to refill the pool of a group.
+	 *
+	 * @param group group to refill
+	 */
+	private void requestRefill(SupportedGroup group) {
+		if (size(group) < capacity && pendingRefills.add(group)) {
+			refills.offer(group);
+			startRefiller();
+		}
+	}
+
+	private synchronized void startRefiller() {
+		if (refiller == null) {
+			refiller = new DaemonThreadFactory("DTLS-ECDHE-KeyPair-Pool-", NamedThreadFactory.SCANDIUM_THREAD_GROUP)
+					.newThread(new Runnable() {
+
+						@Override
+						public void run() {
+							refill();
+						}
+					});
+			refiller.setPriority(Thread.MIN_PRIORITY);
+			refiller.start();
+		}
+	}
+
+	/**
+	 * Refill the requested groups.
+	 */
+	private void refill() {
+		try {
+			while (true) {
+				SupportedGroup group = refills.poll(REFILLER_KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+				if (group == null) {
+					synchronized (this) {
+						if (refills.isEmpty()) {
+							// idle, started again by the next request
+							refiller = null;
+							return;
+						}
+					}
+					continue;
+				}
+				GroupPool pool = pools.get(group);
+				try {
+					while (pool.size.get() < capacity) {
+						pool.add(ECDHECryptography.generateKeyPair(group));
+					}
+				} catch (GeneralSecurityException e) {
+					LOGGER.warn("Cannot create ephemeral keys for group [{}]: {}", group.name(), e.getMessage());
+				} catch (RuntimeException e) {
+					LOGGER.warn("Cannot create ephemeral keys for group [{}]!", group.name(), e);
+				}
+				pendingRefills.remove(group);
+			}
+		} catch (InterruptedException e) {
+			LOGGER.debug("ECDHE key pair pool refill interrupted!");
+			synchronized (this) {
+				refiller = null;
+			}
+		}
+	}
+
+	/**
+	 * Pool of key pairs of a single group.
+	 */
+	private static final class GroupPool {
+
+		private final Queue<KeyPair> keyPairs = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger size = new AtomicInteger();
+
+		private KeyPair poll() {
+			KeyPair keyPair = keyPairs.poll();
+			if (keyPair != null) {
+				size.decrementAndGet();
+			}
+			return keyPair;
+		}
+
+		private void add(KeyPair keyPair) {
+			keyPairs.add(keyPair);
+			size.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,579 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.scandium.dtls.pskstore;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.elements.util.Base64;
+import org.eclipse.californium.elements.util.DaemonThreadFactory;
+import org.eclipse.californium.elements.util.NamedThreadFactory;
+import org.eclipse.californium.scandium.dtls.PskPublicInformation;
+import org.eclipse.californium.scandium.util.ServerNames;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pre-shared key store for a large number of identities, backed by a file.
+ * <p>
+ * The file contains one entry per line in the format
+ * {@code <identity>=<base64 encoded key>}. The identity is UTF-8 encoded and
+ * must not contain a {@code '='}. Empty lines and lines starting with
+ * {@code '#'} are ignored. A later entry replaces an earlier entry with the
+ * same identity, an entry with an empty key removes the identity.
+ * </p>
+ * <p>
+ * The entries are kept in a compact index: identities and keys are appended
+ * to a single byte array and an open-addressing hash table refers to them by
+ * their offset. A lookup creates only a copy of the found key, no objects
+ * are kept per entry.
+ * </p>
+ * <p>
+ * The file is reloaded by {@link #reload()}, or periodically after
+ * {@link #startReloading(long, TimeUnit)}. If the file has only been
+ * appended, just the appended lines are loaded. That is detected by a SHA-256
+ * hash over the loaded lines, so any other change, e.g. a rotated or revoked
+ * key, causes the file to be loaded completely into a new index, which
+ * replaces the current one when finished. A last line without line end is
+ * loaded as well, but it's loaded again, if the file is appended. Therefore a
+ * partially written last line is completed with the next reload.
+ * </p>
+ * <p>
+ * The store is intended to be used by servers. Identities for peers and
+ * virtual hosts are not supported, the keys are used for all server names.
+ * </p>
+ */
+public class FilePskStore implements PskStore, Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(FilePskStore.class.getName());
+
+	private final File file;
+	/**
+	 * Current index. Replaced on reload.
+	 */
+	private volatile Index index = new Index(16);
+	/**
+	 * Number of loaded bytes of the file. Up to the end of the last complete
+	 * line.
+	 */
+	private long loadedLength;
+	/**
+	 * Length of the file, when loaded.
+	 */
+	private long fileLength;
+	/**
+	 * Last modification time of the file, when loaded.
+	 */
+	private long lastModified;
+	/**
+	 * SHA-256 hash over the loaded part of the file. {@code null}, if not
+	 * available.
+	 */
+	private byte[] loadedHash;
+	private ScheduledExecutorService reloader;
+
+	/**
+	 * Create pre-shared key store and load the provided file.
+	 *
+	 * @param file file with the identities and keys
+	 * @throws NullPointerException if file is {@code null}
+	 * @throws IOException if an i/o error occurred
+	 */
+	public FilePskStore(File file) throws IOException {
+		if (file == null) {
+			throw new NullPointerException("file must not be null!");
+		}
+		this.file = file;
+		reload();
+	}
+
+	@Override
+	public byte[] getKey(final PskPublicInformation identity) {
+		if (identity == null) {
+			throw new NullPointerException("identity must not be null");
+		}
+		return index.get(identity.getBytes());
+	}
+
+	@Override
+	public byte[] getKey(final ServerNames serverNames, final PskPublicInformation identity) {
+		return getKey(identity);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Not supported.
+	 *
+	 * @return always {@code null}
+	 */
+	@Override
+	public PskPublicInformation getIdentity(final InetSocketAddress inetAddress) {
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Not supported.
+	 *
+	 * @return always {@code null}
+	 */
+	@Override
+	public PskPublicInformation getIdentity(final InetSocketAddress peerAddress, final ServerNames virtualHost) {
+		return null;
+	}
+
+	/**
+	 * Get the number of identities.
+	 *
+	 * @return number of identities
+	 */
+	public int size() {
+		return index.size;
+	}
+
+	/**
+	 * Reload the file, if it has changed.
+	 *
+	 * @return {@code true}, if the file has changed and was reloaded,
+	 *         {@code false}, if the file is unchanged.
+	 * @throws IOException if an i/o error occurred. The current identities
+	 *             are kept.
+	 */
+	public synchronized boolean reload() throws IOException {
+		long length = file.length();
+		long modified = file.lastModified();
+		if (length == fileLength && modified == lastModified) {
+			return false;
+		}
+		long start = System.nanoTime();
+		Index newIndex;
+		long offset;
+		if (length >= loadedLength && isAppended()) {
+			newIndex = index.copy();
+			offset = loadedLength;
+		} else {
+			newIndex = new Index(16);
+			offset = 0;
+		}
+		int lines;
+		InputStream in = new FileInputStream(file);
+		try {
+			long skipped = 0;
+			while (skipped < offset) {
+				long skip = in.skip(offset - skipped);
+				if (skip <= 0) {
+					throw new IOException(file + " truncated while loading!");
+				}
+				skipped += skip;
+			}
+			Loader loader = new Loader(newIndex, offset);
+			lines = loader.load(in);
+			offset = loader.position;
+		} finally {
+			in.close();
+		}
+		index = newIndex;
+		loadedLength = offset;
+		fileLength = length;
+		lastModified = modified;
+		loadedHash = hash(offset);
+		LOGGER.info("loaded {} lines of {}, {} identities, in {}ms", lines, file, newIndex.size,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		return true;
+	}
+
+	/**
+	 * Start to reload the file periodically.
+	 *
+	 * @param interval interval to check the file for changes
+	 * @param unit time unit of interval
+	 * @throws IllegalArgumentException if interval is less than {@code 1}
+	 */
+	public synchronized void startReloading(long interval, TimeUnit unit) {
+		if (interval < 1) {
+			throw new IllegalArgumentException("interval " + interval + " must be at least 1!");
+		}
+		stopReloading();
+		reloader = Executors.newSingleThreadScheduledExecutor(
+				new DaemonThreadFactory("DTLS-PSK-Reload-", NamedThreadFactory.SCANDIUM_THREAD_GROUP));
+		reloader.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					reload();
+				} catch (IOException e) {
+					LOGGER.warn("reloading {} failed: {}", file, e.getMessage());
+				} catch (RuntimeException e) {
+					LOGGER.warn("reloading {} failed!", file, e);
+				}
+			}
+		}, interval, interval, unit);
+	}
+
+	/**
+	 * Stop to reload the file periodically.
+	 */
+	public synchronized void stopReloading() {
+		if (reloader != null) {
+			reloader.shutdownNow();
+			reloader = null;
+		}
+	}
+
+	/**
+	 * Stop to reload the file periodically.
+	 */
+	@Override
+	public void close() {
+		stopReloading();
+	}
+
+	/**
+	 * Check, if the file has only been appended since the last load.
+	 *
+	 * @return {@code true}, if the loaded part is unchanged.
+	 * @throws IOException if an i/o error occurred
+	 */
+	private boolean isAppended() throws IOException {
+		return loadedLength > 0 && loadedHash != null && Arrays.equals(loadedHash, hash(loadedLength));
+	}
+
+	/**
+	 * Calculate the SHA-256 hash over the beginning of the file.
+	 *
+	 * @param length number of bytes to hash
+	 * @return hash, or {@code null}, if SHA-256 is not available or the file
+	 *         is shorter than the provided length
+	 * @throws IOException if an i/o error occurred
+	 */
+	private byte[] hash(long length) throws IOException {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			LOGGER.debug("SHA-256 not available, {} is always loaded completely!", file);
+			return null;
+		}
+		byte[] buffer = new byte[64 * 1024];
+		InputStream in = new FileInputStream(file);
+		try {
+			while (length > 0) {
+				int read = in.read(buffer, 0, (int) Math.min(buffer.length, length));
+				if (read < 0) {
+					return null;
+				}
+				md.update(buffer, 0, read);
+				length -= read;
+			}
+		} finally {
+			in.close();
+		}
+		return md.digest();
+	}
+
+	/**
+	 * Parser for the lines of the file.
+	 */
+	private static final class Loader {
+
+		private final Index index;
+		private byte[] line = new byte[256];
+		/**
+		 * Position in file after the last complete line.
+		 */
+		private long position;
+
+		private Loader(Index index, long position) {
+			this.index = index;
+			this.position = position;
+		}
+
+		/**
+		 * Load lines into index.
+		 *
+		 * A last line without line end is also loaded, but not included in
+		 * {@link #position}.
+		 *
+		 * @param in input stream with lines
+		 * @return number of loaded lines
+		 * @throws IOException if an i/o error occurred
+		 */
+		private int load(InputStream in) throws IOException {
+			byte[] buffer = new byte[64 * 1024];
+			int lines = 0;
+			int length = 0;
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				for (int offset = 0; offset < read; ++offset) {
+					byte b = buffer[offset];
+					if (b == '\n') {
+						add(length);
+						position += length + 1;
+						length = 0;
+						++lines;
+					} else {
+						if (length == line.length) {
+							line = Arrays.copyOf(line, length * 2);
+						}
+						line[length++] = b;
+					}
+				}
+			}
+			if (length > 0) {
+				add(length);
+				++lines;
+			}
+			return lines;
+		}
+
+		/**
+		 * Add line to index.
+		 *
+		 * @param length length of line
+		 */
+		private void add(int length) {
+			if (length > 0 && line[length - 1] == '\r') {
+				--length;
+			}
+			if (length == 0 || line[0] == '#') {
+				return;
+			}
+			int separator = -1;
+			for (int offset = 0; offset < length; ++offset) {
+				if (line[offset] == '=') {
+					separator = offset;
+					break;
+				}
+			}
+			if (separator <= 0) {
+				LOGGER.warn("missing identity in line at {}", position);
+				return;
+			}
+			byte[] identity = Arrays.copyOf(line, separator);
+			if (separator + 1 == length) {
+				index.remove(identity);
+				return;
+			}
+			try {
+				byte[] key = Base64.decode(line, separator + 1, length - separator - 1, Base64.NO_OPTIONS);
+				if (key.length == 0 || key.length > 255) {
+					LOGGER.warn("key length {} not supported, line at {}", key.length, position);
+				} else if (identity.length > 65535) {
+					LOGGER.warn("identity length {} not supported, line at {}", identity.length, position);
+				} else {
+					index.put(identity, key);
+				}
+			} catch (IOException | IllegalArgumentException e) {
+				LOGGER.warn("invalid key in line at {}: {}", position, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Compact index of identities and keys.
+	 * <p>
+	 * The entries are appended to {@link #data} as
+	 * {@code <identity length (2 bytes)><identity><key length (1 byte)><key>}.
+	 * The {@link #table} contains the offset of the entries in {@link #data}
+	 * plus {@code 1}, {@code 0} for free slots, and {@code -1} for removed
+	 * entries. Collisions are resolved by linear probing.
+	 * </p>
+	 * <p>
+	 * The index is only modified before it's published.
+	 * </p>
+	 */
+	private static final class Index {
+
+		private static final int FREE = 0;
+		private static final int REMOVED = -1;
+
+		private byte[] data;
+		private int dataSize;
+		private int[] table;
+		private int size;
+		private int removed;
+
+		private Index(int capacity) {
+			this.data = new byte[capacity * 32];
+			this.table = new int[tableSize(capacity)];
+		}
+
+		private Index(Index index) {
+			this.data = Arrays.copyOf(index.data, index.data.length);
+			this.dataSize = index.dataSize;
+			this.table = Arrays.copyOf(index.table, index.table.length);
+			this.size = index.size;
+			this.removed = index.removed;
+		}
+
+		private Index copy() {
+			return new Index(this);
+		}
+
+		private byte[] get(byte[] identity) {
+			int slot = find(identity);
+			if (slot < 0) {
+				return null;
+			}
+			int offset = table[slot] - 1;
+			int keyOffset = offset + 2 + identity.length;
+			int keyLength = data[keyOffset] & 0xff;
+			return Arrays.copyOfRange(data, keyOffset + 1, keyOffset + 1 + keyLength);
+		}
+
+		private void put(byte[] identity, byte[] key) {
+			if ((size + removed + 1) * 2 > table.length) {
+				rehash();
+			}
+			int offset = append(identity, key);
+			int slot = find(identity);
+			if (slot >= 0) {
+				// replace, the previous entry is left in data
+				table[slot] = offset + 1;
+				return;
+			}
+			slot = hash(identity, 0, identity.length) & (table.length - 1);
+			while (table[slot] > FREE) {
+				slot = (slot + 1) & (table.length - 1);
+			}
+			if (table[slot] == REMOVED) {
+				--removed;
+			}
+			table[slot] = offset + 1;
+			++size;
+		}
+
+		private void remove(byte[] identity) {
+			int slot = find(identity);
+			if (slot >= 0) {
+				table[slot] = REMOVED;
+				--size;
+				++removed;
+			}
+		}
+
+		/**
+		 * Find slot of identity.
+		 *
+		 * @param identity identity
+		 * @return slot, or {@code -1}, if not available.
+		 */
+		private int find(byte[] identity) {
+			int mask = table.length - 1;
+			int slot = hash(identity, 0, identity.length) & mask;
+			int entry;
+			while ((entry = table[slot]) != FREE) {
+				if (entry > FREE && matches(entry - 1, identity)) {
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		private boolean matches(int offset, byte[] identity) {
+			int length = ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+			if (length != identity.length) {
+				return false;
+			}
+			offset += 2;
+			for (int index = 0; index < length; ++index) {
+				if (data[offset + index] != identity[index]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private int append(byte[] identity, byte[] key) {
+			int length = 2 + identity.length + 1 + key.length;
+			if (dataSize + length > data.length) {
+				long capacity = Math.max(dataSize + length, data.length * 2L);
+				if (capacity >= Integer.MAX_VALUE - 8) {
+					throw new IllegalStateException("PSK store exceeds maximum size!");
+				}
+				data = Arrays.copyOf(data, (int) capacity);
+			}
+			int offset = dataSize;
+			data[offset] = (byte) (identity.length >> 8);
+			data[offset + 1] = (byte) identity.length;
+			System.arraycopy(identity, 0, data, offset + 2, identity.length);
+			data[offset + 2 + identity.length] = (byte) key.length;
+			System.arraycopy(key, 0, data, offset + 3 + identity.length, key.length);
+			dataSize += length;
+			return offset;
+		}
+
+		private void rehash() {
+			int[] oldTable = table;
+			table = new int[tableSize(size + 1)];
+			removed = 0;
+			int mask = table.length - 1;
+			for (int entry : oldTable) {
+				if (entry > FREE) {
+					int offset = entry - 1;
+					int length = ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+					int slot = hash(data, offset + 2, length) & mask;
+					while (table[slot] != FREE) {
+						slot = (slot + 1) & mask;
+					}
+					table[slot] = entry;
+				}
+			}
+		}
+
+		/**
+		 * Table size for capacity. Power of two, at least four times the
+		 * capacity.
+		 *
+		 * @param capacity number of entries
+		 * @return table size
+		 */
+		private static int tableSize(int capacity) {
+			int size = 16;
+			while (size < capacity * 4L) {
+				size <<= 1;
+			}
+			return size;
+		}
+
+		private static int hash(byte[] bytes, int offset, int length) {
+			// FNV-1a with final avalanche
+			int hash = 0x811c9dc5;
+			for (int index = offset; index < offset + length; ++index) {
+				hash ^= bytes[index];
+				hash *= 0x01000193;
+			}
+			hash ^= hash >>> 16;
+			hash *= 0x85ebca6b;
+			hash ^= hash >>> 13;
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,339 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *    Bosch Software Innovations GmbH - don't cache issuers with name or
+ *                                      policy constraints, check path length
+ *    Bosch Software Innovations GmbH - validate leaf with PKIX
+ ******************************************************************************/
+package org.eclipse.californium.scandium.dtls.x509;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.cert.CertPath;
+import java.security.cert.CertPathValidator;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.PKIXParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.californium.elements.util.Bytes;
+import org.eclipse.californium.elements.util.ConcurrentLeastRecentlyUsedCache;
+import org.eclipse.californium.scandium.dtls.AlertMessage;
+import org.eclipse.californium.scandium.dtls.AlertMessage.AlertDescription;
+import org.eclipse.californium.scandium.dtls.AlertMessage.AlertLevel;
+import org.eclipse.californium.scandium.dtls.CertificateMessage;
+import org.eclipse.californium.scandium.dtls.DTLSSession;
+import org.eclipse.californium.scandium.dtls.HandshakeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Certificate verifier, which caches successfully verified issuer chains.
+ * <p>
+ * Many peers present the same intermediate and root certificates, each with
+ * their own leaf (end entity) certificate. This verifier delegates the
+ * verification of a chain to the provided verifier and caches the
+ * fingerprint of the issuer chain (all certificates but the leaf), if that
+ * succeeds. A chain with a cached issuer chain is verified by checking
+ * the leaf only:
+ * </p>
+ * <ol>
+ * <li>the leaf's issuer DN equals the subject DN of the next certificate</li>
+ * <li>the next certificate is a CA certificate, which may sign certificates
+ * according to its key usage</li>
+ * <li>the path length constraints of the issuers are met</li>
+ * <li>the leaf is validated with PKIX as certification path of its own, using
+ * the next certificate as trust anchor. That checks the validity period, the
+ * signature and the critical extensions of the leaf, and applies the
+ * algorithm constraints of the JVM (e.g.
+ * {@code jdk.certpath.disabledAlgorithms}) to the leaf as the delegate
+ * does</li>
+ * </ol>
+ * <p>
+ * Issuer chains with a certificate containing name constraints, policy
+ * constraints, policy mappings or inhibit any policy are not cached, because
+ * these restrict the leaf in a way not checked above. Such chains are always
+ * verified by the delegate.
+ * </p>
+ * <p>
+ * Other checks of the delegate are not applied to a leaf with a cached
+ * issuer chain. Therefore this verifier is intended to be used with a
+ * delegate, which only validates the certification path without revocation
+ * checks, as {@link StaticCertificateVerifier} does. Don't use it with a
+ * delegate, which checks revocation or applies application specific checks
+ * to the leaf.
+ * </p>
+ * <p>
+ * An issuer chain is cached until the first of its certificates expires.
+ * Chains with just one certificate are always verified by the delegate.
+ * </p>
+ */
+public class CachingCertificateVerifier implements CertificateVerifier {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CachingCertificateVerifier.class.getName());
+
+	/**
+	 * Period of inactivity in seconds, after which a cached issuer chain may
+	 * be evicted to cache an other one.
+	 */
+	private static final long STALE_THRESHOLD_SECONDS = TimeUnit.MINUTES.toSeconds(10);
+
+	/**
+	 * Extensions of issuers, which restrict the leaf beyond the checks
+	 * applied to the leaf with a cached issuer chain.
+	 */
+	private static final List<String> UNCACHEABLE_ISSUER_EXTENSIONS = Arrays.asList(
+			"2.5.29.30", // name constraints
+			"2.5.29.33", // policy mappings
+			"2.5.29.36", // policy constraints
+			"2.5.29.54" // inhibit any policy
+	);
+
+	/**
+	 * Index of the key cert sign bit in the key usage.
+	 */
+	private static final int KEY_CERT_SIGN = 5;
+
+	private final CertificateVerifier verifier;
+	/**
+	 * Expiration time in milliseconds (system time) of verified issuer chains
+	 * by their fingerprint.
+	 */
+	private final ConcurrentLeastRecentlyUsedCache<Bytes, Long> verifiedIssuers;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Create caching certificate verifier.
+	 *
+	 * @param verifier verifier to validate the chains, which are not cached
+	 * @param capacity maximum number of cached issuer chains
+	 * @throws NullPointerException if verifier is {@code null}
+	 * @throws IllegalArgumentException if capacity is less than {@code 1}
+	 */
+	public CachingCertificateVerifier(CertificateVerifier verifier, int capacity) {
+		if (verifier == null) {
+			throw new NullPointerException("verifier must not be null!");
+		}
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity " + capacity + " must be at least 1!");
+		}
+		this.verifier = verifier;
+		this.verifiedIssuers = new ConcurrentLeastRecentlyUsedCache<>(capacity, STALE_THRESHOLD_SECONDS);
+	}
+
+	@Override
+	public void verifyCertificate(CertificateMessage message, DTLSSession session) throws HandshakeException {
+		CertPath certPath = message.getCertificateChain();
+		List<? extends Certificate> chain = certPath == null ? null : certPath.getCertificates();
+		if (chain == null || chain.size() < 2 || !(chain.get(0) instanceof X509Certificate)) {
+			verifier.verifyCertificate(message, session);
+			return;
+		}
+		Bytes fingerprint = isCacheable(chain) ? getIssuersFingerprint(chain) : null;
+		if (fingerprint != null) {
+			Long expires = verifiedIssuers.get(fingerprint);
+			if (expires != null) {
+				if (System.currentTimeMillis() < expires) {
+					hits.incrementAndGet();
+					verifyLeaf(chain, session);
+					return;
+				}
+				verifiedIssuers.remove(fingerprint, expires);
+			}
+		}
+		misses.incrementAndGet();
+		verifier.verifyCertificate(message, session);
+		if (fingerprint != null) {
+			verifiedIssuers.put(fingerprint, getIssuersNotAfter(chain));
+		}
+	}
+
+	@Override
+	public X509Certificate[] getAcceptedIssuers() {
+		return verifier.getAcceptedIssuers();
+	}
+
+	/**
+	 * Get the number of chains, which were verified using a cached issuer
+	 * chain.
+	 *
+	 * @return number of cache hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Get the number of chains, which were verified by the delegate.
+	 *
+	 * @return number of cache misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Get the number of cached issuer chains.
+	 *
+	 * @return number of cached issuer chains
+	 */
+	public int size() {
+		return verifiedIssuers.size();
+	}
+
+	/**
+	 * Remove all cached issuer chains.
+	 */
+	public void clear() {
+		verifiedIssuers.clear();
+	}
+
+	/**
+	 * Verify leaf certificate against the cached issuer chain.
+	 *
+	 * @param chain certificate chain
+	 * @param session dtls session to verify
+	 * @throws HandshakeException if the leaf could not be verified
+	 */
+	private void verifyLeaf(List<? extends Certificate> chain, DTLSSession session) throws HandshakeException {
+		X509Certificate leaf = (X509Certificate) chain.get(0);
+		X509Certificate issuer = (X509Certificate) chain.get(1);
+		try {
+			if (!leaf.getIssuerX500Principal().equals(issuer.getSubjectX500Principal())) {
+				throw new GeneralSecurityException("Issuer of leaf doesn't match!");
+			}
+			if (issuer.getBasicConstraints() < 0) {
+				throw new GeneralSecurityException("Issuer of leaf is no CA!");
+			}
+			boolean[] keyUsage = issuer.getKeyUsage();
+			if (keyUsage != null && (keyUsage.length <= KEY_CERT_SIGN || !keyUsage[KEY_CERT_SIGN])) {
+				throw new GeneralSecurityException("Issuer of leaf must not sign certificates!");
+			}
+			verifyPathLength(chain);
+			CertPath leafPath = CertificateFactory.getInstance("X.509")
+					.generateCertPath(Collections.singletonList(leaf));
+			PKIXParameters params = new PKIXParameters(Collections.singleton(new TrustAnchor(issuer, null)));
+			params.setRevocationEnabled(false);
+			CertPathValidator validator = CertPathValidator.getInstance("PKIX");
+			validator.validate(leafPath, params);
+		} catch (GeneralSecurityException e) {
+			if (LOGGER.isTraceEnabled()) {
+				LOGGER.trace("Certificate validation failed", e);
+			} else if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Certificate validation failed due to {}", e.getMessage());
+			}
+			AlertMessage alert = new AlertMessage(AlertLevel.FATAL, AlertDescription.BAD_CERTIFICATE,
+					session.getPeer());
+			throw new HandshakeException("Certificate chain could not be validated", alert, e);
+		}
+	}
+
+	/**
+	 * Verify the path length constraints of the issuers.
+	 * <p>
+	 * The leaf itself doesn't count for the path length, so the result is the
+	 * same as for the chain verified by the delegate. The constraints are
+	 * checked anyway, so a leaf with a cached issuer chain never passes a
+	 * path length, which the issuers don't allow.
+	 *
+	 * @param chain certificate chain
+	 * @throws GeneralSecurityException if the path length of an issuer is
+	 *             exceeded
+	 */
+	private static void verifyPathLength(List<? extends Certificate> chain) throws GeneralSecurityException {
+		// number of not self-issued intermediate certificates between the
+		// current issuer and the leaf
+		int intermediates = 0;
+		for (int index = 1; index < chain.size(); ++index) {
+			X509Certificate issuer = (X509Certificate) chain.get(index);
+			if (issuer.getBasicConstraints() < intermediates) {
+				throw new GeneralSecurityException("Path length of issuer " + index + " exceeded!");
+			}
+			if (!issuer.getSubjectX500Principal().equals(issuer.getIssuerX500Principal())) {
+				++intermediates;
+			}
+		}
+	}
+
+	/**
+	 * Check, if the issuer chain could be cached.
+	 *
+	 * @param chain certificate chain
+	 * @return {@code true}, if all issuers are X509 certificates without
+	 *         extensions restricting the leaf beyond the checks of
+	 *         {@link #verifyLeaf(List, DTLSSession)}, {@code false},
+	 *         otherwise.
+	 */
+	private static boolean isCacheable(List<? extends Certificate> chain) {
+		for (int index = 1; index < chain.size(); ++index) {
+			Certificate certificate = chain.get(index);
+			if (!(certificate instanceof X509Certificate)) {
+				return false;
+			}
+			X509Certificate issuer = (X509Certificate) certificate;
+			for (String oid : UNCACHEABLE_ISSUER_EXTENSIONS) {
+				if (issuer.getExtensionValue(oid) != null) {
+					LOGGER.debug("Issuer {} contains extension {}, not cached",
+							issuer.getSubjectX500Principal(), oid);
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get fingerprint of the issuer chain.
+	 *
+	 * @param chain certificate chain
+	 * @return SHA-256 over the encoded issuer certificates, or {@code null},
+	 *         if the fingerprint could not be calculated.
+	 */
+	private static Bytes getIssuersFingerprint(List<? extends Certificate> chain) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			for (int index = 1; index < chain.size(); ++index) {
+				md.update(chain.get(index).getEncoded());
+			}
+			return new Bytes(md.digest());
+		} catch (GeneralSecurityException e) {
+			LOGGER.debug("Fingerprint of certificate chain failed due to {}", e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Get the time, when the first certificate of the issuer chain expires.
+	 *
+	 * @param chain certificate chain
+	 * @return expiration time in milliseconds (system time)
+	 */
+	private static long getIssuersNotAfter(List<? extends Certificate> chain) {
+		long notAfter = Long.MAX_VALUE;
+		for (int index = 1; index < chain.size(); ++index) {
+			Certificate certificate = chain.get(index);
+			if (certificate instanceof X509Certificate) {
+				notAfter = Math.min(notAfter, ((X509Certificate) certificate).getNotAfter().getTime());
+			}
+		}
+		return notAfter;
+	}
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.scandium;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.elements.rule.TestTimeRule;
+import org.eclipse.californium.scandium.category.Small;
+import org.eclipse.californium.scandium.dtls.ClientHello;
+import org.eclipse.californium.scandium.dtls.CompressionMethod;
+import org.eclipse.californium.scandium.dtls.ProtocolVersion;
+import org.eclipse.californium.scandium.dtls.cipher.CipherSuite;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of {@link CookieGenerator}.
+ */
+@Category(Small.class)
+public class CookieGeneratorTest {
+
+	@Rule
+	public TestTimeRule time = new TestTimeRule();
+
+	CookieGenerator generator;
+	ClientHello clientHello;
+
+	@Before
+	public void setUp() {
+		generator = new CookieGenerator();
+		clientHello = createClientHello(new InetSocketAddress(5684));
+	}
+
+	@Test
+	public void testCookieIsValid() throws Exception {
+		clientHello.setCookie(generator.generateCookie(clientHello));
+		assertThat(generator.isValidCookie(clientHello), is(true));
+		assertThat(generator.getIssuedCookies(), is(1L));
+		assertThat(generator.getVerifiedCookies(), is(1L));
+	}
+
+	@Test
+	public void testCookieOfOtherPeerIsRejected() throws Exception {
+		ClientHello other = createClientHello(new InetSocketAddress(5685));
+		clientHello.setCookie(generator.generateCookie(other));
+		assertThat(generator.isValidCookie(clientHello), is(false));
+		assertThat(generator.getRejectedCookies(), is(1L));
+	}
+
+	@Test
+	public void testMissingCookieIsRejected() throws Exception {
+		assertThat(generator.isValidCookie(clientHello), is(false));
+		assertThat(generator.getVerifiedCookies(), is(0L));
+		assertThat(generator.getRejectedCookies(), is(1L));
+	}
+
+	@Test
+	public void testCookieOfPreviousSecretIsValid() throws Exception {
+		byte[] cookie = generator.generateCookie(clientHello);
+		clientHello.setCookie(cookie);
+		time.addTestTimeShift(6, TimeUnit.MINUTES);
+		assertThat(Arrays.equals(generator.generateCookie(clientHello), cookie), is(false));
+		assertThat(generator.isValidCookie(clientHello), is(true));
+
+		time.addTestTimeShift(6, TimeUnit.MINUTES);
+		assertThat(generator.isValidCookie(clientHello), is(false));
+	}
+
+	private static ClientHello createClientHello(InetSocketAddress peer) {
+		ClientHello hello = new ClientHello(new ProtocolVersion(),
+				Arrays.asList(CipherSuite.TLS_PSK_WITH_AES_128_CCM_8), null, null, peer);
+		hello.addCompressionMethod(CompressionMethod.NULL);
+		return hello;
+	}
+}
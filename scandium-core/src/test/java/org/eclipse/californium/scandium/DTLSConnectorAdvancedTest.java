@@ -20,6 +20,8 @@
  *                                                    compensation for faster timeouts
  *    Achim Kraus (Bosch Software Innovations GmbH) - add test for timeout of handshaker
  *                                                    with stopped retransmission
+ *    Bosch Software Innovations GmbH - add test for retransmission of a padded
+ *                                      CLIENT_HELLO
  ******************************************************************************/
 package org.eclipse.californium.scandium;
 
@@ -51,14 +53,19 @@ import org.eclipse.californium.scandium.category.Medium;
 import org.eclipse.californium.scandium.config.DtlsConnectorConfig;
 import org.eclipse.californium.scandium.dtls.AdversaryClientHandshaker;
 import org.eclipse.californium.scandium.dtls.ClientHandshaker;
+import org.eclipse.californium.scandium.dtls.ClientHello;
 import org.eclipse.californium.scandium.dtls.Connection;
 import org.eclipse.californium.scandium.dtls.ConnectionIdGenerator;
+import org.eclipse.californium.scandium.dtls.ContentType;
 import org.eclipse.californium.scandium.dtls.DTLSFlight;
 import org.eclipse.californium.scandium.dtls.DTLSMessage;
 import org.eclipse.californium.scandium.dtls.DTLSSession;
 import org.eclipse.californium.scandium.dtls.HandshakeException;
 import org.eclipse.californium.scandium.dtls.Handshaker;
+import org.eclipse.californium.scandium.dtls.HelloVerifyRequest;
 import org.eclipse.californium.scandium.dtls.InMemoryConnectionStore;
+import org.eclipse.californium.scandium.dtls.PathMtu;
+import org.eclipse.californium.scandium.dtls.ProtocolVersion;
 import org.eclipse.californium.scandium.dtls.Record;
 import org.eclipse.californium.scandium.dtls.RecordLayer;
 import org.eclipse.californium.scandium.dtls.ResumingClientHandshaker;
@@ -1056,6 +1063,113 @@ public class DTLSConnectorAdvancedTest {
 		}
 	}
 
+	/**
+	 * Test, that a client, which probes the path MTU with a padded
+	 * CLIENT_HELLO, completes the handshake, if flight 4 of the server is
+	 * dropped twice. The retransmitted CLIENT_HELLO with cookie must not be
+	 * changed, because the server has already processed it.
+	 */
+	@Test
+	public void testClientProbingPathMtuRetransmitsClientHelloUnchanged() throws Exception {
+		// Configure UDP connector we will use as Server
+		RecordCollectorDataHandler collector = new RecordCollectorDataHandler(serverCidGenerator);
+		UdpConnector rawServer = new UdpConnector(0, collector);
+
+		try {
+			// Start connector (Server)
+			rawServer.start();
+
+			// Start the client using path MTU discovery with a probe MTU
+			// above the confirmed MTU
+			client.destroy();
+			clientConnectionStore = new InMemoryConnectionStore(CLIENT_CONNECTION_STORE_CAPACITY, 60);
+			clientConnectionStore.setTag("client");
+			clientConfig = new DtlsConnectorConfig.Builder(clientConfig).setUsePathMtuDiscovery(true).build();
+			client = serverHelper.createClient(clientConfig, clientConnectionStore);
+			client.setExecutor(executor);
+			client.start();
+			PathMtu pathMtu = new PathMtu(576, 1400);
+			pathMtu.flightDelivered(576);
+			Connection connection = new Connection(rawServer.getAddress(), new SerialExecutor(executor));
+			connection.setPathMtu(pathMtu);
+			clientConnectionStore.put(connection);
+
+			RawData data = RawData.outbound("Hello World".getBytes(),
+					new AddressEndpointContext(rawServer.getAddress()), null, false);
+			client.send(data);
+
+			// Wait to receive response (should be padded CLIENT HELLO, flight 1)
+			List<Record> rs = waitForFlightReceived("flight 1", collector, 1);
+			Record record = rs.get(0);
+			assertThat("CLIENT_HELLO not padded", record.getFragmentLength(), is(greaterThan(576)));
+			record.applySession(null);
+			ClientHello clientHello = (ClientHello) record.getFragment();
+
+			// Answer with HELLO_VERIFY_REQUEST, flight 2
+			HelloVerifyRequest helloVerify = new HelloVerifyRequest(new ProtocolVersion(), new byte[32],
+					client.getAddress());
+			helloVerify.setMessageSeq(clientHello.getMessageSeq());
+			Record helloVerifyRecord = new Record(ContentType.HANDSHAKE, record.getSequenceNumber(), helloVerify,
+					client.getAddress());
+			rawServer.sendRecord(client.getAddress(), helloVerifyRecord.toByteArray());
+
+			// Create server handshaker, drop flight 4 twice
+			BasicRecordLayer serverRecordLayer = new BasicRecordLayer(rawServer) {
+
+				private final AtomicInteger drops = new AtomicInteger(2);
+
+				@Override
+				public void sendFlight(DTLSFlight flight, Connection connection) throws IOException {
+					if (drops.getAndDecrement() > 0) {
+						lastFlight = flight;
+						lastConnection = connection;
+					} else {
+						super.sendFlight(flight, connection);
+					}
+				}
+			};
+			LatchSessionListener sessionListener = new LatchSessionListener();
+			ServerHandshaker serverHandshaker = new ServerHandshaker(1, new DTLSSession(client.getAddress(), 1),
+					serverRecordLayer, createServerConnection(), serverHelper.serverConfig, 1280);
+			serverHandshaker.addSessionListener(sessionListener);
+
+			// Wait to receive response (should be CLIENT HELLO with cookie,
+			// flight 3)
+			rs = waitForFlightReceived("flight 3", collector, 1);
+			byte[] clientHelloWithCookie = rs.get(0).getFragmentBytes();
+			assertThat("CLIENT_HELLO with cookie exceeds the confirmed size", clientHelloWithCookie.length,
+					is(record.getFragmentLength()));
+			// Handle and answer
+			// (SERVER_HELLO, CERTIFICATE, ... SERVER HELLO DONE, flight 4)
+			processAll(serverHandshaker, rs);
+
+			LatchSessionListener clientSessionListener = getSessionListenerForEndpoint("client", rawServer);
+
+			for (int retransmission = 1; retransmission <= 2; ++retransmission) {
+				// Wait for retransmission of flight 3
+				rs = collector.waitForFlight(1, MAX_TIME_TO_WAIT_SECS, TimeUnit.SECONDS);
+				assertNotNull("flight 3 retransmission " + retransmission + " timeout", rs);
+				assertArrayEquals("flight 3 retransmission " + retransmission + " changed", clientHelloWithCookie,
+						rs.get(0).getFragmentBytes());
+				// duplicate CLIENT_HELLO, resend flight 4
+				serverRecordLayer.resendLastFlight();
+			}
+
+			// Wait for transmission (CERTIFICATE, ... , FINISHED, flight 5)
+			rs = waitForFlightReceived("flight 5", collector, 5);
+			// Handle and answer (should be CCS, FINISHED, flight 6)
+			processAll(serverHandshaker, rs);
+
+			// Ensure handshake is successfully done
+			assertTrue("server handshake failed",
+					sessionListener.waitForSessionEstablished(MAX_TIME_TO_WAIT_SECS, TimeUnit.SECONDS));
+			assertTrue("client handshake failed",
+					clientSessionListener.waitForSessionEstablished(MAX_TIME_TO_WAIT_SECS, TimeUnit.SECONDS));
+		} finally {
+			rawServer.stop();
+		}
+	}
+
 	@Test
 	public void testResumeWithVerify() throws Exception {
 		// Configure and create UDP connector
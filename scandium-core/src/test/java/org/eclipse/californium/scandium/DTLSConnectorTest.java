@@ -44,6 +44,7 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - remove unused sendRecord
  *    Achim Kraus (Bosch Software Innovations GmbH) - move advanced tests to
  *                                                    DTLSConnectorAdvancedTest
+ *    Bosch Software Innovations GmbH - add test for replayed inline records
  ******************************************************************************/
 package org.eclipse.californium.scandium;
 
@@ -60,9 +61,11 @@ import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.californium.elements.AddressEndpointContext;
 import org.eclipse.californium.elements.RawData;
+import org.eclipse.californium.elements.util.ClockUtil;
 import org.eclipse.californium.elements.util.ExecutorsUtil;
 import org.eclipse.californium.elements.util.SerialExecutor;
 import org.eclipse.californium.elements.util.SimpleMessageCallback;
@@ -75,6 +78,7 @@ import org.eclipse.californium.scandium.config.DtlsConnectorConfig;
 import org.eclipse.californium.scandium.dtls.AlertMessage;
 import org.eclipse.californium.scandium.dtls.AlertMessage.AlertDescription;
 import org.eclipse.californium.scandium.dtls.AlertMessage.AlertLevel;
+import org.eclipse.californium.scandium.dtls.ApplicationMessage;
 import org.eclipse.californium.scandium.dtls.CertificateType;
 import org.eclipse.californium.scandium.dtls.ClientHello;
 import org.eclipse.californium.scandium.dtls.ClientKeyExchange;
@@ -759,6 +763,7 @@ public class DTLSConnectorTest {
 
 		try{
 			rawClient.start();
+			long issuedCookies = serverHelper.server.getCookieGenerator().getIssuedCookies();
 	
 			// send a CLIENT_HELLO without cookie
 			ClientHello clientHello = createClientHello();
@@ -776,6 +781,7 @@ public class DTLSConnectorTest {
 					handshake.getMessageType(), is(HandshakeType.HELLO_VERIFY_REQUEST));
 			Assert.assertNull("Server should not have created session for CLIENT_HELLO containging no cookie",
 					serverHelper.serverConnectionStore.get(endpoint));
+			Assert.assertThat(serverHelper.server.getCookieGenerator().getIssuedCookies(), is(issuedCookies + 1));
 		} finally {
 			rawClient.stop();
 		}
@@ -881,6 +887,81 @@ public class DTLSConnectorTest {
 		}
 	}
 
+	@Test
+	public void testInlineAndSerialProcessingDeliverReplayedRecordOnce() throws Exception {
+		ConnectorHelper serverHelper = new ConnectorHelper();
+		try {
+			// given an established session with a server, which processes
+			// application data inline
+			DtlsConnectorConfig.Builder serverConfig = new DtlsConnectorConfig.Builder()
+					.setAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+					.setLoggingTag("server")
+					.setIdentity(DtlsTestTools.getPrivateKey(), DtlsTestTools.getServerCertificateChain(), CertificateType.RAW_PUBLIC_KEY)
+					.setClientAuthenticationRequired(false)
+					.setUseInlineApplicationData(true);
+			serverHelper.startServer(serverConfig);
+			serverHelper.givenAnEstablishedSession(client, false);
+			final AtomicInteger received = new AtomicInteger();
+			serverHelper.serverRawDataChannel.setProcessor(new MessageCapturingProcessor() {
+
+				@Override
+				public RawData process(RawData request) {
+					received.incrementAndGet();
+					return null;
+				}
+			});
+			final DTLSConnector server = serverHelper.server;
+			final Connection connection = serverHelper.serverConnectionStore.get(client.getAddress());
+			DTLSSession clientSession = clientConnectionStore.get(serverHelper.serverEndpoint).getEstablishedSession();
+
+			// when a record is replayed, first inline, then serial
+			byte[] datagram = newApplicationDataDatagram(clientSession, 100);
+			assertTrue(server.processInlineApplicationDataRecord(receive(datagram), connection));
+			server.processRecord(receive(datagram), connection);
+			// then it's delivered once
+			assertThat(received.get(), is(1));
+
+			// when a record is replayed, first serial, then inline
+			datagram = newApplicationDataDatagram(clientSession, 101);
+			server.processRecord(receive(datagram), connection);
+			assertTrue(server.processInlineApplicationDataRecord(receive(datagram), connection));
+			// then it's delivered once
+			assertThat(received.get(), is(2));
+
+			// when records are replayed concurrently on both paths
+			for (int sequenceNo = 200; sequenceNo < 400; ++sequenceNo) {
+				datagram = newApplicationDataDatagram(clientSession, sequenceNo);
+				final Record serialRecord = receive(datagram);
+				Record inlineRecord = receive(datagram);
+				Thread serial = new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+						server.processRecord(serialRecord, connection);
+					}
+				});
+				serial.start();
+				server.processInlineApplicationDataRecord(inlineRecord, connection);
+				serial.join();
+			}
+			// then each is delivered once
+			assertThat(received.get(), is(202));
+		} finally {
+			serverHelper.destroyServer();
+		}
+	}
+
+	private byte[] newApplicationDataDatagram(DTLSSession session, long sequenceNo) throws GeneralSecurityException {
+		ApplicationMessage message = new ApplicationMessage("Hello".getBytes(), session.getPeer());
+		Record record = new Record(ContentType.APPLICATION_DATA, session.getWriteEpoch(), sequenceNo, message, session,
+				false, 0);
+		return record.toByteArray();
+	}
+
+	private Record receive(byte[] datagram) {
+		return Record.fromByteArray(datagram, client.getAddress(), null, ClockUtil.nanoRealtime()).get(0);
+	}
+
 	private void assertClientIdentity(final Class<?> principalType) {
 
 		// assert that client identity is of given type
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *    Bosch Software Innovations GmbH - add tests for unlimited handshakes,
+ *                                      shared token bucket and reclaimed
+ *                                      tickets
+ ******************************************************************************/
+package org.eclipse.californium.scandium;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.elements.rule.TestTimeRule;
+import org.eclipse.californium.scandium.category.Small;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of {@link HandshakeScheduler}.
+ */
+@Category(Small.class)
+public class HandshakeSchedulerTest {
+
+	@Rule
+	public TestTimeRule time = new TestTimeRule();
+
+	/**
+	 * Executor, which executes the jobs directly.
+	 */
+	private static final Executor DIRECT = new Executor() {
+
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	List<String> started;
+	List<HandshakeScheduler.Ticket> tickets;
+
+	@Before
+	public void setUp() {
+		started = new ArrayList<>();
+		tickets = new ArrayList<>();
+	}
+
+	@Test
+	public void testHandshakesAreQueuedAboveLimit() {
+		HandshakeScheduler scheduler = new HandshakeScheduler(2, 10, 0, 0, 0);
+		assertThat(scheduler.execute(DIRECT, false, job("full-1")), is(true));
+		assertThat(scheduler.execute(DIRECT, false, job("full-2")), is(true));
+		assertThat(scheduler.execute(DIRECT, false, job("full-3")), is(true));
+		assertThat(started.size(), is(2));
+		assertThat(scheduler.getRunningHandshakes(), is(2));
+		assertThat(scheduler.getQueuedFullHandshakes(), is(1));
+
+		tickets.get(0).release();
+		assertThat(started.size(), is(3));
+		assertThat(started.get(2), is("full-3"));
+		assertThat(scheduler.getRunningHandshakes(), is(2));
+		assertThat(scheduler.getQueuedFullHandshakes(), is(0));
+	}
+
+	@Test
+	public void testResumptionsArePreferred() {
+		HandshakeScheduler scheduler = new HandshakeScheduler(1, 10, 0, 0, 0);
+		scheduler.execute(DIRECT, false, job("full-1"));
+		scheduler.execute(DIRECT, false, job("full-2"));
+		scheduler.execute(DIRECT, true, job("resume-1"));
+		assertThat(scheduler.getQueuedResumptions(), is(1));
+
+		tickets.get(0).release();
+		assertThat(started.get(1), is("resume-1"));
+		tickets.get(1).release();
+		assertThat(started.get(2), is("full-2"));
+	}
+
+	@Test
+	public void testHandshakesAreRejectedWhenQueueIsFull() {
+		HandshakeScheduler scheduler = new HandshakeScheduler(1, 1, 0, 0, 0);
+		assertThat(scheduler.execute(DIRECT, false, job("full-1")), is(true));
+		assertThat(scheduler.execute(DIRECT, false, job("full-2")), is(true));
+		assertThat(scheduler.execute(DIRECT, false, job("full-3")), is(false));
+		// the resumption queue is separate
+		assertThat(scheduler.execute(DIRECT, true, job("resume-1")), is(true));
+		assertThat(scheduler.getRejectedByQueueLimit(), is(1L));
+	}
+
+	@Test
+	public void testReleaseTwiceHasNoEffect() {
+		HandshakeScheduler scheduler = new HandshakeScheduler(1, 10, 0, 0, 0);
+		scheduler.execute(DIRECT, false, job("full-1"));
+		scheduler.execute(DIRECT, false, job("full-2"));
+		tickets.get(0).release();
+		tickets.get(0).release();
+		assertThat(scheduler.getRunningHandshakes(), is(1));
+	}
+
+	@Test
+	public void testHandshakesAreNotLimitedByDefault() {
+		HandshakeScheduler scheduler = new HandshakeScheduler(0, 0, 0, 0, 0);
+		for (int index = 0; index < 100; ++index) {
+			assertThat(scheduler.execute(DIRECT, false, job("full-" + index)), is(true));
+		}
+		assertThat(started.size(), is(100));
+		assertThat(scheduler.getRunningHandshakes(), is(100));
+		assertThat(scheduler.getQueuedFullHandshakes(), is(0));
+		tickets.get(0).release();
+		assertThat(scheduler.getRunningHandshakes(), is(99));
+	}
+
+	@Test
+	public void testReclaimedTicketsStartQueuedHandshakesFirst() {
+		HandshakeScheduler scheduler = new HandshakeScheduler(1, 10, 0, 0, 0);
+		scheduler.execute(DIRECT, false, job("full-1"));
+		scheduler.execute(DIRECT, true, job("resume-1"));
+		assertThat(scheduler.getQueuedResumptions(), is(1));
+
+		// the ticket of full-1 is never released
+		time.addTestTimeShift(HandshakeScheduler.TICKET_TIMEOUT_NANOS + 1, TimeUnit.NANOSECONDS);
+		assertThat(scheduler.execute(DIRECT, false, job("full-2")), is(true));
+		assertThat(scheduler.getReclaimedTickets(), is(1L));
+		assertThat(started.size(), is(2));
+		assertThat(started.get(1), is("resume-1"));
+		assertThat(scheduler.getQueuedResumptions(), is(0));
+		assertThat(scheduler.getQueuedFullHandshakes(), is(1));
+
+		tickets.get(1).release();
+		assertThat(started.get(2), is("full-2"));
+	}
+
+	@Test
+	public void testRateLimitPerSourceAddress() throws Exception {
+		HandshakeScheduler scheduler = new HandshakeScheduler(1, 10, 1, 2, 10);
+		InetAddress source1 = InetAddress.getByName("192.168.0.1");
+		InetAddress source2 = InetAddress.getByName("192.168.0.2");
+		assertThat(scheduler.acquireToken(source1), is(true));
+		assertThat(scheduler.acquireToken(source1), is(true));
+		assertThat(scheduler.acquireToken(source1), is(false));
+		assertThat(scheduler.acquireToken(source2), is(true));
+		assertThat(scheduler.getRejectedByRateLimit(), is(1L));
+	}
+
+	@Test
+	public void testExceedingSourcesShareTokenBucket() throws Exception {
+		HandshakeScheduler scheduler = new HandshakeScheduler(1, 10, 1, 2, 1);
+		InetAddress source1 = InetAddress.getByName("192.168.0.1");
+		assertThat(scheduler.acquireToken(source1), is(true));
+		// the bucket of source1 is recently used, all other sources share
+		// one bucket
+		for (int index = 2; index < 4; ++index) {
+			assertThat(scheduler.acquireToken(InetAddress.getByName("192.168.0." + index)), is(true));
+		}
+		assertThat(scheduler.acquireToken(InetAddress.getByName("192.168.0.4")), is(false));
+		assertThat(scheduler.getRejectedByRateLimit(), is(1L));
+	}
+
+	private HandshakeScheduler.HandshakeJob job(final String name) {
+		return new HandshakeScheduler.HandshakeJob() {
+
+			@Override
+			public void start(HandshakeScheduler.Ticket ticket) {
+				started.add(name);
+				tickets.add(ticket);
+			}
+		};
+	}
+}
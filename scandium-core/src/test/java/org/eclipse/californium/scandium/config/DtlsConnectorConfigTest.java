@@ -18,6 +18,7 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - Replace getLocalHost() by
  *                                                    getLoopbackAddress()
  *    Vikram (University of Rostock) - add test to check ECDHE_PSK CipherSuite 
+ *    Bosch Software Innovations GmbH - add tests for supported groups
  ******************************************************************************/
 package org.eclipse.californium.scandium.config;
 
@@ -42,6 +43,7 @@ import org.eclipse.californium.scandium.dtls.DtlsTestTools;
 import org.eclipse.californium.scandium.dtls.CertificateType;
 import org.eclipse.californium.scandium.dtls.cipher.CipherSuite;
 import org.eclipse.californium.scandium.dtls.cipher.CipherSuite.KeyExchangeAlgorithm;
+import org.eclipse.californium.scandium.dtls.cipher.ECDHECryptography.SupportedGroup;
 import org.eclipse.californium.scandium.dtls.pskstore.StaticPskStore;
 import org.junit.Before;
 import org.junit.Test;
@@ -94,6 +96,36 @@ public class DtlsConnectorConfigTest {
 		builder.build();
 	}
 
+	@Test(expected = NullPointerException.class)
+	public void testSetSupportedGroupsRejectsNull() {
+		builder.setSupportedGroups((SupportedGroup[]) null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetSupportedGroupsRejectsEmptyArray() {
+		builder.setSupportedGroups(new SupportedGroup[0]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetSupportedGroupsRejectsNullGroup() {
+		builder.setSupportedGroups(SupportedGroup.secp256r1, null);
+	}
+
+	@Test
+	public void testBuilderSetsPreferredGroupsByDefault() {
+		DtlsConnectorConfig config = builder.setPskStore(new StaticPskStore("ID", "KEY".getBytes())).build();
+		assertThat(config.getSupportedGroups(), is(SupportedGroup.getPreferredGroups()));
+		assertThat(config.getSupportedGroups(), not(hasItem(SupportedGroup.x25519)));
+	}
+
+	@Test
+	public void testBuilderSetsSupportedGroups() {
+		DtlsConnectorConfig config = builder.setPskStore(new StaticPskStore("ID", "KEY".getBytes()))
+				.setSupportedGroups(SupportedGroup.secp384r1, SupportedGroup.secp256r1).build();
+		assertThat(config.getSupportedGroups(),
+				is(Arrays.asList(SupportedGroup.secp384r1, SupportedGroup.secp256r1)));
+	}
+
 	@Test
 	public void testBuilderSetsPskCipherSuitesWhenPskStoreIsSet() {
 		DtlsConnectorConfig config = builder.setPskStore(new StaticPskStore("ID", "KEY".getBytes())).build();
@@ -79,7 +79,7 @@ public class AdversaryClientHandshaker extends ClientHandshaker {
 		byte[] premasterSecret;
 		switch (getKeyExchangeAlgorithm()) {
 		case EC_DIFFIE_HELLMAN:
-			clientKeyExchange = new ECDHClientKeyExchange(ecdhe.getPublicKey(), session.getPeer());
+			clientKeyExchange = new ECDHClientKeyExchange(ecdhe.getEphemeralPublicKey(), session.getPeer());
 			premasterSecret = ecdhe.getSecret(ephemeralServerPublicKey).getEncoded();
 			generateKeys(premasterSecret);
 			break;
@@ -95,7 +95,7 @@ public class AdversaryClientHandshaker extends ClientHandshaker {
 			PskUtil pskUtil = new PskUtil(sniEnabled, session, pskStore);
 			LOGGER.debug("Using PSK identity: {}", pskUtil.getPskPrincipal());
 			session.setPeerIdentity(pskUtil.getPskPrincipal());
-			clientKeyExchange = new EcdhPskClientKeyExchange(pskUtil.getPskPublicIdentity(), ecdhe.getPublicKey(),
+			clientKeyExchange = new EcdhPskClientKeyExchange(pskUtil.getPskPublicIdentity(), ecdhe.getEphemeralPublicKey(),
 					session.getPeer());
 			byte[] otherSecret = ecdhe.getSecret(ephemeralServerPublicKey).getEncoded();
 			premasterSecret = generatePremasterSecretFromPSK(pskUtil.getPreSharedKey(), otherSecret);
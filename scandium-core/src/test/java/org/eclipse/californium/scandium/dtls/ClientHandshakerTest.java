@@ -23,10 +23,12 @@
  *                                                    trustStore := [], enable x.509, trust all
  *    Achim Kraus (Bosch Software Innovations GmbH) - Replace getLocalHost() by
  *                                                    getLoopbackAddress()
+ *    Bosch Software Innovations GmbH - add tests for padded CLIENT_HELLO
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
 import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.number.OrderingComparison.lessThan;
 import static org.junit.Assert.*;
 
 import java.net.InetAddress;
@@ -54,6 +56,7 @@ import org.junit.experimental.categories.Category;
 public class ClientHandshakerTest {
 
 	final static int MAX_TRANSMISSION_UNIT = 1500;
+	final static int PROBE_MIN_MTU = 576;
 
 	@Rule
 	public ThreadsRule cleanup = new ThreadsRule();
@@ -204,6 +207,89 @@ public class ClientHandshakerTest {
 		}
 	}
 
+	/**
+	 * Assert that the padding of a <em>CLIENT_HELLO</em> without cookie is
+	 * reduced for a smaller path MTU. The server answers that
+	 * <em>CLIENT_HELLO</em> statelessly.
+	 * 
+	 * @throws Exception if the handshake cannot be started.
+	 */
+	@Test
+	public void testPaddingOfClientHelloWithoutCookieIsReduced() throws Exception {
+
+		givenAPathMtuProbingClientHandshaker();
+
+		// WHEN a handshake is started
+		handshaker.startHandshake();
+
+		// THEN assert that the client hello is padded
+		DTLSFlight flight = recordLayer.getSentFlight();
+		ClientHello clientHello = getClientHello(flight);
+		assertThat(clientHello.getPaddingExtension(), is(notNullValue()));
+		int length = flight.getMessages().get(0).getFragmentLength();
+
+		// WHEN the probe is lost
+		flight.setMaxTransmissionUnit(PROBE_MIN_MTU);
+
+		// THEN assert that the padding is reduced
+		assertThat(flight.getMessages().size(), is(1));
+		assertThat(flight.getMessages().get(0).getFragmentLength(), is(lessThan(length)));
+	}
+
+	/**
+	 * Assert that a padded <em>CLIENT_HELLO</em> with cookie is sent with the
+	 * size confirmed by the <em>HELLO_VERIFY_REQUEST</em> and is not changed
+	 * for a smaller path MTU. The server may have already processed it.
+	 * 
+	 * @throws Exception if the handshake cannot be started.
+	 */
+	@Test
+	public void testPaddedClientHelloWithCookieIsNotChanged() throws Exception {
+
+		givenAPathMtuProbingClientHandshaker();
+
+		// WHEN a handshake is started
+		handshaker.startHandshake();
+		DTLSFlight flight = recordLayer.getSentFlight();
+		int length = flight.getMessages().get(0).getFragmentLength();
+
+		// AND a HELLO_VERIFY_REQUEST is received
+		HelloVerifyRequest helloVerify = new HelloVerifyRequest(new ProtocolVersion(), new byte[32], localPeer);
+		Record record = DtlsTestTools.getRecordForMessage(0, 0, helloVerify, localPeer);
+		record.applySession(handshaker.session);
+		handshaker.processMessage(record);
+
+		// THEN assert that the client hello with cookie keeps the confirmed
+		// size
+		flight = recordLayer.getSentFlight();
+		ClientHello clientHello = getClientHello(flight);
+		assertThat(clientHello.getCookie().length, is(32));
+		assertThat(clientHello.getPaddingExtension(), is(notNullValue()));
+		assertThat(flight.getMessages().get(0).getFragmentLength(), is(length));
+		byte[] fragment = flight.getMessages().get(0).getFragmentBytes();
+
+		// WHEN the flight is lost
+		flight.setMaxTransmissionUnit(PROBE_MIN_MTU);
+
+		// THEN assert that the client hello is not changed
+		assertThat(flight.getMessages().size(), is(1));
+		assertArrayEquals(fragment, flight.getMessages().get(0).getFragmentBytes());
+	}
+
+	private void givenAPathMtuProbingClientHandshaker() throws Exception {
+		DtlsConnectorConfig.Builder builder = new DtlsConnectorConfig.Builder()
+				.setAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+				.setIdentity(DtlsTestTools.getClientPrivateKey(), DtlsTestTools.getClientCertificateChain(),
+						CertificateType.X_509)
+				.setTrustStore(DtlsTestTools.getTrustedCertificates());
+		PathMtu pathMtu = new PathMtu(PROBE_MIN_MTU, MAX_TRANSMISSION_UNIT);
+		pathMtu.flightDelivered(PROBE_MIN_MTU);
+		Connection connection = new Connection(localPeer, new SyncSerialExecutor());
+		connection.setPathMtu(pathMtu);
+		handshaker = new ClientHandshaker(new DTLSSession(localPeer), recordLayer, connection, builder.build(),
+				pathMtu.getProbeMtu());
+	}
+
 	private void givenAClientHandshaker(final boolean configureTrustStore) throws Exception {
 		givenAClientHandshaker(null, configureTrustStore);
 	}
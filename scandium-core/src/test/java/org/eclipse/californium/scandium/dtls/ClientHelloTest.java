@@ -15,6 +15,7 @@
  *    Kai Hudalla (Bosch Software Innovations GmbH) - adapt to ClientHello changes
  *    Bosch Software Innovations GmbH - add test cases verifying conditional inclusion
  *                                      of extensions
+ *    Bosch Software Innovations GmbH - add test cases for padding
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
@@ -99,6 +100,51 @@ public class ClientHelloTest {
 				clientHello.getSupportedPointFormatsExtension());
 	}
 
+	/**
+	 * Verifies that a ClientHello message is padded to the provided length
+	 * and the padding is ignored by the receiver.
+	 */
+	@Test
+	public void testPadToAddsPaddingExtension() throws HandshakeException {
+		givenAClientHello(
+				Collections.singletonList(CipherSuite.TLS_PSK_WITH_AES_128_CCM_8),
+				Collections.<CertificateType> emptyList(),
+				Collections.<CertificateType> emptyList());
+		assertTrue(clientHello.padTo(500));
+		assertNotNull(clientHello.getPaddingExtension());
+		assertThat(clientHello.getMessageLength(), is(500));
+		assertThat(clientHello.fragmentToByteArray().length, is(500));
+
+		ClientHello received = (ClientHello) HandshakeMessage.fromByteArray(clientHello.toByteArray(), null,
+				peerAddress);
+		assertNull(received.getPaddingExtension());
+		assertThat(received.getCipherSuites(), is(clientHello.getCipherSuites()));
+		assertThat(received.getRandom().getBytes(), is(clientHello.getRandom().getBytes()));
+	}
+
+	/**
+	 * Verifies that padding a ClientHello message again replaces the previous
+	 * padding and removes it, if the message is too large.
+	 */
+	@Test
+	public void testPadToReplacesPaddingExtension() {
+		givenAClientHello(
+				Collections.singletonList(CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_128_CCM_8),
+				Collections.<CertificateType> emptyList(),
+				Collections.<CertificateType> emptyList());
+		int length = clientHello.getMessageLength();
+		assertTrue(clientHello.padTo(500));
+		assertFalse(clientHello.padTo(500));
+		assertTrue(clientHello.padTo(400));
+		assertThat(clientHello.getMessageLength(), is(400));
+		assertThat(clientHello.fragmentToByteArray().length, is(400));
+
+		assertTrue(clientHello.padTo(length));
+		assertNull(clientHello.getPaddingExtension());
+		assertThat(clientHello.getMessageLength(), is(length));
+		assertThat(clientHello.fragmentToByteArray().length, is(length));
+	}
+
 	private void givenAClientHelloWithEmptyExtensions() {
 		clientHello = new ClientHello(new ProtocolVersion(), Collections.<CipherSuite> emptyList(),
 				null, null, peerAddress);
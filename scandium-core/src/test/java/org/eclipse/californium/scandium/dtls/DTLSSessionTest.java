@@ -12,6 +12,7 @@
  * 
  * Contributors:
  *    Kai Hudalla (Bosch Software Innovations GmbH) - initial creator
+ *    Bosch Software Innovations GmbH - test atomic receive window update
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
@@ -153,6 +154,21 @@ public class DTLSSessionTest {
 		assertTrue(session.isRecordProcessable(0, 100, true));
 	}
 
+	@Test
+	public void testMarkRecordAsReadIfProcessable() {
+		int epoch = 0;
+		session.setReadEpoch(epoch);
+		assertTrue(session.markRecordAsReadIfProcessable(epoch, 2, false));
+		assertFalse(session.markRecordAsReadIfProcessable(epoch, 2, false));
+		assertTrue(session.markRecordAsReadIfProcessable(epoch, 100, false));
+		assertFalse(session.markRecordAsReadIfProcessable(epoch, 2, false));
+		// too old records pass the window filter, but are not marked
+		assertTrue(session.markRecordAsReadIfProcessable(epoch, 2, true));
+		assertTrue(session.markRecordAsReadIfProcessable(epoch, 2, true));
+		assertFalse(session.markRecordAsReadIfProcessable(epoch, 100, true));
+		assertFalse(session.markRecordAsReadIfProcessable(epoch + 1, 101, false));
+	}
+
 	@Test
 	public void testEpochSwitchResetsReceiveWindow() {
 
@@ -42,7 +42,7 @@ public class EcdhPskClientKeyExchangeTest {
 
 		SupportedGroup usableGroup = SupportedGroup.secp256r1;
 		ECDHECryptography ecdhe = ECDHECryptography.fromNamedCurveId(usableGroup.getId());
-		msg = new EcdhPskClientKeyExchange(new PskPublicInformation("ID"), ecdhe.getPublicKey(), peerAddress);
+		msg = new EcdhPskClientKeyExchange(new PskPublicInformation("ID"), ecdhe.getEphemeralPublicKey(), peerAddress);
 		ephemeralKeyPointEncoded = msg.getEncodedPoint();
 		identity = msg.getIdentity();
 	}
@@ -19,7 +19,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 import java.net.InetSocketAddress;
-import java.security.interfaces.ECPublicKey;
+import java.security.PublicKey;
 
 import org.eclipse.californium.scandium.category.Small;
 import org.eclipse.californium.scandium.dtls.cipher.CipherSuite.KeyExchangeAlgorithm;
@@ -34,7 +34,7 @@ public class EcdhPskServerKeyExchangeTest {
 	
 	EcdhPskServerKeyExchange msg;
 	InetSocketAddress peerAddress = new InetSocketAddress(5000);
-	ECPublicKey ephemeralPubKey;
+	PublicKey ephemeralPubKey;
 	
 	@Before
 	public void setUp() throws Exception {
@@ -46,7 +46,7 @@ public class EcdhPskServerKeyExchangeTest {
 				new Random(),
 				usableGroup.getId(),
 				peerAddress);
-		ephemeralPubKey = msg.getPublicKey();
+		ephemeralPubKey = msg.getEphemeralPublicKey();
 	}
 	
 	@Test
@@ -62,6 +62,6 @@ public class EcdhPskServerKeyExchangeTest {
 		EcdhPskServerKeyExchange handshakeMsg = (EcdhPskServerKeyExchange)HandshakeMessage.fromByteArray(serializedMsg, parameter, peerAddress);
 		assertEquals(handshakeMsg.getCurveId(), SupportedGroup.secp256r1.getId());
 		assertNotNull(ephemeralPubKey);
-		assertEquals(handshakeMsg.getPublicKey(), ephemeralPubKey);
+		assertEquals(handshakeMsg.getEphemeralPublicKey(), ephemeralPubKey);
 	}
 }
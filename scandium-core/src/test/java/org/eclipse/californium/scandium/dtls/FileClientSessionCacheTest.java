@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *    Bosch Software Innovations GmbH - add tests for malformed entries,
+ *                                      interrupted compaction and flush order
+ ******************************************************************************/
+package org.eclipse.californium.scandium.dtls;
+
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.eclipse.californium.elements.util.Bytes;
+import org.eclipse.californium.scandium.category.Small;
+import org.eclipse.californium.scandium.dtls.cipher.CipherSuite;
+import org.eclipse.californium.scandium.dtls.cipher.RandomManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of {@link FileClientSessionCache}.
+ */
+@Category(Small.class)
+public class FileClientSessionCacheTest {
+
+	private static final InetSocketAddress PEER_ADDRESS_1 = new InetSocketAddress("192.168.0.1", 5684);
+	private static final InetSocketAddress PEER_ADDRESS_2 = new InetSocketAddress("::1", 5684);
+
+	File file;
+	SecretKey key;
+	FileClientSessionCache cache;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("client-sessions", ".bin");
+		file.delete();
+		key = new SecretKeySpec(Bytes.createBytes(RandomManager.currentSecureRandom(), 16), "AES");
+	}
+
+	@After
+	public void tearDown() {
+		if (cache != null) {
+			cache.close();
+		}
+		file.delete();
+		new File(file.getPath() + ".bak").delete();
+	}
+
+	@Test
+	public void testSessionsAreLoadedAfterRestart() {
+		cache = new FileClientSessionCache(file, key, 0);
+		DTLSSession session1 = newSession(PEER_ADDRESS_1);
+		DTLSSession session2 = newSession(PEER_ADDRESS_2);
+		cache.put(session1);
+		cache.put(session2);
+		cache.close();
+
+		cache = new FileClientSessionCache(file, key, 0);
+		List<InetSocketAddress> peers = new ArrayList<>();
+		for (InetSocketAddress peer : cache) {
+			peers.add(peer);
+		}
+		assertThat(peers.size(), is(2));
+		assertThat(peers, hasItems(PEER_ADDRESS_1, PEER_ADDRESS_2));
+		assertThat(cache.getSessionIdentity(PEER_ADDRESS_1), is(session1.getSessionIdentifier()));
+		assertTicket(cache.getSessionTicket(PEER_ADDRESS_1), session1.getSessionTicket());
+		assertTicket(cache.get(session2.getSessionIdentifier()), session2.getSessionTicket());
+	}
+
+	@Test
+	public void testLatestSessionOfPeerIsLoadedAfterRestart() {
+		cache = new FileClientSessionCache(file, key, 0);
+		DTLSSession session = newSession(PEER_ADDRESS_1);
+		DTLSSession newSession = newSession(PEER_ADDRESS_1);
+		DTLSSession removedSession = newSession(PEER_ADDRESS_2);
+		cache.put(session);
+		cache.put(removedSession);
+		cache.put(newSession);
+		cache.remove(removedSession.getSessionIdentifier());
+		cache.close();
+
+		cache = new FileClientSessionCache(file, key, 0);
+		assertThat(cache.getSessionIdentity(PEER_ADDRESS_1), is(newSession.getSessionIdentifier()));
+		assertThat(cache.get(session.getSessionIdentifier()), is(nullValue()));
+		assertThat(cache.getSessionTicket(PEER_ADDRESS_2), is(nullValue()));
+	}
+
+	@Test
+	public void testChangesAreWrittenAsynchronously() throws InterruptedException {
+		cache = new FileClientSessionCache(file, key, 10);
+		cache.put(newSession(PEER_ADDRESS_1));
+		for (int loop = 0; loop < 100 && file.length() == 0; ++loop) {
+			Thread.sleep(50);
+		}
+		assertThat(file.length() > 0, is(true));
+	}
+
+	@Test
+	public void testSessionsAreDiscardedWithDifferentKey() {
+		cache = new FileClientSessionCache(file, key, 0);
+		DTLSSession session = newSession(PEER_ADDRESS_1);
+		cache.put(session);
+		cache.close();
+
+		SecretKey otherKey = new SecretKeySpec(Bytes.createBytes(RandomManager.currentSecureRandom(), 16), "AES");
+		cache = new FileClientSessionCache(file, otherKey, 0);
+		assertThat(cache.getSessionTicket(PEER_ADDRESS_1), is(nullValue()));
+		assertThat(cache.getSessionIdentity(PEER_ADDRESS_1), is(nullValue()));
+	}
+
+	@Test
+	public void testMalformedEntryIsDiscarded() throws IOException {
+		cache = new FileClientSessionCache(file, key, 0);
+		DTLSSession session = newSession(PEER_ADDRESS_1);
+		cache.put(session);
+		cache.close();
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(raf.length());
+			// entry of 3 bytes with unknown type and a too large address length
+			raf.write(new byte[] { 0, 3, 9, 40, 1 });
+			// following entries are discarded as well
+			raf.write(new byte[] { 0, 2, 2, 0 });
+		} finally {
+			raf.close();
+		}
+
+		cache = new FileClientSessionCache(file, key, 0);
+		assertThat(cache.getSessionIdentity(PEER_ADDRESS_1), is(session.getSessionIdentifier()));
+		assertTicket(cache.getSessionTicket(PEER_ADDRESS_1), session.getSessionTicket());
+	}
+
+	@Test
+	public void testInterruptedCompactionIsRecovered() throws IOException {
+		cache = new FileClientSessionCache(file, key, 0);
+		DTLSSession session = newSession(PEER_ADDRESS_1);
+		cache.put(session);
+		cache.close();
+
+		// crash after the file was renamed into the backup
+		File backup = new File(file.getPath() + ".bak");
+		assertThat(file.renameTo(backup), is(true));
+
+		cache = new FileClientSessionCache(file, key, 0);
+		assertTicket(cache.getSessionTicket(PEER_ADDRESS_1), session.getSessionTicket());
+		assertThat(backup.exists(), is(false));
+	}
+
+	@Test
+	public void testConcurrentFlushesKeepLatestSession() throws Exception {
+		cache = new FileClientSessionCache(file, key, 0);
+		final int loops = 200;
+		Thread[] threads = new Thread[2];
+		for (int index = 0; index < threads.length; ++index) {
+			threads[index] = new Thread() {
+
+				@Override
+				public void run() {
+					for (int loop = 0; loop < loops; ++loop) {
+						cache.flush();
+					}
+				}
+			};
+			threads[index].start();
+		}
+		DTLSSession session = null;
+		for (int loop = 0; loop < loops; ++loop) {
+			session = newSession(PEER_ADDRESS_1);
+			cache.put(session);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		cache.close();
+
+		cache = new FileClientSessionCache(file, key, 0);
+		assertThat(cache.getSessionIdentity(PEER_ADDRESS_1), is(session.getSessionIdentifier()));
+	}
+
+	/**
+	 * Assert, that the loaded ticket matches the original one. The timestamp
+	 * is only persisted in seconds, therefore compare the relevant fields.
+	 */
+	private static void assertTicket(SessionTicket ticket, SessionTicket expected) {
+		assertThat(ticket, is(notNullValue()));
+		assertThat(ticket.getMasterSecret(), is(expected.getMasterSecret()));
+		assertThat(ticket.getCipherSuite(), is(expected.getCipherSuite()));
+		assertThat(ticket.getProtocolVersion(), is(expected.getProtocolVersion()));
+	}
+
+	private static DTLSSession newSession(InetSocketAddress peer) {
+		return DTLSSessionTest.newEstablishedServerSession(peer, CipherSuite.TLS_PSK_WITH_AES_128_CCM_8, false);
+	}
+}
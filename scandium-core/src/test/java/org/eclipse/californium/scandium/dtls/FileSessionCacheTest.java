@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.scandium.dtls;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.eclipse.californium.elements.util.Bytes;
+import org.eclipse.californium.scandium.category.Small;
+import org.eclipse.californium.scandium.dtls.cipher.CipherSuite;
+import org.eclipse.californium.scandium.dtls.cipher.RandomManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of {@link FileSessionCache}.
+ */
+@Category(Small.class)
+public class FileSessionCacheTest {
+
+	private static final InetSocketAddress PEER_ADDRESS = new InetSocketAddress(5684);
+
+	File file;
+	SecretKey key;
+	FileSessionCache cache;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("sessions", ".bin");
+		key = new SecretKeySpec(Bytes.createBytes(RandomManager.currentSecureRandom(), 16), "AES");
+	}
+
+	@After
+	public void tearDown() {
+		if (cache != null) {
+			cache.close();
+		}
+		file.delete();
+		new File(file.getPath() + ".bak").delete();
+	}
+
+	@Test
+	public void testSessionsAreLoadedAfterRestart() throws IOException {
+		cache = new FileSessionCache(file, key, 10);
+		DTLSSession session = newSession();
+		DTLSSession removedSession = newSession();
+		cache.put(session);
+		cache.put(removedSession);
+		cache.remove(removedSession.getSessionIdentifier());
+		cache.close();
+
+		cache = new FileSessionCache(file, key, 10);
+		assertThat(cache.size(), is(1));
+		SessionTicket ticket = cache.get(session.getSessionIdentifier());
+		assertTicket(ticket, session.getSessionTicket());
+		assertThat(cache.get(removedSession.getSessionIdentifier()), is(nullValue()));
+	}
+
+	@Test
+	public void testSessionsAreDiscardedWithDifferentKey() throws IOException {
+		cache = new FileSessionCache(file, key, 10);
+		DTLSSession session = newSession();
+		cache.put(session);
+		cache.close();
+
+		SecretKey otherKey = new SecretKeySpec(Bytes.createBytes(RandomManager.currentSecureRandom(), 16), "AES");
+		cache = new FileSessionCache(file, otherKey, 10);
+		assertThat(cache.size(), is(0));
+		assertThat(cache.get(session.getSessionIdentifier()), is(nullValue()));
+	}
+
+	@Test
+	public void testTruncatedEntryIsDiscarded() throws IOException {
+		cache = new FileSessionCache(file, key, 10);
+		DTLSSession session = newSession();
+		DTLSSession truncatedSession = newSession();
+		cache.put(session);
+		cache.put(truncatedSession);
+		cache.close();
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(raf.length() - 5);
+		} finally {
+			raf.close();
+		}
+
+		cache = new FileSessionCache(file, key, 10);
+		assertThat(cache.size(), is(1));
+		assertTicket(cache.get(session.getSessionIdentifier()), session.getSessionTicket());
+	}
+
+	@Test
+	public void testMalformedEntryIsDiscarded() throws IOException {
+		cache = new FileSessionCache(file, key, 10);
+		DTLSSession session = newSession();
+		cache.put(session);
+		cache.close();
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(raf.length());
+			// entry of 3 bytes with unknown type and a too large id length
+			raf.write(new byte[] { 0, 3, 9, 40, 1 });
+			// following entries are discarded as well
+			raf.write(new byte[] { 0, 2, 2, 0 });
+		} finally {
+			raf.close();
+		}
+
+		cache = new FileSessionCache(file, key, 10);
+		assertThat(cache.size(), is(1));
+		assertTicket(cache.get(session.getSessionIdentifier()), session.getSessionTicket());
+	}
+
+	@Test
+	public void testInterruptedCompactionIsRecovered() throws IOException {
+		cache = new FileSessionCache(file, key, 10);
+		DTLSSession session = newSession();
+		cache.put(session);
+		cache.close();
+
+		// crash after the file was renamed into the backup
+		File backup = new File(file.getPath() + ".bak");
+		assertThat(file.renameTo(backup), is(true));
+
+		cache = new FileSessionCache(file, key, 10);
+		assertThat(cache.size(), is(1));
+		assertTicket(cache.get(session.getSessionIdentifier()), session.getSessionTicket());
+		assertThat(backup.exists(), is(false));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedSessionIsEvicted() throws IOException {
+		cache = new FileSessionCache(file, key, 2);
+		DTLSSession session1 = newSession();
+		DTLSSession session2 = newSession();
+		DTLSSession session3 = newSession();
+		cache.put(session1);
+		cache.put(session2);
+		cache.get(session1.getSessionIdentifier());
+		cache.put(session3);
+		assertThat(cache.size(), is(2));
+		assertThat(cache.get(session2.getSessionIdentifier()), is(nullValue()));
+		cache.close();
+
+		cache = new FileSessionCache(file, key, 2);
+		assertThat(cache.size(), is(2));
+		assertThat(cache.get(session1.getSessionIdentifier()), is(notNullValue()));
+		assertThat(cache.get(session3.getSessionIdentifier()), is(notNullValue()));
+	}
+
+	/**
+	 * Assert, that the loaded ticket matches the original one. The timestamp
+	 * is only persisted in seconds, therefore compare the relevant fields.
+	 */
+	private static void assertTicket(SessionTicket ticket, SessionTicket expected) {
+		assertThat(ticket, is(notNullValue()));
+		assertThat(ticket.getMasterSecret(), is(expected.getMasterSecret()));
+		assertThat(ticket.getCipherSuite(), is(expected.getCipherSuite()));
+		assertThat(ticket.getProtocolVersion(), is(expected.getProtocolVersion()));
+	}
+
+	private static DTLSSession newSession() {
+		return DTLSSessionTest.newEstablishedServerSession(PEER_ADDRESS,
+				CipherSuite.TLS_PSK_WITH_AES_128_CCM_8, false);
+	}
+}
@@ -24,6 +24,7 @@
  *    Bosch Software Innovations GmbH - move PRF tests to PseudoRandomFunctionTest
  *    Ludwig Seitz (RISE SICS) - Moved verifyCertificate() tests here from CertificateMessage
  *    Achim Kraus (Bosch Software Innovations GmbH) - report expired certificates
+ *    Bosch Software Innovations GmbH - test discarding queued retransmissions
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
@@ -226,6 +227,25 @@ public class HandshakerTest {
 		assertTrue(handshaker.inboundMessageBuffer.isEmpty());
 	}
 
+	@Test
+	public void testProcessMessageDiscardsQueuedRetransmissions() throws GeneralSecurityException, HandshakeException {
+		// queue message 1 twice (original and retransmission) and message 2
+		handshaker.decryptAndProcessMessage(getRecordForMessage(0, 1, createCertificateMessage(session, 1, certificateChain)));
+		handshaker.decryptAndProcessMessage(getRecordForMessage(0, 2, createCertificateMessage(session, 1, certificateChain)));
+		handshaker.decryptAndProcessMessage(getRecordForMessage(0, 3, createCertificateMessage(session, 2, certificateChain)));
+		assertFalse(handshaker.inboundMessageBuffer.isEmpty());
+
+		// when processing the missing message 0
+		handshaker.decryptAndProcessMessage(getRecordForMessage(0, 4, createCertificateMessage(session, 0, certificateChain)));
+
+		// assert that the outdated retransmission is discarded and all
+		// messages are processed once
+		assertThat(receivedMessages[0], is(1));
+		assertThat(receivedMessages[1], is(1));
+		assertThat(receivedMessages[2], is(1));
+		assertTrue(handshaker.inboundMessageBuffer.isEmpty());
+	}
+
 	private void givenAHandshakerWithAQueuedFragmentedMessage(int seqNo) throws HandshakeException, GeneralSecurityException {
 		// create records containing fragmented message with seqNo 1
 		givenAFragmentedHandshakeMessage(createCertificateMessage(session, seqNo, certificateChain));
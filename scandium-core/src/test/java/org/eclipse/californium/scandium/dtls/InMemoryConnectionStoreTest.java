@@ -15,19 +15,29 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - redesign connection session listener to
  *                                                    ensure, that the session listener methods
  *                                                    are called via the handshaker.
+ *    Bosch Software Innovations GmbH - add tests for saving and loading connections
+ *    Bosch Software Innovations GmbH - add tests for client session tickets on demand
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 
 import org.eclipse.californium.elements.rule.ThreadsRule;
+import org.eclipse.californium.elements.util.Bytes;
 import org.eclipse.californium.scandium.category.Small;
 import org.eclipse.californium.scandium.dtls.cipher.CipherSuite;
+import org.eclipse.californium.scandium.dtls.cipher.RandomManager;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -115,6 +125,67 @@ public class InMemoryConnectionStoreTest {
 		assertThat(ticket.getMasterSecret(), is(con.getEstablishedSession().getMasterSecret()));
 	}
 
+	@Test
+	public void testAttachGetsClientSessionTicketOnDemand() {
+
+		// GIVEN a client session cache with the session of a peer
+		final AtomicInteger tickets = new AtomicInteger();
+		ClientSessionCache sessionCache = new InMemoryClientSessionCache() {
+
+			@Override
+			public SessionTicket getSessionTicket(InetSocketAddress peer) {
+				tickets.incrementAndGet();
+				return super.getSessionTicket(peer);
+			}
+
+			@Override
+			public SessionTicket get(SessionId id) {
+				tickets.incrementAndGet();
+				return super.get(id);
+			}
+		};
+		sessionCache.put(con.getEstablishedSession());
+		store = new InMemoryConnectionStore(INITIAL_CAPACITY, 1000, sessionCache);
+
+		// WHEN attaching the store
+		store.attach(null);
+
+		// THEN assert that the connection is restored without the session ticket
+		Connection connection = store.get(con.getPeerAddress());
+		assertThat(connection, is(notNullValue()));
+		assertThat(connection.isResumptionRequired(), is(true));
+		assertThat(connection.getSessionIdentity(), is(sessionId));
+		assertThat(tickets.get(), is(0));
+
+		// AND that the session ticket is fetched once on the first access
+		SessionTicket ticket = connection.getSessionTicket();
+		assertThat(ticket, is(notNullValue()));
+		assertThat(ticket.getMasterSecret(), is(con.getEstablishedSession().getMasterSecret()));
+		assertThat(connection.getSessionTicket(), is(sameInstance(ticket)));
+		assertThat(tickets.get(), is(1));
+	}
+
+	@Test
+	public void testClientSessionWithoutTicketIsNotResumed() {
+
+		// GIVEN a store attached to a client session cache with the session of a peer
+		ClientSessionCache sessionCache = new InMemoryClientSessionCache();
+		sessionCache.put(con.getEstablishedSession());
+		store = new InMemoryConnectionStore(INITIAL_CAPACITY, 1000, sessionCache);
+		store.attach(null);
+		Connection connection = store.get(con.getPeerAddress());
+		assertThat(connection.isActive(), is(true));
+
+		// WHEN the session ticket is not longer available, e.g. failed to decrypt
+		sessionCache.remove(sessionId);
+
+		// THEN assert that the connection is not longer resumed
+		assertThat(connection.getSessionTicket(), is(nullValue()));
+		assertThat(connection.getSessionIdentity(), is(nullValue()));
+		assertThat(connection.isResumptionRequired(), is(false));
+		assertThat(connection.isActive(), is(false));
+	}
+
 	@Test
 	public void testFindRemovesStaleConnectionFromStore() {
 
@@ -288,6 +359,53 @@ public class InMemoryConnectionStoreTest {
 		assertThat(store.find(session.getSessionIdentifier()), is(con2));
 	}
 
+	@Test
+	public void testLoadConnectionsRestoresSavedConnections() throws Exception {
+		SecretKey key = new SecretKeySpec(Bytes.createBytes(RandomManager.currentSecureRandom(), 16), "AES");
+		Connection con2 = newConnection(51L);
+		DTLSSession session = con.getEstablishedSession();
+		session.getSequenceNumber();
+		session.markRecordAsRead(session.getReadEpoch(), 5);
+		store.put(con);
+		store.put(con2);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertThat(store.saveConnections(out, key), is(2));
+
+		InMemoryConnectionStore loadedStore = new InMemoryConnectionStore(INITIAL_CAPACITY, 1000);
+		loadedStore.attach(null);
+		assertThat(loadedStore.loadConnections(new ByteArrayInputStream(out.toByteArray()), key), is(2));
+
+		Connection loaded = loadedStore.get(con.getConnectionId());
+		assertThat(loaded, is(notNullValue()));
+		assertThat(loaded.isExecuting(), is(false));
+		assertThat(loadedStore.get(con.getPeerAddress()), is(loaded));
+		assertThat(loadedStore.find(sessionId), is(loaded));
+		DTLSSession loadedSession = loaded.getEstablishedSession();
+		assertThat(loadedSession.getMasterSecret(), is(session.getMasterSecret()));
+		assertThat(loadedSession.getReadEpoch(), is(session.getReadEpoch()));
+		assertThat(loadedSession.getWriteEpoch(), is(session.getWriteEpoch()));
+		assertThat(loadedSession.isDuplicate(5), is(true));
+		assertThat(loadedSession.isDuplicate(4), is(false));
+		assertThat(loadedSession.getSequenceNumber(), is(session.getSequenceNumber()));
+		assertThat(loadedSession.getReadState().getEncryptionKey(), is(session.getReadState().getEncryptionKey()));
+		assertThat(loadedSession.getWriteState().getIv().getIV(), is(session.getWriteState().getIv().getIV()));
+		assertThat(loadedStore.get(con2.getConnectionId()), is(notNullValue()));
+	}
+
+	@Test
+	public void testLoadConnectionsWithDifferentKeyDiscardsConnections() throws Exception {
+		SecretKey key = new SecretKeySpec(Bytes.createBytes(RandomManager.currentSecureRandom(), 16), "AES");
+		SecretKey otherKey = new SecretKeySpec(Bytes.createBytes(RandomManager.currentSecureRandom(), 16), "AES");
+		store.put(con);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertThat(store.saveConnections(out, key), is(1));
+
+		InMemoryConnectionStore loadedStore = new InMemoryConnectionStore(INITIAL_CAPACITY, 1000);
+		loadedStore.attach(null);
+		assertThat(loadedStore.loadConnections(new ByteArrayInputStream(out.toByteArray()), otherKey), is(0));
+		assertThat(loadedStore.remainingCapacity(), is(INITIAL_CAPACITY));
+	}
+
 	private Connection newConnection(long ip) throws HandshakeException, UnknownHostException {
 		InetAddress addr = InetAddress.getByAddress(longToIp(ip));
 		InetSocketAddress peerAddress = new InetSocketAddress(addr, 0);
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.scandium.dtls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.californium.scandium.category.Small;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies the path MTU tracking of {@link PathMtu}.
+ */
+@Category(Small.class)
+public class PathMtuTest {
+
+	private static final int MIN_MTU = 576;
+	private static final int MAX_MTU = 1500;
+
+	private PathMtu pathMtu;
+
+	@Before
+	public void setUp() {
+		pathMtu = new PathMtu(MIN_MTU, MAX_MTU);
+	}
+
+	@Test
+	public void testStartsWithMinimum() {
+		assertEquals(MIN_MTU, pathMtu.getProbeMtu());
+		assertEquals(MIN_MTU, pathMtu.getConfirmedMtu());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMinimumTooSmall() {
+		new PathMtu(DTLSSession.HEADER_LENGTH, MAX_MTU);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaximumLessThanMinimum() {
+		new PathMtu(MIN_MTU, MIN_MTU - 1);
+	}
+
+	@Test
+	public void testGrowsOnDeliveredProbe() {
+		// small flights don't confirm the probe
+		pathMtu.flightDelivered(300);
+		assertEquals(MIN_MTU, pathMtu.getConfirmedMtu());
+		assertEquals(MIN_MTU + (MAX_MTU - MIN_MTU) / 2, pathMtu.getProbeMtu());
+		int probe = pathMtu.getProbeMtu();
+		pathMtu.flightDelivered(probe - 100);
+		assertEquals(probe - 100, pathMtu.getConfirmedMtu());
+		assertEquals(probe, pathMtu.getProbeMtu());
+
+		// grow until the maximum is reached
+		for (int loop = 0; loop < 10; ++loop) {
+			probe = pathMtu.getProbeMtu();
+			pathMtu.flightDelivered(probe);
+			assertEquals(probe, pathMtu.getConfirmedMtu());
+			assertTrue(pathMtu.getProbeMtu() >= probe);
+		}
+		assertEquals(MAX_MTU, pathMtu.getConfirmedMtu());
+		assertEquals(MAX_MTU, pathMtu.getProbeMtu());
+	}
+
+	@Test
+	public void testFallsBackOnLostProbe() {
+		pathMtu.flightDelivered(MIN_MTU);
+		int probe = pathMtu.getProbeMtu();
+		assertTrue(probe > MIN_MTU);
+
+		assertFalse(pathMtu.flightLost(probe));
+		assertTrue(pathMtu.flightLost(probe));
+		assertEquals(MIN_MTU, pathMtu.getProbeMtu());
+		assertEquals(MIN_MTU, pathMtu.getConfirmedMtu());
+
+		// retransmission with the confirmed mtu starts counting again
+		assertFalse(pathMtu.flightLost(MIN_MTU));
+		pathMtu.flightDelivered(MIN_MTU);
+
+		// next probe stays below the lost one
+		assertTrue(pathMtu.getProbeMtu() < probe);
+		for (int loop = 0; loop < 10; ++loop) {
+			pathMtu.flightDelivered(pathMtu.getProbeMtu());
+		}
+		// probing finishes close to the lost probe
+		int confirmed = pathMtu.getConfirmedMtu();
+		assertTrue(confirmed < probe);
+		assertTrue(confirmed >= probe - PathMtu.MIN_PROBE_STEP);
+		assertEquals(confirmed, pathMtu.getProbeMtu());
+	}
+
+	@Test
+	public void testStartsOverOnLostConfirmedFlights() {
+		pathMtu.flightDelivered(MIN_MTU);
+		pathMtu.flightDelivered(pathMtu.getProbeMtu());
+		int confirmed = pathMtu.getConfirmedMtu();
+		assertTrue(confirmed > MIN_MTU);
+
+		assertFalse(pathMtu.flightLost(confirmed));
+		assertFalse(pathMtu.flightLost(confirmed));
+		assertTrue(pathMtu.flightLost(confirmed));
+		assertEquals(MIN_MTU, pathMtu.getConfirmedMtu());
+		assertEquals(MIN_MTU, pathMtu.getProbeMtu());
+	}
+
+	@Test
+	public void testDeliveredFlightResetsLosses() {
+		pathMtu.flightDelivered(MIN_MTU);
+		pathMtu.flightDelivered(pathMtu.getProbeMtu());
+		int confirmed = pathMtu.getConfirmedMtu();
+
+		assertFalse(pathMtu.flightLost(confirmed));
+		assertFalse(pathMtu.flightLost(confirmed));
+		pathMtu.flightDelivered(300);
+		assertFalse(pathMtu.flightLost(confirmed));
+		assertFalse(pathMtu.flightLost(confirmed));
+		assertEquals(confirmed, pathMtu.getConfirmedMtu());
+	}
+}
@@ -16,10 +16,14 @@
  *    Kai Hudalla (Bosch Software Innovations GmbH) - add test cases for verifying sequence number handling
  *    Achim Kraus (Bosch Software Innovations GmbH) - Replace getLocalHost() by
  *                                                    getLoopbackAddress()
+ *    Bosch Software Innovations GmbH - add test for parsing a range
+ *    Bosch Software Innovations GmbH - add test for splitting handshake records
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.net.InetAddress;
@@ -139,6 +143,22 @@ public class RecordTest {
 		Assert.assertEquals(ContentType.APPLICATION_DATA, recordList.get(0).getType());
 	}
 	
+	@Test
+	public void testFromByteArrayRangeDecryptsFragmentSlices() throws Exception {
+		byte[] application_record = DtlsTestTools.newDTLSRecord(TYPE_APPL_DATA, EPOCH, SEQUENCE_NO, newGenericAEADCipherFragment());
+		byte[] data = Bytes.concatenate(new byte[] { 1, 2, 3 }, Bytes.concatenate(application_record, application_record));
+
+		List<Record> recordList = Record.fromByteArray(data, 3, application_record.length * 2, session.getPeer(), null, ClockUtil.nanoRealtime());
+		assertEquals(2, recordList.size());
+		for (Record record : recordList) {
+			assertEquals(application_record.length - 13, record.getFragmentLength());
+			record.applySession(session);
+			ApplicationMessage message = (ApplicationMessage) record.getFragment();
+			assertTrue(Arrays.equals(message.getData(), payloadData));
+			assertTrue(Arrays.equals(record.toByteArray(), application_record));
+		}
+	}
+
 	/**
 	 * Checks whether the {@link Record#decryptAEAD(byte[])} method uses the <em>explicit</em>
 	 * nonce part included in the <i>GenericAEADCipher</i> struct instead of deriving the
@@ -158,6 +178,41 @@ public class RecordTest {
 		assertTrue(Arrays.equals(decryptedData, payloadData));
 	}
 	
+	@Test
+	public void testSplitHandshakeRecord() throws GeneralSecurityException {
+		byte[] body = new byte[100];
+		for (int i = 0; i < body.length; i++) {
+			body[i] = (byte) i;
+		}
+		HandshakeMessage message = new FragmentedHandshakeMessage(HandshakeType.CERTIFICATE, body.length, 1, 0, body,
+				session.getPeer());
+		Record record = new Record(ContentType.HANDSHAKE, 0, SEQUENCE_NO, message, session, false, 0);
+		assertNull(record.split(body.length));
+
+		List<Record> records = record.split(30);
+		assertEquals(4, records.size());
+		byte[] joined = Bytes.EMPTY;
+		for (int index = 0; index < records.size(); ++index) {
+			Record fragment = records.get(index);
+			assertEquals(ContentType.HANDSHAKE, fragment.getType());
+			assertEquals(0, fragment.getEpoch());
+			FragmentedHandshakeMessage fragmentedMessage = (FragmentedHandshakeMessage) fragment.getFragment();
+			assertEquals(HandshakeType.CERTIFICATE, fragmentedMessage.getMessageType());
+			assertEquals(body.length, fragmentedMessage.getMessageLength());
+			assertEquals(1, fragmentedMessage.getMessageSeq());
+			assertEquals(index * 30, fragmentedMessage.getFragmentOffset());
+			joined = Bytes.concatenate(joined, fragmentedMessage.fragmentToByteArray());
+		}
+		assertArrayEquals(body, joined);
+
+		// split fragments again
+		records = records.get(1).split(20);
+		assertEquals(2, records.size());
+		assertEquals(30, ((FragmentedHandshakeMessage) records.get(0).getFragment()).getFragmentOffset());
+		assertEquals(50, ((FragmentedHandshakeMessage) records.get(1).getFragment()).getFragmentOffset());
+		assertEquals(10, ((FragmentedHandshakeMessage) records.get(1).getFragment()).getFragmentLength());
+	}
+
 	byte[] newGenericAEADCipherFragment() throws GeneralSecurityException {
 		// 64bit sequence number, consisting of 16bit epoch (0) + 48bit sequence number (5)
 		byte[] seq_num = new byte[]{0x00, (byte) EPOCH, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) SEQUENCE_NO};
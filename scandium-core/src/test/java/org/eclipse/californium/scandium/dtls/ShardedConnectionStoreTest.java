@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.scandium.dtls;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.eclipse.californium.elements.rule.ThreadsRule;
+import org.eclipse.californium.elements.util.DatagramReader;
+import org.eclipse.californium.elements.util.StripedExecutor;
+import org.eclipse.californium.scandium.category.Small;
+import org.eclipse.californium.scandium.dtls.cipher.CipherSuite;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of {@link ShardedConnectionStore}.
+ */
+@Category(Small.class)
+public class ShardedConnectionStoreTest {
+	@Rule
+	public ThreadsRule cleanup = new ThreadsRule();
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int SHARDS = 4;
+	ShardedConnectionStore store;
+	Connection con;
+	SessionId sessionId;
+
+	@Before
+	public void setUp() throws Exception {
+		store = new ShardedConnectionStore(INITIAL_CAPACITY, 1000, SHARDS, null);
+		store.attach(null);
+		con = newConnection(50L);
+		sessionId = con.getEstablishedSession().getSessionIdentifier();
+	}
+
+	@Test
+	public void testPutAddsConnection() {
+		assertThat(store.remainingCapacity(), is(INITIAL_CAPACITY));
+		assertTrue(store.put(con));
+		assertThat(store.remainingCapacity(), is(INITIAL_CAPACITY - 1));
+		assertThat(store.get(con.getConnectionId()), is(con));
+		assertThat(store.get(con.getPeerAddress()), is(con));
+		assertThat(store.find(sessionId), is(con));
+	}
+
+	@Test
+	public void testPutUsesOtherShardIfShardIsFull() throws Exception {
+		// two shards with a capacity of 1
+		ConnectionId cid1 = newConnectionId(0, 2, 0);
+		ConnectionId cid2 = newConnectionId(0, 2, cid1.getBytes()[0] + 1);
+		ConnectionId cid3 = newConnectionId(1, 2, 0);
+		store = new ShardedConnectionStore(2, 1000, 2, null);
+		store.attach(new ListConnectionIdGenerator(cid1, cid2, cid3));
+
+		Connection con1 = newConnection(51L);
+		assertTrue(store.put(con1));
+		assertThat(con1.getConnectionId(), is(cid1));
+		// shard of cid2 is full, use cid3 of the other shard
+		Connection con2 = newConnection(52L);
+		assertTrue(store.put(con2));
+		assertThat(con2.getConnectionId(), is(cid3));
+		assertThat(store.remainingCapacity(), is(0));
+	}
+
+	@Test
+	public void testPutEstablishedSessionStalesOldConnection() throws Exception {
+		Connection con1 = newConnection(51L);
+		DTLSSession session = con1.getEstablishedSession();
+		InetSocketAddress address = con1.getPeerAddress();
+		assertTrue(store.put(con1));
+
+		Connection con2 = newConnection(52L);
+		con2.resetSession();
+		assertTrue(store.put(con2));
+		assertThat(store.remainingCapacity(), is(INITIAL_CAPACITY - 2));
+
+		// resume session => established
+		store.putEstablishedSession(session, con2);
+
+		assertThat(store.find(session.getSessionIdentifier()), is(con2));
+		assertThat(store.get(address), is(nullValue()));
+		assertThat(store.get(con1.getConnectionId()), is(nullValue()));
+		assertThat(store.remainingCapacity(), is(INITIAL_CAPACITY - 1));
+	}
+
+	@Test
+	public void testUpdateAddress() throws Exception {
+		Connection con1 = newConnection(51L);
+		InetSocketAddress addr1 = con1.getPeerAddress();
+		assertTrue(store.put(con1));
+		Connection con2 = newConnection(52L);
+		assertTrue(store.put(con2));
+
+		store.update(con2, addr1);
+
+		assertThat(store.get(con1.getConnectionId()), is(con1));
+		assertThat(store.get(con2.getConnectionId()), is(con2));
+		assertThat(con1.getPeerAddress(), is(nullValue()));
+		assertThat(store.get(addr1), is(con2));
+	}
+
+	@Test
+	public void testRemoveShutsdownExecutor() throws Exception {
+		store.put(con);
+		assertTrue(store.remove(con));
+		assertThat(con.getExecutor().isShutdown(), is(true));
+		assertThat(store.get(con.getConnectionId()), is(nullValue()));
+		assertThat(store.find(sessionId), is(nullValue()));
+	}
+
+	@Test
+	public void testIteratorReturnsConnectionsOfAllShards() throws Exception {
+		Set<Connection> added = new HashSet<>();
+		for (int index = 0; index < INITIAL_CAPACITY; ++index) {
+			Connection connection = newConnection(51L + index);
+			assertTrue(store.put(connection));
+			added.add(connection);
+		}
+		Set<Connection> iterated = new HashSet<>();
+		Iterator<Connection> iterator = store.iterator();
+		while (iterator.hasNext()) {
+			iterated.add(iterator.next());
+		}
+		assertThat(iterated, is(added));
+	}
+
+	@Test
+	public void testClearRemovesAllConnectionsFromStore() throws Exception {
+		store.put(con);
+		store.put(newConnection(51L));
+		store.put(newConnection(52L));
+
+		store.clear();
+
+		assertThat(store.remainingCapacity(), is(INITIAL_CAPACITY));
+		assertThat(store.get(con.getPeerAddress()), is(nullValue()));
+		assertThat(store.iterator().hasNext(), is(false));
+	}
+
+	/**
+	 * Create connection id, which is assigned to the provided shard.
+	 * 
+	 * @param shard index of shard
+	 * @param shards number of shards
+	 * @param start first value to try
+	 * @return connection id
+	 */
+	private static ConnectionId newConnectionId(int shard, int shards, int start) {
+		for (int value = start;; ++value) {
+			ConnectionId cid = new ConnectionId(new byte[] { (byte) value, 1, 2, 3 });
+			if (StripedExecutor.getStripeIndex(cid, shards) == shard) {
+				return cid;
+			}
+		}
+	}
+
+	private Connection newConnection(long ip) throws HandshakeException, UnknownHostException {
+		InetAddress addr = InetAddress.getByAddress(longToIp(ip));
+		InetSocketAddress peerAddress = new InetSocketAddress(addr, 0);
+		Connection con = new Connection(peerAddress, new SyncSerialExecutor());
+		con.getSessionListener().sessionEstablished(null, newSession(peerAddress));
+		return con;
+	}
+
+	private DTLSSession newSession(InetSocketAddress address) {
+		return DTLSSessionTest.newEstablishedServerSession(address, CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_128_CCM_8, true);
+	}
+
+	private static byte[] longToIp(long ip) {
+		byte[] result = new byte[4];
+		result[0] = 10;
+		for (int i = 3; i >= 1; i--) {
+			result[i] = (byte) (ip & 0xff);
+			ip >>= 8;
+		}
+		return result;
+	}
+
+	/**
+	 * Connection id generator, which returns the provided connection ids
+	 * round robin.
+	 */
+	private static class ListConnectionIdGenerator implements ConnectionIdGenerator {
+
+		private final ConnectionId[] cids;
+		private int index;
+
+		private ListConnectionIdGenerator(ConnectionId... cids) {
+			this.cids = cids;
+		}
+
+		@Override
+		public boolean useConnectionId() {
+			return true;
+		}
+
+		@Override
+		public ConnectionId createConnectionId() {
+			ConnectionId cid = cids[index];
+			index = (index + 1) % cids.length;
+			return cid;
+		}
+
+		@Override
+		public ConnectionId read(DatagramReader reader) {
+			return new ConnectionId(reader.readBytes(4));
+		}
+	}
+}
@@ -12,9 +12,13 @@
  * 
  * Contributors:
  *    Bosch Software Innovations GmbH - initial test, derived from RecordTest
+ *    Bosch Software Innovations GmbH - add test for in place cryption
+ *    Bosch Software Innovations GmbH - add tests for cached cipher contexts
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls.cipher;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 
@@ -184,6 +188,73 @@ public class CCMBlockCipherTest {
 		assertTrue(Arrays.equals(decryptedData, payloadData));
 	}
 
+	@Test
+	public void testInPlaceCryption() throws Exception {
+		int offset = 5;
+		byte[] encryptedData = CCMBlockCipher.encrypt(aesKey, nonce, additionalData, payloadData, 8);
+		byte[] buffer = new byte[offset + payloadData.length + 8];
+		System.arraycopy(payloadData, 0, buffer, offset, payloadData.length);
+
+		int length = CCMBlockCipher.encrypt(aesKey, nonce, additionalData, buffer, offset, payloadData.length, buffer,
+				offset, 8);
+		assertThat(length, is(encryptedData.length));
+		assertTrue(Arrays.equals(Arrays.copyOfRange(buffer, offset, offset + length), encryptedData));
+
+		length = CCMBlockCipher.decrypt(aesKey, nonce, additionalData, buffer, offset, length, buffer, offset, 8);
+		assertThat(length, is(payloadData.length));
+		assertTrue(Arrays.equals(Arrays.copyOfRange(buffer, offset, offset + length), payloadData));
+	}
+
+	/**
+	 * Test, if interleaved en- and decryption with the write and read key of
+	 * a connection reuses the key schedules.
+	 */
+	@Test
+	public void testInterleavedCryptionReusesKeySchedule() throws Exception {
+		SecretKey writeKey = new SecretKeySpec(aesKeyBytes, "AES");
+		SecretKey readKey = new SecretKeySpec(aesKeyBytes, "AES");
+		int keySetups = CCMBlockCipher.getKeySetups();
+		for (int loop = 0; loop < 10; ++loop) {
+			byte[] encryptedData = CCMBlockCipher.encrypt(writeKey, nonce, additionalData, payloadData, 8);
+			byte[] decryptedData = CCMBlockCipher.decrypt(readKey, nonce, additionalData, encryptedData, 8);
+			assertTrue(Arrays.equals(decryptedData, payloadData));
+		}
+		assertThat(CCMBlockCipher.getKeySetups(), is(keySetups + 2));
+	}
+
+	/**
+	 * Test, if a released key requires a new key schedule, also if released
+	 * by an other thread.
+	 */
+	@Test
+	public void testReleasedKeyIsNotReused() throws Exception {
+		byte[] readKeyBytes = Arrays.copyOf(aesKeyBytes, aesKeyBytes.length);
+		readKeyBytes[0] ^= 0x55;
+		final SecretKey writeKey = new SecretKeySpec(aesKeyBytes, "AES");
+		SecretKey readKey = new SecretKeySpec(readKeyBytes, "AES");
+		byte[] receivedData = CCMBlockCipher.encrypt(readKey, nonce, additionalData, payloadData, 8);
+		CCMBlockCipher.encrypt(writeKey, nonce, additionalData, payloadData, 8);
+		int keySetups = CCMBlockCipher.getKeySetups();
+
+		CCMBlockCipher.release(readKey);
+		CCMBlockCipher.decrypt(readKey, nonce, additionalData, receivedData, 8);
+		assertThat(CCMBlockCipher.getKeySetups(), is(keySetups + 1));
+
+		Thread thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				CCMBlockCipher.release(writeKey);
+			}
+		});
+		thread.start();
+		thread.join();
+		CCMBlockCipher.decrypt(readKey, nonce, additionalData, receivedData, 8);
+		assertThat(CCMBlockCipher.getKeySetups(), is(keySetups + 1));
+		CCMBlockCipher.encrypt(writeKey, nonce, additionalData, payloadData, 8);
+		assertThat(CCMBlockCipher.getKeySetups(), is(keySetups + 2));
+	}
+
 	@Test(expected = InvalidMacException.class)
 	public void testDifferentNonce() throws Exception {
 
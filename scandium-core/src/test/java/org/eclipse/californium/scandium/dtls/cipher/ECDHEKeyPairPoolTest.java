@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.scandium.dtls.cipher;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.security.KeyPair;
+import java.security.interfaces.ECPublicKey;
+
+import org.eclipse.californium.elements.rule.ThreadsRule;
+import org.eclipse.californium.scandium.category.Small;
+import org.eclipse.californium.scandium.dtls.cipher.ECDHECryptography.SupportedGroup;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of {@link ECDHEKeyPairPool}.
+ */
+@Category(Small.class)
+public class ECDHEKeyPairPoolTest {
+
+	@Rule
+	public ThreadsRule cleanup = new ThreadsRule();
+
+	private static final SupportedGroup GROUP = SupportedGroup.secp256r1;
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	@Test
+	public void testTakeRefillsPool() throws Exception {
+		ECDHEKeyPairPool pool = new ECDHEKeyPairPool(2);
+		// first request for a group only starts the refill
+		assertThat(pool.take(GROUP), is(nullValue()));
+		waitForSize(pool, 2);
+
+		KeyPair keyPair = pool.take(GROUP);
+		assertThat(keyPair, is(notNullValue()));
+		assertThat(((ECPublicKey) keyPair.getPublic()).getParams().getCurve(),
+				is(GROUP.getEcParams().getCurve()));
+		assertThat(pool.take(GROUP), is(not(keyPair)));
+		waitForSize(pool, 2);
+	}
+
+	@Test
+	public void testTakeRefillsPoolAfterIdle() throws Exception {
+		ECDHEKeyPairPool pool = new ECDHEKeyPairPool(1);
+		assertThat(pool.take(GROUP), is(nullValue()));
+		waitForSize(pool, 1);
+		// let the refill thread terminate
+		Thread.sleep(1000);
+
+		assertThat(pool.take(GROUP), is(notNullValue()));
+		waitForSize(pool, 1);
+	}
+
+	@Test
+	public void testDisabledPoolReturnsNoKeyPair() throws Exception {
+		ECDHEKeyPairPool pool = new ECDHEKeyPairPool(0);
+		assertThat(pool.take(GROUP), is(nullValue()));
+		assertThat(pool.size(GROUP), is(0));
+		assertThat(ECDHEKeyPairPool.getInstance(0), is(nullValue()));
+	}
+
+	@Test
+	public void testFromKeyPairPoolCreatesKeysInline() throws Exception {
+		ECDHEKeyPairPool pool = new ECDHEKeyPairPool(1);
+		ECDHECryptography ecdhe = ECDHECryptography.fromKeyPairPool(pool, GROUP);
+		assertThat(ecdhe.getEphemeralPublicKey(), is(notNullValue()));
+		ecdhe = ECDHECryptography.fromKeyPairPool(null, GROUP);
+		assertThat(ecdhe.getEphemeralPublicKey(), is(notNullValue()));
+	}
+
+	private static void waitForSize(ECDHEKeyPairPool pool, int size) throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (pool.size(GROUP) < size && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		assertThat(pool.size(GROUP), is(size));
+	}
+}
@@ -12,11 +12,17 @@
  * 
  * Contributors:
  *    Kai Hudalla (Bosch Software Innovations GmbH) - initial creation
+ *    Bosch Software Innovations GmbH - add x25519 key agreement test.
  ******************************************************************************/
 package org.eclipse.californium.scandium.dtls.cipher;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.security.PublicKey;
+
+import javax.crypto.SecretKey;
 
 import org.eclipse.californium.scandium.category.Small;
 import org.eclipse.californium.scandium.dtls.cipher.ECDHECryptography.SupportedGroup;
@@ -31,6 +37,10 @@ public class SupportedGroupTest {
 		SupportedGroup[] usablegroups = SupportedGroup.getUsableGroups();
 		assertTrue(usablegroups.length > 0);
 		for (SupportedGroup group : usablegroups) {
+			if (group.isXdh()) {
+				// x25519 and x448 have no EC domain params
+				continue;
+			}
 			assertThat(
 					"Elliptic curve [" + group.name() + "] is reported to be usable on current JRE " +
 					"but domain params are unknown, this should have been detected. Please file " +
@@ -40,4 +50,21 @@ public class SupportedGroupTest {
 		}
 	}
 
+	@Test
+	public void testXdhKeyAgreement() throws Exception {
+		assumeTrue("JRE doesn't support x25519", SupportedGroup.x25519.isUsable());
+		assertThat(SupportedGroup.getPreferredGroups(), not(hasItem(SupportedGroup.x25519)));
+
+		ECDHECryptography server = ECDHECryptography.fromNamedCurveId(SupportedGroup.x25519.getId());
+		ECDHECryptography client = ECDHECryptography.fromNamedCurveId(SupportedGroup.x25519.getId());
+		byte[] serverPoint = ECDHECryptography.encodePublicKey(server.getEphemeralPublicKey());
+		byte[] clientPoint = ECDHECryptography.encodePublicKey(client.getEphemeralPublicKey());
+		assertThat(serverPoint.length, is(32));
+		assertThat(clientPoint.length, is(32));
+
+		PublicKey serverPublicKey = ECDHECryptography.decodePublicKey(SupportedGroup.x25519, serverPoint);
+		SecretKey clientSecret = client.getSecret(serverPublicKey);
+		SecretKey serverSecret = server.getSecret(clientPoint);
+		assertThat(clientSecret.getEncoded(), is(serverSecret.getEncoded()));
+	}
 }
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.scandium.dtls.pskstore;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.eclipse.californium.elements.util.Base64;
+import org.eclipse.californium.scandium.category.Small;
+import org.eclipse.californium.scandium.dtls.PskPublicInformation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of {@link FilePskStore}.
+ */
+@Category(Small.class)
+public class FilePskStoreTest {
+
+	private static final byte[] KEY1 = "secret1".getBytes();
+	private static final byte[] KEY2 = "secret2".getBytes();
+
+	File file;
+	FilePskStore store;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("psk", ".txt");
+	}
+
+	@After
+	public void tearDown() {
+		if (store != null) {
+			store.close();
+		}
+		file.delete();
+	}
+
+	@Test
+	public void testGetKey() throws IOException {
+		write(false, "# comment", "", line("client1", KEY1), line("client2", KEY2));
+		store = new FilePskStore(file);
+		assertThat(store.size(), is(2));
+		assertThat(store.getKey(new PskPublicInformation("client1")), is(KEY1));
+		assertThat(store.getKey(new PskPublicInformation("client2")), is(KEY2));
+		assertThat(store.getKey(new PskPublicInformation("client3")), is(nullValue()));
+	}
+
+	@Test
+	public void testManyIdentities() throws IOException {
+		String[] lines = new String[1000];
+		for (int index = 0; index < lines.length; ++index) {
+			lines[index] = line("client" + index, ("secret" + index).getBytes());
+		}
+		write(false, lines);
+		store = new FilePskStore(file);
+		assertThat(store.size(), is(lines.length));
+		for (int index = 0; index < lines.length; ++index) {
+			assertThat(store.getKey(new PskPublicInformation("client" + index)), is(("secret" + index).getBytes()));
+		}
+	}
+
+	@Test
+	public void testReloadAppendedLines() throws IOException {
+		write(false, line("client1", KEY1));
+		store = new FilePskStore(file);
+		assertThat(store.reload(), is(false));
+
+		// replace client1, add client2
+		write(true, line("client1", KEY2), line("client2", KEY2));
+		assertThat(store.reload(), is(true));
+		assertThat(store.size(), is(2));
+		assertThat(store.getKey(new PskPublicInformation("client1")), is(KEY2));
+
+		// remove client1
+		write(true, "client1=");
+		assertThat(store.reload(), is(true));
+		assertThat(store.size(), is(1));
+		assertThat(store.getKey(new PskPublicInformation("client1")), is(nullValue()));
+		assertThat(store.getKey(new PskPublicInformation("client2")), is(KEY2));
+	}
+
+	@Test
+	public void testReloadRewrittenFile() throws IOException {
+		write(false, line("client1", KEY1), line("client2", KEY2));
+		store = new FilePskStore(file);
+
+		write(false, line("client3", KEY1), line("client4", KEY1), line("client5", KEY1));
+		assertThat(store.reload(), is(true));
+		assertThat(store.size(), is(3));
+		assertThat(store.getKey(new PskPublicInformation("client1")), is(nullValue()));
+		assertThat(store.getKey(new PskPublicInformation("client3")), is(KEY1));
+	}
+
+	@Test
+	public void testPartialLineIsLoadedWithNextReload() throws IOException {
+		write(false, line("client1", KEY1));
+		OutputStream out = new FileOutputStream(file, true);
+		out.write("client2=".getBytes());
+		out.close();
+		store = new FilePskStore(file);
+		assertThat(store.size(), is(1));
+
+		write(true, Base64.encodeBytes(KEY2));
+		assertThat(store.reload(), is(true));
+		assertThat(store.getKey(new PskPublicInformation("client2")), is(KEY2));
+	}
+
+	@Test
+	public void testReloadGrownFileWithRotatedKey() throws IOException {
+		String[] lines = new String[10];
+		lines[0] = line("client1", KEY1);
+		for (int index = 1; index < lines.length; ++index) {
+			lines[index] = line("client" + (index + 1), KEY1);
+		}
+		write(false, lines);
+		store = new FilePskStore(file);
+
+		// rotate key of client1, keep the end of the file, and add client11
+		lines[0] = line("client1", KEY2);
+		write(false, lines);
+		write(true, line("client11", KEY1));
+		assertThat(store.reload(), is(true));
+		assertThat(store.size(), is(11));
+		assertThat(store.getKey(new PskPublicInformation("client1")), is(KEY2));
+		assertThat(store.getKey(new PskPublicInformation("client11")), is(KEY1));
+	}
+
+	@Test
+	public void testLastLineWithoutLineEndIsLoaded() throws IOException {
+		write(false, line("client1", KEY1));
+		OutputStream out = new FileOutputStream(file, true);
+		out.write(line("client2", KEY2).getBytes());
+		out.close();
+		store = new FilePskStore(file);
+		assertThat(store.size(), is(2));
+		assertThat(store.getKey(new PskPublicInformation("client2")), is(KEY2));
+
+		write(true, "", line("client3", KEY1));
+		assertThat(store.reload(), is(true));
+		assertThat(store.size(), is(3));
+		assertThat(store.getKey(new PskPublicInformation("client2")), is(KEY2));
+		assertThat(store.getKey(new PskPublicInformation("client3")), is(KEY1));
+	}
+
+	private static String line(String identity, byte[] key) {
+		return identity + "=" + Base64.encodeBytes(key);
+	}
+
+	private void write(boolean append, String... lines) throws IOException {
+		long modified = file.lastModified();
+		OutputStream out = new FileOutputStream(file, append);
+		try {
+			for (String line : lines) {
+				out.write(line.getBytes("UTF-8"));
+				out.write('\n');
+			}
+		} finally {
+			out.close();
+		}
+		// ensure a different modification time for coarse file systems
+		file.setLastModified(modified + 2000);
+	}
+}
@@ -0,0 +1,305 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *    Bosch Software Innovations GmbH - add tests for rejected leafs
+ ******************************************************************************/
+package org.eclipse.californium.scandium.dtls.x509;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.scandium.category.Small;
+import org.eclipse.californium.scandium.dtls.CertificateMessage;
+import org.eclipse.californium.scandium.dtls.DTLSSession;
+import org.eclipse.californium.scandium.dtls.DtlsTestTools;
+import org.eclipse.californium.scandium.dtls.HandshakeException;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of {@link CachingCertificateVerifier}.
+ */
+@Category(Small.class)
+public class CachingCertificateVerifierTest {
+
+	private static final String SHA256_WITH_RSA = "1.2.840.113549.1.1.11";
+	private static final String MD5_WITH_RSA = "1.2.840.113549.1.1.4";
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+	static KeyPair rootKeys;
+	static KeyPair caKeys;
+	static KeyPair leafKeys;
+	static X509Certificate root;
+	static X509Certificate ca;
+
+	DTLSSession session;
+	CachingCertificateVerifier verifier;
+
+	@BeforeClass
+	public static void createCertificates() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		rootKeys = generator.generateKeyPair();
+		caKeys = generator.generateKeyPair();
+		leafKeys = generator.generateKeyPair();
+		long now = System.currentTimeMillis();
+		root = certificate("root", "root", rootKeys.getPublic(), rootKeys.getPrivate(), SHA256_WITH_RSA,
+				now - DAY, now + DAY, true, null);
+		ca = certificate("ca", "root", caKeys.getPublic(), rootKeys.getPrivate(), SHA256_WITH_RSA, now - DAY,
+				now + DAY, true, null);
+	}
+
+	@Before
+	public void setUp() {
+		session = new DTLSSession(new InetSocketAddress(5684));
+		verifier = new CachingCertificateVerifier(
+				new StaticCertificateVerifier(DtlsTestTools.getTrustedCertificates()), 10);
+	}
+
+	@Test
+	public void testVerifiedIssuersAreCached() throws Exception {
+		verifier.verifyCertificate(message(DtlsTestTools.getServerCertificateChain()), session);
+		assertThat(verifier.getMisses(), is(1L));
+		assertThat(verifier.size(), is(1));
+
+		verifier.verifyCertificate(message(DtlsTestTools.getServerCertificateChain()), session);
+		assertThat(verifier.getMisses(), is(1L));
+		assertThat(verifier.getHits(), is(1L));
+	}
+
+	@Test
+	public void testCachedIssuersAreUsedForOtherLeaf() throws Exception {
+		verifier.verifyCertificate(message(DtlsTestTools.getServerCertificateChain()), session);
+
+		// the client's certificate is issued by the same intermediate CA
+		verifier.verifyCertificate(message(DtlsTestTools.getClientCertificateChain()), session);
+		assertThat(verifier.getMisses(), is(1L));
+		assertThat(verifier.getHits(), is(1L));
+		assertThat(verifier.size(), is(1));
+	}
+
+	@Test
+	public void testFailedChainIsNotCached() throws Exception {
+		verifier = new CachingCertificateVerifier(
+				new StaticCertificateVerifier(new X509Certificate[] { DtlsTestTools.getNoSigningCertificate() }), 10);
+		try {
+			verifier.verifyCertificate(message(DtlsTestTools.getServerCertificateChain()), session);
+			fail("chain with untrusted root must fail!");
+		} catch (HandshakeException ex) {
+			assertThat(verifier.size(), is(0));
+		}
+	}
+
+	@Test
+	public void testCachedIssuersRejectLeafNotSignedByIssuer() throws Exception {
+		givenCachedIssuers();
+		KeyPair otherKeys = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+		assertLeafRejectedWithCachedIssuers(leaf(otherKeys.getPrivate(), SHA256_WITH_RSA, 0));
+	}
+
+	@Test
+	public void testCachedIssuersRejectExpiredLeaf() throws Exception {
+		givenCachedIssuers();
+		assertLeafRejectedWithCachedIssuers(leaf(caKeys.getPrivate(), SHA256_WITH_RSA, -2 * DAY));
+	}
+
+	@Test
+	public void testCachedIssuersRejectLeafWithDisabledAlgorithm() throws Exception {
+		givenCachedIssuers();
+		X509Certificate leaf = leaf(caKeys.getPrivate(), MD5_WITH_RSA, 0);
+		// the plain signature is valid
+		leaf.verify(caKeys.getPublic());
+		assertLeafRejectedWithCachedIssuers(leaf);
+	}
+
+	@Test
+	public void testIssuerWithNameConstraintsIsNotCached() throws Exception {
+		long now = System.currentTimeMillis();
+		X509Certificate constrainedCa = certificate("ca", "root", caKeys.getPublic(), rootKeys.getPrivate(),
+				SHA256_WITH_RSA, now - DAY, now + DAY, true, "example.com");
+		X509Certificate[] chain = new X509Certificate[] { leaf(caKeys.getPrivate(), SHA256_WITH_RSA, 0),
+				constrainedCa, root };
+		verifier = new CachingCertificateVerifier(new StaticCertificateVerifier(new X509Certificate[] { root }),
+				10);
+		verifier.verifyCertificate(message(chain), session);
+		verifier.verifyCertificate(message(chain), session);
+		assertThat(verifier.getMisses(), is(2L));
+		assertThat(verifier.getHits(), is(0L));
+		assertThat(verifier.size(), is(0));
+	}
+
+	private void givenCachedIssuers() throws Exception {
+		verifier = new CachingCertificateVerifier(new StaticCertificateVerifier(new X509Certificate[] { root }),
+				10);
+		verifier.verifyCertificate(message(chain(leaf(caKeys.getPrivate(), SHA256_WITH_RSA, 0))), session);
+		assertThat(verifier.size(), is(1));
+	}
+
+	private void assertLeafRejectedWithCachedIssuers(X509Certificate leaf) throws Exception {
+		try {
+			verifier.verifyCertificate(message(chain(leaf)), session);
+			fail("leaf must be rejected!");
+		} catch (HandshakeException ex) {
+			assertThat(verifier.getHits(), is(1L));
+		}
+	}
+
+	private static X509Certificate[] chain(X509Certificate leaf) {
+		return new X509Certificate[] { leaf, ca, root };
+	}
+
+	/**
+	 * Create leaf certificate issued by "ca".
+	 * 
+	 * @param signer private key to sign the leaf
+	 * @param algorithm OID of signature algorithm
+	 * @param shift time shift of the validity period in milliseconds
+	 * @return leaf certificate
+	 * @throws GeneralSecurityException if the certificate could not be
+	 *             created
+	 */
+	private static X509Certificate leaf(PrivateKey signer, String algorithm, long shift)
+			throws GeneralSecurityException {
+		long now = System.currentTimeMillis() + shift;
+		return certificate("leaf", "ca", leafKeys.getPublic(), signer, algorithm, now - DAY, now + DAY, false, null);
+	}
+
+	/**
+	 * Create a X509 v3 certificate.
+	 * 
+	 * @param subject common name of subject
+	 * @param issuer common name of issuer
+	 * @param key public key of subject
+	 * @param signer private key of issuer
+	 * @param algorithm OID of the signature algorithm (RSA)
+	 * @param notBefore start of validity period
+	 * @param notAfter end of validity period
+	 * @param ca {@code true}, to add the basic constraints of a CA
+	 * @param excludedDns excluded DNS name for name constraints. {@code null},
+	 *            if no name constraints are added.
+	 * @return certificate
+	 * @throws GeneralSecurityException if the certificate could not be
+	 *             created
+	 */
+	private static X509Certificate certificate(String subject, String issuer, PublicKey key, PrivateKey signer,
+			String algorithm, long notBefore, long notAfter, boolean ca, String excludedDns)
+			throws GeneralSecurityException {
+		byte[] signatureAlgorithm = der(0x30, oid(algorithm), der(0x05));
+		ByteArrayOutputStream extensions = new ByteArrayOutputStream();
+		if (ca) {
+			// basic constraints, critical, CA
+			write(extensions, der(0x30, oid("2.5.29.19"), der(0x01, new byte[] { (byte) 0xff }),
+					der(0x04, der(0x30, der(0x01, new byte[] { (byte) 0xff })))));
+		}
+		if (excludedDns != null) {
+			// name constraints, critical, excluded subtree with DNS name
+			write(extensions, der(0x30, oid("2.5.29.30"), der(0x01, new byte[] { (byte) 0xff }),
+					der(0x04, der(0x30, der(0xa1, der(0x30, der(0x82, excludedDns.getBytes())))))));
+		}
+		byte[] tbs = der(0x30,
+				der(0xa0, der(0x02, new byte[] { 2 })), // v3
+				der(0x02, BigInteger.valueOf(System.nanoTime()).abs().toByteArray()),
+				signatureAlgorithm,
+				name(issuer),
+				der(0x30, time(notBefore), time(notAfter)),
+				name(subject),
+				key.getEncoded(),
+				extensions.size() == 0 ? new byte[0] : der(0xa3, der(0x30, extensions.toByteArray())));
+		Signature signature = Signature.getInstance(algorithm.equals(MD5_WITH_RSA) ? "MD5withRSA" : "SHA256withRSA");
+		signature.initSign(signer);
+		signature.update(tbs);
+		byte[] bits = signature.sign();
+		byte[] bitString = new byte[bits.length + 1];
+		System.arraycopy(bits, 0, bitString, 1, bits.length);
+		byte[] encoded = der(0x30, tbs, signatureAlgorithm, der(0x03, bitString));
+		return (X509Certificate) CertificateFactory.getInstance("X.509")
+				.generateCertificate(new ByteArrayInputStream(encoded));
+	}
+
+	private static byte[] name(String commonName) {
+		return der(0x30, der(0x31, der(0x30, oid("2.5.4.3"), der(0x0c, commonName.getBytes()))));
+	}
+
+	private static byte[] time(long time) {
+		SimpleDateFormat format = new SimpleDateFormat("yyMMddHHmmss'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return der(0x17, format.format(new Date(time)).getBytes());
+	}
+
+	private static byte[] oid(String oid) {
+		String[] parts = oid.split("\\.");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(Integer.parseInt(parts[0]) * 40 + Integer.parseInt(parts[1]));
+		for (int index = 2; index < parts.length; ++index) {
+			long value = Long.parseLong(parts[index]);
+			int shift = 63 - Long.numberOfLeadingZeros(value | 1);
+			for (shift -= shift % 7; shift > 0; shift -= 7) {
+				out.write((int) (0x80 | (value >>> shift) & 0x7f));
+			}
+			out.write((int) (value & 0x7f));
+		}
+		return der(0x06, out.toByteArray());
+	}
+
+	private static byte[] der(int tag, byte[]... values) {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		for (byte[] value : values) {
+			write(content, value);
+		}
+		int length = content.size();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(tag);
+		if (length < 0x80) {
+			out.write(length);
+		} else if (length < 0x100) {
+			out.write(0x81);
+			out.write(length);
+		} else {
+			out.write(0x82);
+			out.write(length >> 8);
+			out.write(length);
+		}
+		write(out, content.toByteArray());
+		return out.toByteArray();
+	}
+
+	private static void write(ByteArrayOutputStream out, byte[] value) {
+		out.write(value, 0, value.length);
+	}
+
+	private CertificateMessage message(X509Certificate[] chain) {
+		return new CertificateMessage(Arrays.asList(chain), session.getPeer());
+	}
+}